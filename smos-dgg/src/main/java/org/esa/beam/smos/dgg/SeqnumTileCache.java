@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.smos.dgg;
+
+import com.bc.ceres.glevel.MultiLevelSource;
+
+import javax.media.jai.OpImage;
+import javax.media.jai.PlanarImage;
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of decoded tiles of the SMOS DGG seqnum image, which is shared by all
+ * SMOS images. Tiles are identified by resolution level and tile indexes.
+ * <p/>
+ * The cache has a memory budget of its own, so DGG tiles do not compete with
+ * data tiles for the JAI tile cache. When the budget is exceeded, the least
+ * recently used tiles are evicted.
+ * <p/>
+ * Tiles returned by the cache are shared and must not be modified.
+ *
+ * @since SMOS-Box 3.0
+ */
+public class SeqnumTileCache {
+
+    private final MultiLevelSource multiLevelSource;
+    private final long memoryBudget;
+    private final Map<Key, Raster> tileMap;
+    private final AtomicLong hitCount;
+    private final AtomicLong missCount;
+
+    private long memoryUsage;
+
+    SeqnumTileCache(MultiLevelSource multiLevelSource, long memoryBudget) {
+        this.multiLevelSource = multiLevelSource;
+        this.memoryBudget = memoryBudget;
+        tileMap = new LinkedHashMap<>(64, 0.75f, true);
+        hitCount = new AtomicLong();
+        missCount = new AtomicLong();
+    }
+
+    /**
+     * Returns a tile of the seqnum image.
+     *
+     * @param level the resolution level.
+     * @param tileX the tile index in X direction.
+     * @param tileY the tile index in Y direction.
+     *
+     * @return the tile.
+     */
+    public Raster getTile(int level, int tileX, int tileY) {
+        final Key key = new Key(level, tileX, tileY);
+        synchronized (tileMap) {
+            final Raster tile = tileMap.get(key);
+            if (tile != null) {
+                hitCount.incrementAndGet();
+                return tile;
+            }
+        }
+        missCount.incrementAndGet();
+
+        // the tile is decoded outside the lock, concurrent requests may decode the same tile twice
+        final Raster tile = computeTile(multiLevelSource.getImage(level), tileX, tileY);
+        synchronized (tileMap) {
+            final Raster previous = tileMap.put(key, tile);
+            if (previous != null) {
+                memoryUsage -= getMemorySize(previous);
+            }
+            memoryUsage += getMemorySize(tile);
+            final Iterator<Raster> iterator = tileMap.values().iterator();
+            while (memoryUsage > memoryBudget && tileMap.size() > 1) {
+                memoryUsage -= getMemorySize(iterator.next());
+                iterator.remove();
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * Returns a region of the seqnum image. If the region is contained in a single
+     * tile, the tile itself is returned.
+     *
+     * @param level     the resolution level.
+     * @param rectangle the region.
+     *
+     * @return a raster including the region.
+     */
+    public Raster getData(int level, Rectangle rectangle) {
+        final RenderedImage image = multiLevelSource.getImage(level);
+        final int minTileX = xToTileX(image, rectangle.x);
+        final int maxTileX = xToTileX(image, rectangle.x + rectangle.width - 1);
+        final int minTileY = yToTileY(image, rectangle.y);
+        final int maxTileY = yToTileY(image, rectangle.y + rectangle.height - 1);
+
+        if (minTileX == maxTileX && minTileY == maxTileY) {
+            return getTile(level, minTileX, minTileY);
+        }
+
+        final Raster firstTile = getTile(level, minTileX, minTileY);
+        final WritableRaster raster = firstTile.createCompatibleWritableRaster(rectangle);
+        for (int tileY = minTileY; tileY <= maxTileY; tileY++) {
+            for (int tileX = minTileX; tileX <= maxTileX; tileX++) {
+                final Raster tile = getTile(level, tileX, tileY);
+                final Rectangle r = tile.getBounds().intersection(rectangle);
+                if (!r.isEmpty()) {
+                    raster.setRect(tile.createChild(r.x, r.y, r.width, r.height, r.x, r.y, null));
+                }
+            }
+        }
+        return raster;
+    }
+
+    /**
+     * Returns the seqnum of a pixel of the seqnum image.
+     *
+     * @param level the resolution level.
+     * @param x     the pixel X coordinate.
+     * @param y     the pixel Y coordinate.
+     *
+     * @return the seqnum of the pixel.
+     */
+    public int getSeqnum(int level, int x, int y) {
+        final RenderedImage image = multiLevelSource.getImage(level);
+
+        return getTile(level, xToTileX(image, x), yToTileY(image, y)).getSample(x, y, 0);
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public long getMemoryUsage() {
+        synchronized (tileMap) {
+            return memoryUsage;
+        }
+    }
+
+    public int getTileCount() {
+        synchronized (tileMap) {
+            return tileMap.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (tileMap) {
+            tileMap.clear();
+            memoryUsage = 0;
+        }
+    }
+
+    private static Raster computeTile(RenderedImage image, int tileX, int tileY) {
+        if (image instanceof OpImage) {
+            // bypasses the JAI tile cache
+            return ((OpImage) image).computeTile(tileX, tileY);
+        }
+        return image.getTile(tileX, tileY);
+    }
+
+    private static int xToTileX(RenderedImage image, int x) {
+        return PlanarImage.XToTileX(x, image.getTileGridXOffset(), image.getTileWidth());
+    }
+
+    private static int yToTileY(RenderedImage image, int y) {
+        return PlanarImage.YToTileY(y, image.getTileGridYOffset(), image.getTileHeight());
+    }
+
+    private static long getMemorySize(Raster tile) {
+        final DataBuffer dataBuffer = tile.getDataBuffer();
+        final long elementSize = DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8;
+
+        return elementSize * dataBuffer.getSize() * dataBuffer.getNumBanks();
+    }
+
+    private static final class Key {
+
+        private final int level;
+        private final int tileX;
+        private final int tileY;
+
+        private Key(int level, int tileX, int tileY) {
+            this.level = level;
+            this.tileX = tileX;
+            this.tileY = tileY;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return level == key.level && tileX == key.tileX && tileY == key.tileY;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = level;
+            result = 31 * result + tileX;
+            result = 31 * result + tileY;
+            return result;
+        }
+    }
+}
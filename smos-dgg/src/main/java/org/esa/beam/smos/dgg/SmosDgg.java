@@ -41,6 +41,8 @@ import java.text.MessageFormat;
 public class SmosDgg {
 
     private static final String SMOS_DGG_DIR_PROPERTY_NAME = "org.esa.beam.smos.dggDir";
+    private static final String SMOS_DGG_TILE_CACHE_SIZE_PROPERTY_NAME = "org.esa.beam.smos.dggTileCacheSize";
+    private static final int DEFAULT_DGG_TILE_CACHE_SIZE = 64; // MB
 
     private static final int A = 1000000;
     private static final int B = 262144;
@@ -53,6 +55,7 @@ public class SmosDgg {
     public static final int MAX_ZONE_ID = 10;
 
     private volatile MultiLevelImage dggMultiLevelImage;
+    private volatile SeqnumTileCache seqnumTileCache;
 
 
     public static SmosDgg getInstance() {
@@ -91,6 +94,16 @@ public class SmosDgg {
         return dggMultiLevelImage;
     }
 
+    /**
+     * Returns the cache of decoded tiles of the DGG multi-level image. The size of
+     * the cache (in MB) is set by the system property {@code org.esa.beam.smos.dggTileCacheSize}.
+     *
+     * @return the tile cache.
+     */
+    public SeqnumTileCache getSeqnumTileCache() {
+        return seqnumTileCache;
+    }
+
     private SmosDgg() {
         try {
             String dirPath = getDirPathFromProperty();
@@ -101,6 +114,8 @@ public class SmosDgg {
             final MultiLevelSource dggMultiLevelSource = TiledFileMultiLevelSource.create(dir);
 
             dggMultiLevelImage = new DefaultMultiLevelImage(dggMultiLevelSource);
+            final long cacheSize = Long.getLong(SMOS_DGG_TILE_CACHE_SIZE_PROPERTY_NAME, DEFAULT_DGG_TILE_CACHE_SIZE);
+            seqnumTileCache = new SeqnumTileCache(dggMultiLevelImage, cacheSize * 1024L * 1024L);
         } catch (Exception e) {
             throw new IllegalStateException(MessageFormat.format(
                     "Cannot create SMOS DDG multi-level image: {0}", e.getMessage()), e);
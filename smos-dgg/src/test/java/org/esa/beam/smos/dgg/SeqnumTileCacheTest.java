@@ -0,0 +1,89 @@
+package org.esa.beam.smos.dgg;
+
+import com.bc.ceres.glevel.support.DefaultMultiLevelSource;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.media.jai.TiledImage;
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class SeqnumTileCacheTest {
+
+    private static final int TILE_MEMORY_SIZE = 4 * 4 * 4;
+
+    private SeqnumTileCache cache;
+
+    @Before
+    public void setUp() {
+        // an image of 8 x 8 pixels and 2 x 2 tiles, the seqnum of a pixel is 10 * y + x
+        final TiledImage image = new TiledImage(0, 0, 8, 8, 0, 0,
+                                                new PixelInterleavedSampleModel(DataBuffer.TYPE_INT, 4, 4, 1, 4,
+                                                                                new int[]{0}),
+                                                null);
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                image.setSample(x, y, 0, 10 * y + x);
+            }
+        }
+        cache = new SeqnumTileCache(new DefaultMultiLevelSource(image, 1), 2 * TILE_MEMORY_SIZE);
+    }
+
+    @Test
+    public void testGetSeqnum() {
+        assertEquals(0, cache.getSeqnum(0, 0, 0));
+        assertEquals(77, cache.getSeqnum(0, 7, 7));
+        assertEquals(35, cache.getSeqnum(0, 5, 3));
+    }
+
+    @Test
+    public void testHitAndMissCounts() {
+        final Raster tile = cache.getTile(0, 1, 0);
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        assertSame(tile, cache.getTile(0, 1, 0));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(TILE_MEMORY_SIZE, cache.getMemoryUsage());
+    }
+
+    @Test
+    public void testEviction() {
+        final Raster tile00 = cache.getTile(0, 0, 0);
+        cache.getTile(0, 1, 0);
+        cache.getTile(0, 0, 0);
+        cache.getTile(0, 0, 1);
+
+        // the least recently used tile (1, 0) has been evicted
+        assertEquals(2, cache.getTileCount());
+        assertEquals(2 * TILE_MEMORY_SIZE, cache.getMemoryUsage());
+        assertSame(tile00, cache.getTile(0, 0, 0));
+        assertEquals(3, cache.getMissCount());
+        cache.getTile(0, 1, 0);
+        assertEquals(4, cache.getMissCount());
+
+        cache.clear();
+        assertEquals(0, cache.getTileCount());
+        assertEquals(0, cache.getMemoryUsage());
+    }
+
+    @Test
+    public void testGetData() {
+        final Raster singleTileData = cache.getData(0, new Rectangle(4, 4, 2, 3));
+        assertSame(cache.getTile(0, 1, 1), singleTileData);
+
+        final Raster data = cache.getData(0, new Rectangle(2, 3, 4, 2));
+        assertEquals(new Rectangle(2, 3, 4, 2), data.getBounds());
+        for (int y = 3; y < 5; y++) {
+            for (int x = 2; x < 6; x++) {
+                assertEquals(10 * y + x, data.getSample(x, y, 0));
+            }
+        }
+    }
+}
@@ -1,10 +1,10 @@
 package org.esa.beam.smos.ee2netcdf;
 
 
-import com.bc.ceres.binio.CompoundData;
 import org.apache.commons.lang.StringUtils;
 import org.esa.beam.dataio.netcdf.nc.NFileWriteable;
 import org.esa.beam.dataio.netcdf.nc.NVariable;
+import org.esa.beam.dataio.smos.GridPointGeolocation;
 import org.esa.beam.dataio.smos.SmosFile;
 import org.esa.beam.dataio.smos.SmosProductReader;
 import org.esa.beam.dataio.smos.dddb.Dddb;
@@ -46,10 +46,10 @@ abstract class AbstractFormatExporter implements FormatExporter {
     public void prepareGeographicSubset(NFileWriteable nFileWriteable, ExportParameter exportParameter) throws IOException {
         if (exportParameter.getRegion() != null) {
             final GeometryFilter geometryFilter = GeometryFilterFactory.create(exportParameter.getRegion());
+            final GridPointGeolocation geolocation = explorerFile.getGridPointGeolocation();
             gpIndexList = new ArrayList<>(gridPointCount);
             for (int i = 0; i < gridPointCount; i++) {
-                final CompoundData gridPointData = explorerFile.getGridPointData(i);
-                if (geometryFilter.accept(gridPointData)) {
+                if (geometryFilter.accept(geolocation.getLon(i), geolocation.getLat(i))) {
                     gpIndexList.add(i);
                 }
             }
@@ -3,7 +3,6 @@ package org.esa.beam.smos.ee2netcdf;
 import com.vividsolutions.jts.geom.*;
 import com.vividsolutions.jts.geom.Polygon;
 import org.esa.beam.dataio.smos.DggFile;
-import org.esa.beam.dataio.smos.DggUtils;
 import org.esa.beam.dataio.smos.ProductFile;
 import org.esa.beam.dataio.smos.SmosProductReader;
 import org.esa.beam.framework.dataio.ProductIO;
@@ -179,7 +178,7 @@ public class EEToNetCDFExporterOp extends AbstractNetCDFExporterOp {
             final ProductFile productFile = productReader.getProductFile();
 
             if (productFile instanceof DggFile) {
-                final Area dataArea = DggUtils.computeArea(((DggFile) productFile).getGridPointList());
+                final Area dataArea = ((DggFile) productFile).getArea();
                 Geometry polygon = convertToPolygon(dataArea);
 
                 if (region != null) {
@@ -4,6 +4,7 @@ import com.bc.ceres.binio.CompoundData;
 import com.bc.ceres.binio.SequenceData;
 import org.esa.beam.dataio.netcdf.nc.NFileWriteable;
 import org.esa.beam.dataio.netcdf.nc.NVariable;
+import org.esa.beam.dataio.smos.GridPointGeolocation;
 import org.esa.beam.dataio.smos.L1cScienceSmosFile;
 import org.esa.beam.dataio.smos.SnapshotInfo;
 import org.esa.beam.framework.datamodel.MetadataAttribute;
@@ -73,10 +74,10 @@ class L1CFormatExporter extends AbstractFormatExporter {
     public void prepareGeographicSubset(NFileWriteable nFileWriteable, ExportParameter exportParameter) throws IOException {
         if (exportParameter.getRegion() != null) {
             final GeometryFilter geometryFilter = GeometryFilterFactory.create(exportParameter.getRegion());
+            final GridPointGeolocation geolocation = explorerFile.getGridPointGeolocation();
             gpIndexList = new ArrayList<>(gridPointCount);
             for (int i = 0; i < gridPointCount; i++) {
-                final CompoundData gridPointData = explorerFile.getGridPointData(i);
-                if (geometryFilter.accept(gridPointData)) {
+                if (geometryFilter.accept(geolocation.getLon(i), geolocation.getLat(i))) {
                     gpIndexList.add(i);
 
                     final SequenceData btDataList = scienceSmosFile.getBtDataList(i);
@@ -8,4 +8,6 @@ import java.io.IOException;
 public interface GeometryFilter {
 
     public boolean accept(CompoundData compoundData) throws IOException;
+
+    public boolean accept(double lon, double lat);
 }
@@ -8,4 +8,9 @@ class NoConstraintGeometryFilter implements GeometryFilter{
     public boolean accept(CompoundData compoundData) {
         return true;
     }
+
+    @Override
+    public boolean accept(double lon, double lat) {
+        return true;
+    }
 }
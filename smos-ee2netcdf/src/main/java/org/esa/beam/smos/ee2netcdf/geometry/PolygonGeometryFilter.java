@@ -22,6 +22,11 @@ class PolygonGeometryFilter implements GeometryFilter {
         final float lat = compoundData.getFloat(1);
         final float lon = compoundData.getFloat(2);
 
+        return accept(lon, lat);
+    }
+
+    @Override
+    public boolean accept(double lon, double lat) {
         final Coordinate coord = new Coordinate(lon, lat);
         final Point point = geometryFactory.createPoint(coord);
 
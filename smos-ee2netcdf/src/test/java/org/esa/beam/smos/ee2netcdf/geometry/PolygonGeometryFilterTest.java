@@ -64,4 +64,13 @@ public class PolygonGeometryFilterTest {
         when(compoundData.getFloat(2)).thenReturn(41.78f);  // lon
         assertFalse(geometryFilter.accept(compoundData));
     }
+
+    @Test
+    public void testAccept_lonLat() {
+        assertTrue(geometryFilter.accept(10.02, 0.01));
+        assertTrue(geometryFilter.accept(19.78, 9.98));
+
+        assertFalse(geometryFilter.accept(9.99, -0.01));
+        assertFalse(geometryFilter.accept(41.78, 22.65));
+    }
 }
@@ -17,6 +17,7 @@
 package org.esa.beam.dataio.smos;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 abstract class AbstractValueProvider implements ValueProvider {
 
@@ -72,6 +73,103 @@ abstract class AbstractValueProvider implements ValueProvider {
         }
     }
 
+    @Override
+    public void getValues(int[] seqnums, byte[] values, byte noDataValue) {
+        final long[] keys = createSortedKeys(seqnums);
+        int previousIndex = -1;
+        byte previousValue = noDataValue;
+        for (final long key : keys) {
+            final int gridPointIndex = (int) (key >> 32);
+            if (gridPointIndex != previousIndex) {
+                previousIndex = gridPointIndex;
+                try {
+                    previousValue = getByte(gridPointIndex);
+                } catch (IOException e) {
+                    previousValue = noDataValue;
+                }
+            }
+            values[(int) key] = previousValue;
+        }
+    }
+
+    @Override
+    public void getValues(int[] seqnums, short[] values, short noDataValue) {
+        final long[] keys = createSortedKeys(seqnums);
+        int previousIndex = -1;
+        short previousValue = noDataValue;
+        for (final long key : keys) {
+            final int gridPointIndex = (int) (key >> 32);
+            if (gridPointIndex != previousIndex) {
+                previousIndex = gridPointIndex;
+                try {
+                    previousValue = getShort(gridPointIndex);
+                } catch (IOException e) {
+                    previousValue = noDataValue;
+                }
+            }
+            values[(int) key] = previousValue;
+        }
+    }
+
+    @Override
+    public void getValues(int[] seqnums, int[] values, int noDataValue) {
+        final long[] keys = createSortedKeys(seqnums);
+        int previousIndex = -1;
+        int previousValue = noDataValue;
+        for (final long key : keys) {
+            final int gridPointIndex = (int) (key >> 32);
+            if (gridPointIndex != previousIndex) {
+                previousIndex = gridPointIndex;
+                try {
+                    previousValue = getInt(gridPointIndex);
+                } catch (IOException e) {
+                    previousValue = noDataValue;
+                }
+            }
+            values[(int) key] = previousValue;
+        }
+    }
+
+    @Override
+    public void getValues(int[] seqnums, float[] values, float noDataValue) {
+        final long[] keys = createSortedKeys(seqnums);
+        int previousIndex = -1;
+        float previousValue = noDataValue;
+        for (final long key : keys) {
+            final int gridPointIndex = (int) (key >> 32);
+            if (gridPointIndex != previousIndex) {
+                previousIndex = gridPointIndex;
+                try {
+                    previousValue = getFloat(gridPointIndex);
+                } catch (IOException e) {
+                    previousValue = noDataValue;
+                }
+            }
+            values[(int) key] = previousValue;
+        }
+    }
+
+    /**
+     * Returns the float values of a set of grid points. Values which cannot be read
+     * and values of grid points not included in the product are {@code NaN}.
+     *
+     * @param gridPointIndexes the grid point indexes.
+     * @param values           the values.
+     */
+    void getFloats(int[] gridPointIndexes, float[] values) {
+        for (int i = 0; i < gridPointIndexes.length; i++) {
+            if (gridPointIndexes[i] == -1) {
+                values[i] = Float.NaN;
+            } else {
+                try {
+                    values[i] = getFloat(gridPointIndexes[i]);
+                } catch (IOException e) {
+                    values[i] = Float.NaN;
+                }
+            }
+        }
+    }
+
     protected abstract int getGridPointIndex(int seqnum);
 
     protected abstract byte getByte(int gridPointIndex) throws IOException;
@@ -82,6 +180,19 @@ abstract class AbstractValueProvider implements ValueProvider {
 
     protected abstract float getFloat(int gridPointIndex) throws IOException;
 
+    // Sorts the requested grid points by grid point index, which is the order of the grid
+    // point records in the product file. The lower bits of a key hold the request index.
+    // Keys of grid points not included in the product file are negative and come first.
+    private long[] createSortedKeys(int[] seqnums) {
+        final long[] keys = new long[seqnums.length];
+        for (int i = 0; i < seqnums.length; i++) {
+            keys[i] = ((long) getGridPointIndex(seqnums[i]) << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        return keys;
+    }
+
     protected static double angularAverage(double angle1, double angle2) {
         if (inQuadrant1(angle1) && inQuadrant4(angle2)) {
             angle2 = angle2 - 360.0;
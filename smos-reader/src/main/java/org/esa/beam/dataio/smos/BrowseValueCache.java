@@ -0,0 +1,427 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded cache of the browse values of SMOS L1c Science grid points.
+ * <p/>
+ * The BT data list of a grid point is read and traversed only once, computing the values
+ * interpolated to an incidence angle of 42.5 degrees for all channels (i.e. pairs of BT data
+ * member and polarisation) and the combined flags for all polarisations at once.
+ * The results are held in primitive arrays, which are organized as a direct-mapped
+ * cache indexed by grid point index.
+ * <p/>
+ * Optionally, the browse values of all grid points can be precomputed in parallel
+ * into a compact store held outside the Java heap. Once the store is complete, all
+ * values are served from the store. The precomputation is done by a fork-join pool,
+ * which is shared by all caches.
+ *
+ * @since SMOS-Box 3.0
+ */
+abstract class BrowseValueCache {
+
+    static final double CENTER_BROWSE_INCIDENCE_ANGLE = 42.5;
+    static final double MIN_BROWSE_INCIDENCE_ANGLE = 37.5;
+    static final double MAX_BROWSE_INCIDENCE_ANGLE = 52.5;
+
+    private static final int POLARIZATION_COUNT = 5;
+    private static final int LOCK_COUNT = 64;
+    private static final int PRECOMPUTE_THRESHOLD = 1024;
+
+    private static final Logger logger = Logger.getLogger(BrowseValueCache.class.getName());
+
+    private final double incidenceAngleScalingFactor;
+
+    private final int channelCount;
+    private final int[] channelPolarizations;
+    private final int[] channelMemberSlots;
+    private final int[] channelLookup;
+    private final int[] readIndexes;
+    private final int[] polarizations;
+
+    private final int capacity;
+    private final int[] gridPointIndexes;
+    private final byte[] validityMasks;
+    private final double[] values;
+    private final int[] combinedFlags;
+    private final Object[] locks;
+
+    private volatile Store store;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param memberIndexes               the BT data member indexes of the channels.
+     * @param polarizations               the polarisations of the channels.
+     * @param flagsIndex                  the index of the BT data flags member.
+     * @param incidenceAngleIndex         the index of the BT data incidence angle member.
+     * @param incidenceAngleScalingFactor the incidence angle scaling factor.
+     * @param capacity                    the maximum number of grid points held in the cache.
+     */
+    BrowseValueCache(int[] memberIndexes, int[] polarizations, int flagsIndex, int incidenceAngleIndex,
+                     double incidenceAngleScalingFactor, int capacity) {
+        if (memberIndexes.length != polarizations.length) {
+            throw new IllegalArgumentException("memberIndexes.length != polarizations.length");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity < 1");
+        }
+        this.incidenceAngleScalingFactor = incidenceAngleScalingFactor;
+
+        channelCount = memberIndexes.length;
+        channelPolarizations = polarizations.clone();
+        channelMemberSlots = new int[channelCount];
+
+        int maxMemberIndex = 0;
+        for (final int memberIndex : memberIndexes) {
+            maxMemberIndex = Math.max(maxMemberIndex, memberIndex);
+        }
+        channelLookup = new int[(maxMemberIndex + 1) * POLARIZATION_COUNT];
+        Arrays.fill(channelLookup, -1);
+
+        final int[] distinctMembers = new int[channelCount];
+        int memberCount = 0;
+        final boolean[] polarizationUsed = new boolean[POLARIZATION_COUNT];
+        for (int c = 0; c < channelCount; c++) {
+            final int memberIndex = memberIndexes[c];
+            final int polarization = polarizations[c];
+            if (memberIndex < 0 || polarization < 0 || polarization >= POLARIZATION_COUNT) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "Illegal channel ({0}, {1}).", memberIndex, polarization));
+            }
+            int slot = -1;
+            for (int m = 0; m < memberCount; m++) {
+                if (distinctMembers[m] == memberIndex) {
+                    slot = m;
+                    break;
+                }
+            }
+            if (slot == -1) {
+                slot = memberCount;
+                distinctMembers[memberCount++] = memberIndex;
+            }
+            channelMemberSlots[c] = slot;
+            channelLookup[memberIndex * POLARIZATION_COUNT + polarization] = c;
+            polarizationUsed[polarization] = true;
+        }
+        // the incidence angle and flags are read along with the distinct members of the channels
+        readIndexes = new int[memberCount + 2];
+        readIndexes[0] = incidenceAngleIndex;
+        readIndexes[1] = flagsIndex;
+        System.arraycopy(distinctMembers, 0, readIndexes, 2, memberCount);
+
+        int polarizationCount = 0;
+        final int[] usedPolarizations = new int[POLARIZATION_COUNT];
+        for (int p = 0; p < POLARIZATION_COUNT; p++) {
+            if (polarizationUsed[p]) {
+                usedPolarizations[polarizationCount++] = p;
+            }
+        }
+        this.polarizations = Arrays.copyOf(usedPolarizations, polarizationCount);
+
+        this.capacity = capacity;
+        gridPointIndexes = new int[capacity];
+        Arrays.fill(gridPointIndexes, -1);
+        validityMasks = new byte[capacity];
+        values = new double[capacity * channelCount];
+        combinedFlags = new int[capacity * POLARIZATION_COUNT];
+
+        locks = new Object[LOCK_COUNT];
+        for (int i = 0; i < LOCK_COUNT; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Returns the channel index for a BT data member and polarisation.
+     *
+     * @param memberIndex  the BT data member index.
+     * @param polarization the polarisation.
+     *
+     * @return the channel index, or {@code -1} if there is no such channel.
+     */
+    final int getChannel(int memberIndex, int polarization) {
+        final int i = memberIndex * POLARIZATION_COUNT + polarization;
+        if (memberIndex < 0 || polarization < 0 || polarization >= POLARIZATION_COUNT || i >= channelLookup.length) {
+            return -1;
+        }
+        return channelLookup[i];
+    }
+
+    final double getInterpolatedValue(int gridPointIndex, int channel) throws IOException {
+        final int polarization = channelPolarizations[channel];
+        final Store store = this.store;
+        if (store != null && store.isFilled(gridPointIndex)) {
+            if (store.isValid(gridPointIndex, polarization)) {
+                return store.values.get(gridPointIndex * channelCount + channel);
+            }
+            throw createNoDataException(gridPointIndex, polarization);
+        }
+        final int slot = gridPointIndex % capacity;
+
+        synchronized (locks[slot % LOCK_COUNT]) {
+            fill(gridPointIndex, slot);
+            if (isValid(slot, polarization)) {
+                return values[slot * channelCount + channel];
+            }
+        }
+        throw createNoDataException(gridPointIndex, polarization);
+    }
+
+    final int getCombinedFlags(int gridPointIndex, int polarization) throws IOException {
+        final Store store = this.store;
+        if (store != null && store.isFilled(gridPointIndex)) {
+            if (store.isValid(gridPointIndex, polarization)) {
+                return store.combinedFlags.get(gridPointIndex * POLARIZATION_COUNT + polarization);
+            }
+            throw createNoDataException(gridPointIndex, polarization);
+        }
+        final int slot = gridPointIndex % capacity;
+
+        synchronized (locks[slot % LOCK_COUNT]) {
+            fill(gridPointIndex, slot);
+            if (isValid(slot, polarization)) {
+                return combinedFlags[slot * POLARIZATION_COUNT + polarization];
+            }
+        }
+        throw createNoDataException(gridPointIndex, polarization);
+    }
+
+    /**
+     * Precomputes the browse values of all grid points into a store held outside the
+     * Java heap. The work is split into grid point ranges, which are processed in
+     * parallel. Grid points whose BT data cannot be read are not filled into the store,
+     * so reading their BT data is retried when their values are requested.
+     *
+     * @param gridPointCount the number of grid points.
+     */
+    final void precompute(int gridPointCount) {
+        final Store store = new Store(gridPointCount, channelCount);
+        getPool().invoke(new PrecomputeAction(store, 0, gridPointCount));
+        this.store = store;
+    }
+
+    /**
+     * Returns the fork-join pool used for precomputing browse values.
+     *
+     * @return the fork-join pool.
+     */
+    static ForkJoinPool getPool() {
+        return Holder.POOL;
+    }
+
+    final boolean isPrecomputed() {
+        return store != null;
+    }
+
+    /**
+     * Releases the precomputed store, if any.
+     */
+    final void dispose() {
+        store = null;
+    }
+
+    /**
+     * Reads selected members of all records in the BT data list of a grid point.
+     *
+     * @param gridPointIndex the grid point index.
+     * @param memberIndexes  the indexes of the BT data members to be read.
+     *
+     * @return the values read, indexed by member and record.
+     *
+     * @throws IOException if an I/O error occurred.
+     */
+    protected abstract double[][] readBtData(int gridPointIndex, int[] memberIndexes) throws IOException;
+
+    static boolean isPolarizationMatching(int polarization, int flags) {
+        return polarization == 4 || polarization == (flags & 3) || (polarization & flags & 2) != 0;
+    }
+
+    private boolean isValid(int slot, int polarization) {
+        return (validityMasks[slot] & (1 << polarization)) != 0;
+    }
+
+    // must be called while holding the lock for the slot
+    private void fill(int gridPointIndex, int slot) throws IOException {
+        if (gridPointIndexes[slot] == gridPointIndex) {
+            return;
+        }
+        // invalidate the slot first, in case reading the BT data list fails
+        gridPointIndexes[slot] = -1;
+
+        final double[] targetValues = new double[channelCount];
+        final int[] targetFlags = new int[POLARIZATION_COUNT];
+        final int validityMask = compute(gridPointIndex, targetValues, targetFlags);
+
+        System.arraycopy(targetValues, 0, values, slot * channelCount, channelCount);
+        System.arraycopy(targetFlags, 0, combinedFlags, slot * POLARIZATION_COUNT, POLARIZATION_COUNT);
+        validityMasks[slot] = (byte) validityMask;
+        gridPointIndexes[slot] = gridPointIndex;
+    }
+
+    private int compute(int gridPointIndex, double[] targetValues, int[] targetFlags) throws IOException {
+        final double[][] btData = readBtData(gridPointIndex, readIndexes);
+        final double[] incidenceAngles = btData[0];
+        final double[] btFlags = btData[1];
+        final int elementCount = incidenceAngles.length;
+
+        final IncidenceAngleRegression regression = new IncidenceAngleRegression(POLARIZATION_COUNT);
+        final boolean[] matching = new boolean[POLARIZATION_COUNT];
+        final int[] flagsByPolarization = new int[POLARIZATION_COUNT];
+
+        final double[] sy = new double[channelCount];
+        final double[] sxy = new double[channelCount];
+
+        for (int i = 0; i < elementCount; ++i) {
+            final double incidenceAngle = incidenceAngleScalingFactor * incidenceAngles[i];
+
+            if (incidenceAngle < MIN_BROWSE_INCIDENCE_ANGLE || incidenceAngle > MAX_BROWSE_INCIDENCE_ANGLE) {
+                continue;
+            }
+            final int flags = (int) btFlags[i];
+
+            boolean anyMatching = false;
+            for (final int p : polarizations) {
+                matching[p] = isPolarizationMatching(p, flags);
+                if (matching[p]) {
+                    anyMatching = true;
+                    regression.add(p, incidenceAngle);
+                    flagsByPolarization[p] |= flags;
+                }
+            }
+            if (!anyMatching) {
+                continue;
+            }
+
+            for (int c = 0; c < channelCount; c++) {
+                if (matching[channelPolarizations[c]]) {
+                    final double value = btData[channelMemberSlots[c] + 2][i];
+                    sy[c] += value;
+                    sxy[c] += incidenceAngle * value;
+                }
+            }
+        }
+
+        int validityMask = 0;
+        for (final int p : polarizations) {
+            if (regression.isValid(p)) {
+                validityMask |= 1 << p;
+            }
+            targetFlags[p] = flagsByPolarization[p];
+        }
+        for (int c = 0; c < channelCount; c++) {
+            final int p = channelPolarizations[c];
+            if (regression.isValid(p)) {
+                targetValues[c] = regression.interpolate(p, sy[c], sxy[c]);
+            }
+        }
+        return validityMask;
+    }
+
+    private static IOException createNoDataException(int gridPointIndex, int polarization) {
+        return new IOException(MessageFormat.format(
+                "No data found for grid point ''{0}'' and polarisation ''{1}''.", gridPointIndex, polarization));
+    }
+
+    private static final class Store {
+
+        // marks the grid points whose values have been filled into the store
+        private static final int FILLED = 0x80;
+
+        // the values are stored with double precision, like the values served by the cache
+        private final DoubleBuffer values;
+        private final IntBuffer combinedFlags;
+        private final ByteBuffer validityMasks;
+
+        Store(int gridPointCount, int channelCount) {
+            values = allocate(gridPointCount * channelCount * 8).asDoubleBuffer();
+            combinedFlags = allocate(gridPointCount * POLARIZATION_COUNT * 4).asIntBuffer();
+            validityMasks = allocate(gridPointCount);
+        }
+
+        boolean isFilled(int gridPointIndex) {
+            return (validityMasks.get(gridPointIndex) & FILLED) != 0;
+        }
+
+        boolean isValid(int gridPointIndex, int polarization) {
+            return (validityMasks.get(gridPointIndex) & (1 << polarization)) != 0;
+        }
+
+        private static ByteBuffer allocate(int capacity) {
+            return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    private final class PrecomputeAction extends RecursiveAction {
+
+        private final Store store;
+        private final int start;
+        private final int end;
+
+        PrecomputeAction(Store store, int start, int end) {
+            this.store = store;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > PRECOMPUTE_THRESHOLD) {
+                final int mid = (start + end) >>> 1;
+                invokeAll(new PrecomputeAction(store, start, mid), new PrecomputeAction(store, mid, end));
+                return;
+            }
+            final double[] targetValues = new double[channelCount];
+            final int[] targetFlags = new int[POLARIZATION_COUNT];
+            for (int i = start; i < end; i++) {
+                final int validityMask;
+                try {
+                    validityMask = BrowseValueCache.this.compute(i, targetValues, targetFlags);
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, MessageFormat.format(
+                            "Failed to precompute the browse values of grid point ''{0}''.", i), e);
+                    continue;
+                }
+                for (int c = 0; c < channelCount; c++) {
+                    store.values.put(i * channelCount + c, targetValues[c]);
+                }
+                for (int p = 0; p < POLARIZATION_COUNT; p++) {
+                    store.combinedFlags.put(i * POLARIZATION_COUNT + p, targetFlags[p]);
+                }
+                store.validityMasks.put(i, (byte) (validityMask | Store.FILLED));
+            }
+        }
+    }
+
+    // Initialization on demand holder idiom
+    private static class Holder {
+
+        private static final ForkJoinPool POOL = new ForkJoinPool();
+    }
+}
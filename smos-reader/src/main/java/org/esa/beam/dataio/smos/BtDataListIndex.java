@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.SequenceData;
+import com.bc.ceres.binio.SimpleType;
+import com.bc.ceres.binio.Type;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.text.MessageFormat;
+
+/**
+ * An immutable index of the BT data lists of a SMOS L1c product file. For each grid
+ * point, the index holds the absolute byte position and the number of records of
+ * the BT data list. For the BT data record type, the index holds the byte offsets
+ * of all members.
+ * <p/>
+ * With the index, the whole BT data list of a grid point is read in a single read
+ * operation and the members requested are decoded into primitive arrays directly,
+ * i.e. no intermediate compound data instances are created. Integral members, whose
+ * values may exceed the precision of a {@code double}, such as IDs, are decoded into
+ * {@code long} arrays.
+ *
+ * @since SMOS-Box 3.0
+ */
+final class BtDataListIndex {
+
+    private static final int BYTE = 0;
+    private static final int UBYTE = 1;
+    private static final int SHORT = 2;
+    private static final int USHORT = 3;
+    private static final int INT = 4;
+    private static final int UINT = 5;
+    private static final int LONG = 6;
+    private static final int FLOAT = 7;
+    private static final int DOUBLE = 8;
+
+    private final long[] positions;
+    private final int[] counts;
+    private final int recordSize;
+    private final int[] memberOffsets;
+    private final int[] memberKinds;
+    private final ByteOrder byteOrder;
+
+    BtDataListIndex(long[] positions, int[] counts, CompoundType btDataType, ByteOrder byteOrder) throws IOException {
+        if (positions.length != counts.length) {
+            throw new IllegalArgumentException("positions.length != counts.length");
+        }
+        this.positions = positions;
+        this.counts = counts;
+        this.byteOrder = byteOrder;
+
+        final int memberCount = btDataType.getMemberCount();
+        memberOffsets = new int[memberCount];
+        memberKinds = new int[memberCount];
+        int offset = 0;
+        for (int i = 0; i < memberCount; i++) {
+            final Type memberType = btDataType.getMemberType(i);
+            memberOffsets[i] = offset;
+            memberKinds[i] = getKind(memberType);
+            offset += memberType.getSize();
+        }
+        recordSize = offset;
+    }
+
+    /**
+     * Creates the BT data list index of a SMOS L1c product file. The BT data lists of
+     * all grid points are visited once.
+     *
+     * @param smosFile the SMOS L1c product file.
+     *
+     * @return the BT data list index.
+     *
+     * @throws IOException if the BT data record type includes members, which are not
+     *                     of simple type, or if a BT data list cannot be accessed.
+     */
+    static BtDataListIndex create(L1cSmosFile smosFile) throws IOException {
+        final int gridPointCount = smosFile.getGridPointCount();
+        final long[] positions = new long[gridPointCount];
+        final int[] counts = new int[gridPointCount];
+
+        for (int i = 0; i < gridPointCount; i++) {
+            final SequenceData btDataList = smosFile.getBtDataList(i);
+            positions[i] = btDataList.getPosition();
+            counts[i] = btDataList.getElementCount();
+        }
+
+        return new BtDataListIndex(positions, counts, smosFile.getBtDataType(),
+                                   smosFile.getDataFormat().getByteOrder());
+    }
+
+    int getBtRecordCount(int gridPointIndex) {
+        return counts[gridPointIndex];
+    }
+
+    long getPosition(int gridPointIndex) {
+        return positions[gridPointIndex];
+    }
+
+    int getRecordSize() {
+        return recordSize;
+    }
+
+    int getMemberOffset(int memberIndex) {
+        return memberOffsets[memberIndex];
+    }
+
+    /**
+     * Reads selected members of all records in the BT data list of a grid point.
+     *
+     * @param context        the data context of the product file.
+     * @param gridPointIndex the grid point index.
+     * @param memberIndexes  the indexes of the BT data members to be read.
+     * @param targets        the target arrays, one for each member requested. Each
+     *                       target array must provide space for all records.
+     *
+     * @return the number of records read.
+     *
+     * @throws IOException if an I/O error occurred.
+     */
+    int read(DataContext context, int gridPointIndex, int[] memberIndexes, double[][] targets) throws IOException {
+        final int count = counts[gridPointIndex];
+        if (count == 0) {
+            return 0;
+        }
+        decode(readBytes(context, gridPointIndex), count, memberIndexes, targets);
+
+        return count;
+    }
+
+    /**
+     * Reads selected members of all records in the BT data list of a grid point. The
+     * values of {@code LONG} and {@code ULONG} members are decoded without loss of
+     * precision, the values of floating point members are truncated.
+     *
+     * @param context        the data context of the product file.
+     * @param gridPointIndex the grid point index.
+     * @param memberIndexes  the indexes of the BT data members to be read.
+     * @param targets        the target arrays, one for each member requested. Each
+     *                       target array must provide space for all records.
+     *
+     * @return the number of records read.
+     *
+     * @throws IOException if an I/O error occurred.
+     */
+    int read(DataContext context, int gridPointIndex, int[] memberIndexes, long[][] targets) throws IOException {
+        final int count = counts[gridPointIndex];
+        if (count == 0) {
+            return 0;
+        }
+        decode(readBytes(context, gridPointIndex), count, memberIndexes, targets);
+
+        return count;
+    }
+
+    void decode(byte[] bytes, int count, int[] memberIndexes, double[][] targets) {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes).order(byteOrder);
+        for (int m = 0; m < memberIndexes.length; m++) {
+            final int memberIndex = memberIndexes[m];
+            final int kind = memberKinds[memberIndex];
+            final double[] target = targets[m];
+            int position = memberOffsets[memberIndex];
+            for (int i = 0; i < count; i++, position += recordSize) {
+                target[i] = decode(buffer, position, kind);
+            }
+        }
+    }
+
+    void decode(byte[] bytes, int count, int[] memberIndexes, long[][] targets) {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes).order(byteOrder);
+        for (int m = 0; m < memberIndexes.length; m++) {
+            final int memberIndex = memberIndexes[m];
+            final int kind = memberKinds[memberIndex];
+            final long[] target = targets[m];
+            int position = memberOffsets[memberIndex];
+            for (int i = 0; i < count; i++, position += recordSize) {
+                target[i] = decodeLong(buffer, position, kind);
+            }
+        }
+    }
+
+    private byte[] readBytes(DataContext context, int gridPointIndex) throws IOException {
+        final byte[] bytes = new byte[counts[gridPointIndex] * recordSize];
+        context.getHandler().read(context, bytes, positions[gridPointIndex]);
+        return bytes;
+    }
+
+    private static double decode(ByteBuffer buffer, int position, int kind) {
+        switch (kind) {
+            case BYTE:
+                return buffer.get(position);
+            case UBYTE:
+                return buffer.get(position) & 0xFF;
+            case SHORT:
+                return buffer.getShort(position);
+            case USHORT:
+                return buffer.getShort(position) & 0xFFFF;
+            case INT:
+                return buffer.getInt(position);
+            case UINT:
+                return buffer.getInt(position) & 0xFFFFFFFFL;
+            case LONG:
+                return buffer.getLong(position);
+            case FLOAT:
+                return buffer.getFloat(position);
+            default:
+                return buffer.getDouble(position);
+        }
+    }
+
+    private static long decodeLong(ByteBuffer buffer, int position, int kind) {
+        switch (kind) {
+            case BYTE:
+                return buffer.get(position);
+            case UBYTE:
+                return buffer.get(position) & 0xFF;
+            case SHORT:
+                return buffer.getShort(position);
+            case USHORT:
+                return buffer.getShort(position) & 0xFFFF;
+            case INT:
+                return buffer.getInt(position);
+            case UINT:
+                return buffer.getInt(position) & 0xFFFFFFFFL;
+            case LONG:
+                return buffer.getLong(position);
+            case FLOAT:
+                return (long) buffer.getFloat(position);
+            default:
+                return (long) buffer.getDouble(position);
+        }
+    }
+
+    private static int getKind(Type memberType) throws IOException {
+        if (memberType.equals(SimpleType.BYTE)) {
+            return BYTE;
+        }
+        if (memberType.equals(SimpleType.UBYTE)) {
+            return UBYTE;
+        }
+        if (memberType.equals(SimpleType.SHORT)) {
+            return SHORT;
+        }
+        if (memberType.equals(SimpleType.USHORT)) {
+            return USHORT;
+        }
+        if (memberType.equals(SimpleType.INT)) {
+            return INT;
+        }
+        if (memberType.equals(SimpleType.UINT)) {
+            return UINT;
+        }
+        if (memberType.equals(SimpleType.LONG) || memberType.equals(SimpleType.ULONG)) {
+            return LONG;
+        }
+        if (memberType.equals(SimpleType.FLOAT)) {
+            return FLOAT;
+        }
+        if (memberType.equals(SimpleType.DOUBLE)) {
+            return DOUBLE;
+        }
+        throw new IOException(MessageFormat.format(
+                "Data type ''{0}'' is not a simple type", memberType.getName()));
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable index of the snapshots of a SMOS BUFR product, which maps snapshot IDs
+ * onto the observations belonging to a snapshot, ordered by grid cell. For each
+ * snapshot, the index also holds the snapshot time, the bounds of the observations and
+ * the polarisation modes observed.
+ * <p/>
+ * The index is held in primitive arrays and is built in a single pass over the
+ * observations, when the observation sequence is loaded.
+ *
+ * @since SMOS-Box 3.0
+ */
+final class BufrSnapshotIndex {
+
+    static final int POL_MODE_X = 1;
+    static final int POL_MODE_Y = 2;
+    static final int POL_MODE_XY = 4;
+
+    private final long[] snapshotIds;
+    private final double[] times;
+    private final double[] bounds;
+    private final int[] polModes;
+    private final int[] offsets;
+    private final int[] cells;
+    private final int[] observations;
+
+    private BufrSnapshotIndex(long[] snapshotIds, double[] times, double[] bounds, int[] polModes, int[] offsets,
+                              int[] cells, int[] observations) {
+        this.snapshotIds = snapshotIds;
+        this.times = times;
+        this.bounds = bounds;
+        this.polModes = polModes;
+        this.offsets = offsets;
+        this.cells = cells;
+        this.observations = observations;
+    }
+
+    int getSnapshotCount() {
+        return snapshotIds.length;
+    }
+
+    long getSnapshotId(int snapshotIndex) {
+        return snapshotIds[snapshotIndex];
+    }
+
+    /**
+     * Returns the index of a snapshot.
+     *
+     * @param snapshotId the snapshot ID.
+     *
+     * @return the snapshot index, or {@code -1} if the snapshot is unknown.
+     */
+    int getSnapshotIndex(long snapshotId) {
+        final int i = Arrays.binarySearch(snapshotIds, snapshotId);
+        if (i < 0) {
+            return -1;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the time of a snapshot.
+     *
+     * @param snapshotIndex the snapshot index.
+     *
+     * @return the time (MJD 2000), or {@code NaN} if the time is not known.
+     */
+    double getTime(int snapshotIndex) {
+        return times[snapshotIndex];
+    }
+
+    /**
+     * Returns the earliest time of all snapshots.
+     *
+     * @return the earliest time (MJD 2000), or {@code NaN} if no time is known.
+     */
+    double getStartTime() {
+        double startTime = Double.NaN;
+        for (final double time : times) {
+            // the comparison is false for NaN
+            if (!Double.isNaN(time) && !(time >= startTime)) {
+                startTime = time;
+            }
+        }
+        return startTime;
+    }
+
+    /**
+     * Returns the latest time of all snapshots.
+     *
+     * @return the latest time (MJD 2000), or {@code NaN} if no time is known.
+     */
+    double getEndTime() {
+        double endTime = Double.NaN;
+        for (final double time : times) {
+            // the comparison is false for NaN
+            if (!Double.isNaN(time) && !(time <= endTime)) {
+                endTime = time;
+            }
+        }
+        return endTime;
+    }
+
+    int getPolModes(int snapshotIndex) {
+        return polModes[snapshotIndex];
+    }
+
+    /**
+     * Returns the region covered by the grid cells observed in a snapshot.
+     *
+     * @param snapshotIndex the snapshot index.
+     *
+     * @return the region covered.
+     */
+    Rectangle2D getBounds(int snapshotIndex) {
+        final double minLon = bounds[snapshotIndex * 4];
+        final double minLat = bounds[snapshotIndex * 4 + 1];
+        final double maxLon = bounds[snapshotIndex * 4 + 2];
+        final double maxLat = bounds[snapshotIndex * 4 + 3];
+        final Rectangle2D rectangle = DggUtils.createGridPointRectangle(minLon, minLat);
+        rectangle.add(DggUtils.createGridPointRectangle(maxLon, maxLat));
+
+        return rectangle;
+    }
+
+    /**
+     * Returns the index of the first entry of a grid cell belonging to a snapshot. The
+     * entries of a cell are consecutive and refer to the observations of the cell in
+     * the order of the observation sequence.
+     *
+     * @param snapshotIndex the snapshot index.
+     * @param cell          the grid cell.
+     *
+     * @return the index of the first entry.
+     */
+    int getStart(int snapshotIndex, int cell) {
+        return lowerBound(offsets[snapshotIndex], offsets[snapshotIndex + 1], cell);
+    }
+
+    /**
+     * Returns the index following the last entry of a grid cell belonging to a snapshot.
+     *
+     * @param snapshotIndex the snapshot index.
+     * @param cell          the grid cell.
+     *
+     * @return the index following the last entry.
+     */
+    int getEnd(int snapshotIndex, int cell) {
+        return lowerBound(offsets[snapshotIndex], offsets[snapshotIndex + 1], cell + 1);
+    }
+
+    int getObservationIndex(int entry) {
+        return observations[entry];
+    }
+
+    /**
+     * Creates the snapshot info of the product. The snapshot index of a snapshot ID
+     * equals its position in the list of all snapshot IDs.
+     *
+     * @return the snapshot info.
+     */
+    SnapshotInfo createSnapshotInfo() {
+        final Map<Long, Integer> snapshotIndexMap = new HashMap<>(snapshotIds.length * 2);
+        final List<Long> all = new ArrayList<>(snapshotIds.length);
+        final List<Long> x = new ArrayList<>();
+        final List<Long> y = new ArrayList<>();
+        final List<Long> xy = new ArrayList<>();
+        final Map<Long, Rectangle2D> snapshotAreaMap = new HashMap<>(snapshotIds.length * 2);
+
+        for (int i = 0; i < snapshotIds.length; i++) {
+            final long id = snapshotIds[i];
+            snapshotIndexMap.put(id, i);
+            all.add(id);
+            if ((polModes[i] & POL_MODE_X) != 0) {
+                x.add(id);
+            }
+            if ((polModes[i] & POL_MODE_Y) != 0) {
+                y.add(id);
+            }
+            if ((polModes[i] & POL_MODE_XY) != 0) {
+                xy.add(id);
+            }
+            snapshotAreaMap.put(id, getBounds(i));
+        }
+
+        return new SnapshotInfo(snapshotIndexMap, all, x, y, xy, snapshotAreaMap);
+    }
+
+    private int lowerBound(int from, int to, int cell) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (cells[mid] < cell) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Builds a snapshot index. Observations are added in any order. Each distinct
+     * snapshot ID added to a builder is assigned an ordinal number, in order of
+     * appearance.
+     */
+    static final class Builder {
+
+        private static final int INITIAL_CAPACITY = 256;
+
+        private final int[] observationOrdinals;
+        private final Map<Long, Integer> ordinalMap;
+
+        private int snapshotCount;
+        private long[] ordinalSnapshotIds = new long[INITIAL_CAPACITY];
+        private double[] ordinalTimes = new double[INITIAL_CAPACITY];
+        private double[] ordinalBounds = new double[INITIAL_CAPACITY * 4];
+        private int[] ordinalPolModes = new int[INITIAL_CAPACITY];
+
+        private long lastSnapshotId;
+        private int lastOrdinal;
+
+        /**
+         * Creates a new builder.
+         *
+         * @param observationCount the number of observations.
+         */
+        Builder(int observationCount) {
+            observationOrdinals = new int[observationCount];
+            Arrays.fill(observationOrdinals, -1);
+            ordinalMap = new HashMap<>();
+            lastOrdinal = -1;
+        }
+
+        /**
+         * Adds an observation to the index.
+         *
+         * @param observationIndex the observation index.
+         * @param snapshotId       the snapshot ID.
+         * @param polFlags         the polarisation flags.
+         * @param lon              the longitude.
+         * @param lat              the latitude.
+         * @param time             the time (MJD 2000), {@code NaN} if not known.
+         */
+        void add(int observationIndex, long snapshotId, int polFlags, double lon, double lat, double time) {
+            final int ordinal = getOrdinal(snapshotId);
+            observationOrdinals[observationIndex] = ordinal;
+
+            final int k = ordinal * 4;
+            ordinalBounds[k] = Math.min(ordinalBounds[k], lon);
+            ordinalBounds[k + 1] = Math.min(ordinalBounds[k + 1], lat);
+            ordinalBounds[k + 2] = Math.max(ordinalBounds[k + 2], lon);
+            ordinalBounds[k + 3] = Math.max(ordinalBounds[k + 3], lat);
+            // the time of a snapshot is the earliest time of its observations
+            if (!Double.isNaN(time) && !(ordinalTimes[ordinal] <= time)) {
+                ordinalTimes[ordinal] = time;
+            }
+            switch (polFlags & SmosConstants.L1C_POL_MODE_FLAGS_MASK) {
+                case SmosConstants.L1C_POL_MODE_X:
+                    ordinalPolModes[ordinal] |= POL_MODE_X;
+                    break;
+                case SmosConstants.L1C_POL_MODE_Y:
+                    ordinalPolModes[ordinal] |= POL_MODE_Y;
+                    break;
+                case SmosConstants.L1C_POL_MODE_XY1:
+                case SmosConstants.L1C_POL_MODE_XY2:
+                    ordinalPolModes[ordinal] |= POL_MODE_XY;
+                    break;
+            }
+        }
+
+        /**
+         * Builds the index.
+         *
+         * @param observationIndex the index of the observations by grid cell.
+         *
+         * @return the snapshot index.
+         */
+        BufrSnapshotIndex build(ObservationIndex observationIndex) {
+            final long[] snapshotIds = Arrays.copyOf(ordinalSnapshotIds, snapshotCount);
+            Arrays.sort(snapshotIds);
+
+            final int[] positions = new int[snapshotCount];
+            final double[] times = new double[snapshotCount];
+            final double[] bounds = new double[snapshotCount * 4];
+            final int[] polModes = new int[snapshotCount];
+            for (int ordinal = 0; ordinal < snapshotCount; ordinal++) {
+                final int position = Arrays.binarySearch(snapshotIds, ordinalSnapshotIds[ordinal]);
+                positions[ordinal] = position;
+                times[position] = ordinalTimes[ordinal];
+                System.arraycopy(ordinalBounds, ordinal * 4, bounds, position * 4, 4);
+                polModes[position] = ordinalPolModes[ordinal];
+            }
+
+            // the entries are sorted by snapshot and grid cell in two passes
+            final int cellCount = observationIndex.getCellCount();
+            final int[] offsets = new int[snapshotCount + 1];
+            for (int cell = 0; cell < cellCount; cell++) {
+                final int end = observationIndex.getEnd(cell);
+                for (int i = observationIndex.getStart(cell); i < end; i++) {
+                    final int ordinal = observationOrdinals[observationIndex.getObservationIndex(i)];
+                    if (ordinal != -1) {
+                        offsets[positions[ordinal] + 1]++;
+                    }
+                }
+            }
+            for (int i = 0; i < snapshotCount; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+
+            final int[] cells = new int[offsets[snapshotCount]];
+            final int[] observations = new int[offsets[snapshotCount]];
+            final int[] next = Arrays.copyOf(offsets, snapshotCount);
+            for (int cell = 0; cell < cellCount; cell++) {
+                final int end = observationIndex.getEnd(cell);
+                for (int i = observationIndex.getStart(cell); i < end; i++) {
+                    final int index = observationIndex.getObservationIndex(i);
+                    final int ordinal = observationOrdinals[index];
+                    if (ordinal != -1) {
+                        final int k = next[positions[ordinal]]++;
+                        cells[k] = cell;
+                        observations[k] = index;
+                    }
+                }
+            }
+
+            return new BufrSnapshotIndex(snapshotIds, times, bounds, polModes, offsets, cells, observations);
+        }
+
+        private int getOrdinal(long snapshotId) {
+            // the observations of a snapshot are mostly stored consecutively
+            if (lastOrdinal != -1 && lastSnapshotId == snapshotId) {
+                return lastOrdinal;
+            }
+            final Integer existingOrdinal = ordinalMap.get(snapshotId);
+            final int ordinal;
+            if (existingOrdinal != null) {
+                ordinal = existingOrdinal;
+            } else {
+                ordinal = snapshotCount++;
+                if (ordinal == ordinalSnapshotIds.length) {
+                    ordinalSnapshotIds = Arrays.copyOf(ordinalSnapshotIds, ordinal * 2);
+                    ordinalTimes = Arrays.copyOf(ordinalTimes, ordinal * 2);
+                    ordinalBounds = Arrays.copyOf(ordinalBounds, ordinal * 8);
+                    ordinalPolModes = Arrays.copyOf(ordinalPolModes, ordinal * 2);
+                }
+                ordinalSnapshotIds[ordinal] = snapshotId;
+                ordinalTimes[ordinal] = Double.NaN;
+                ordinalBounds[ordinal * 4] = Double.POSITIVE_INFINITY;
+                ordinalBounds[ordinal * 4 + 1] = Double.POSITIVE_INFINITY;
+                ordinalBounds[ordinal * 4 + 2] = Double.NEGATIVE_INFINITY;
+                ordinalBounds[ordinal * 4 + 3] = Double.NEGATIVE_INFINITY;
+                ordinalMap.put(snapshotId, ordinal);
+            }
+            lastSnapshotId = snapshotId;
+            lastOrdinal = ordinal;
+
+            return ordinal;
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A cache of the browse values of the grid cells of a SMOS BUFR product.
+ * <p/>
+ * The observations of a grid cell are read and traversed only once, computing the values
+ * interpolated to an incidence angle of 42.5 degrees for all channels (i.e. pairs of
+ * variable and polarisation) and the combined flags for all flag channels at once.
+ * The results are held in primitive arrays indexed by cell. The cells are filled in
+ * blocks of consecutive cells, when a value of any cell in a block is requested for
+ * the first time.
+ * <p/>
+ * Optionally, the browse values of all cells can be precomputed in parallel, by the
+ * fork-join pool shared with the {@link BrowseValueCache}.
+ *
+ * @since SMOS-Box 3.0
+ */
+abstract class CellBrowseValueCache {
+
+    static final int BLOCK_SIZE = 64;
+
+    private static final int POLARIZATION_COUNT = 5;
+    private static final int LOCK_COUNT = 64;
+    private static final int PRECOMPUTE_THRESHOLD = 16;
+    // marks the cells whose values have been filled in
+    private static final int FILLED = 0x80;
+
+    private static final Logger logger = Logger.getLogger(CellBrowseValueCache.class.getName());
+
+    private final int cellCount;
+    private final int channelCount;
+    private final int[] channelVariables;
+    private final int[] channelPolarizations;
+    private final boolean[] channelCombined;
+    private final int[] channelSlots;
+    private final int interpolatedChannelCount;
+    private final int combinedChannelCount;
+    private final int[] polarizations;
+
+    private final double[] values;
+    private final int[] combinedFlags;
+    private final byte[] validityMasks;
+    private final boolean[] filledBlocks;
+    private final Object[] locks;
+
+    private volatile boolean precomputed;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param variables     the variable indexes of the channels.
+     * @param polarizations the polarisations of the channels.
+     * @param combined      {@code true} for channels whose values are flags to be combined,
+     *                      {@code false} for channels whose values are interpolated.
+     * @param cellCount     the number of grid cells.
+     */
+    CellBrowseValueCache(int[] variables, int[] polarizations, boolean[] combined, int cellCount) {
+        if (variables.length != polarizations.length || variables.length != combined.length) {
+            throw new IllegalArgumentException("variables, polarizations and combined differ in length");
+        }
+        if (cellCount < 0) {
+            throw new IllegalArgumentException("cellCount < 0");
+        }
+        this.cellCount = cellCount;
+
+        channelCount = variables.length;
+        channelVariables = variables.clone();
+        channelPolarizations = polarizations.clone();
+        channelCombined = combined.clone();
+        channelSlots = new int[channelCount];
+
+        int interpolatedCount = 0;
+        int combinedCount = 0;
+        final boolean[] polarizationUsed = new boolean[POLARIZATION_COUNT];
+        for (int c = 0; c < channelCount; c++) {
+            final int polarization = polarizations[c];
+            if (variables[c] < 0 || polarization < 0 || polarization >= POLARIZATION_COUNT) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "Illegal channel ({0}, {1}).", variables[c], polarization));
+            }
+            channelSlots[c] = combined[c] ? combinedCount++ : interpolatedCount++;
+            polarizationUsed[polarization] = true;
+        }
+        interpolatedChannelCount = interpolatedCount;
+        combinedChannelCount = combinedCount;
+
+        int polarizationCount = 0;
+        final int[] usedPolarizations = new int[POLARIZATION_COUNT];
+        for (int p = 0; p < POLARIZATION_COUNT; p++) {
+            if (polarizationUsed[p]) {
+                usedPolarizations[polarizationCount++] = p;
+            }
+        }
+        this.polarizations = Arrays.copyOf(usedPolarizations, polarizationCount);
+
+        values = new double[cellCount * interpolatedChannelCount];
+        combinedFlags = new int[cellCount * combinedChannelCount];
+        validityMasks = new byte[cellCount];
+        filledBlocks = new boolean[(cellCount + BLOCK_SIZE - 1) / BLOCK_SIZE];
+
+        locks = new Object[LOCK_COUNT];
+        for (int i = 0; i < LOCK_COUNT; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    final boolean isCombined(int channel) {
+        return channelCombined[channel];
+    }
+
+    final double getInterpolatedValue(int cell, int channel) throws IOException {
+        final int polarization = channelPolarizations[channel];
+        final int block = cell / BLOCK_SIZE;
+
+        synchronized (locks[block % LOCK_COUNT]) {
+            fill(block);
+            if (!isFilled(cell)) {
+                throw createReadException(cell);
+            }
+            if (isValid(cell, polarization)) {
+                return values[cell * interpolatedChannelCount + channelSlots[channel]];
+            }
+        }
+        throw createNoDataException(cell, polarization);
+    }
+
+    final int getCombinedFlags(int cell, int channel) throws IOException {
+        final int polarization = channelPolarizations[channel];
+        final int block = cell / BLOCK_SIZE;
+
+        synchronized (locks[block % LOCK_COUNT]) {
+            fill(block);
+            if (!isFilled(cell)) {
+                throw createReadException(cell);
+            }
+            if (isValid(cell, polarization)) {
+                return combinedFlags[cell * combinedChannelCount + channelSlots[channel]];
+            }
+        }
+        throw createNoDataException(cell, polarization);
+    }
+
+    /**
+     * Precomputes the browse values of all cells, which have not been computed yet. The
+     * work is split into ranges of cell blocks, which are processed in parallel. Cells
+     * whose observations cannot be read are left unfilled, so reading their observations
+     * is retried when their values are requested.
+     */
+    final void precompute() {
+        if (precomputed) {
+            return;
+        }
+        BrowseValueCache.getPool().invoke(new PrecomputeAction(0, filledBlocks.length));
+        precomputed = true;
+    }
+
+    final boolean isPrecomputed() {
+        return precomputed;
+    }
+
+    /**
+     * Reads the observations of a grid cell.
+     * <p/>
+     * The array returned is indexed by quantity and observation. The first quantity is
+     * the polarisation flags, the second quantity is the incidence angle (degree), which
+     * is {@code NaN} for observations which are not valid. The quantities following are
+     * the values of the variables, in the order of the variable indexes.
+     *
+     * @param cell the cell.
+     *
+     * @return the observations of the cell.
+     *
+     * @throws IOException if an I/O error occurred.
+     */
+    protected abstract double[][] readObservations(int cell) throws IOException;
+
+    private boolean isFilled(int cell) {
+        return (validityMasks[cell] & FILLED) != 0;
+    }
+
+    private boolean isValid(int cell, int polarization) {
+        return (validityMasks[cell] & (1 << polarization)) != 0;
+    }
+
+    // must be called while holding the lock for the block
+    private void fill(int block) {
+        if (filledBlocks[block]) {
+            return;
+        }
+        final double[] targetValues = new double[interpolatedChannelCount];
+        final int[] targetFlags = new int[combinedChannelCount];
+
+        boolean complete = true;
+        final int end = Math.min(cellCount, (block + 1) * BLOCK_SIZE);
+        for (int cell = block * BLOCK_SIZE; cell < end; cell++) {
+            if (isFilled(cell)) {
+                continue;
+            }
+            final int validityMask;
+            try {
+                validityMask = compute(cell, targetValues, targetFlags);
+            } catch (IOException e) {
+                // the cell is left unfilled, so reading its observations is retried on the next request
+                logger.log(Level.WARNING, MessageFormat.format(
+                        "Failed to compute the browse values of grid cell ''{0}''.", cell), e);
+                complete = false;
+                continue;
+            }
+            System.arraycopy(targetValues, 0, values, cell * interpolatedChannelCount, interpolatedChannelCount);
+            System.arraycopy(targetFlags, 0, combinedFlags, cell * combinedChannelCount, combinedChannelCount);
+            validityMasks[cell] = (byte) (validityMask | FILLED);
+        }
+        filledBlocks[block] = complete;
+    }
+
+    private int compute(int cell, double[] targetValues, int[] targetFlags) throws IOException {
+        final double[][] observations = readObservations(cell);
+        final double[] polFlags = observations[0];
+        final double[] incidenceAngles = observations[1];
+        final int observationCount = incidenceAngles.length;
+
+        final IncidenceAngleRegression regression = new IncidenceAngleRegression(POLARIZATION_COUNT);
+        final boolean[] matching = new boolean[POLARIZATION_COUNT];
+
+        final double[] sy = new double[channelCount];
+        final double[] sxy = new double[channelCount];
+        final int[] flags = new int[channelCount];
+
+        for (int i = 0; i < observationCount; ++i) {
+            final double incidenceAngle = incidenceAngles[i];
+
+            // the comparison is false for NaN
+            if (!(incidenceAngle >= BrowseValueCache.MIN_BROWSE_INCIDENCE_ANGLE &&
+                  incidenceAngle <= BrowseValueCache.MAX_BROWSE_INCIDENCE_ANGLE)) {
+                continue;
+            }
+            final int polarizationFlags = (int) polFlags[i];
+
+            boolean anyMatching = false;
+            for (final int p : polarizations) {
+                matching[p] = BrowseValueCache.isPolarizationMatching(p, polarizationFlags);
+                if (matching[p]) {
+                    anyMatching = true;
+                    regression.add(p, incidenceAngle);
+                }
+            }
+            if (!anyMatching) {
+                continue;
+            }
+
+            for (int c = 0; c < channelCount; c++) {
+                if (matching[channelPolarizations[c]]) {
+                    final double value = observations[channelVariables[c] + 2][i];
+                    if (channelCombined[c]) {
+                        flags[c] |= (int) value;
+                    } else {
+                        sy[c] += value;
+                        sxy[c] += incidenceAngle * value;
+                    }
+                }
+            }
+        }
+
+        int validityMask = 0;
+        for (final int p : polarizations) {
+            if (regression.isValid(p)) {
+                validityMask |= 1 << p;
+            }
+        }
+        for (int c = 0; c < channelCount; c++) {
+            final int p = channelPolarizations[c];
+            if (channelCombined[c]) {
+                targetFlags[channelSlots[c]] = flags[c];
+            } else if (regression.isValid(p)) {
+                targetValues[channelSlots[c]] = regression.interpolate(p, sy[c], sxy[c]);
+            } else {
+                targetValues[channelSlots[c]] = Double.NaN;
+            }
+        }
+        return validityMask;
+    }
+
+    private static IOException createReadException(int cell) {
+        return new IOException(MessageFormat.format("Cannot read the observations of grid cell ''{0}''.", cell));
+    }
+
+    private static IOException createNoDataException(int cell, int polarization) {
+        return new IOException(MessageFormat.format(
+                "No data found for grid cell ''{0}'' and polarisation ''{1}''.", cell, polarization));
+    }
+
+    private final class PrecomputeAction extends RecursiveAction {
+
+        private final int startBlock;
+        private final int endBlock;
+
+        PrecomputeAction(int startBlock, int endBlock) {
+            this.startBlock = startBlock;
+            this.endBlock = endBlock;
+        }
+
+        @Override
+        protected void compute() {
+            if (endBlock - startBlock > PRECOMPUTE_THRESHOLD) {
+                final int mid = (startBlock + endBlock) >>> 1;
+                invokeAll(new PrecomputeAction(startBlock, mid), new PrecomputeAction(mid, endBlock));
+                return;
+            }
+            for (int block = startBlock; block < endBlock; block++) {
+                synchronized (locks[block % LOCK_COUNT]) {
+                    fill(block);
+                }
+            }
+        }
+    }
+}
@@ -18,6 +18,7 @@ package org.esa.beam.dataio.smos;
 
 import com.bc.ceres.glevel.MultiLevelModel;
 import com.bc.ceres.jai.NoDataRaster;
+import org.esa.beam.framework.datamodel.Product;
 import org.esa.beam.framework.datamodel.RasterDataNode;
 import org.esa.beam.jai.ImageManager;
 import org.esa.beam.jai.ResolutionLevel;
@@ -27,9 +28,6 @@ import javax.media.jai.PixelAccessor;
 import javax.media.jai.PlanarImage;
 import javax.media.jai.UnpackedImageData;
 import java.awt.Rectangle;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.Area;
-import java.awt.geom.Point2D;
 import java.awt.image.DataBuffer;
 import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
@@ -41,7 +39,9 @@ class CellGridOpImage extends SingleBandedOpImage {
     private final MultiLevelModel model;
     private final double noDataValue;
 
-    private volatile Area area;
+    private final Product product;
+
+    private volatile TileCoverage tileCoverage;
     private volatile NoDataRaster noDataRaster;
 
     CellGridOpImage(CellValueProvider valueProvider, RasterDataNode rasterDataNode, MultiLevelModel model,
@@ -56,30 +56,55 @@ class CellGridOpImage extends SingleBandedOpImage {
         this.valueProvider = valueProvider;
         this.model = model;
         this.noDataValue = rasterDataNode.getNoDataValue();
+        this.product = rasterDataNode.getProduct();
+
+        if (SmosTileCache.isEnabled()) {
+            setTileCache(SmosTileCache.getInstance());
+        }
     }
 
-    private Area getArea() {
-        if (area == null) {
+    Product getProduct() {
+        return product;
+    }
+
+    private TileCoverage getTileCoverage() {
+        if (tileCoverage == null) {
             synchronized (this) {
-                if (area == null) {
-                    final Area modelArea = valueProvider.getArea();
-                    area = modelArea.createTransformedArea(model.getModelToImageTransform(getLevel()));
+                if (tileCoverage == null) {
+                    // the tile coverage is shared by all images of the product covering the same area
+                    final int level = getLevel();
+                    tileCoverage = TileCoverage.getInstance(product, level, valueProvider.getArea(),
+                                                            model.getModelToImageTransform(level), getWidth(),
+                                                            getHeight(), getTileWidth(), getTileHeight());
                 }
             }
         }
-        return area;
+        return tileCoverage;
     }
 
     @Override
     public Raster computeTile(int tileX, int tileY) {
-        if (getArea().intersects(getTileRect(tileX, tileY))) {
-            return super.computeTile(tileX, tileY);
+        if (getTileCoverage().isTileCovered(tileX, tileY)) {
+            final long startTime = System.nanoTime();
+            final Raster tile = super.computeTile(tileX, tileY);
+            if (getTileCache() instanceof SmosTileCache) {
+                ((SmosTileCache) getTileCache()).recordComputationTime(this, tileX, tileY,
+                                                                        System.nanoTime() - startTime);
+            }
+            return tile;
         }
 
         if (noDataRaster == null) {
             synchronized (this) {
                 if (noDataRaster == null) {
-                    noDataRaster = createNoDataRaster(noDataValue);
+                    // no-data rasters are shared by all images with the same data type and tile size
+                    final NoDataRaster raster = NoDataRasters.get(getSampleModel(), noDataValue);
+                    if (raster != null) {
+                        noDataRaster = raster;
+                    } else {
+                        noDataRaster = NoDataRasters.register(getSampleModel(), noDataValue,
+                                                              createNoDataRaster(noDataValue));
+                    }
                 }
             }
         }
@@ -89,24 +114,32 @@ class CellGridOpImage extends SingleBandedOpImage {
 
     @Override
     protected final void computeRect(PlanarImage[] planarImages, WritableRaster targetRaster, Rectangle rectangle) {
+        // the cell indexes are shared by all images of the same grid
+        final CellIndexSpans spans = CellIndexSpans.getInstance(valueProvider,
+                                                                model.getImageToModelTransform(getLevel()),
+                                                                getLevel(), rectangle);
+
         final PixelAccessor targetAccessor = new PixelAccessor(targetRaster.getSampleModel(), null);
         final UnpackedImageData targetData = targetAccessor.getPixels(
                 targetRaster, rectangle, targetRaster.getSampleModel().getTransferType(), true);
-        final PixelCounter pixelCounter = new PixelCounter(rectangle, getArea());
+        final PixelCounter pixelCounter = new PixelCounter(rectangle, getTileCoverage());
+
+        // the value of each cell in the tile is retrieved once only
+        final int[] sources = collectSources(spans, pixelCounter, rectangle);
 
         switch (targetData.type) {
         case DataBuffer.TYPE_BYTE:
-            byteLoop(targetData, pixelCounter, (byte) noDataValue);
+            byteLoop(spans, sources, targetData, pixelCounter, (byte) noDataValue);
             break;
         case DataBuffer.TYPE_SHORT:
         case DataBuffer.TYPE_USHORT:
-            shortLoop(targetData, pixelCounter, (short) noDataValue);
+            shortLoop(spans, sources, targetData, pixelCounter, (short) noDataValue);
             break;
         case DataBuffer.TYPE_INT:
-            intLoop(targetData, pixelCounter, (int) noDataValue);
+            intLoop(spans, sources, targetData, pixelCounter, (int) noDataValue);
             break;
         case DataBuffer.TYPE_FLOAT:
-            floatLoop(targetData, pixelCounter, (float) noDataValue);
+            floatLoop(spans, sources, targetData, pixelCounter, (float) noDataValue);
             break;
         default:
             // do nothing
@@ -116,7 +149,37 @@ class CellGridOpImage extends SingleBandedOpImage {
         targetAccessor.setPixels(targetData);
     }
 
-    private void byteLoop(UnpackedImageData targetData, PixelCounter pixelCounter, byte noDataValue) {
+    // returns the indexes of the first spans of all cells within the valid pixel range
+    private static int[] collectSources(CellIndexSpans spans, PixelCounter pixelCounter, Rectangle rectangle) {
+        final boolean[] collected = new boolean[spans.getSpanCount()];
+        final int[] sources = new int[spans.getSpanCount()];
+        int count = 0;
+
+        for (int y = 0; y < rectangle.height; ++y) {
+            pixelCounter.countPixels(rectangle.y + y);
+            if (pixelCounter.valid > 0) {
+                final int validStart = pixelCounter.leading;
+                final int validEnd = pixelCounter.leading + pixelCounter.valid;
+                final int endSpan = spans.getEndSpan(y);
+                for (int span = spans.getFirstSpan(y); span < endSpan; ++span) {
+                    final int start = Math.max(spans.getStart(span), validStart);
+                    final int end = Math.min(spans.getStart(span) + spans.getLength(span), validEnd);
+                    if (start < end) {
+                        final int source = spans.getSource(span);
+                        if (!collected[source]) {
+                            collected[source] = true;
+                            sources[count++] = source;
+                        }
+                    }
+                }
+            }
+        }
+
+        return Arrays.copyOf(sources, count);
+    }
+
+    private void byteLoop(CellIndexSpans spans, int[] sources, UnpackedImageData targetData,
+                          PixelCounter pixelCounter, byte noDataValue) {
         final int w = targetData.rect.width;
         final int h = targetData.rect.height;
 
@@ -124,64 +187,47 @@ class CellGridOpImage extends SingleBandedOpImage {
         final int targetLineStride = targetData.lineStride;
         final byte[] targetDataArray = targetData.getByteData(0);
 
-        final long[] indexCache = new long[w];
-        final byte[] valueCache = new byte[w];
+        final byte[] values = new byte[spans.getSpanCount()];
+        for (final int source : sources) {
+            final long cellIndex = spans.getCellIndex(source);
+            if (cellIndex != -1) {
+                values[source] = valueProvider.getValue(cellIndex, noDataValue);
+            } else {
+                values[source] = noDataValue;
+            }
+        }
 
         int targetLineOffset = targetData.getOffset(0);
-        final AffineTransform i2m = model.getImageToModelTransform(getLevel());
-        final Point2D point = new Point2D.Double();
 
         for (int y = 0; y < h; ++y) {
-            int targetPixelOffset = targetLineOffset;
-
             pixelCounter.countPixels(targetData.rect.y + y);
-            if (pixelCounter.leading > 0) {
-                Arrays.fill(targetDataArray, targetPixelOffset, targetPixelOffset + pixelCounter.leading, noDataValue);
-                targetPixelOffset += pixelCounter.leading * targetPixelStride;
+            final int validStart = pixelCounter.leading;
+            final int validEnd = pixelCounter.leading + pixelCounter.valid;
+            if (validStart > 0) {
+                Arrays.fill(targetDataArray, targetLineOffset, targetLineOffset + validStart * targetPixelStride,
+                            noDataValue);
             }
             if (pixelCounter.valid > 0) {
-                point.setLocation(0.0, targetData.rect.y + y);
-                i2m.transform(point, point);
-                final double lat = point.getY();
-
-                for (int x = pixelCounter.leading; x < pixelCounter.leading + pixelCounter.valid; ++x) {
-                    point.setLocation(targetData.rect.x + x, 0.0);
-                    i2m.transform(point, point);
-                    final double lon = point.getX();
-                    final long index = valueProvider.getCellIndex(lon, lat);
-
-                    final byte value;
-                    if (x > 0 && indexCache[x - 1] == index) {
-                        // pixel to the west
-                        value = valueCache[x - 1];
-                    } else if (y > 0 && indexCache[x] == index) {
-                        // pixel to the north
-                        value = valueCache[x];
-                    } else if (x + 1 < w && y > 0 && indexCache[x + 1] == index) {
-                        // pixel to the north-east
-                        value = valueCache[x + 1];
-                    } else {
-                        if (index != -1) {
-                            value = valueProvider.getValue(index, noDataValue);
-                        } else {
-                            value = noDataValue;
-                        }
+                final int endSpan = spans.getEndSpan(y);
+                for (int span = spans.getFirstSpan(y); span < endSpan; ++span) {
+                    final int start = Math.max(spans.getStart(span), validStart);
+                    final int end = Math.min(spans.getStart(span) + spans.getLength(span), validEnd);
+                    if (start < end) {
+                        Arrays.fill(targetDataArray, targetLineOffset + start * targetPixelStride,
+                                    targetLineOffset + end * targetPixelStride, values[spans.getSource(span)]);
                     }
-                    indexCache[x] = index;
-                    valueCache[x] = value;
-
-                    targetDataArray[targetPixelOffset] = value;
-                    targetPixelOffset += targetPixelStride;
                 }
             }
-            if (pixelCounter.trailing > 0) {
-                Arrays.fill(targetDataArray, targetPixelOffset, targetPixelOffset + pixelCounter.trailing, noDataValue);
+            if (validEnd < w) {
+                Arrays.fill(targetDataArray, targetLineOffset + validEnd * targetPixelStride,
+                            targetLineOffset + w * targetPixelStride, noDataValue);
             }
             targetLineOffset += targetLineStride;
         }
     }
 
-    private void shortLoop(UnpackedImageData targetData, PixelCounter pixelCounter, short noDataValue) {
+    private void shortLoop(CellIndexSpans spans, int[] sources, UnpackedImageData targetData,
+                           PixelCounter pixelCounter, short noDataValue) {
         final int w = targetData.rect.width;
         final int h = targetData.rect.height;
 
@@ -189,64 +235,47 @@ class CellGridOpImage extends SingleBandedOpImage {
         final int targetLineStride = targetData.lineStride;
         final short[] targetDataArray = targetData.getShortData(0);
 
-        final long[] indexCache = new long[w];
-        final short[] valueCache = new short[w];
+        final short[] values = new short[spans.getSpanCount()];
+        for (final int source : sources) {
+            final long cellIndex = spans.getCellIndex(source);
+            if (cellIndex != -1) {
+                values[source] = valueProvider.getValue(cellIndex, noDataValue);
+            } else {
+                values[source] = noDataValue;
+            }
+        }
 
         int targetLineOffset = targetData.getOffset(0);
-        final AffineTransform i2m = model.getImageToModelTransform(getLevel());
-        final Point2D point = new Point2D.Double();
 
         for (int y = 0; y < h; ++y) {
-            int targetPixelOffset = targetLineOffset;
-
             pixelCounter.countPixels(targetData.rect.y + y);
-            if (pixelCounter.leading > 0) {
-                Arrays.fill(targetDataArray, targetPixelOffset, targetPixelOffset + pixelCounter.leading, noDataValue);
-                targetPixelOffset += pixelCounter.leading * targetPixelStride;
+            final int validStart = pixelCounter.leading;
+            final int validEnd = pixelCounter.leading + pixelCounter.valid;
+            if (validStart > 0) {
+                Arrays.fill(targetDataArray, targetLineOffset, targetLineOffset + validStart * targetPixelStride,
+                            noDataValue);
             }
             if (pixelCounter.valid > 0) {
-                point.setLocation(0.0, targetData.rect.y + y);
-                i2m.transform(point, point);
-                final double lat = point.getY();
-
-                for (int x = pixelCounter.leading; x < pixelCounter.leading + pixelCounter.valid; ++x) {
-                    point.setLocation(targetData.rect.x + x, 0.0);
-                    i2m.transform(point, point);
-                    final double lon = point.getX();
-                    final long index = valueProvider.getCellIndex(lon, lat);
-
-                    final short value;
-                    if (x > 0 && indexCache[x - 1] == index) {
-                        // pixel to the west
-                        value = valueCache[x - 1];
-                    } else if (y > 0 && indexCache[x] == index) {
-                        // pixel to the north
-                        value = valueCache[x];
-                    } else if (x + 1 < w && y > 0 && indexCache[x + 1] == index) {
-                        // pixel to the north-east
-                        value = valueCache[x + 1];
-                    } else {
-                        if (index != -1) {
-                            value = valueProvider.getValue(index, noDataValue);
-                        } else {
-                            value = noDataValue;
-                        }
+                final int endSpan = spans.getEndSpan(y);
+                for (int span = spans.getFirstSpan(y); span < endSpan; ++span) {
+                    final int start = Math.max(spans.getStart(span), validStart);
+                    final int end = Math.min(spans.getStart(span) + spans.getLength(span), validEnd);
+                    if (start < end) {
+                        Arrays.fill(targetDataArray, targetLineOffset + start * targetPixelStride,
+                                    targetLineOffset + end * targetPixelStride, values[spans.getSource(span)]);
                     }
-                    indexCache[x] = index;
-                    valueCache[x] = value;
-
-                    targetDataArray[targetPixelOffset] = value;
-                    targetPixelOffset += targetPixelStride;
                 }
             }
-            if (pixelCounter.trailing > 0) {
-                Arrays.fill(targetDataArray, targetPixelOffset, targetPixelOffset + pixelCounter.trailing, noDataValue);
+            if (validEnd < w) {
+                Arrays.fill(targetDataArray, targetLineOffset + validEnd * targetPixelStride,
+                            targetLineOffset + w * targetPixelStride, noDataValue);
             }
             targetLineOffset += targetLineStride;
         }
     }
 
-    private void intLoop(UnpackedImageData targetData, PixelCounter pixelCounter, int noDataValue) {
+    private void intLoop(CellIndexSpans spans, int[] sources, UnpackedImageData targetData,
+                         PixelCounter pixelCounter, int noDataValue) {
         final int w = targetData.rect.width;
         final int h = targetData.rect.height;
 
@@ -254,64 +283,47 @@ class CellGridOpImage extends SingleBandedOpImage {
         final int targetLineStride = targetData.lineStride;
         final int[] targetDataArray = targetData.getIntData(0);
 
-        final long[] indexCache = new long[w];
-        final int[] valueCache = new int[w];
+        final int[] values = new int[spans.getSpanCount()];
+        for (final int source : sources) {
+            final long cellIndex = spans.getCellIndex(source);
+            if (cellIndex != -1) {
+                values[source] = valueProvider.getValue(cellIndex, noDataValue);
+            } else {
+                values[source] = noDataValue;
+            }
+        }
 
         int targetLineOffset = targetData.getOffset(0);
-        final AffineTransform i2m = model.getImageToModelTransform(getLevel());
-        final Point2D point = new Point2D.Double();
 
         for (int y = 0; y < h; ++y) {
-            int targetPixelOffset = targetLineOffset;
-
             pixelCounter.countPixels(targetData.rect.y + y);
-            if (pixelCounter.leading > 0) {
-                Arrays.fill(targetDataArray, targetPixelOffset, targetPixelOffset + pixelCounter.leading, noDataValue);
-                targetPixelOffset += pixelCounter.leading * targetPixelStride;
+            final int validStart = pixelCounter.leading;
+            final int validEnd = pixelCounter.leading + pixelCounter.valid;
+            if (validStart > 0) {
+                Arrays.fill(targetDataArray, targetLineOffset, targetLineOffset + validStart * targetPixelStride,
+                            noDataValue);
             }
             if (pixelCounter.valid > 0) {
-                point.setLocation(0.0, targetData.rect.y + y);
-                i2m.transform(point, point);
-                final double lat = point.getY();
-
-                for (int x = pixelCounter.leading; x < pixelCounter.leading + pixelCounter.valid; ++x) {
-                    point.setLocation(targetData.rect.x + x, 0.0);
-                    i2m.transform(point, point);
-                    final double lon = point.getX();
-                    final long index = valueProvider.getCellIndex(lon, lat);
-
-                    final int value;
-                    if (x > 0 && indexCache[x - 1] == index) {
-                        // pixel to the west
-                        value = valueCache[x - 1];
-                    } else if (y > 0 && indexCache[x] == index) {
-                        // pixel to the north
-                        value = valueCache[x];
-                    } else if (x + 1 < w && y > 0 && indexCache[x + 1] == index) {
-                        // pixel to the north-east
-                        value = valueCache[x + 1];
-                    } else {
-                        if (index != -1) {
-                            value = valueProvider.getValue(index, noDataValue);
-                        } else {
-                            value = noDataValue;
-                        }
+                final int endSpan = spans.getEndSpan(y);
+                for (int span = spans.getFirstSpan(y); span < endSpan; ++span) {
+                    final int start = Math.max(spans.getStart(span), validStart);
+                    final int end = Math.min(spans.getStart(span) + spans.getLength(span), validEnd);
+                    if (start < end) {
+                        Arrays.fill(targetDataArray, targetLineOffset + start * targetPixelStride,
+                                    targetLineOffset + end * targetPixelStride, values[spans.getSource(span)]);
                     }
-                    indexCache[x] = index;
-                    valueCache[x] = value;
-
-                    targetDataArray[targetPixelOffset] = value;
-                    targetPixelOffset += targetPixelStride;
                 }
             }
-            if (pixelCounter.trailing > 0) {
-                Arrays.fill(targetDataArray, targetPixelOffset, targetPixelOffset + pixelCounter.trailing, noDataValue);
+            if (validEnd < w) {
+                Arrays.fill(targetDataArray, targetLineOffset + validEnd * targetPixelStride,
+                            targetLineOffset + w * targetPixelStride, noDataValue);
             }
             targetLineOffset += targetLineStride;
         }
     }
 
-    private void floatLoop(UnpackedImageData targetData, PixelCounter pixelCounter, float noDataValue) {
+    private void floatLoop(CellIndexSpans spans, int[] sources, UnpackedImageData targetData,
+                           PixelCounter pixelCounter, float noDataValue) {
         final int w = targetData.rect.width;
         final int h = targetData.rect.height;
 
@@ -319,58 +331,40 @@ class CellGridOpImage extends SingleBandedOpImage {
         final int targetLineStride = targetData.lineStride;
         final float[] targetDataArray = targetData.getFloatData(0);
 
-        final long[] indexCache = new long[w];
-        final float[] valueCache = new float[w];
+        final float[] values = new float[spans.getSpanCount()];
+        for (final int source : sources) {
+            final long cellIndex = spans.getCellIndex(source);
+            if (cellIndex != -1) {
+                values[source] = valueProvider.getValue(cellIndex, noDataValue);
+            } else {
+                values[source] = noDataValue;
+            }
+        }
 
         int targetLineOffset = targetData.getOffset(0);
-        final AffineTransform i2m = model.getImageToModelTransform(getLevel());
-        final Point2D point = new Point2D.Double();
 
         for (int y = 0; y < h; ++y) {
-            int targetPixelOffset = targetLineOffset;
-
             pixelCounter.countPixels(targetData.rect.y + y);
-            if (pixelCounter.leading > 0) {
-                Arrays.fill(targetDataArray, targetPixelOffset, targetPixelOffset + pixelCounter.leading, noDataValue);
-                targetPixelOffset += pixelCounter.leading * targetPixelStride;
+            final int validStart = pixelCounter.leading;
+            final int validEnd = pixelCounter.leading + pixelCounter.valid;
+            if (validStart > 0) {
+                Arrays.fill(targetDataArray, targetLineOffset, targetLineOffset + validStart * targetPixelStride,
+                            noDataValue);
             }
             if (pixelCounter.valid > 0) {
-                point.setLocation(0.0, targetData.rect.y + y);
-                i2m.transform(point, point);
-                final double lat = point.getY();
-
-                for (int x = pixelCounter.leading; x < pixelCounter.leading + pixelCounter.valid; ++x) {
-                    point.setLocation(targetData.rect.x + x, 0.0);
-                    i2m.transform(point, point);
-                    final double lon = point.getX();
-                    final long index = valueProvider.getCellIndex(lon, lat);
-
-                    final float value;
-                    if (x > 0 && indexCache[x - 1] == index) {
-                        // pixel to the west
-                        value = valueCache[x - 1];
-                    } else if (y > 0 && indexCache[x] == index) {
-                        // pixel to the north
-                        value = valueCache[x];
-                    } else if (x + 1 < w && y > 0 && indexCache[x + 1] == index) {
-                        // pixel to the north-east
-                        value = valueCache[x + 1];
-                    } else {
-                        if (index != -1) {
-                            value = valueProvider.getValue(index, noDataValue);
-                        } else {
-                            value = noDataValue;
-                        }
+                final int endSpan = spans.getEndSpan(y);
+                for (int span = spans.getFirstSpan(y); span < endSpan; ++span) {
+                    final int start = Math.max(spans.getStart(span), validStart);
+                    final int end = Math.min(spans.getStart(span) + spans.getLength(span), validEnd);
+                    if (start < end) {
+                        Arrays.fill(targetDataArray, targetLineOffset + start * targetPixelStride,
+                                    targetLineOffset + end * targetPixelStride, values[spans.getSource(span)]);
                     }
-                    indexCache[x] = index;
-                    valueCache[x] = value;
-
-                    targetDataArray[targetPixelOffset] = value;
-                    targetPixelOffset += targetPixelStride;
                 }
             }
-            if (pixelCounter.trailing > 0) {
-                Arrays.fill(targetDataArray, targetPixelOffset, targetPixelOffset + pixelCounter.trailing, noDataValue);
+            if (validEnd < w) {
+                Arrays.fill(targetDataArray, targetLineOffset + validEnd * targetPixelStride,
+                            targetLineOffset + w * targetPixelStride, noDataValue);
             }
             targetLineOffset += targetLineStride;
         }
@@ -378,29 +372,28 @@ class CellGridOpImage extends SingleBandedOpImage {
 
     private static class PixelCounter {
 
-        private final Rectangle effectiveBounds;
+        private final TileCoverage coverage;
         private final Rectangle targetRectangle;
 
         private int leading;
         private int valid;
         private int trailing;
 
-        PixelCounter(Rectangle targetRectangle, Area envelope) {
-            final Area effectiveEnvelope = new Area(targetRectangle);
-            effectiveEnvelope.intersect(envelope);
-
-            this.effectiveBounds = effectiveEnvelope.getBounds();
+        PixelCounter(Rectangle targetRectangle, TileCoverage coverage) {
+            this.coverage = coverage;
             this.targetRectangle = targetRectangle;
         }
 
         void countPixels(int y) {
-            if (y < effectiveBounds.y || y > effectiveBounds.y + effectiveBounds.height) {
+            final int minX = Math.max(coverage.getMinX(y), targetRectangle.x);
+            final int maxX = Math.min(coverage.getMaxX(y), targetRectangle.x + targetRectangle.width);
+            if (minX >= maxX) {
                 leading = targetRectangle.width;
                 valid = 0;
                 trailing = 0;
             } else {
-                leading = effectiveBounds.x - targetRectangle.x;
-                valid = effectiveBounds.width;
+                leading = minX - targetRectangle.x;
+                valid = maxX - minX;
                 trailing = targetRectangle.width - leading - valid;
             }
         }
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+
+/**
+ * An immutable run-length encoding of the cell indexes of a rectangular region of
+ * an image, which displays the cells of a grid. Each line of the region is encoded
+ * as a sequence of spans, where all pixels of a span have the same cell index.
+ * <p/>
+ * For each span, the index of the first span in the region with the same cell index
+ * is recorded, so a value needs to be retrieved only once for each cell.
+ * <p/>
+ * Spans are compiled once for each grid, level and region and are shared by all
+ * images of cells of the same grid, i.e. by all bands and all files. The spans are
+ * kept in the {@link SpanCache}.
+ *
+ * @since SMOS-Box 3.0
+ */
+final class CellIndexSpans {
+
+    private final int[] lineOffsets;
+    private final long[] cellIndexes;
+    private final int[] starts;
+    private final int[] lengths;
+    private final int[] sources;
+
+    private CellIndexSpans(int[] lineOffsets, long[] cellIndexes, int[] starts, int[] lengths, int[] sources) {
+        this.lineOffsets = lineOffsets;
+        this.cellIndexes = cellIndexes;
+        this.starts = starts;
+        this.lengths = lengths;
+        this.sources = sources;
+    }
+
+    /**
+     * Returns the spans of a region of an image displaying the cells of a grid.
+     *
+     * @param valueProvider the cell value provider, which defines the grid.
+     * @param i2m           the image-to-model transform of the image.
+     * @param level         the resolution level of the image.
+     * @param rectangle     the region.
+     *
+     * @return the spans of the region.
+     */
+    static CellIndexSpans getInstance(CellValueProvider valueProvider, AffineTransform i2m, int level,
+                                      Rectangle rectangle) {
+        final Key key = new Key(valueProvider.getGridName(), level, rectangle);
+        final SpanCache cache = SpanCache.getInstance();
+        final CellIndexSpans cachedSpans = (CellIndexSpans) cache.get(key);
+        if (cachedSpans != null) {
+            return cachedSpans;
+        }
+        final CellIndexSpans spans = create(valueProvider, i2m, rectangle);
+        cache.put(key, spans, spans.getMemorySize());
+        return spans;
+    }
+
+    static CellIndexSpans create(CellValueProvider valueProvider, AffineTransform i2m, Rectangle rectangle) {
+        final int w = rectangle.width;
+        final int h = rectangle.height;
+        final int[] lineOffsets = new int[h + 1];
+
+        // the image is not rotated, so longitudes depend on columns and latitudes on lines only
+        final double[] lons = new double[w];
+        final Point2D point = new Point2D.Double();
+        for (int x = 0; x < w; x++) {
+            point.setLocation(rectangle.x + x, 0.0);
+            i2m.transform(point, point);
+            lons[x] = point.getX();
+        }
+
+        int capacity = Math.max(16, 2 * h);
+        long[] cellIndexes = new long[capacity];
+        int[] starts = new int[capacity];
+        int[] lengths = new int[capacity];
+        int count = 0;
+
+        for (int y = 0; y < h; y++) {
+            lineOffsets[y] = count;
+            point.setLocation(0.0, rectangle.y + y);
+            i2m.transform(point, point);
+            final double lat = point.getY();
+
+            long cellIndex = 0;
+            int start = 0;
+            for (int x = 0; x <= w; x++) {
+                final long nextCellIndex = x < w ? valueProvider.getCellIndex(lons[x], lat) : 0;
+                if (x == w || x > 0 && nextCellIndex != cellIndex) {
+                    if (count == capacity) {
+                        capacity *= 2;
+                        cellIndexes = Arrays.copyOf(cellIndexes, capacity);
+                        starts = Arrays.copyOf(starts, capacity);
+                        lengths = Arrays.copyOf(lengths, capacity);
+                    }
+                    cellIndexes[count] = cellIndex;
+                    starts[count] = start;
+                    lengths[count] = x - start;
+                    count++;
+                    start = x;
+                }
+                cellIndex = nextCellIndex;
+            }
+        }
+        lineOffsets[h] = count;
+
+        // the distinct cell indexes of the region, sorted
+        final long[] distinctCellIndexes = Arrays.copyOf(cellIndexes, count);
+        Arrays.sort(distinctCellIndexes);
+        int distinctCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinctCount == 0 || distinctCellIndexes[i] != distinctCellIndexes[distinctCount - 1]) {
+                distinctCellIndexes[distinctCount++] = distinctCellIndexes[i];
+            }
+        }
+        final int[] firstSpans = new int[distinctCount];
+        Arrays.fill(firstSpans, -1);
+        final int[] sources = new int[count];
+        for (int i = 0; i < count; i++) {
+            final int k = Arrays.binarySearch(distinctCellIndexes, 0, distinctCount, cellIndexes[i]);
+            if (firstSpans[k] == -1) {
+                firstSpans[k] = i;
+            }
+            sources[i] = firstSpans[k];
+        }
+
+        return new CellIndexSpans(lineOffsets, Arrays.copyOf(cellIndexes, count), Arrays.copyOf(starts, count),
+                                  Arrays.copyOf(lengths, count), sources);
+    }
+
+    int getSpanCount() {
+        return cellIndexes.length;
+    }
+
+    /**
+     * Returns an estimate of the memory size of the spans.
+     *
+     * @return the memory size of the spans (bytes).
+     */
+    long getMemorySize() {
+        return 4L * lineOffsets.length + 20L * cellIndexes.length;
+    }
+
+    /**
+     * Returns the index of the first span of a line.
+     *
+     * @param y the line, relative to the region.
+     *
+     * @return the index of the first span of the line.
+     */
+    int getFirstSpan(int y) {
+        return lineOffsets[y];
+    }
+
+    /**
+     * Returns the index following the last span of a line.
+     *
+     * @param y the line, relative to the region.
+     *
+     * @return the index following the last span of the line.
+     */
+    int getEndSpan(int y) {
+        return lineOffsets[y + 1];
+    }
+
+    /**
+     * Returns the cell index of a span.
+     *
+     * @param span the span index.
+     *
+     * @return the cell index of the span, or {@code -1} if the span is not within any cell.
+     */
+    long getCellIndex(int span) {
+        return cellIndexes[span];
+    }
+
+    /**
+     * Returns the first pixel of a span.
+     *
+     * @param span the span index.
+     *
+     * @return the first pixel of the span, relative to the region.
+     */
+    int getStart(int span) {
+        return starts[span];
+    }
+
+    int getLength(int span) {
+        return lengths[span];
+    }
+
+    /**
+     * Returns the index of the first span in the region, which has the same cell index
+     * as a given span.
+     *
+     * @param span the span index.
+     *
+     * @return the index of the first span with the same cell index.
+     */
+    int getSource(int span) {
+        return sources[span];
+    }
+
+    private static final class Key {
+
+        private final String gridName;
+        private final int level;
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+
+        private Key(String gridName, int level, Rectangle rectangle) {
+            this.gridName = gridName;
+            this.level = level;
+            x = rectangle.x;
+            y = rectangle.y;
+            width = rectangle.width;
+            height = rectangle.height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return level == key.level && x == key.x && y == key.y && width == key.width && height == key.height &&
+                   gridName.equals(key.gridName);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = gridName.hashCode();
+            result = 31 * result + level;
+            result = 31 * result + x;
+            result = 31 * result + y;
+            result = 31 * result + width;
+            result = 31 * result + height;
+            return result;
+        }
+    }
+}
@@ -22,6 +22,15 @@ interface CellValueProvider {
 
     Area getArea();
 
+    /**
+     * Returns the name of the grid of cells. Providers with the same grid name must
+     * return the same cell index for a given location, so the cell indexes computed
+     * for an image can be shared by all providers with the same grid name.
+     *
+     * @return the name of the grid.
+     */
+    String getGridName();
+
     long getCellIndex(double lon, double lat);
 
     byte getValue(long cellIndex, byte noDataValue);
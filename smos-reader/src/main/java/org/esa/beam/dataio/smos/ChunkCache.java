@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import ucar.ma2.Array;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache for the chunks of variables read from BUFR files. The
+ * cache has a memory capacity, which is set by the system property
+ * {@code beam.smos.bufrCacheSize} (in MB). A chunk removed from the cache is also
+ * released by its variable, so no chunk is held outside the memory capacity.
+ *
+ * @since SMOS-Box 3.0
+ */
+final class ChunkCache {
+
+    private static final String CACHE_SIZE_PROPERTY_NAME = "beam.smos.bufrCacheSize";
+    private static final long DEFAULT_CACHE_SIZE = 256L;
+
+    private final long memoryCapacity;
+    private final Map<Key, Entry> entryMap;
+
+    private long memoryUsage;
+
+    ChunkCache(long memoryCapacity) {
+        this.memoryCapacity = memoryCapacity;
+        entryMap = new LinkedHashMap<>(64, 0.75f, true);
+    }
+
+    static ChunkCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    synchronized Array get(ChunkedVariable variable, int chunkIndex) {
+        final Entry entry = entryMap.get(new Key(variable, chunkIndex));
+        if (entry == null) {
+            return null;
+        }
+        return entry.array;
+    }
+
+    /**
+     * Adds a chunk to the cache. The least recently used chunks are evicted, when the
+     * memory capacity of the cache is exceeded. The chunk added is never evicted by
+     * this method.
+     *
+     * @param variable   the variable.
+     * @param chunkIndex the chunk index.
+     * @param array      the chunk.
+     * @param memorySize the memory size of the chunk (bytes).
+     */
+    synchronized void put(ChunkedVariable variable, int chunkIndex, Array array, long memorySize) {
+        final Key key = new Key(variable, chunkIndex);
+        final Entry oldEntry = entryMap.put(key, new Entry(array, memorySize));
+        if (oldEntry != null) {
+            memoryUsage -= oldEntry.memorySize;
+        }
+        memoryUsage += memorySize;
+
+        final Iterator<Map.Entry<Key, Entry>> iterator = entryMap.entrySet().iterator();
+        while (memoryUsage > memoryCapacity && iterator.hasNext()) {
+            final Map.Entry<Key, Entry> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                break;
+            }
+            memoryUsage -= eldest.getValue().memorySize;
+            iterator.remove();
+            eldest.getKey().variable.chunkRemoved(eldest.getKey().chunkIndex);
+        }
+    }
+
+    /**
+     * Removes all chunks of the variables read from a file.
+     *
+     * @param file the file.
+     */
+    synchronized void removeChunks(Object file) {
+        final Iterator<Map.Entry<Key, Entry>> iterator = entryMap.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Key, Entry> entry = iterator.next();
+            if (entry.getKey().variable.getFile() == file) {
+                memoryUsage -= entry.getValue().memorySize;
+                iterator.remove();
+                entry.getKey().variable.chunkRemoved(entry.getKey().chunkIndex);
+            }
+        }
+    }
+
+    /**
+     * Removes all chunks of a variable.
+     *
+     * @param variable the variable.
+     */
+    synchronized void removeChunks(ChunkedVariable variable) {
+        final Iterator<Map.Entry<Key, Entry>> iterator = entryMap.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Key, Entry> entry = iterator.next();
+            if (entry.getKey().variable == variable) {
+                memoryUsage -= entry.getValue().memorySize;
+                iterator.remove();
+                variable.chunkRemoved(entry.getKey().chunkIndex);
+            }
+        }
+    }
+
+    synchronized int getChunkCount() {
+        return entryMap.size();
+    }
+
+    synchronized long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    private static final class Entry {
+
+        private final Array array;
+        private final long memorySize;
+
+        private Entry(Array array, long memorySize) {
+            this.array = array;
+            this.memorySize = memorySize;
+        }
+    }
+
+    private static final class Key {
+
+        private final ChunkedVariable variable;
+        private final int chunkIndex;
+
+        private Key(ChunkedVariable variable, int chunkIndex) {
+            this.variable = variable;
+            this.chunkIndex = chunkIndex;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return variable == key.variable && chunkIndex == key.chunkIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(variable) + chunkIndex;
+        }
+    }
+
+    // Initialization on demand holder idiom
+    private static class Holder {
+
+        private static final ChunkCache INSTANCE = new ChunkCache(
+                Long.getLong(CACHE_SIZE_PROPERTY_NAME, DEFAULT_CACHE_SIZE) * 1024L * 1024L);
+    }
+}
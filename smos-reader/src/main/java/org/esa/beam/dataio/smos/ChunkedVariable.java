@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.nc2.Variable;
+
+import java.io.IOException;
+
+/**
+ * Provides access to the values of a member variable of the observation sequence of
+ * a BUFR file. The values are read in chunks of a fixed number of observations by a
+ * {@link SequenceReader}, and kept in a {@link ChunkCache}. So only the chunks
+ * containing the observations accessed are held in memory.
+ *
+ * @since SMOS-Box 3.0
+ */
+final class ChunkedVariable {
+
+    static final int CHUNK_SIZE = 65536;
+
+    private final Variable variable;
+    private final SequenceReader reader;
+    private final ChunkCache chunkCache;
+
+    // the chunk accessed last, which is always held by the chunk cache, too
+    private volatile Chunk lastChunk;
+
+    /**
+     * Creates a new chunked variable.
+     *
+     * @param variable   the member variable.
+     * @param reader     the reader of the sequence the variable is a member of.
+     * @param chunkCache the chunk cache.
+     */
+    ChunkedVariable(Variable variable, SequenceReader reader, ChunkCache chunkCache) {
+        this.variable = variable;
+        this.reader = reader;
+        this.chunkCache = chunkCache;
+    }
+
+    Object getFile() {
+        return reader.getFile();
+    }
+
+    String getShortName() {
+        return variable.getShortName();
+    }
+
+    DataType getDataType() {
+        return variable.getDataType();
+    }
+
+    int getElementSize() {
+        return variable.getElementSize();
+    }
+
+    int getElementCount() throws IOException {
+        return reader.getObservationCount();
+    }
+
+    double getDouble(int i) throws IOException {
+        final Chunk chunk = getChunk(i / CHUNK_SIZE);
+        return chunk.array.getDouble(i - chunk.start);
+    }
+
+    int getInt(int i) throws IOException {
+        final Chunk chunk = getChunk(i / CHUNK_SIZE);
+        return chunk.array.getInt(i - chunk.start);
+    }
+
+    Object getObject(int i) throws IOException {
+        final Chunk chunk = getChunk(i / CHUNK_SIZE);
+        return chunk.array.getObject(i - chunk.start);
+    }
+
+    /**
+     * Removes all chunks of this variable from the chunk cache. The chunks of this
+     * variable are not read anymore.
+     */
+    void dispose() {
+        lastChunk = null;
+        reader.removeVariable(this);
+        chunkCache.removeChunks(this);
+    }
+
+    /**
+     * Releases a chunk, which has been removed from the chunk cache. Called by the
+     * chunk cache while holding its lock.
+     *
+     * @param chunkIndex the chunk index.
+     */
+    void chunkRemoved(int chunkIndex) {
+        final Chunk last = lastChunk;
+        if (last != null && last.index == chunkIndex) {
+            lastChunk = null;
+        }
+    }
+
+    private Chunk getChunk(int chunkIndex) throws IOException {
+        // the observations of a grid cell are usually located in the same chunk
+        final Chunk last = lastChunk;
+        if (last != null && last.index == chunkIndex) {
+            return last;
+        }
+        Chunk chunk = getCachedChunk(chunkIndex);
+        if (chunk == null) {
+            final Array array = reader.readChunk(this, chunkIndex);
+            // the chunk may have been evicted already, then it is not remembered
+            chunk = getCachedChunk(chunkIndex);
+            if (chunk == null) {
+                chunk = new Chunk(chunkIndex, array);
+            }
+        }
+        return chunk;
+    }
+
+    // the chunk is remembered while holding the lock of the cache, so it cannot be evicted meanwhile
+    private Chunk getCachedChunk(int chunkIndex) {
+        synchronized (chunkCache) {
+            final Array array = chunkCache.get(this, chunkIndex);
+            if (array == null) {
+                return null;
+            }
+            final Chunk chunk = new Chunk(chunkIndex, array);
+            lastChunk = chunk;
+            return chunk;
+        }
+    }
+
+    private static final class Chunk {
+        private final int index;
+        private final int start;
+        private final Array array;
+
+        private Chunk(int index, Array array) {
+            this.index = index;
+            this.start = index * CHUNK_SIZE;
+            this.array = array;
+        }
+    }
+}
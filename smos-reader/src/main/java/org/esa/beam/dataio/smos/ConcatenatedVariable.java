@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import java.io.IOException;
+
+/**
+ * Provides access to the values of a variable of the observation sequences of one or
+ * more BUFR files. The observations of all files are concatenated in the order of the
+ * files. The values of each file are accessed through a {@link ChunkedVariable}, so
+ * the values of a file are not read before they are accessed.
+ *
+ * @since SMOS-Box 3.0
+ */
+final class ConcatenatedVariable {
+
+    private final ChunkedVariable[] parts;
+
+    private volatile int[] offsets;
+
+    /**
+     * Creates a new concatenated variable.
+     *
+     * @param parts the variables of the individual files, in the order of the files.
+     */
+    ConcatenatedVariable(ChunkedVariable[] parts) {
+        if (parts.length == 0) {
+            throw new IllegalArgumentException("parts.length == 0");
+        }
+        this.parts = parts.clone();
+    }
+
+    int getElementCount() throws IOException {
+        return getOffsets()[parts.length];
+    }
+
+    /**
+     * Returns the index of the file containing an observation.
+     *
+     * @param i the observation index.
+     *
+     * @return the index of the file.
+     *
+     * @throws IOException if an I/O error occurred.
+     */
+    int getPart(int i) throws IOException {
+        if (parts.length == 1) {
+            return 0;
+        }
+        final int[] offsets = getOffsets();
+        // finds the last part starting at or before the observation, skipping empty parts
+        int low = 0;
+        int high = parts.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (offsets[mid] <= i) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+
+    double getDouble(int i) throws IOException {
+        final int part = getPart(i);
+        return parts[part].getDouble(i - getOffsets()[part]);
+    }
+
+    int getInt(int i) throws IOException {
+        final int part = getPart(i);
+        return parts[part].getInt(i - getOffsets()[part]);
+    }
+
+    Object getObject(int i) throws IOException {
+        final int part = getPart(i);
+        return parts[part].getObject(i - getOffsets()[part]);
+    }
+
+    /**
+     * Removes all chunks of this variable from the chunk cache.
+     */
+    void dispose() {
+        for (final ChunkedVariable part : parts) {
+            part.dispose();
+        }
+    }
+
+    private int[] getOffsets() throws IOException {
+        if (offsets == null) {
+            synchronized (this) {
+                if (offsets == null) {
+                    final int[] partOffsets = new int[parts.length + 1];
+                    for (int i = 0; i < parts.length; i++) {
+                        partOffsets[i + 1] = partOffsets[i] + parts[i].getElementCount();
+                    }
+                    offsets = partOffsets;
+                }
+            }
+        }
+        return offsets;
+    }
+}
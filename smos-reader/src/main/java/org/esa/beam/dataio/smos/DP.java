@@ -16,53 +16,22 @@
 
 package org.esa.beam.dataio.smos;
 
-import org.esa.beam.framework.datamodel.Band;
-import org.esa.beam.framework.datamodel.Product;
-
 import java.awt.geom.Area;
 import java.io.IOException;
-import java.util.Map;
 
 abstract class DP extends AbstractValueProvider {
 
-    private final AbstractValueProvider frxProvider;
-    private final AbstractValueProvider fryProvider;
-    private final AbstractValueProvider grxProvider;
-    private final AbstractValueProvider gryProvider;
-    private final AbstractValueProvider btxProvider;
-    private final AbstractValueProvider btyProvider;
-
+    private final Rotation rotation;
     private final boolean accuracy;
 
-    protected DP(Product product, Map<String, AbstractValueProvider> valueProviderMap, boolean accuracy) {
+    protected DP(Rotation rotation, boolean accuracy) {
+        this.rotation = rotation;
         this.accuracy = accuracy;
-
-        frxProvider = getValueProvider(product.getBand("Faraday_Rotation_Angle_X"), valueProviderMap);
-        fryProvider = getValueProvider(product.getBand("Faraday_Rotation_Angle_Y"), valueProviderMap);
-        grxProvider = getValueProvider(product.getBand("Geometric_Rotation_Angle_X"), valueProviderMap);
-        gryProvider = getValueProvider(product.getBand("Geometric_Rotation_Angle_Y"), valueProviderMap);
-
-        final String quantity;
-        if (accuracy) {
-            quantity = "Pixel_Radiometric_Accuracy";
-        } else {
-            quantity = "BT_Value";
-        }
-
-        btxProvider = getValueProvider(product.getBand(quantity + "_X"), valueProviderMap);
-        btyProvider = getValueProvider(product.getBand(quantity + "_Y"), valueProviderMap);
-    }
-
-    private static AbstractValueProvider getValueProvider(Band band, Map<String, AbstractValueProvider> map) {
-        if (band.isScalingApplied()) {
-            return new Scaler(map.get(band.getName()), band);
-        }
-        return map.get(band.getName());
     }
 
     @Override
     public final Area getArea() {
-        return frxProvider.getArea();
+        return rotation.getArea();
     }
 
     @Override
@@ -74,9 +43,29 @@ abstract class DP extends AbstractValueProvider {
         return value;
     }
 
+    @Override
+    public final void getValues(int[] seqnums, float[] values, float noDataValue) {
+        final int[] positions = new int[seqnums.length];
+        final int[] gridPointIndexes = rotation.getGridPointIndexes(seqnums, positions);
+        final Rotation.Inputs inputs = rotation.getInputs(gridPointIndexes);
+
+        final float[] results = new float[gridPointIndexes.length];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = compute(inputs.btx[i], inputs.bty[i], inputs.aa[i], inputs.bb[i]);
+        }
+        for (int i = 0; i < values.length; i++) {
+            final int position = positions[i];
+            if (position == -1 || Float.isNaN(results[position]) || Float.isInfinite(results[position])) {
+                values[i] = noDataValue;
+            } else {
+                values[i] = results[position];
+            }
+        }
+    }
+
     @Override
     public final int getGridPointIndex(int seqnum) {
-        return frxProvider.getGridPointIndex(seqnum);
+        return rotation.getGridPointIndex(seqnum);
     }
 
     @Override
@@ -96,23 +85,19 @@ abstract class DP extends AbstractValueProvider {
 
     @Override
     public final float getFloat(int gridPointIndex) throws IOException {
-        final double frx = frxProvider.getFloat(gridPointIndex);
-        final double fry = fryProvider.getFloat(gridPointIndex);
-        final double grx = grxProvider.getFloat(gridPointIndex);
-        final double gry = gryProvider.getFloat(gridPointIndex);
-
-        final double fr = -angularAverage(frx, fry);
-        final double gr = -angularAverage(grx, gry);
-
-        final double alpha = Math.toRadians(fr + gr);
+        final double alpha = rotation.getAlpha(gridPointIndex);
         final double a = Math.cos(alpha);
         final double b = Math.sin(alpha);
         final double aa = a * a;
         final double bb = b * b;
 
-        final double btx = btxProvider.getFloat(gridPointIndex);
-        final double bty = btyProvider.getFloat(gridPointIndex);
+        final double btx = rotation.getBtx(gridPointIndex);
+        final double bty = rotation.getBty(gridPointIndex);
+
+        return compute(btx, bty, aa, bb);
+    }
 
+    private float compute(double btx, double bty, double aa, double bb) {
         final float result;
         if (accuracy) {
             result = (float) (computeRA(btx, bty, aa, bb) / Math.abs(aa * aa - bb * bb));
@@ -16,14 +16,10 @@
 
 package org.esa.beam.dataio.smos;
 
-import org.esa.beam.framework.datamodel.Product;
-
-import java.util.Map;
-
 class DPH extends DP {
 
-    DPH(Product product, Map<String, AbstractValueProvider> valueProviderMap, boolean accuracy) {
-        super(product, valueProviderMap, accuracy);
+    DPH(Rotation rotation, boolean accuracy) {
+        super(rotation, accuracy);
     }
 
     @Override
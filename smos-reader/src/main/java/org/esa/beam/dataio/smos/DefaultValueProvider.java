@@ -36,6 +36,10 @@ class DefaultValueProvider extends AbstractValueProvider {
         this.memberIndex = memberIndex;
     }
 
+    final int getMemberIndex() {
+        return memberIndex;
+    }
+
     @Override
     public final Area getArea() {
         return dggFile.getArea();
@@ -18,6 +18,9 @@ package org.esa.beam.dataio.smos;
 
 import com.bc.ceres.binio.SequenceData;
 
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
 class Dffg {
 
     private final double maxLon;
@@ -64,6 +67,20 @@ class Dffg {
         return sequenceData;
     }
 
+    /**
+     * Updates a message digest with the definition of this grid.
+     *
+     * @param digest the message digest.
+     */
+    void updateDigest(MessageDigest digest) {
+        final ByteBuffer buffer = ByteBuffer.allocate(5 * 8 + columnCounts.length * (4 + 8 + 4));
+        buffer.putDouble(minLat).putDouble(maxLat).putDouble(minLon).putDouble(maxLon).putDouble(latDelta);
+        for (int i = 0; i < columnCounts.length; i++) {
+            buffer.putInt(columnCounts[i]).putDouble(lonDeltas[i]).putInt(cumulatedColumnCounts[i]);
+        }
+        digest.update(buffer.array());
+    }
+
     void setRow(int rowIndex, int columnCount, double deltaLon, int cumulatedColumnCount) {
         columnCounts[rowIndex] = columnCount;
         lonDeltas[rowIndex] = deltaLon;
@@ -10,12 +10,9 @@ import org.esa.beam.dataio.smos.dddb.Family;
 import org.esa.beam.framework.datamodel.Band;
 import org.esa.beam.framework.datamodel.Product;
 import org.esa.beam.framework.datamodel.ProductData;
+import org.esa.beam.jai.ImageManager;
 import org.esa.beam.smos.EEFilePair;
-import org.esa.beam.smos.dgg.SmosDgg;
 import org.esa.beam.util.io.FileUtils;
-import org.jdom.Document;
-import org.jdom.Element;
-import org.jdom.Namespace;
 
 import java.awt.*;
 import java.awt.geom.Area;
@@ -24,12 +21,18 @@ import java.text.MessageFormat;
 
 public class DggFile extends ExplorerFile {
 
+    private static final String VALUE_STORE_PROPERTY_NAME = "beam.smos.valueStore";
+    private static final String TILE_ENGINE_PROPERTY_NAME = "beam.smos.tileEngine";
+
     private final GridPointList gridPointList;
-    private final int gridPointIdIndex;
+    private final GridPointGeolocation gridPointGeolocation;
 
     private final Area area;
     private final GridPointInfo gridPointInfo;
 
+    private int[] gridPointSeqnums;
+    private TileEngine tileEngine;
+
     protected DggFile(EEFilePair eeFilePair, DataContext dataContext, boolean fromZones) throws IOException {
         super(eeFilePair, dataContext);
         try {
@@ -38,12 +41,12 @@ public class DggFile extends ExplorerFile {
             } else {
                 gridPointList = createGridPointList(getDataBlock().getSequence(SmosConstants.GRID_POINT_LIST_NAME));
             }
-            gridPointIdIndex = gridPointList.getCompoundType().getMemberIndex(SmosConstants.GRID_POINT_ID_NAME);
         } catch (IOException e) {
             throw new IOException(MessageFormat.format(
                     "Unable to read SMOS File ''{0}'': {1}.", eeFilePair.getDblFile().getPath(), e.getMessage()), e);
         }
-        area = DggUtils.computeArea(this.getGridPointList());
+        gridPointGeolocation = GridPointGeolocation.create(gridPointList);
+        area = DggUtils.computeArea(gridPointGeolocation);
         gridPointInfo = createGridPointInfo();
     }
 
@@ -64,21 +67,23 @@ public class DggFile extends ExplorerFile {
     }
 
     public final int getGridPointSeqnum(int i) throws IOException {
-        return SmosDgg.gridPointIdToSeqnum(getGridPointId(i));
-    }
-
-    private int getGridPointId(int i) throws IOException {
-        final int gridPointId = gridPointList.getCompound(i).getInt(gridPointIdIndex);
-        if (gridPointId < SmosDgg.MIN_GRID_POINT_ID || gridPointId > SmosDgg.MAX_GRID_POINT_ID) {
-            throw new IOException(MessageFormat.format("Invalid Grid Point ID {0} at index {1}.", gridPointId, i));
-        }
-        return gridPointId;
+        return gridPointGeolocation.getSeqnum(i);
     }
 
     public final GridPointList getGridPointList() {
         return gridPointList;
     }
 
+    /**
+     * Returns the columnar view of the geolocation of all grid points, which
+     * is created when the file is opened.
+     *
+     * @return the grid point geolocation.
+     */
+    public final GridPointGeolocation getGridPointGeolocation() {
+        return gridPointGeolocation;
+    }
+
     public int getGridPointIndex(int seqnum) {
         return gridPointInfo.getGridPointIndex(seqnum);
     }
@@ -199,7 +204,44 @@ public class DggFile extends ExplorerFile {
         return new DefaultMultiLevelImage(createMultiLevelSource(band, valueProvider));
     }
 
+    /**
+     * Tests if the values of a value provider may be stored for all grid points, when
+     * the system property {@code beam.smos.valueStore} is set. The values of a value
+     * provider, which depend on some changeable state, must not be stored.
+     *
+     * @param valueProvider the value provider.
+     *
+     * @return {@code true} if the values may be stored, {@code false} otherwise.
+     */
+    protected boolean isValueStoreApplicable(ValueProvider valueProvider) {
+        return valueProvider instanceof AbstractValueProvider;
+    }
+
+    // the tile engine reads plain grid point record members only
+    private static boolean isTileEngineApplicable(ValueProvider valueProvider) {
+        return valueProvider.getClass() == DefaultValueProvider.class &&
+               Boolean.parseBoolean(System.getProperty(TILE_ENGINE_PROPERTY_NAME, "true"));
+    }
+
     private MultiLevelSource createMultiLevelSource(Band band, ValueProvider valueProvider) {
+        if (Boolean.getBoolean(VALUE_STORE_PROPERTY_NAME) && isValueStoreApplicable(valueProvider)) {
+            if (gridPointSeqnums == null) {
+                // the seqnums are shared by the value stores of all bands
+                gridPointSeqnums = gridPointGeolocation.getSeqnums();
+            }
+            return new SmosMultiLevelSource(band, new ValueStore((AbstractValueProvider) valueProvider,
+                                                                 gridPointSeqnums));
+        }
+        if (isTileEngineApplicable(valueProvider)) {
+            if (tileEngine == null) {
+                // the tile engine is shared by the images of all bands
+                tileEngine = new TileEngine(this);
+            }
+            final int tileEngineBand = tileEngine.addBand(((DefaultValueProvider) valueProvider).getMemberIndex(),
+                                                          ImageManager.getDataBufferType(band.getDataType()),
+                                                          band.getNoDataValue());
+            return new SmosMultiLevelSource(band, valueProvider, tileEngine, tileEngineBand);
+        }
         return new SmosMultiLevelSource(band, valueProvider);
     }
 
@@ -208,12 +250,10 @@ public class DggFile extends ExplorerFile {
         int maxSeqnum = minSeqnum;
 
         final int gridPointCount = getGridPointCount();
-        final int[] seqNumbers = new int[gridPointCount];
-        seqNumbers[0] = minSeqnum;
+        final int[] seqNumbers = gridPointGeolocation.getSeqnums();
 
         for (int i = 1; i < gridPointCount; i++) {
-            final int seqnum = getGridPointSeqnum(i);
-            seqNumbers[i] = seqnum;
+            final int seqnum = seqNumbers[i];
 
             if (seqnum < minSeqnum) {
                 minSeqnum = seqnum;
@@ -233,11 +273,8 @@ public class DggFile extends ExplorerFile {
     private void setTimes(Product product) {
         final String pattern = "'UTC='yyyy-MM-dd'T'HH:mm:ss";
         try {
-            final Document document = getDocument();
-            final Namespace namespace = document.getRootElement().getNamespace();
-            final Element validityPeriod = getElement(document.getRootElement(), "Validity_Period");
-            final String validityStart = validityPeriod.getChildText("Validity_Start", namespace);
-            final String validityStop = validityPeriod.getChildText("Validity_Stop", namespace);
+            final String validityStart = getHeader().getValidityStart();
+            final String validityStop = getHeader().getValidityStop();
             product.setStartTime(ProductData.UTC.parse(validityStart, pattern));
             product.setEndTime(ProductData.UTC.parse(validityStop, pattern));
         } catch (Exception e) {
@@ -249,11 +286,13 @@ public class DggFile extends ExplorerFile {
     private static final class PlainGridPointList implements GridPointList {
 
         private final SequenceData sequence;
+        private final boolean elementSizeKnown;
         private final int latIndex;
         private final int lonIndex;
 
         public PlainGridPointList(SequenceData sequence) {
             this.sequence = sequence;
+            elementSizeKnown = sequence.getType().getElementType().isSizeKnown();
 
             lonIndex = getCompoundType().getMemberIndex(SmosConstants.GRID_POINT_LON_NAME);
             latIndex = getCompoundType().getMemberIndex(SmosConstants.GRID_POINT_LAT_NAME);
@@ -266,7 +305,13 @@ public class DggFile extends ExplorerFile {
 
         @Override
         public final CompoundData getCompound(int i) throws IOException {
-            return sequence.getCompound(i);
+            if (elementSizeKnown) {
+                return sequence.getCompound(i);
+            }
+            // the positions of elements of variable size are resolved lazily
+            synchronized (sequence) {
+                return sequence.getCompound(i);
+            }
         }
 
         @Override
@@ -288,11 +333,13 @@ public class DggFile extends ExplorerFile {
     private static final class ZoneGridPointList implements GridPointList {
 
         private final SequenceData[] zones;
+        private final boolean elementSizeKnown;
         private final int lonIndex;
         private final int latIndex;
 
         public ZoneGridPointList(SequenceData[] zones) {
             this.zones = zones;
+            elementSizeKnown = zones[0].getType().getElementType().isSizeKnown();
             lonIndex = getCompoundType().getMemberIndex(SmosConstants.GRID_POINT_LON_NAME);
             latIndex = getCompoundType().getMemberIndex(SmosConstants.GRID_POINT_LAT_NAME);
         }
@@ -311,7 +358,13 @@ public class DggFile extends ExplorerFile {
             for (int z = 0, counts = 0, offset = 0, zonesLength = zones.length; z < zonesLength; z++) {
                 counts += zones[z].getElementCount();
                 if (i < counts) {
-                    return zones[z].getCompound(i - offset);
+                    if (elementSizeKnown) {
+                        return zones[z].getCompound(i - offset);
+                    }
+                    // the positions of elements of variable size are resolved lazily
+                    synchronized (zones[z]) {
+                        return zones[z].getCompound(i - offset);
+                    }
                 }
                 offset = counts;
             }
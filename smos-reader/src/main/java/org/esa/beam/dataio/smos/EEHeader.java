@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.JDOMException;
+import org.jdom.Namespace;
+import org.jdom.filter.ElementFilter;
+import org.jdom.input.SAXBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable model of the header ({@code .HDR}) of a SMOS Earth Explorer product
+ * file. The header document is parsed once, when the model is created.
+ * <p/>
+ * Header models are cached, so the header of a product file is parsed only once,
+ * even if it is requested by several consumers. A cached model is discarded when
+ * the header file has been modified.
+ *
+ * @since SMOS-Box 3.0
+ */
+public final class EEHeader {
+
+    private static final String TAG_DATABLOCK_SCHEMA = "Datablock_Schema";
+    private static final String TAG_VALIDITY_PERIOD = "Validity_Period";
+    private static final String TAG_VALIDITY_START = "Validity_Start";
+    private static final String TAG_VALIDITY_STOP = "Validity_Stop";
+    private static final String TAG_SPECIFIC_PRODUCT_HEADER = "Specific_Product_Header";
+    private static final String TAG_LIST_OF_DATA_SETS = "List_of_Data_Sets";
+
+    private static final int SCHEMA_NAME_LENGTH = 27;
+    private static final int CACHE_CAPACITY = 64;
+
+    private final File headerFile;
+    private final long lastModified;
+    private final long length;
+    private final Element rootElement;
+    private final Namespace namespace;
+    private final String schemaName;
+    private final String validityStart;
+    private final String validityStop;
+    private final Map<String, String> specificProductHeaderValues;
+    private final List<DataSet> dataSets;
+
+    private EEHeader(File headerFile) throws IOException {
+        this.headerFile = headerFile;
+        lastModified = headerFile.lastModified();
+        length = headerFile.length();
+
+        final Document document;
+        try {
+            document = new SAXBuilder().build(headerFile);
+        } catch (JDOMException e) {
+            throw new IOException(MessageFormat.format("File ''{0}'': Invalid document", headerFile.getPath()), e);
+        }
+        rootElement = document.getRootElement();
+        namespace = rootElement.getNamespace();
+        if (namespace == null) {
+            throw new IOException(MessageFormat.format("File ''{0}'': Missing namespace", headerFile.getPath()));
+        }
+
+        final Element schemaElement = findElement(rootElement, TAG_DATABLOCK_SCHEMA);
+        if (schemaElement == null || schemaElement.getText().length() < SCHEMA_NAME_LENGTH) {
+            throw new IOException(MessageFormat.format(
+                    "File ''{0}'': Missing datablock schema.", headerFile.getPath()));
+        }
+        schemaName = schemaElement.getText().substring(0, SCHEMA_NAME_LENGTH);
+
+        final Element validityPeriod = findElement(rootElement, TAG_VALIDITY_PERIOD);
+        if (validityPeriod != null) {
+            validityStart = validityPeriod.getChildText(TAG_VALIDITY_START, namespace);
+            validityStop = validityPeriod.getChildText(TAG_VALIDITY_STOP, namespace);
+        } else {
+            validityStart = null;
+            validityStop = null;
+        }
+
+        final Map<String, String> values = new LinkedHashMap<>();
+        final Element specificProductHeader = findElement(rootElement, TAG_SPECIFIC_PRODUCT_HEADER);
+        if (specificProductHeader != null) {
+            for (final Object o : specificProductHeader.getChildren()) {
+                final Element child = (Element) o;
+                if (!values.containsKey(child.getName())) {
+                    values.put(child.getName(), child.getText());
+                }
+            }
+        }
+        specificProductHeaderValues = Collections.unmodifiableMap(values);
+
+        final List<DataSet> dataSetList = new ArrayList<>();
+        final Element listOfDataSets = findElement(rootElement, TAG_LIST_OF_DATA_SETS);
+        if (listOfDataSets != null) {
+            for (final Object o : listOfDataSets.getChildren("Data_Set", namespace)) {
+                dataSetList.add(new DataSet((Element) o, namespace));
+            }
+        }
+        dataSets = Collections.unmodifiableList(dataSetList);
+    }
+
+    /**
+     * Returns the header model of a SMOS Earth Explorer product file.
+     *
+     * @param headerFile the header file.
+     *
+     * @return the header model.
+     *
+     * @throws IOException if the header file cannot be parsed or does not include a datablock schema.
+     */
+    public static EEHeader getInstance(File headerFile) throws IOException {
+        final String key = headerFile.getAbsolutePath();
+        synchronized (Holder.CACHE) {
+            final EEHeader header = Holder.CACHE.get(key);
+            if (header != null && header.isValid()) {
+                return header;
+            }
+        }
+        final EEHeader header = new EEHeader(headerFile);
+        synchronized (Holder.CACHE) {
+            Holder.CACHE.put(key, header);
+        }
+        return header;
+    }
+
+    public File getHeaderFile() {
+        return headerFile;
+    }
+
+    /**
+     * Returns the name of the datablock schema, e.g. {@code DBL_SM_XXXX_MIR_SCLF1C_0200}.
+     *
+     * @return the schema name.
+     */
+    public String getSchemaName() {
+        return schemaName;
+    }
+
+    /**
+     * Returns the start of the validity period, e.g. {@code UTC=2011-10-26T14:32:06}.
+     *
+     * @return the start of the validity period, or {@code null} if the header does not include a validity period.
+     */
+    public String getValidityStart() {
+        return validityStart;
+    }
+
+    /**
+     * Returns the stop of the validity period, e.g. {@code UTC=2011-10-26T15:25:20}.
+     *
+     * @return the stop of the validity period, or {@code null} if the header does not include a validity period.
+     */
+    public String getValidityStop() {
+        return validityStop;
+    }
+
+    /**
+     * Returns the text of an element of the specific product header.
+     *
+     * @param name the element name.
+     *
+     * @return the text of the element, or {@code null} if there is no such element.
+     */
+    public String getSpecificProductHeaderValue(String name) {
+        return specificProductHeaderValues.get(name);
+    }
+
+    /**
+     * Returns the text of a child of the first element with a given name.
+     *
+     * @param parentName the name of the parent element.
+     * @param childName  the name of the child element.
+     *
+     * @return the text of the child element, or {@code null} if the parent element has no such child.
+     *
+     * @throws IOException if the header does not include the parent element.
+     */
+    public String getValue(String parentName, String childName) throws IOException {
+        return getElement(rootElement, parentName).getChildText(childName, namespace);
+    }
+
+    /**
+     * Returns the text of a child of the first element with a given name, which is
+     * searched for within the first element with another given name only.
+     *
+     * @param ancestorName the name of the element, which includes the parent element.
+     * @param parentName   the name of the parent element.
+     * @param childName    the name of the child element.
+     *
+     * @return the text of the child element, or {@code null} if the parent element has no such child.
+     *
+     * @throws IOException if the header does not include the ancestor element, or the ancestor
+     *                     element does not include the parent element.
+     */
+    public String getValue(String ancestorName, String parentName, String childName) throws IOException {
+        final Element ancestor = getElement(rootElement, ancestorName);
+        return getElement(ancestor, parentName).getChildText(childName, namespace);
+    }
+
+    public List<DataSet> getDataSets() {
+        return dataSets;
+    }
+
+    // returns a copy, because the header model is shared and must not be modified
+    Element getRootElement() {
+        return (Element) rootElement.clone();
+    }
+
+    Namespace getNamespace() {
+        return namespace;
+    }
+
+    private boolean isValid() {
+        return headerFile.lastModified() == lastModified && headerFile.length() == length;
+    }
+
+    private Element getElement(Element parent, String name) throws IOException {
+        final Element element = findElement(parent, name);
+        if (element == null) {
+            throw new IOException(MessageFormat.format(
+                    "File ''{0}'': Missing element ''{1}''.", headerFile.getPath(), name));
+        }
+        return element;
+    }
+
+    private static Element findElement(Element parent, String name) {
+        final Iterator descendants = parent.getDescendants(new ElementFilter(name));
+        if (descendants.hasNext()) {
+            return (Element) descendants.next();
+        }
+        return null;
+    }
+
+    /**
+     * A data set listed in the specific product header.
+     */
+    public static final class DataSet {
+
+        private final String name;
+        private final String type;
+        private final long size;
+        private final long offset;
+        private final String refFilename;
+        private final long recordCount;
+        private final long recordSize;
+
+        private DataSet(Element element, Namespace namespace) {
+            name = element.getChildTextTrim("DS_Name", namespace);
+            type = element.getChildTextTrim("DS_Type", namespace);
+            size = parseLong(element.getChildTextTrim("DS_Size", namespace));
+            offset = parseLong(element.getChildTextTrim("DS_Offset", namespace));
+            refFilename = element.getChildTextTrim("Ref_Filename", namespace);
+            recordCount = parseLong(element.getChildTextTrim("Num_DSR", namespace));
+            recordSize = parseLong(element.getChildTextTrim("DSR_Size", namespace));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public String getRefFilename() {
+            return refFilename;
+        }
+
+        public long getRecordCount() {
+            return recordCount;
+        }
+
+        public long getRecordSize() {
+            return recordSize;
+        }
+
+        private static long parseLong(String text) {
+            if (text == null || text.isEmpty()) {
+                return -1;
+            }
+            try {
+                return Long.parseLong(text.startsWith("+") ? text.substring(1) : text);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+
+    // Initialization on demand holder idiom
+    private static class Holder {
+
+        private static final Map<String, EEHeader> CACHE = new LinkedHashMap<String, EEHeader>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, EEHeader> eldest) {
+                return size() > CACHE_CAPACITY;
+            }
+        };
+    }
+}
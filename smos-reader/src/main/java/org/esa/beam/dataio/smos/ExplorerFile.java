@@ -21,28 +21,21 @@ import com.bc.ceres.binio.DataContext;
 import com.bc.ceres.binio.DataFormat;
 import org.esa.beam.dataio.smos.dddb.Dddb;
 import org.esa.beam.smos.EEFilePair;
-import org.jdom.Document;
-import org.jdom.Element;
-import org.jdom.JDOMException;
-import org.jdom.filter.Filter;
-import org.jdom.input.SAXBuilder;
 
 import java.io.File;
 import java.io.IOException;
-import java.text.MessageFormat;
-import java.util.Iterator;
 
 public abstract class ExplorerFile implements ProductFile {
 
-    protected static final String TAG_SPECIFIC_PRODUCT_HEADER = "Specific_Product_Header";
-
     private final EEFilePair eeFilePair;
+    private final EEHeader header;
     private final DataFormat dataFormat;
     private final DataContext dataContext;
 
     protected ExplorerFile(EEFilePair eeFilePair, DataContext dataContext) throws IOException {
         this.eeFilePair = eeFilePair;
-        this.dataFormat = Dddb.getInstance().getDataFormat(eeFilePair.getHdrFile());
+        this.header = EEHeader.getInstance(eeFilePair.getHdrFile());
+        this.dataFormat = Dddb.getInstance().getDataFormat(header.getSchemaName());
         this.dataContext = dataContext;
     }
 
@@ -50,6 +43,15 @@ public abstract class ExplorerFile implements ProductFile {
         return eeFilePair.getHdrFile();
     }
 
+    /**
+     * Returns the header model of this product file. The header is parsed only once.
+     *
+     * @return the header model.
+     */
+    public final EEHeader getHeader() {
+        return header;
+    }
+
     @Override
     public final File getDataFile() {
         return eeFilePair.getDblFile();
@@ -71,35 +73,4 @@ public abstract class ExplorerFile implements ProductFile {
     protected String getProductType() {
         return dataFormat.getName().substring(12, 22);
     }
-
-    protected final Document getDocument() throws IOException {
-        final Document document;
-        try {
-            document = new SAXBuilder().build(eeFilePair.getHdrFile());
-        } catch (JDOMException e) {
-            throw new IOException(MessageFormat.format("File ''{0}'': Invalid document", eeFilePair.getHdrFile().getPath()), e);
-        }
-        return document;
-    }
-
-    protected Element getElement(Element parent, final String name) throws IOException {
-        final Iterator descendants = parent.getDescendants(new Filter() {
-            @Override
-            public boolean matches(Object o) {
-                if (o instanceof Element) {
-                    final Element e = (Element) o;
-                    if (name.equals(e.getName())) {
-                        return true;
-                    }
-                }
-
-                return false;
-            }
-        });
-        if (descendants.hasNext()) {
-            return (Element) descendants.next();
-        } else {
-            throw new IOException(MessageFormat.format("File ''{0}'': Missing element ''{1}''.", getHeaderFile().getPath(), name));
-        }
-    }
 }
@@ -16,71 +16,24 @@
 
 package org.esa.beam.dataio.smos;
 
-import org.esa.beam.framework.datamodel.Band;
-import org.esa.beam.framework.datamodel.Product;
-
 import java.awt.geom.Area;
 import java.io.IOException;
-import java.util.Map;
 
 abstract class FP extends AbstractValueProvider {
 
-    private final AbstractValueProvider frxProvider;
-    private final AbstractValueProvider fryProvider;
-    private final AbstractValueProvider grxProvider;
-    private final AbstractValueProvider gryProvider;
-    private final AbstractValueProvider btxProvider;
-    private final AbstractValueProvider btyProvider;
-    private final AbstractValueProvider btxyProvider;
-
+    private final Rotation rotation;
     private final boolean accuracy;
     private final boolean imaginary;
 
-    protected FP(Product product, Map<String, AbstractValueProvider> valueProviderMap, boolean accuracy,
-                 boolean imaginary) {
+    protected FP(Rotation rotation, boolean accuracy, boolean imaginary) {
+        this.rotation = rotation;
         this.accuracy = accuracy;
         this.imaginary = imaginary;
-
-        frxProvider = getValueProvider(product.getBand("Faraday_Rotation_Angle_X"), valueProviderMap);
-        fryProvider = getValueProvider(product.getBand("Faraday_Rotation_Angle_Y"), valueProviderMap);
-        grxProvider = getValueProvider(product.getBand("Geometric_Rotation_Angle_X"), valueProviderMap);
-        gryProvider = getValueProvider(product.getBand("Geometric_Rotation_Angle_Y"), valueProviderMap);
-
-        final String quantity;
-        if (accuracy) {
-            quantity = "Pixel_Radiometric_Accuracy";
-        } else {
-            quantity = "BT_Value";
-        }
-        if (imaginary) {
-            btxProvider = null;
-            btyProvider = null;
-            if (accuracy) {
-                btxyProvider = getValueProvider(product.getBand(quantity + "_XY"), valueProviderMap);
-            } else {
-                btxyProvider = getValueProvider(product.getBand(quantity + "_XY_Imag"), valueProviderMap);
-            }
-        } else {
-            btxProvider = getValueProvider(product.getBand(quantity + "_X"), valueProviderMap);
-            btyProvider = getValueProvider(product.getBand(quantity + "_Y"), valueProviderMap);
-            if (accuracy) {
-                btxyProvider = getValueProvider(product.getBand(quantity + "_XY"), valueProviderMap);
-            } else {
-                btxyProvider = getValueProvider(product.getBand(quantity + "_XY_Real"), valueProviderMap);
-            }
-        }
-    }
-
-    private static AbstractValueProvider getValueProvider(Band band, Map<String, AbstractValueProvider> map) {
-        if (band.isScalingApplied()) {
-            return new Scaler(map.get(band.getName()), band);
-        }
-        return map.get(band.getName());
     }
 
     @Override
     public final Area getArea() {
-        return frxProvider.getArea();
+        return rotation.getArea();
     }
 
     @Override
@@ -92,9 +45,38 @@ abstract class FP extends AbstractValueProvider {
         return value;
     }
 
+    @Override
+    public final void getValues(int[] seqnums, float[] values, float noDataValue) {
+        final int[] positions = new int[seqnums.length];
+        final int[] gridPointIndexes = rotation.getGridPointIndexes(seqnums, positions);
+        final Rotation.Inputs inputs = rotation.getInputs(gridPointIndexes);
+
+        final float[] results = new float[gridPointIndexes.length];
+        for (int i = 0; i < results.length; i++) {
+            final double btx;
+            final double bty;
+            if (imaginary) {
+                btx = 0.0;
+                bty = 0.0;
+            } else {
+                btx = inputs.btx[i];
+                bty = inputs.bty[i];
+            }
+            results[i] = compute(btx, bty, inputs.btxy[i], inputs.aa[i], inputs.ab[i], inputs.bb[i]);
+        }
+        for (int i = 0; i < values.length; i++) {
+            final int position = positions[i];
+            if (position == -1 || Float.isNaN(results[position]) || Float.isInfinite(results[position])) {
+                values[i] = noDataValue;
+            } else {
+                values[i] = results[position];
+            }
+        }
+    }
+
     @Override
     public final int getGridPointIndex(int seqnum) {
-        return frxProvider.getGridPointIndex(seqnum);
+        return rotation.getGridPointIndex(seqnum);
     }
 
     @Override
@@ -114,15 +96,7 @@ abstract class FP extends AbstractValueProvider {
 
     @Override
     protected final float getFloat(int gridPointIndex) throws IOException {
-        final double frx = frxProvider.getFloat(gridPointIndex);
-        final double fry = fryProvider.getFloat(gridPointIndex);
-        final double grx = grxProvider.getFloat(gridPointIndex);
-        final double gry = gryProvider.getFloat(gridPointIndex);
-
-        final double fr = -angularAverage(frx, fry);
-        final double gr = -angularAverage(grx, gry);
-
-        final double alpha = Math.toRadians(fr + gr);
+        final double alpha = rotation.getAlpha(gridPointIndex);
         final double a = Math.cos(alpha);
         final double b = Math.sin(alpha);
         final double aa = a * a;
@@ -131,17 +105,19 @@ abstract class FP extends AbstractValueProvider {
 
         final double btx;
         final double bty;
-        final double btxy;
         if (imaginary) {
             btx = 0.0;
             bty = 0.0;
-            btxy = btxyProvider.getFloat(gridPointIndex);
         } else {
-            btx = btxProvider.getFloat(gridPointIndex);
-            bty = btyProvider.getFloat(gridPointIndex);
-            btxy = btxyProvider.getFloat(gridPointIndex);
+            btx = rotation.getBtx(gridPointIndex);
+            bty = rotation.getBty(gridPointIndex);
         }
+        final double btxy = rotation.getBtxy(gridPointIndex);
+
+        return compute(btx, bty, btxy, aa, ab, bb);
+    }
 
+    private float compute(double btx, double bty, double btxy, double aa, double ab, double bb) {
         final float result;
         if (accuracy) {
             result = computeRA(btx, bty, btxy, aa, ab, bb);
@@ -16,14 +16,10 @@
 
 package org.esa.beam.dataio.smos;
 
-import org.esa.beam.framework.datamodel.Product;
-
-import java.util.Map;
-
 class FPHVI extends FP {
 
-    FPHVI(Product product, Map<String, AbstractValueProvider> valueProviderMap, boolean accuracy) {
-        super(product, valueProviderMap, accuracy, true);
+    FPHVI(Rotation rotation, boolean accuracy) {
+        super(rotation, accuracy, true);
     }
 
     @Override
@@ -16,14 +16,10 @@
 
 package org.esa.beam.dataio.smos;
 
-import org.esa.beam.framework.datamodel.Product;
-
-import java.util.Map;
-
 class FPV extends FP {
 
-    FPV(Product product, Map<String, AbstractValueProvider> valueProviderMap, boolean accuracy) {
-        super(product, valueProviderMap, accuracy, false);
+    FPV(Rotation rotation, boolean accuracy) {
+        super(rotation, accuracy, false);
     }
 
     @Override
@@ -155,6 +155,34 @@ class GlobalSmosFile extends ExplorerFile {
                     return noDataValue;
                 }
             }
+
+            @Override
+            public final void getValues(int[] seqnums, byte[] values, byte noDataValue) {
+                for (int i = 0; i < seqnums.length; i++) {
+                    values[i] = getValue(seqnums[i], noDataValue);
+                }
+            }
+
+            @Override
+            public final void getValues(int[] seqnums, short[] values, short noDataValue) {
+                for (int i = 0; i < seqnums.length; i++) {
+                    values[i] = getValue(seqnums[i], noDataValue);
+                }
+            }
+
+            @Override
+            public final void getValues(int[] seqnums, int[] values, int noDataValue) {
+                for (int i = 0; i < seqnums.length; i++) {
+                    values[i] = getValue(seqnums[i], noDataValue);
+                }
+            }
+
+            @Override
+            public final void getValues(int[] seqnums, float[] values, float noDataValue) {
+                for (int i = 0; i < seqnums.length; i++) {
+                    values[i] = getValue(seqnums[i], noDataValue);
+                }
+            }
         };
     }
 
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import com.bc.ceres.binio.CompoundData;
+import org.esa.beam.smos.dgg.SmosDgg;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+
+/**
+ * An immutable columnar view of the geolocation of the grid points in a
+ * SMOS product file. The longitudes, latitudes, grid point IDs and sequence
+ * numbers of all grid points are held in primitive arrays.
+ * <p/>
+ * The longitudes are those stored in the product file, i.e. they are not
+ * normalised to [-180, 180].
+ *
+ * @since SMOS-Box 3.0
+ */
+public final class GridPointGeolocation implements PointList {
+
+    private final float[] lons;
+    private final float[] lats;
+    private final int[] gridPointIds;
+    private final int[] seqnums;
+
+    private GridPointGeolocation(float[] lons, float[] lats, int[] gridPointIds, int[] seqnums) {
+        this.lons = lons;
+        this.lats = lats;
+        this.gridPointIds = gridPointIds;
+        this.seqnums = seqnums;
+    }
+
+    static GridPointGeolocation create(GridPointList gridPointList) throws IOException {
+        final int lonIndex = gridPointList.getCompoundType().getMemberIndex(SmosConstants.GRID_POINT_LON_NAME);
+        final int latIndex = gridPointList.getCompoundType().getMemberIndex(SmosConstants.GRID_POINT_LAT_NAME);
+        final int idIndex = gridPointList.getCompoundType().getMemberIndex(SmosConstants.GRID_POINT_ID_NAME);
+
+        final int gridPointCount = gridPointList.getElementCount();
+        final float[] lons = new float[gridPointCount];
+        final float[] lats = new float[gridPointCount];
+        final int[] gridPointIds = new int[gridPointCount];
+        final int[] seqnums = new int[gridPointCount];
+
+        for (int i = 0; i < gridPointCount; i++) {
+            final CompoundData gridPointData = gridPointList.getCompound(i);
+            final int gridPointId = gridPointData.getInt(idIndex);
+            if (gridPointId < SmosDgg.MIN_GRID_POINT_ID || gridPointId > SmosDgg.MAX_GRID_POINT_ID) {
+                throw new IOException(MessageFormat.format("Invalid Grid Point ID {0} at index {1}.", gridPointId, i));
+            }
+            lons[i] = gridPointData.getFloat(lonIndex);
+            lats[i] = gridPointData.getFloat(latIndex);
+            gridPointIds[i] = gridPointId;
+            seqnums[i] = SmosDgg.gridPointIdToSeqnum(gridPointId);
+        }
+
+        return new GridPointGeolocation(lons, lats, gridPointIds, seqnums);
+    }
+
+    @Override
+    public int getElementCount() {
+        return gridPointIds.length;
+    }
+
+    @Override
+    public double getLon(int i) {
+        return lons[i];
+    }
+
+    @Override
+    public double getLat(int i) {
+        return lats[i];
+    }
+
+    public int getGridPointId(int i) {
+        return gridPointIds[i];
+    }
+
+    public int getSeqnum(int i) {
+        return seqnums[i];
+    }
+
+    /**
+     * Returns the longitudes of all grid points.
+     *
+     * @return a copy of the longitudes.
+     */
+    public float[] getLons() {
+        return lons.clone();
+    }
+
+    /**
+     * Returns the latitudes of all grid points.
+     *
+     * @return a copy of the latitudes.
+     */
+    public float[] getLats() {
+        return lats.clone();
+    }
+
+    /**
+     * Returns the IDs of all grid points.
+     *
+     * @return a copy of the grid point IDs.
+     */
+    public int[] getGridPointIds() {
+        return gridPointIds.clone();
+    }
+
+    /**
+     * Returns the sequence numbers of all grid points.
+     *
+     * @return a copy of the sequence numbers.
+     */
+    public int[] getSeqnums() {
+        return seqnums.clone();
+    }
+}
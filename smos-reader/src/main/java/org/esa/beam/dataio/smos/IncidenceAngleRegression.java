@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+/**
+ * Accumulates the incidence angles of the observations of a grid point for each
+ * polarisation, so that the observed values can be interpolated linearly to the
+ * center browse incidence angle. The sums of the observed values are accumulated
+ * by the caller.
+ *
+ * @since SMOS-Box 3.0
+ */
+final class IncidenceAngleRegression {
+
+    private final int[] counts;
+    private final double[] sx;
+    private final double[] sxx;
+    private final boolean[] hasLower;
+    private final boolean[] hasUpper;
+
+    IncidenceAngleRegression(int polarizationCount) {
+        counts = new int[polarizationCount];
+        sx = new double[polarizationCount];
+        sxx = new double[polarizationCount];
+        hasLower = new boolean[polarizationCount];
+        hasUpper = new boolean[polarizationCount];
+    }
+
+    void add(int polarization, double incidenceAngle) {
+        sx[polarization] += incidenceAngle;
+        sxx[polarization] += incidenceAngle * incidenceAngle;
+        counts[polarization]++;
+
+        if (!hasLower[polarization]) {
+            hasLower[polarization] = incidenceAngle <= BrowseValueCache.CENTER_BROWSE_INCIDENCE_ANGLE;
+        }
+        if (!hasUpper[polarization]) {
+            hasUpper[polarization] = incidenceAngle > BrowseValueCache.CENTER_BROWSE_INCIDENCE_ANGLE;
+        }
+    }
+
+    /**
+     * Tells whether a value can be interpolated for a polarisation, which requires
+     * observations below and above the center browse incidence angle.
+     *
+     * @param polarization the polarisation.
+     *
+     * @return {@code true} if a value can be interpolated, {@code false} otherwise.
+     */
+    boolean isValid(int polarization) {
+        return hasLower[polarization] && hasUpper[polarization];
+    }
+
+    /**
+     * Interpolates the observed values of a polarisation to the center browse incidence angle.
+     *
+     * @param polarization the polarisation.
+     * @param sy           the sum of the observed values.
+     * @param sxy          the sum of the products of incidence angle and observed value.
+     *
+     * @return the interpolated value.
+     */
+    double interpolate(int polarization, double sy, double sxy) {
+        final int count = counts[polarization];
+        final double a = (count * sxy - sx[polarization] * sy) /
+                         (count * sxx[polarization] - sx[polarization] * sx[polarization]);
+        final double b = (sy - a * sx[polarization]) / count;
+        return a * BrowseValueCache.CENTER_BROWSE_INCIDENCE_ANGLE + b;
+    }
+}
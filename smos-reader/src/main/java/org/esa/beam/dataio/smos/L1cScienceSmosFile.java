@@ -29,13 +29,10 @@ import org.esa.beam.framework.datamodel.ProductData;
 import org.esa.beam.smos.EEFilePair;
 import org.esa.beam.smos.SmosUtils;
 
-import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.*;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 /**
@@ -48,10 +45,8 @@ import java.util.concurrent.Future;
 public class L1cScienceSmosFile extends L1cSmosFile {
 
     private static final String INCIDENCE_ANGLE_NAME = "Incidence_Angle";
-
-    private static final double CENTER_BROWSE_INCIDENCE_ANGLE = 42.5;
-    private static final double MIN_BROWSE_INCIDENCE_ANGLE = 37.5;
-    private static final double MAX_BROWSE_INCIDENCE_ANGLE = 52.5;
+    private static final String BROWSE_CACHE_CAPACITY_PROPERTY_NAME = "beam.smos.browseCacheCapacity";
+    private static final int DEFAULT_BROWSE_CACHE_CAPACITY = 16384;
 
     private final Map<String, AbstractValueProvider> valueProviderMap = new HashMap<>(17);
     private final int flagsIndex;
@@ -60,6 +55,7 @@ public class L1cScienceSmosFile extends L1cSmosFile {
     private final double incidenceAngleScalingFactor;
     private final SequenceData snapshotList;
     private final CompoundType snapshotType;
+    private final BrowseValueCache browseValueCache;
 
     private final Future<SnapshotInfo> snapshotInfoFuture;
 
@@ -82,13 +78,9 @@ public class L1cScienceSmosFile extends L1cSmosFile {
             throw new IOException("Data block does not include snapshot list.");
         }
         snapshotType = (CompoundType) snapshotList.getType().getElementType();
+        browseValueCache = createBrowseValueCache(bandDescriptors);
 
-        snapshotInfoFuture = Executors.newSingleThreadExecutor().submit(new Callable<SnapshotInfo>() {
-            @Override
-            public SnapshotInfo call() throws IOException {
-                return createSnapshotInfo();
-            }
-        });
+        snapshotInfoFuture = SnapshotInfoBuilder.submit(this, flagsIndex, snapshotIdOfPixelIndex);
     }
 
     private double getIncidenceAngleScalingFactor(Family<BandDescriptor> descriptors) {
@@ -100,9 +92,50 @@ public class L1cScienceSmosFile extends L1cSmosFile {
         throw new IllegalStateException("No incidence angle scaling factor found.");
     }
 
+    private BrowseValueCache createBrowseValueCache(Family<BandDescriptor> descriptors) {
+        final List<BandDescriptor> descriptorList = descriptors.asList();
+        final int[] memberIndexes = new int[descriptorList.size()];
+        final int[] polarizations = new int[descriptorList.size()];
+
+        int channelCount = 0;
+        for (final BandDescriptor descriptor : descriptorList) {
+            if (descriptor.isVisible() && descriptor.getPolarization() >= 0) {
+                final int memberIndex = getBtDataType().getMemberIndex(descriptor.getMemberName());
+                if (memberIndex >= 0) {
+                    memberIndexes[channelCount] = memberIndex;
+                    polarizations[channelCount] = descriptor.getPolarization();
+                    channelCount++;
+                }
+            }
+        }
+        final int capacity = Math.max(1, Math.min(getGridPointCount(), Integer.getInteger(
+                BROWSE_CACHE_CAPACITY_PROPERTY_NAME, DEFAULT_BROWSE_CACHE_CAPACITY)));
+
+        return new BrowseValueCache(Arrays.copyOf(memberIndexes, channelCount),
+                                    Arrays.copyOf(polarizations, channelCount),
+                                    flagsIndex, incidenceAngleIndex, incidenceAngleScalingFactor, capacity) {
+            @Override
+            protected double[][] readBtData(int gridPointIndex, int[] memberIndexes) throws IOException {
+                return L1cScienceSmosFile.this.readBtData(gridPointIndex, memberIndexes);
+            }
+        };
+    }
+
+    /**
+     * Precomputes the browse values of all grid points, so that all browse values
+     * are served in constant time afterwards. Precomputation is done in parallel.
+     */
+    public final void precomputeBrowseValues() {
+        if (!browseValueCache.isPrecomputed()) {
+            browseValueCache.precompute(getGridPointCount());
+        }
+    }
+
     @Override
     public void close() {
+        snapshotInfoFuture.cancel(true);
         valueProviderMap.clear();
+        browseValueCache.dispose();
         super.close();
     }
 
@@ -139,6 +172,12 @@ public class L1cScienceSmosFile extends L1cSmosFile {
         return valueProvider;
     }
 
+    @Override
+    protected final boolean isValueStoreApplicable(ValueProvider valueProvider) {
+        // the values of L1c science bands depend on the snapshot selected
+        return false;
+    }
+
     @Override
     protected final MultiLevelImage createSourceImage(Band band, ValueProvider valueProvider) {
         // todo - make source image reset itself and fire node-data-changed, if affected by snapshot ID (rq-20100121)
@@ -149,6 +188,14 @@ public class L1cScienceSmosFile extends L1cSmosFile {
         return snapshotList.getCompound(snapshotIndex);
     }
 
+    final CompoundType getSnapshotType() {
+        return snapshotType;
+    }
+
+    final int getSnapshotCount() {
+        return snapshotList.getElementCount();
+    }
+
     public boolean hasSnapshotInfo() {
         return snapshotInfoFuture.isDone();
     }
@@ -192,6 +239,10 @@ public class L1cScienceSmosFile extends L1cSmosFile {
     }
 
     CompoundData getSnapshotBtData(int gridPointIndex, int polarization, long snapshotId) throws IOException {
+        final SnapshotIndex snapshotIndex = getSnapshotIndex();
+        if (snapshotIndex != null) {
+            return getSnapshotBtData(snapshotIndex, gridPointIndex, polarization, snapshotId);
+        }
         final SequenceData btDataList = getBtDataList(gridPointIndex);
         final int elementCount = btDataList.getElementCount();
 
@@ -220,183 +271,78 @@ public class L1cScienceSmosFile extends L1cSmosFile {
         return null;
     }
 
-    private double getInterpolatedValue(int gridPointIndex, int memberIndex, int polarization) throws IOException {
-        final SequenceData btDataList = getBtDataList(gridPointIndex);
-        final int elementCount = btDataList.getElementCount();
-
-        int count = 0;
-        double sx = 0;
-        double sy = 0;
-        double sxx = 0;
-        double sxy = 0;
-
-        boolean hasLower = false;
-        boolean hasUpper = false;
-
-        for (int i = 0; i < elementCount; ++i) {
-            final CompoundData btData = btDataList.getCompound(i);
-            final int flags = btData.getInt(flagsIndex);
-
-            if (polarization == 4 || polarization == (flags & 3) || (polarization & flags & 2) != 0) {
-                final double incidenceAngle = incidenceAngleScalingFactor * btData.getInt(incidenceAngleIndex);
-
-                if (incidenceAngle >= MIN_BROWSE_INCIDENCE_ANGLE && incidenceAngle <= MAX_BROWSE_INCIDENCE_ANGLE) {
-                    final float value = btData.getFloat(memberIndex);
-
-                    sx += incidenceAngle;
-                    sy += value;
-                    sxx += incidenceAngle * incidenceAngle;
-                    sxy += incidenceAngle * value;
-                    count++;
-
-                    if (!hasLower) {
-                        hasLower = incidenceAngle <= CENTER_BROWSE_INCIDENCE_ANGLE;
-                    }
-                    if (!hasUpper) {
-                        hasUpper = incidenceAngle > CENTER_BROWSE_INCIDENCE_ANGLE;
-                    }
-                }
+    private SnapshotIndex getSnapshotIndex() {
+        if (snapshotInfoFuture.isDone() && !snapshotInfoFuture.isCancelled()) {
+            try {
+                return snapshotInfoFuture.get().getSnapshotIndex();
+            } catch (InterruptedException | ExecutionException e) {
+                return null;
             }
         }
-        if (hasLower && hasUpper) {
-            final double a = (count * sxy - sx * sy) / (count * sxx - sx * sx);
-            final double b = (sy - a * sx) / count;
-            return a * CENTER_BROWSE_INCIDENCE_ANGLE + b;
-        }
-
-        throw new IOException(MessageFormat.format(
-                "No data found for grid point ''{0}'' and polarisation ''{1}''.", gridPointIndex, polarization));
+        return null;
     }
 
-    private int getCombinedFlags(int gridPointIndex, int polarization) throws IOException {
+    private CompoundData getSnapshotBtData(SnapshotIndex snapshotIndex, int gridPointIndex, int polarization,
+                                           long snapshotId) throws IOException {
+        final int btRecordIndex = snapshotIndex.getBtRecordIndex(snapshotId, gridPointIndex);
+        if (btRecordIndex == -1) {
+            return null;
+        }
         final SequenceData btDataList = getBtDataList(gridPointIndex);
         final int elementCount = btDataList.getElementCount();
 
-        int combinedFlags = 0;
-
-        boolean hasLower = false;
-        boolean hasUpper = false;
-
-        for (int i = 0; i < elementCount; ++i) {
+        for (int i = btRecordIndex; i < elementCount; ++i) {
             final CompoundData btData = btDataList.getCompound(i);
+            if (btData.getLong(snapshotIdOfPixelIndex) != snapshotId) {
+                break;
+            }
             final int flags = btData.getInt(flagsIndex);
-
-            if (polarization == 4 || polarization == (flags & 3) || (polarization & flags & 2) != 0) {
-                final double incidenceAngle = incidenceAngleScalingFactor * btData.getInt(incidenceAngleIndex);
-
-                if (incidenceAngle >= MIN_BROWSE_INCIDENCE_ANGLE && incidenceAngle <= MAX_BROWSE_INCIDENCE_ANGLE) {
-                    combinedFlags |= flags;
-
-                    if (!hasLower) {
-                        hasLower = incidenceAngle <= CENTER_BROWSE_INCIDENCE_ANGLE;
-                    }
-                    if (!hasUpper) {
-                        hasUpper = incidenceAngle > CENTER_BROWSE_INCIDENCE_ANGLE;
-                    }
-                }
+            if (polarization == 4 || // for flags (they do not depend on polarisation)
+                    polarization == (flags & 1) || // for x or y polarisation (dual pol)
+                    (polarization & flags & 2) != 0) { // for xy polarisation (full pol, real and imaginary)
+                return btData;
             }
         }
-        if (hasLower && hasUpper) {
-            return combinedFlags;
-        }
 
-        throw new IOException(MessageFormat.format(
-                "No data found for grid point ''{0}'' and polarisation ''{1}''.", gridPointIndex, polarization));
+        return null;
     }
 
-    private SnapshotInfo createSnapshotInfo() throws IOException {
-        final Set<Long> all = new TreeSet<>();
-        final Set<Long> x = new TreeSet<>();
-        final Set<Long> y = new TreeSet<>();
-        final Set<Long> xy = new TreeSet<>();
-
-        final Map<Long, Rectangle2D> snapshotAreaMap = new TreeMap<>();
-        final int latIndex = getGridPointType().getMemberIndex("Latitude");
-        final int lonIndex = getGridPointType().getMemberIndex("Longitude");
-
-        final GridPointList gridPointList = getGridPointList();
-        final int gridPointCount = getGridPointCount();
-
-        for (int i = 0; i < gridPointCount; i++) {
-            final SequenceData btList = getBtDataList(i);
-            final int btCount = btList.getElementCount();
-
-            if (btCount > 0) {
-                final CompoundData gridData = gridPointList.getCompound(i);
-                double lon = gridData.getDouble(lonIndex);
-                double lat = gridData.getDouble(latIndex);
-                // normalisation to [-180, 180] necessary for some L1c test products
-                if (lon > 180.0) {
-                    lon -= 360.0;
-                }
-                final Rectangle2D rectangle = DggUtils.createGridPointRectangle(lon, lat);
-
-                long lastId = -1;
-                for (int j = 0; j < btCount; j++) {
-                    final CompoundData btData = btList.getCompound(j);
-                    final long id = btData.getLong(snapshotIdOfPixelIndex);
-
-                    if (lastId != id) { // snapshots are ordered
-                        all.add(id);
-                        if (snapshotAreaMap.containsKey(id)) {
-                            // todo: rq/rq - snapshots on the anti-meridian, use area instead of rectangle (2009-10-22)
-                            snapshotAreaMap.get(id).add(rectangle);
-                        } else {
-                            snapshotAreaMap.put(id, rectangle);
-                        }
-                        lastId = id;
-                    }
-
-                    final int flags = btData.getInt(flagsIndex);
-                    switch (flags & SmosConstants.L1C_POL_MODE_FLAGS_MASK) {
-                        case SmosConstants.L1C_POL_MODE_X:
-                            x.add(id);
-                            break;
-                        case SmosConstants.L1C_POL_MODE_Y:
-                            y.add(id);
-                            break;
-                        case SmosConstants.L1C_POL_MODE_XY1:
-                        case SmosConstants.L1C_POL_MODE_XY2:
-                            xy.add(id);
-                            break;
-                    }
-                }
-            }
-        }
-
-        final Map<Long, Integer> snapshotIndexMap = new TreeMap<>();
-        final int snapshotIdIndex = snapshotType.getMemberIndex(SmosConstants.SNAPSHOT_ID_NAME);
-        final int snapshotCount = snapshotList.getElementCount();
-
-        for (int i = 0; i < snapshotCount; i++) {
-            final long id = getSnapshotData(i).getLong(snapshotIdIndex);
-            if (all.contains(id)) {
-                snapshotIndexMap.put(id, i);
-            }
+    private double getInterpolatedValue(int gridPointIndex, int memberIndex, int polarization) throws IOException {
+        final int channel = browseValueCache.getChannel(memberIndex, polarization);
+        if (channel == -1) {
+            throw new IOException(MessageFormat.format(
+                    "No data found for grid point ''{0}'' and polarisation ''{1}''.", gridPointIndex, polarization));
         }
+        return browseValueCache.getInterpolatedValue(gridPointIndex, channel);
+    }
 
-        return new SnapshotInfo(snapshotIndexMap, all, x, y, xy, snapshotAreaMap);
+    private int getCombinedFlags(int gridPointIndex, int polarization) throws IOException {
+        return browseValueCache.getCombinedFlags(gridPointIndex, polarization);
     }
 
     private void addRotatedDualPolBands(Product product, Map<String, AbstractValueProvider> valueProviderMap) {
         final Family<BandDescriptor> descriptors = Dddb.getInstance().getBandDescriptors(getDataFormat().getName());
 
+        final Rotation btRotation = new Rotation(product, valueProviderMap, "BT_Value_X", "BT_Value_Y", null);
+        final Rotation raRotation = new Rotation(product, valueProviderMap, "Pixel_Radiometric_Accuracy_X",
+                                                 "Pixel_Radiometric_Accuracy_Y", null);
+
         DP vp;
         BandDescriptor descriptor;
 
-        vp = new DPH(product, valueProviderMap, false);
+        vp = new DPH(btRotation, false);
         descriptor = descriptors.getMember("BT_Value_H");
         addRotatedBand(product, descriptor, vp);
 
-        vp = new DPV(product, valueProviderMap, false);
+        vp = new DPV(btRotation, false);
         descriptor = descriptors.getMember("BT_Value_V");
         addRotatedBand(product, descriptor, vp);
 
-        vp = new DPH(product, valueProviderMap, true);
+        vp = new DPH(raRotation, true);
         descriptor = descriptors.getMember("Pixel_Radiometric_Accuracy_H");
         addRotatedBand(product, descriptor, vp);
 
-        vp = new DPV(product, valueProviderMap, true);
+        vp = new DPV(raRotation, true);
         descriptor = descriptors.getMember("Pixel_Radiometric_Accuracy_V");
         addRotatedBand(product, descriptor, vp);
 
@@ -407,32 +353,37 @@ public class L1cScienceSmosFile extends L1cSmosFile {
     private void addRotatedFullPolBands(Product product, Map<String, AbstractValueProvider> valueProviderMap) {
         final Family<BandDescriptor> descriptors = Dddb.getInstance().getBandDescriptors(getDataFormat().getName());
 
+        final Rotation btRotation = new Rotation(product, valueProviderMap, "BT_Value_X", "BT_Value_Y",
+                                                 "BT_Value_XY_Real");
+        final Rotation raRotation = new Rotation(product, valueProviderMap, "Pixel_Radiometric_Accuracy_X",
+                                                 "Pixel_Radiometric_Accuracy_Y", "Pixel_Radiometric_Accuracy_XY");
+
         FP vp;
         BandDescriptor descriptor;
 
-        vp = new FPH(product, valueProviderMap, false);
+        vp = new FPH(btRotation, false);
         descriptor = descriptors.getMember("BT_Value_H");
         addRotatedBand(product, descriptor, vp);
 
-        vp = new FPV(product, valueProviderMap, false);
+        vp = new FPV(btRotation, false);
         descriptor = descriptors.getMember("BT_Value_V");
         addRotatedBand(product, descriptor, vp);
 
-        vp = new FPHVR(product, valueProviderMap, false);
+        vp = new FPHVR(btRotation, false);
         descriptor = descriptors.getMember("BT_Value_HV_Real");
         addRotatedBand(product, descriptor, vp);
 
         ProductHelper.addVirtualBand(product, descriptors.getMember("BT_Value_HV_Imag"), "BT_Value_XY_Imag");
 
-        vp = new FPH(product, valueProviderMap, true);
+        vp = new FPH(raRotation, true);
         descriptor = descriptors.getMember("Pixel_Radiometric_Accuracy_H");
         addRotatedBand(product, descriptor, vp);
 
-        vp = new FPV(product, valueProviderMap, true);
+        vp = new FPV(raRotation, true);
         descriptor = descriptors.getMember("Pixel_Radiometric_Accuracy_V");
         addRotatedBand(product, descriptor, vp);
 
-        vp = new FPHVR(product, valueProviderMap, true);
+        vp = new FPHVR(raRotation, true);
         descriptor = descriptors.getMember("Pixel_Radiometric_Accuracy_HV");
         addRotatedBand(product, descriptor, vp);
 
@@ -19,9 +19,6 @@ import com.bc.ceres.binio.*;
 import org.esa.beam.dataio.smos.dddb.BandDescriptor;
 import org.esa.beam.framework.datamodel.Band;
 import org.esa.beam.smos.EEFilePair;
-import org.jdom.Document;
-import org.jdom.Element;
-import org.jdom.Namespace;
 
 import java.io.IOException;
 import java.text.MessageFormat;
@@ -40,16 +37,15 @@ public class L1cSmosFile extends SmosFile {
     private final double radiometricAccuracyScale;
     private final double pixelFootprintScale;
 
+    private final Object btDataIndexLock = new Object();
+    private volatile BtDataListIndex btDataIndex;
+
     protected L1cSmosFile(EEFilePair eeFilePair, DataContext dataContext) throws IOException {
         super(eeFilePair, dataContext);
 
-        final Document document = getDocument();
-        final Namespace namespace = document.getRootElement().getNamespace();
-        final Element specificProductHeader = getElement(document.getRootElement(), TAG_SPECIFIC_PRODUCT_HEADER);
-
-        radiometricAccuracyScale = Double.valueOf(
-                specificProductHeader.getChildText("Radiometric_Accuracy_Scale", namespace));
-        pixelFootprintScale = Double.valueOf(specificProductHeader.getChildText("Pixel_Footprint_Scale", namespace));
+        final EEHeader header = getHeader();
+        radiometricAccuracyScale = Double.valueOf(header.getSpecificProductHeaderValue("Radiometric_Accuracy_Scale"));
+        pixelFootprintScale = Double.valueOf(header.getSpecificProductHeaderValue("Pixel_Footprint_Scale"));
 
         btDataListIndex = getGridPointType().getMemberIndex(SmosConstants.BT_DATA_LIST_NAME);
         if (btDataListIndex == -1) {
@@ -90,6 +86,90 @@ public class L1cSmosFile extends SmosFile {
     }
 
     public final SequenceData getBtDataList(int gridPointIndex) throws IOException {
-        return getGridPointData(gridPointIndex).getSequence(btDataListIndex);
+        final CompoundData gridPointData = getGridPointData(gridPointIndex);
+        // the BT data list is resolved lazily
+        synchronized (gridPointData) {
+            return gridPointData.getSequence(btDataListIndex);
+        }
+    }
+
+    /**
+     * Returns the number of records in the BT data list of a grid point.
+     *
+     * @param gridPointIndex the grid point index.
+     *
+     * @return the number of BT data records.
+     *
+     * @throws IOException if an I/O error occurred.
+     */
+    public final int getBtRecordCount(int gridPointIndex) throws IOException {
+        return getBtDataListIndex().getBtRecordCount(gridPointIndex);
+    }
+
+    /**
+     * Reads selected members of all records in the BT data list of a grid point into
+     * caller-provided arrays. The whole BT data list is read in a single operation.
+     *
+     * @param gridPointIndex the grid point index.
+     * @param memberIndexes  the indexes of the BT data members to be read.
+     * @param targets        the target arrays, one for each member requested. Each target
+     *                       array must provide space for {@link #getBtRecordCount(int)} records.
+     *
+     * @return the number of BT data records read.
+     *
+     * @throws IOException if an I/O error occurred.
+     */
+    public final int readBtData(int gridPointIndex, int[] memberIndexes, double[][] targets) throws IOException {
+        return getBtDataListIndex().read(getDataBlock().getContext(), gridPointIndex, memberIndexes, targets);
+    }
+
+    /**
+     * Reads selected integral members of all records in the BT data list of a grid point
+     * into caller-provided arrays. Unlike reading into {@code double} arrays, the values
+     * of {@code LONG} and {@code ULONG} members are read without loss of precision.
+     *
+     * @param gridPointIndex the grid point index.
+     * @param memberIndexes  the indexes of the BT data members to be read.
+     * @param targets        the target arrays, one for each member requested. Each target
+     *                       array must provide space for {@link #getBtRecordCount(int)} records.
+     *
+     * @return the number of BT data records read.
+     *
+     * @throws IOException if an I/O error occurred.
+     */
+    public final int readBtData(int gridPointIndex, int[] memberIndexes, long[][] targets) throws IOException {
+        return getBtDataListIndex().read(getDataBlock().getContext(), gridPointIndex, memberIndexes, targets);
+    }
+
+    /**
+     * Reads selected members of all records in the BT data list of a grid point.
+     *
+     * @param gridPointIndex the grid point index.
+     * @param memberIndexes  the indexes of the BT data members to be read.
+     *
+     * @return the values read, indexed by member and record.
+     *
+     * @throws IOException if an I/O error occurred.
+     */
+    public final double[][] readBtData(int gridPointIndex, int... memberIndexes) throws IOException {
+        final double[][] targets = new double[memberIndexes.length][getBtRecordCount(gridPointIndex)];
+        readBtData(gridPointIndex, memberIndexes, targets);
+
+        return targets;
+    }
+
+    private BtDataListIndex getBtDataListIndex() throws IOException {
+        BtDataListIndex index = btDataIndex;
+        if (index == null) {
+            // the file itself is not locked, because visiting all BT data lists takes a while
+            synchronized (btDataIndexLock) {
+                index = btDataIndex;
+                if (index == null) {
+                    index = BtDataListIndex.create(this);
+                    btDataIndex = index;
+                }
+            }
+        }
+        return index;
     }
 }
@@ -30,15 +30,15 @@ import org.esa.beam.jai.ResolutionLevel;
 import org.esa.beam.smos.EEFilePair;
 import org.esa.beam.smos.dgg.SmosDgg;
 import org.esa.beam.util.io.FileUtils;
-import org.jdom.Document;
-import org.jdom.Element;
-import org.jdom.Namespace;
 
 import java.awt.*;
 import java.awt.geom.Area;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.RenderedImage;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -68,17 +68,15 @@ class LaiFile extends ExplorerFile {
 
     private final long zoneIndexMultiplier;
     private volatile List<Dffg> gridList = null;
+    private volatile String gridName = null;
 
     LaiFile(EEFilePair eeFilePair, DataContext dataContext) throws IOException {
         super(eeFilePair, dataContext);
 
-        final Document document = getDocument();
-        final Namespace namespace = document.getRootElement().getNamespace();
-        final Element specificProductHeader = getElement(document.getRootElement(), TAG_SPECIFIC_PRODUCT_HEADER);
-
-        scalingOffset = Double.valueOf(specificProductHeader.getChildText(TAG_SCALING_OFFSET, namespace));
-        scalingFactor = Double.valueOf(specificProductHeader.getChildText(TAG_SCALING_FACTOR, namespace));
-        final int k = Integer.valueOf(specificProductHeader.getChildText(TAG_DIGITS_TO_SHIFT, namespace));
+        final EEHeader header = getHeader();
+        scalingOffset = Double.valueOf(header.getSpecificProductHeaderValue(TAG_SCALING_OFFSET));
+        scalingFactor = Double.valueOf(header.getSpecificProductHeaderValue(TAG_SCALING_FACTOR));
+        final int k = Integer.valueOf(header.getSpecificProductHeaderValue(TAG_DIGITS_TO_SHIFT));
         zoneIndexMultiplier = (long) Math.pow(10.0, k);
     }
 
@@ -99,6 +97,22 @@ class LaiFile extends ExplorerFile {
         return new Area(new Rectangle2D.Double(-180.0, -90.0, 360.0, 180.0));
     }
 
+    // LAI files with the same zone definitions and the same cell index encoding share the same grid name
+    String getGridName() {
+        String result = gridName;
+
+        if (result == null) {
+            synchronized (this) {
+                result = gridName;
+                if (result == null) {
+                    gridName = result = createGridName(getGridList(), zoneIndexMultiplier);
+                }
+            }
+        }
+
+        return result;
+    }
+
     @Override
     public Product createProduct() throws IOException {
         final String productName = FileUtils.getFilenameWithoutExtension(getDataFile());
@@ -220,6 +234,25 @@ class LaiFile extends ExplorerFile {
         return result;
     }
 
+    // the zone index multiplier is part of the name, because it is part of the cell indexes
+    static String createGridName(List<Dffg> gridList, long zoneIndexMultiplier) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (final Dffg grid : gridList) {
+            grid.updateDigest(digest);
+        }
+        digest.update(ByteBuffer.allocate(8).putLong(zoneIndexMultiplier).array());
+        final StringBuilder sb = new StringBuilder("DFFG-");
+        for (final byte b : digest.digest()) {
+            sb.append(String.format("%02x", b & 0xFF));
+        }
+        return sb.toString();
+    }
+
     private List<Dffg> createGridList() throws IOException {
         final SequenceData zoneSequenceData = getDataBlock().getSequence(DFFG_LAI_NAME);
         if (zoneSequenceData == null) {
@@ -269,6 +302,11 @@ class LaiFile extends ExplorerFile {
             return LaiFile.this.getArea();
         }
 
+        @Override
+        public final String getGridName() {
+            return LaiFile.this.getGridName();
+        }
+
         @Override
         public final long getCellIndex(double lon, double lat) {
             return LaiFile.this.getCellIndex(lon, lat);
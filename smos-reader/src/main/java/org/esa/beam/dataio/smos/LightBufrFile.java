@@ -15,9 +15,9 @@ import org.esa.beam.framework.datamodel.Band;
 import org.esa.beam.framework.datamodel.Product;
 import org.esa.beam.framework.datamodel.ProductData;
 import org.esa.beam.jai.ResolutionLevel;
+import org.esa.beam.smos.SmosUtils;
 import org.esa.beam.smos.dgg.SmosDgg;
 import org.esa.beam.util.io.FileUtils;
-import ucar.ma2.Array;
 import ucar.nc2.Attribute;
 import ucar.nc2.NetcdfFile;
 import ucar.nc2.Sequence;
@@ -27,19 +27,27 @@ import java.awt.Dimension;
 import java.awt.geom.Area;
 import java.awt.image.RenderedImage;
 import java.io.File;
+import java.io.FileFilter;
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
+ * A SMOS Light-BUFR product file. Several BUFR files, e.g. the granules of an orbit,
+ * can be combined into a single product. In this case, the observations of all files
+ * are indexed by grid cell together, so the browse values of grid cells observed in
+ * more than a single file are interpolated from the observations of all files.
+ *
  * @author Ralf Quast
  */
-class LightBufrFile implements ProductFile {
+public class LightBufrFile implements ProductFile {
 
     private static final String ATTR_NAME_MISSING_VALUE = "missing_value";
     private static final String ATTR_NAME_ADD_OFFSET = "add_offset";
@@ -49,60 +57,256 @@ class LightBufrFile implements ProductFile {
     private static final String VAR_NAME_INCIDENCE_ANGLE = "Incidence_angle";
     private static final String VAR_NAME_POLARISATION = "Polarisation";
     private static final String VAR_NAME_SNAPSHOT_IDENTIFIER = "Snapshot_identifier";
-
-    private static final double CENTER_BROWSE_INCIDENCE_ANGLE = 42.5;
-    private static final double MIN_BROWSE_INCIDENCE_ANGLE = 37.5;
-    private static final double MAX_BROWSE_INCIDENCE_ANGLE = 52.5;
-
-    private final NetcdfFile ncfile;
+    private static final String VAR_NAME_YEAR = "Year";
+    private static final String VAR_NAME_MONTH = "Month";
+    private static final String VAR_NAME_DAY = "Day";
+    private static final String VAR_NAME_HOUR = "Hour";
+    private static final String VAR_NAME_MINUTE = "Minute";
+    private static final String VAR_NAME_PREFIX_SECOND = "Second";
+
+    // the file name contains the creation time and the sensing start and stop times
+    private static final Pattern FILE_NAME_TIMES_PATTERN = Pattern.compile("_\\d{14}_(\\d{14})_(\\d{14})_");
+
+    private final File dataFile;
+    private final NetcdfFile[] ncfiles;
+    private final SequenceReader[] sequenceReaders;
     private final Grid grid;
     private final Area area;
-    private final Map<Long, List<Integer>> indexMap;
-    private final Accessor snapshotIdAccessor;
+    private final ObservationIndex observationIndex;
+    private final BufrSnapshotIndex snapshotIndex;
+    private final SnapshotInfo snapshotInfo;
     private final Accessor polFlagsAccessor;
     private final Accessor incidenceAngleAccessor;
-    private final Map<String, Array> arrayMap;
-    private final CellValueCombinator cellValueCombinator;
-    private final CellValueInterpolator cellValueInterpolator;
+    private final Map<String, ConcatenatedVariable> variableMap;
+    private final Map<String, Integer> channelMap;
+    private final Map<String, CellValueProviderImpl> valueProviderMap;
+    private final CellBrowseValueCache browseValueCache;
 
     public LightBufrFile(File file) throws IOException {
-        ncfile = NetcdfFile.open(file.getPath());
-        grid = new Grid(new ReducedGaussianGrid(512));
+        this(file, new File[]{file});
+    }
 
-        final Sequence observationSequence = getObservationSequence();
-        final Accessor lonAccessor = new Accessor(observationSequence.findVariable(VAR_NAME_LON));
-        final Accessor latAccessor = new Accessor(observationSequence.findVariable(VAR_NAME_LAT));
+    /**
+     * Creates a product file combining several BUFR files into a single product. All
+     * files must have the same observation sequence variables.
+     *
+     * @param dataFile the location of the product, e.g. the directory containing the files.
+     * @param files    the BUFR files, ordered by time.
+     *
+     * @throws IOException if a file could not be opened.
+     */
+    public LightBufrFile(File dataFile, File[] files) throws IOException {
+        if (files.length == 0) {
+            throw new IllegalArgumentException("files.length == 0");
+        }
+        this.dataFile = dataFile;
+        ncfiles = new NetcdfFile[files.length];
+        for (int i = 0; i < files.length; i++) {
+            try {
+                ncfiles[i] = NetcdfFile.open(files[i].getPath());
+            } catch (IOException e) {
+                closeFiles();
+                throw e;
+            }
+        }
+        sequenceReaders = new SequenceReader[files.length];
+        for (int i = 0; i < files.length; i++) {
+            sequenceReaders[i] = new SequenceReader(getObservationSequence(ncfiles[i]), this,
+                                                    ChunkCache.getInstance());
+        }
+        grid = new Grid(512);
+        variableMap = new HashMap<>(15);
+
+        final Accessor lonAccessor = createAccessor(VAR_NAME_LON);
+        final Accessor latAccessor = createAccessor(VAR_NAME_LAT);
+        final Accessor snapshotIdAccessor = createAccessor(VAR_NAME_SNAPSHOT_IDENTIFIER);
+        polFlagsAccessor = createAccessor(VAR_NAME_POLARISATION);
+        incidenceAngleAccessor = createAccessor(VAR_NAME_INCIDENCE_ANGLE);
+        final TimeAccessor timeAccessor = createTimeAccessor();
+        // the observations are counted in a single pass, which reads the chunks of all variables above
         final int elementCount = lonAccessor.getElementCount();
 
-        final PointList pointList = createPointList(lonAccessor, latAccessor);
-        area = DggUtils.computeArea(pointList);
-
-
-        indexMap = new HashMap<>(pointList.getElementCount());
+        final int[] observationCellIds = new int[elementCount];
+        final BufrSnapshotIndex.Builder snapshotIndexBuilder = new BufrSnapshotIndex.Builder(elementCount);
+        long lastSnapshotId = -1;
         for (int i = 0; i < elementCount; i++) {
             if (lonAccessor.isValid(i) && latAccessor.isValid(i)) {
                 final double lon = lonAccessor.getDouble(i);
                 final double lat = latAccessor.getDouble(i);
-                final long cellIndex = grid.getCellIndex(lon, lat);
-                if (!indexMap.containsKey(cellIndex)) {
-                    indexMap.put(cellIndex, new ArrayList<Integer>(50));
+                observationCellIds[i] = grid.getCellIndex(lon, lat);
+
+                if (snapshotIdAccessor.isValid(i) && polFlagsAccessor.isValid(i)) {
+                    final long snapshotId = (long) snapshotIdAccessor.getDouble(i);
+                    // all observations of a snapshot are made at the same time
+                    double time = Double.NaN;
+                    if (timeAccessor != null && snapshotId != lastSnapshotId) {
+                        time = timeAccessor.getTime(i);
+                    }
+                    snapshotIndexBuilder.add(i, snapshotId, polFlagsAccessor.getInt(i), lon, lat, time);
+                    lastSnapshotId = snapshotId;
+                }
+            } else {
+                observationCellIds[i] = -1;
+            }
+        }
+        observationIndex = ObservationIndex.create(observationCellIds);
+        snapshotIndex = snapshotIndexBuilder.build(observationIndex);
+        snapshotInfo = snapshotIndex.createSnapshotInfo();
+
+        final PointList pointList = createPointList(lonAccessor, latAccessor);
+        area = DggUtils.computeArea(pointList);
+        // the locations, snapshot IDs and times of the observations are not used anymore
+        lonAccessor.dispose();
+        latAccessor.dispose();
+        snapshotIdAccessor.dispose();
+        if (timeAccessor != null) {
+            timeAccessor.dispose();
+        }
+
+        channelMap = new HashMap<>(31);
+        valueProviderMap = new HashMap<>(31);
+        browseValueCache = createBrowseValueCache(getObservationSequence());
+    }
+
+    /**
+     * Returns the BUFR files in a directory, which can be combined into a single product.
+     *
+     * @param dir the directory.
+     *
+     * @return the BUFR files, ordered by name and hence by time.
+     */
+    static File[] listFiles(File dir) {
+        final File[] files = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && SmosUtils.isLightBufrType(file.getName());
+            }
+        });
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    private CellBrowseValueCache createBrowseValueCache(Sequence sequence) throws IOException {
+        final List<BandDescriptor> descriptorList = Dddb.getInstance().getBandDescriptors("BUFR").asList();
+        final int[] channelVariables = new int[descriptorList.size()];
+        final int[] channelPolarizations = new int[descriptorList.size()];
+        final boolean[] channelCombined = new boolean[descriptorList.size()];
+        final List<Variable> variableList = new ArrayList<>();
+
+        int channelCount = 0;
+        for (final BandDescriptor descriptor : descriptorList) {
+            final Variable variable = sequence.findVariable(descriptor.getMemberName());
+            if (descriptor.isVisible() && getDataType(variable) != -1) {
+                int variableIndex = variableList.indexOf(variable);
+                if (variableIndex == -1) {
+                    variableIndex = variableList.size();
+                    variableList.add(variable);
                 }
-                indexMap.get(cellIndex).add(i);
+                channelMap.put(descriptor.getBandName(), channelCount);
+                channelVariables[channelCount] = variableIndex;
+                channelPolarizations[channelCount] = descriptor.getPolarization();
+                channelCombined[channelCount] = isCombined(variable);
+                channelCount++;
             }
         }
+        final ConcatenatedVariable[] variables = new ConcatenatedVariable[variableList.size()];
+        for (int i = 0; i < variables.length; i++) {
+            variables[i] = getConcatenatedVariable(variableList.get(i).getShortName());
+        }
 
-        snapshotIdAccessor = new Accessor(observationSequence.findVariable(VAR_NAME_SNAPSHOT_IDENTIFIER));
-        polFlagsAccessor = new Accessor(observationSequence.findVariable(VAR_NAME_POLARISATION));
-        incidenceAngleAccessor = new Accessor(observationSequence.findVariable(VAR_NAME_INCIDENCE_ANGLE));
+        return new CellBrowseValueCache(Arrays.copyOf(channelVariables, channelCount),
+                                        Arrays.copyOf(channelPolarizations, channelCount),
+                                        Arrays.copyOf(channelCombined, channelCount),
+                                        observationIndex.getCellCount()) {
+            @Override
+            protected double[][] readObservations(int cell) throws IOException {
+                return LightBufrFile.this.readObservations(cell, variables);
+            }
+        };
+    }
+
+    /**
+     * Precomputes the browse values of all grid cells, so that all browse values
+     * are served in constant time afterwards. Precomputation is done in parallel.
+     */
+    public final void precomputeBrowseValues() {
+        browseValueCache.precompute();
+    }
+
+    public boolean hasSnapshotInfo() {
+        return true;
+    }
 
-        arrayMap = new HashMap<>(15);
-        cellValueCombinator = new CellValueCombinator();
-        cellValueInterpolator = new CellValueInterpolator();
+    public SnapshotInfo getSnapshotInfo() {
+        return snapshotInfo;
+    }
+
+    /**
+     * Returns the time of a snapshot.
+     *
+     * @param snapshotId the snapshot ID.
+     *
+     * @return the time of the snapshot, or {@code null} if the snapshot or its time is not known.
+     */
+    public ProductData.UTC getSnapshotTime(long snapshotId) {
+        final int snapshot = snapshotIndex.getSnapshotIndex(snapshotId);
+        if (snapshot == -1) {
+            return null;
+        }
+        final double time = snapshotIndex.getTime(snapshot);
+        if (Double.isNaN(time)) {
+            return null;
+        }
+        return new ProductData.UTC(time);
+    }
+
+    /**
+     * Selects the snapshot whose observations are displayed by a band. The images of
+     * the band have to be reset, when the snapshot has been changed.
+     *
+     * @param bandName   the name of the band.
+     * @param snapshotId the snapshot ID, or {@code -1} for displaying the browse values.
+     *
+     * @return {@code true} if the snapshot has been changed.
+     */
+    public boolean setSnapshotId(String bandName, long snapshotId) {
+        final CellValueProviderImpl valueProvider;
+        synchronized (valueProviderMap) {
+            valueProvider = valueProviderMap.get(bandName);
+        }
+        if (valueProvider == null || valueProvider.getSnapshotId() == snapshotId) {
+            return false;
+        }
+        valueProvider.setSnapshotId(snapshotId);
+        return true;
     }
 
     @Override
     public void close() throws IOException {
-        ncfile.close();
+        for (final SequenceReader sequenceReader : sequenceReaders) {
+            sequenceReader.close();
+        }
+        ChunkCache.getInstance().removeChunks(this);
+        closeFiles();
+    }
+
+    private void closeFiles() throws IOException {
+        IOException exception = null;
+        for (final NetcdfFile ncfile : ncfiles) {
+            if (ncfile != null) {
+                try {
+                    ncfile.close();
+                } catch (IOException e) {
+                    exception = e;
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
     }
 
     @Override
@@ -114,7 +318,8 @@ class LightBufrFile implements ProductFile {
 
         product.setFileLocation(getDataFile());
         product.setPreferredTileSize(512, 512);
-        final List<Attribute> globalAttributes = ncfile.getGlobalAttributes();
+        // the global attributes of the first file are representative for all files
+        final List<Attribute> globalAttributes = ncfiles[0].getGlobalAttributes();
         product.getMetadataRoot().addElement(
                 MetadataUtils.readAttributeList(globalAttributes, "Global_Attributes"));
         final Sequence sequence = getObservationSequence();
@@ -137,7 +342,7 @@ class LightBufrFile implements ProductFile {
 
     @Override
     public File getDataFile() {
-        return new File(ncfile.getLocation());
+        return dataFile;
     }
 
     private void addBands(Product product) throws IOException {
@@ -145,18 +350,24 @@ class LightBufrFile implements ProductFile {
         final Family<BandDescriptor> descriptors = Dddb.getInstance().getBandDescriptors("BUFR");
         for (final BandDescriptor d : descriptors.asList()) {
             final Variable v = sequence.findVariable(d.getMemberName());
-            if (v.getDataType().isEnum()) {
-                final int dataType = ProductData.TYPE_UINT8;
+            final int dataType = getDataType(v);
+            if (dataType != -1) {
                 addBand(product, v, dataType, d);
-            } else {
-                final int dataType = DataTypeUtils.getRasterDataType(v);
-                if (dataType != -1) {
-                    addBand(product, v, dataType, d);
-                }
             }
         }
     }
 
+    private static int getDataType(Variable variable) {
+        if (variable.getDataType().isEnum()) {
+            return ProductData.TYPE_UINT8;
+        }
+        return DataTypeUtils.getRasterDataType(variable);
+    }
+
+    private static boolean isCombined(Variable variable) {
+        return "SMOS_information_flag".equals(variable.getShortName());
+    }
+
     private void addBand(Product product, Variable variable, int dataType, BandDescriptor descriptor) throws
                                                                                                       IOException {
         if (!descriptor.isVisible()) {
@@ -191,13 +402,44 @@ class LightBufrFile implements ProductFile {
                                            descriptor.getFlagDescriptors());
         }
 
-        final CellValueProvider valueProvider = createCellValueProvider(variable, descriptor.getPolarization());
+        final CellValueProviderImpl valueProvider = createCellValueProvider(variable, descriptor);
+        synchronized (valueProviderMap) {
+            valueProviderMap.put(band.getName(), valueProvider);
+        }
         band.setSourceImage(createSourceImage(band, valueProvider));
         band.setImageInfo(ProductHelper.createImageInfo(band, descriptor));
     }
 
     private void setTimes(Product product) {
-        // TODO - implement
+        final double startTime = snapshotIndex.getStartTime();
+        final double endTime = snapshotIndex.getEndTime();
+        if (!Double.isNaN(startTime) && !Double.isNaN(endTime)) {
+            product.setStartTime(new ProductData.UTC(startTime));
+            product.setEndTime(new ProductData.UTC(endTime));
+        } else {
+            // the times in the file names are ordered lexicographically
+            String startTimeString = null;
+            String endTimeString = null;
+            for (final NetcdfFile ncfile : ncfiles) {
+                final Matcher matcher = FILE_NAME_TIMES_PATTERN.matcher(new File(ncfile.getLocation()).getName());
+                if (matcher.find()) {
+                    if (startTimeString == null || matcher.group(1).compareTo(startTimeString) < 0) {
+                        startTimeString = matcher.group(1);
+                    }
+                    if (endTimeString == null || matcher.group(2).compareTo(endTimeString) > 0) {
+                        endTimeString = matcher.group(2);
+                    }
+                }
+            }
+            if (startTimeString != null) {
+                try {
+                    product.setStartTime(ProductData.UTC.parse(startTimeString, "yyyyMMddHHmmss"));
+                    product.setEndTime(ProductData.UTC.parse(endTimeString, "yyyyMMddHHmmss"));
+                } catch (ParseException ignored) {
+                    // the times are not known
+                }
+            }
+        }
     }
 
     private MultiLevelImage createSourceImage(final Band band, final CellValueProvider valueProvider) {
@@ -213,51 +455,141 @@ class LightBufrFile implements ProductFile {
         };
     }
 
-    private CellValueProvider createCellValueProvider(Variable variable, int polarization) throws IOException {
-        if ("SMOS_information_flag".equals(variable.getShortName())) {
-            return new CellValueProviderImpl(variable, polarization, cellValueCombinator);
-        } else {
-            return new CellValueProviderImpl(variable, polarization, cellValueInterpolator);
+    private CellValueProviderImpl createCellValueProvider(Variable variable, BandDescriptor descriptor) {
+        return new CellValueProviderImpl(variable, descriptor.getPolarization(),
+                                         channelMap.get(descriptor.getBandName()));
+    }
+
+    private ConcatenatedVariable getConcatenatedVariable(String variableName) throws IOException {
+        synchronized (variableMap) {
+            if (!variableMap.containsKey(variableName)) {
+                variableMap.put(variableName, createConcatenatedVariable(variableName));
+            }
+            return variableMap.get(variableName);
+        }
+    }
+
+    private ConcatenatedVariable createConcatenatedVariable(String variableName) throws IOException {
+        final ChunkedVariable[] parts = new ChunkedVariable[ncfiles.length];
+        for (int i = 0; i < ncfiles.length; i++) {
+            final Variable variable = getObservationSequence(ncfiles[i]).findVariable(variableName);
+            if (variable == null) {
+                throw new IOException(MessageFormat.format("File ''{0}'': variable ''{1}'' not found.",
+                                                           ncfiles[i].getLocation(), variableName));
+            }
+            parts[i] = sequenceReaders[i].createVariable(variable);
+        }
+        return new ConcatenatedVariable(parts);
+    }
+
+    // the values of an accessor are shared with the bands, so every member is cached once only
+    private Accessor createAccessor(String variableName) throws IOException {
+        return new Accessor(getObservationSequence().findVariable(variableName),
+                            getConcatenatedVariable(variableName));
+    }
+
+    private void disposeConcatenatedVariable(String variableName) {
+        final ConcatenatedVariable variable;
+        synchronized (variableMap) {
+            variable = variableMap.remove(variableName);
+        }
+        if (variable != null) {
+            variable.dispose();
+        }
+    }
+
+    // returns null, if the observation sequence does not include the time
+    private TimeAccessor createTimeAccessor() throws IOException {
+        final Sequence sequence = getObservationSequence();
+        String secondName = null;
+        for (final Variable variable : sequence.getVariables()) {
+            // the name of the seconds variable depends on the accuracy
+            if (variable.getShortName().startsWith(VAR_NAME_PREFIX_SECOND)) {
+                secondName = variable.getShortName();
+                break;
+            }
+        }
+        if (secondName == null) {
+            return null;
         }
+        for (final String name : new String[]{VAR_NAME_YEAR, VAR_NAME_MONTH, VAR_NAME_DAY, VAR_NAME_HOUR,
+                VAR_NAME_MINUTE}) {
+            if (sequence.findVariable(name) == null) {
+                return null;
+            }
+        }
+        return new TimeAccessor(createAccessor(VAR_NAME_YEAR), createAccessor(VAR_NAME_MONTH),
+                                createAccessor(VAR_NAME_DAY), createAccessor(VAR_NAME_HOUR),
+                                createAccessor(VAR_NAME_MINUTE), createAccessor(secondName));
     }
 
+    private double[][] readObservations(int cell, ConcatenatedVariable[] variables) throws IOException {
+        final int start = observationIndex.getStart(cell);
+        final int count = observationIndex.getEnd(cell) - start;
+        final double[][] observations = new double[variables.length + 2][count];
+        final double[] polFlags = observations[0];
+        final double[] incidenceAngles = observations[1];
+
+        for (int k = 0; k < count; k++) {
+            final int index = observationIndex.getObservationIndex(start + k);
+            if (polFlagsAccessor.isValid(index) && incidenceAngleAccessor.isValid(index)) {
+                polFlags[k] = polFlagsAccessor.getInt(index);
+                incidenceAngles[k] = incidenceAngleAccessor.getDouble(index);
+                // the values of observations not used for browsing are not read
+                if (incidenceAngles[k] >= BrowseValueCache.MIN_BROWSE_INCIDENCE_ANGLE &&
+                    incidenceAngles[k] <= BrowseValueCache.MAX_BROWSE_INCIDENCE_ANGLE) {
+                    for (int v = 0; v < variables.length; v++) {
+                        observations[v + 2][k] = variables[v].getDouble(index);
+                    }
+                }
+            } else {
+                incidenceAngles[k] = Double.NaN;
+            }
+        }
+
+        return observations;
+    }
+
+    // the variables of the first file are representative for all files
     private Sequence getObservationSequence() {
+        return getObservationSequence(ncfiles[0]);
+    }
+
+    private static Sequence getObservationSequence(NetcdfFile ncfile) {
         return (Sequence) ncfile.findVariable("obs");
     }
 
+    // returns the location of the first observation in each cell
     private PointList createPointList(Accessor lonAccessor, Accessor latAccessor) throws IOException {
-        final int elementCount = lonAccessor.getElementCount();
-        final Set<Integer> cellIndexSet = new HashSet<>();
-        final List<Point> pointList = new ArrayList<>(elementCount);
+        final int[] firstObservations = new int[observationIndex.getCellCount()];
+        for (int cell = 0; cell < firstObservations.length; cell++) {
+            firstObservations[cell] = observationIndex.getObservationIndex(observationIndex.getStart(cell));
+        }
+        // the observations are read in the order they are stored
+        Arrays.sort(firstObservations);
 
-        for (int i = 0; i < elementCount; i++) {
-            if (lonAccessor.isValid(i) && latAccessor.isValid(i)) {
-                final double lon = lonAccessor.getDouble(i);
-                final double lat = latAccessor.getDouble(i);
-                final int cellIndex = grid.getCellIndex(lon, lat);
-                if (cellIndexSet.add(cellIndex)) {
-                    pointList.add(new Point(lon, lat));
-                }
-            }
+        final Point[] points = new Point[firstObservations.length];
+        for (int k = 0; k < points.length; k++) {
+            final int i = firstObservations[k];
+            points[k] = new Point(lonAccessor.getDouble(i), latAccessor.getDouble(i));
         }
 
-        return new ObservationPointList(pointList.toArray(new Point[pointList.size()]));
+        return new ObservationPointList(points);
     }
 
     private final class CellValueProviderImpl implements CellValueProvider {
 
         private final Variable variable;
         private final int polarization;
-        private final CellValueAccumulator cellValueAccumulator;
+        private final int channel;
 
-        private volatile Array array;
+        private volatile ConcatenatedVariable values;
         private volatile long snapshotId;
 
-        private CellValueProviderImpl(Variable variable, int polarization,
-                                      CellValueAccumulator cellValueAccumulator) {
+        private CellValueProviderImpl(Variable variable, int polarization, int channel) {
             this.variable = variable;
             this.polarization = polarization;
-            this.cellValueAccumulator = cellValueAccumulator;
+            this.channel = channel;
             snapshotId = -1;
         }
 
@@ -270,27 +602,30 @@ class LightBufrFile implements ProductFile {
         }
 
 
-        private Array getArray() throws IOException {
-            if (array == null) {
-                synchronized (this) {
-                    final String variableName = variable.getShortName();
-                    synchronized (arrayMap) {
-                        if (!arrayMap.containsKey(variableName)) {
-                            arrayMap.put(variableName, variable.read());
-                        }
-                        array = arrayMap.get(variableName);
-                    }
-                }
+        private ConcatenatedVariable getValues() throws IOException {
+            if (values == null) {
+                values = getConcatenatedVariable(variable.getShortName());
             }
-            return array;
+            return values;
         }
 
         @Override
         public Area getArea() {
-            // TODO: implement area for snapshots - rq20140512
+            if (snapshotId != -1) {
+                final Area snapshotArea = snapshotInfo.getArea(snapshotId);
+                if (snapshotArea == null) {
+                    return new Area();
+                }
+                return new Area(snapshotArea);
+            }
             return LightBufrFile.this.getArea();
         }
 
+        @Override
+        public String getGridName() {
+            return LightBufrFile.this.grid.getName();
+        }
+
         @Override
         public long getCellIndex(double lon, double lat) {
             return LightBufrFile.this.grid.getCellIndex(lon, lat);
@@ -298,15 +633,15 @@ class LightBufrFile implements ProductFile {
 
         @Override
         public byte getValue(long cellIndex, byte noDataValue) {
-            final List<Integer> indexes = LightBufrFile.this.indexMap.get(cellIndex);
-            if (indexes == null) {
+            final int cell = observationIndex.getCell(cellIndex);
+            if (cell == -1) {
                 return noDataValue;
             }
             try {
                 if (snapshotId == -1) {
-                    return cellValueAccumulator.accumulate(cellIndex, getArray(), polarization).byteValue();
+                    return getBrowseValue(cell).byteValue();
                 } else {
-                    return getSnapshotValue(cellIndex, noDataValue).byteValue();
+                    return getSnapshotValue(cell, noDataValue).byteValue();
                 }
             } catch (IOException e) {
                 return noDataValue;
@@ -315,15 +650,15 @@ class LightBufrFile implements ProductFile {
 
         @Override
         public short getValue(long cellIndex, short noDataValue) {
-            final List<Integer> indexes = LightBufrFile.this.indexMap.get(cellIndex);
-            if (indexes == null) {
+            final int cell = observationIndex.getCell(cellIndex);
+            if (cell == -1) {
                 return noDataValue;
             }
             try {
                 if (snapshotId == -1) {
-                    return cellValueAccumulator.accumulate(cellIndex, getArray(), polarization).shortValue();
+                    return getBrowseValue(cell).shortValue();
                 } else {
-                    return getSnapshotValue(cellIndex, noDataValue).shortValue();
+                    return getSnapshotValue(cell, noDataValue).shortValue();
                 }
             } catch (IOException e) {
                 return noDataValue;
@@ -332,15 +667,15 @@ class LightBufrFile implements ProductFile {
 
         @Override
         public int getValue(long cellIndex, int noDataValue) {
-            final List<Integer> indexes = LightBufrFile.this.indexMap.get(cellIndex);
-            if (indexes == null) {
+            final int cell = observationIndex.getCell(cellIndex);
+            if (cell == -1) {
                 return noDataValue;
             }
             try {
                 if (snapshotId == -1) {
-                    return cellValueAccumulator.accumulate(cellIndex, getArray(), polarization).intValue();
+                    return getBrowseValue(cell).intValue();
                 } else {
-                    return getSnapshotValue(cellIndex, noDataValue).intValue();
+                    return getSnapshotValue(cell, noDataValue).intValue();
                 }
             } catch (IOException e) {
                 return noDataValue;
@@ -349,36 +684,42 @@ class LightBufrFile implements ProductFile {
 
         @Override
         public float getValue(long cellIndex, float noDataValue) {
-            final List<Integer> indexes = LightBufrFile.this.indexMap.get(cellIndex);
-            if (indexes == null) {
+            final int cell = observationIndex.getCell(cellIndex);
+            if (cell == -1) {
                 return noDataValue;
             }
             try {
                 if (snapshotId == -1) {
-                    return cellValueAccumulator.accumulate(cellIndex, getArray(), polarization).floatValue();
+                    return getBrowseValue(cell).floatValue();
                 } else {
-                    return getSnapshotValue(cellIndex, noDataValue).floatValue();
+                    return getSnapshotValue(cell, noDataValue).floatValue();
                 }
             } catch (IOException e) {
                 return noDataValue;
             }
         }
 
-        private Number getSnapshotValue(long cellIndex, Number noDataValue) throws IOException {
-            final List<Integer> indexList = indexMap.get(cellIndex);
-
-            for (final Integer index : indexList) {
-                if (snapshotIdAccessor.isValid(index)) {
-                    if (snapshotId == snapshotIdAccessor.getInt(index)) {
-                        if (polFlagsAccessor.isValid(index)) {
-                            final int polFlags = polFlagsAccessor.getInt(index);
-                            if (polarization == 4 || // for flags (they do not depend on polarisation)
-                                polarization == (polFlags & 1) || // for x or y polarisation (dual pol)
-                                (polarization & polFlags & 2) != 0) { // for xy polarisation (full pol, real and imaginary)
-                                return (Number) getArray().getObject(index);
-                            }
-                        }
-                    }
+        private Number getBrowseValue(int cell) throws IOException {
+            if (browseValueCache.isCombined(channel)) {
+                return browseValueCache.getCombinedFlags(cell, channel);
+            }
+            return browseValueCache.getInterpolatedValue(cell, channel);
+        }
+
+        private Number getSnapshotValue(int cell, Number noDataValue) throws IOException {
+            final int snapshot = snapshotIndex.getSnapshotIndex(snapshotId);
+            if (snapshot == -1) {
+                return noDataValue;
+            }
+            // only the observations of the cell belonging to the snapshot are visited
+            final int end = snapshotIndex.getEnd(snapshot, cell);
+            for (int k = snapshotIndex.getStart(snapshot, cell); k < end; k++) {
+                final int index = snapshotIndex.getObservationIndex(k);
+                final int polFlags = polFlagsAccessor.getInt(index);
+                if (polarization == 4 || // for flags (they do not depend on polarisation)
+                    polarization == (polFlags & 1) || // for x or y polarisation (dual pol)
+                    (polarization & polFlags & 2) != 0) { // for xy polarisation (full pol, real and imaginary)
+                    return (Number) getValues().getObject(index);
                 }
             }
             return noDataValue;
@@ -388,9 +729,15 @@ class LightBufrFile implements ProductFile {
     private static final class Grid {
 
         private final PlanetaryGrid grid;
+        private final String name;
 
-        public Grid(PlanetaryGrid grid) {
-            this.grid = grid;
+        public Grid(int numRows) {
+            grid = new ReducedGaussianGrid(numRows);
+            name = "ReducedGaussianGrid-" + numRows;
+        }
+
+        public String getName() {
+            return name;
         }
 
         public int getCellIndex(double lon, double lat) {
@@ -422,35 +769,92 @@ class LightBufrFile implements ProductFile {
         }
     }
 
-    private static final class Accessor {
+    private final class Accessor {
 
-        private final Array array;
+        private final String variableName;
+        private final ConcatenatedVariable values;
         private final Number missingValue;
         private final double addOffset;
         private final double scaleFactor;
 
-        public Accessor(Variable variable) throws IOException {
-            array = variable.read();
+        public Accessor(Variable variable, ConcatenatedVariable values) {
+            variableName = variable.getShortName();
+            this.values = values;
             missingValue = getAttributeValue(variable, ATTR_NAME_MISSING_VALUE);
             addOffset = getAttributeValue(variable, ATTR_NAME_ADD_OFFSET, 0.0);
             scaleFactor = getAttributeValue(variable, ATTR_NAME_SCALE_FACTOR, 1.0);
         }
 
-        public int getElementCount() {
-            return (int) array.getSize();
+        public int getElementCount() throws IOException {
+            return values.getElementCount();
         }
 
-        public boolean isValid(int i) {
-            return missingValue == null || array.getDouble(i) != missingValue.doubleValue();
+        public boolean isValid(int i) throws IOException {
+            return missingValue == null || values.getDouble(i) != missingValue.doubleValue();
         }
 
-        public double getDouble(int i) {
-            return array.getDouble(i) * scaleFactor + addOffset;
+        public double getDouble(int i) throws IOException {
+            return values.getDouble(i) * scaleFactor + addOffset;
         }
 
-        public int getInt(int i) {
-            return array.getInt(i);
+        public int getInt(int i) throws IOException {
+            return values.getInt(i);
         }
+
+        public void dispose() {
+            disposeConcatenatedVariable(variableName);
+        }
+    }
+
+    private static final class TimeAccessor {
+
+        private final Accessor yearAccessor;
+        private final Accessor monthAccessor;
+        private final Accessor dayAccessor;
+        private final Accessor hourAccessor;
+        private final Accessor minuteAccessor;
+        private final Accessor secondAccessor;
+
+        public TimeAccessor(Accessor yearAccessor, Accessor monthAccessor, Accessor dayAccessor,
+                            Accessor hourAccessor, Accessor minuteAccessor, Accessor secondAccessor) {
+            this.yearAccessor = yearAccessor;
+            this.monthAccessor = monthAccessor;
+            this.dayAccessor = dayAccessor;
+            this.hourAccessor = hourAccessor;
+            this.minuteAccessor = minuteAccessor;
+            this.secondAccessor = secondAccessor;
+        }
+
+        // returns the time in MJD 2000, or NaN if the time is not valid
+        public double getTime(int i) throws IOException {
+            if (!yearAccessor.isValid(i) || !monthAccessor.isValid(i) || !dayAccessor.isValid(i) ||
+                !hourAccessor.isValid(i) || !minuteAccessor.isValid(i) || !secondAccessor.isValid(i)) {
+                return Double.NaN;
+            }
+            return toMjd2000(yearAccessor.getInt(i), monthAccessor.getInt(i), dayAccessor.getInt(i),
+                             hourAccessor.getInt(i), minuteAccessor.getInt(i), secondAccessor.getDouble(i));
+        }
+
+        public void dispose() {
+            yearAccessor.dispose();
+            monthAccessor.dispose();
+            dayAccessor.dispose();
+            hourAccessor.dispose();
+            minuteAccessor.dispose();
+            secondAccessor.dispose();
+        }
+    }
+
+    // converts a date of the proleptic Gregorian calendar into days since 2000-01-01
+    static double toMjd2000(int year, int month, int day, int hour, int minute, double second) {
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = (y >= 0 ? y : y - 399) / 400;
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        final int days = era * 146097 + dayOfEra - 730425;
+
+        return days + (hour * 3600 + minute * 60 + second) / 86400.0;
     }
 
     private static final class Point {
@@ -487,103 +891,4 @@ class LightBufrFile implements ProductFile {
         }
         return attribute.getNumericValue();
     }
-
-    private static interface CellValueAccumulator {
-
-        Number accumulate(long cellIndex, Array array, int polarization) throws IOException;
-    }
-
-    private final class CellValueInterpolator implements CellValueAccumulator {
-
-        @Override
-        public Number accumulate(long cellIndex, Array array, int polarization) throws IOException {
-            final List<Integer> indexList = indexMap.get(cellIndex);
-
-            int count = 0;
-            double sx = 0;
-            double sy = 0;
-            double sxx = 0;
-            double sxy = 0;
-
-            boolean hasLower = false;
-            boolean hasUpper = false;
-
-            for (final Integer index : indexList) {
-                if (polFlagsAccessor.isValid(index) && incidenceAngleAccessor.isValid(index)) {
-                    final int polFlags = polFlagsAccessor.getInt(index);
-
-                    if (polarization == 4 || polarization == (polFlags & 3) || (polarization & polFlags & 2) != 0) {
-                        final double incidenceAngle = incidenceAngleAccessor.getDouble(index);
-
-                        if (incidenceAngle >= MIN_BROWSE_INCIDENCE_ANGLE && incidenceAngle <= MAX_BROWSE_INCIDENCE_ANGLE) {
-                            final double value = array.getDouble(index);
-
-                            sx += incidenceAngle;
-                            sy += value;
-                            sxx += incidenceAngle * incidenceAngle;
-                            sxy += incidenceAngle * value;
-                            count++;
-
-                            if (!hasLower) {
-                                hasLower = incidenceAngle <= CENTER_BROWSE_INCIDENCE_ANGLE;
-                            }
-                            if (!hasUpper) {
-                                hasUpper = incidenceAngle > CENTER_BROWSE_INCIDENCE_ANGLE;
-                            }
-                        }
-                    }
-                }
-            }
-            if (hasLower && hasUpper) {
-                final double a = (count * sxy - sx * sy) / (count * sxx - sx * sx);
-                final double b = (sy - a * sx) / count;
-                return a * CENTER_BROWSE_INCIDENCE_ANGLE + b;
-            }
-
-            throw new IOException(MessageFormat.format(
-                    "No data found for grid cell ''{0}'' and polarisation ''{1}''.", cellIndex, polarization));
-        }
-    }
-
-    private final class CellValueCombinator implements CellValueAccumulator {
-
-        @Override
-        public Number accumulate(long cellIndex, Array array, int polarization) throws IOException {
-            final List<Integer> indexList = indexMap.get(cellIndex);
-
-            boolean hasLower = false;
-            boolean hasUpper = false;
-            int combinedFlags = 0;
-
-            for (final Integer index : indexList) {
-                if (polFlagsAccessor.isValid(index) && incidenceAngleAccessor.isValid(index)) {
-                    final int polFlags = polFlagsAccessor.getInt(index);
-
-                    if (polarization == 4 || polarization == (polFlags & 3) || (polarization & polFlags & 2) != 0) {
-                        final double incidenceAngle = incidenceAngleAccessor.getDouble(index);
-
-                        if (incidenceAngle >= MIN_BROWSE_INCIDENCE_ANGLE && incidenceAngle <= MAX_BROWSE_INCIDENCE_ANGLE) {
-                            final int flags = array.getInt(index);
-
-                            combinedFlags |= flags;
-
-                            if (!hasLower) {
-                                hasLower = incidenceAngle <= CENTER_BROWSE_INCIDENCE_ANGLE;
-                            }
-                            if (!hasUpper) {
-                                hasUpper = incidenceAngle > CENTER_BROWSE_INCIDENCE_ANGLE;
-                            }
-                        }
-                    }
-                }
-            }
-            if (hasLower && hasUpper) {
-                return combinedFlags;
-            }
-
-            throw new IOException(MessageFormat.format(
-                    "No data found for grid cell ''{0}'' and polarisation ''{1}''.", cellIndex, polarization));
-        }
-    }
-
 }
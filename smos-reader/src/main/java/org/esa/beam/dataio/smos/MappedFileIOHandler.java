@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.IOHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.MessageFormat;
+
+/**
+ * A read-only I/O handler, which maps a file into memory. Reads are plain
+ * copies from the mapped memory, i.e. no system calls are involved.
+ * <p/>
+ * Files are mapped in windows of limited size, so files larger than 2 GB
+ * can be handled. Reads may span several windows. This class is thread-safe.
+ * <p/>
+ * Java provides no means to unmap a file explicitly. The mapped windows are released
+ * when they are garbage collected, which may happen long after the data context has
+ * been disposed. Until then the file is locked on Windows.
+ *
+ * @since SMOS-Box 3.0
+ */
+final class MappedFileIOHandler implements IOHandler {
+
+    static final int DEFAULT_WINDOW_SIZE = 1 << 30;
+
+    private final File file;
+    private final long size;
+    private final int windowSize;
+    private final ByteBuffer[] windows;
+
+    MappedFileIOHandler(File file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    MappedFileIOHandler(File file, int windowSize) throws IOException {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize < 1");
+        }
+        this.file = file;
+        this.windowSize = windowSize;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            final FileChannel channel = raf.getChannel();
+            size = channel.size();
+            windows = new ByteBuffer[(int) ((size + windowSize - 1) / windowSize)];
+            for (int i = 0; i < windows.length; i++) {
+                final long position = (long) i * windowSize;
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                                         Math.min(windowSize, size - position));
+            }
+            // the mapped windows remain valid when the channel is closed
+        }
+    }
+
+    @Override
+    public void read(DataContext context, byte[] data, long position) throws IOException {
+        if (position < 0) {
+            throw new IOException(MessageFormat.format(
+                    "File ''{0}'': cannot read at negative position {1}.", file, position));
+        }
+        int offset = 0;
+        int remaining = (int) Math.max(0, Math.min(data.length, size - position));
+        while (remaining > 0) {
+            // duplicates do not share their position, so concurrent reads do not interfere
+            final ByteBuffer window = windows[(int) (position / windowSize)].duplicate();
+            window.position((int) (position % windowSize));
+            final int length = Math.min(remaining, window.remaining());
+            window.get(data, offset, length);
+            offset += length;
+            position += length;
+            remaining -= length;
+        }
+    }
+
+    @Override
+    public void write(DataContext context, byte[] data, long position) throws IOException {
+        throw new IOException(MessageFormat.format("File ''{0}'' is opened for reading only.", file));
+    }
+
+    @Override
+    public long getMaxPosition() {
+        return size;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import com.bc.ceres.jai.NoDataRaster;
+
+import java.awt.image.SampleModel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A registry of no-data rasters, which are shared by all SMOS images with the
+ * same data type, tile size and no-data value.
+ *
+ * @since SMOS-Box 3.0
+ */
+final class NoDataRasters {
+
+    private NoDataRasters() {
+    }
+
+    /**
+     * Returns the shared no-data raster for a given sample model and no-data value.
+     *
+     * @param sampleModel the sample model of the image.
+     * @param noDataValue the no-data value.
+     *
+     * @return the no-data raster, or {@code null} if no such raster has been registered.
+     */
+    static NoDataRaster get(SampleModel sampleModel, double noDataValue) {
+        synchronized (Holder.RASTERS) {
+            return Holder.RASTERS.get(new Key(sampleModel, noDataValue));
+        }
+    }
+
+    /**
+     * Registers a no-data raster, unless a no-data raster has been registered
+     * for the same sample model and no-data value already.
+     *
+     * @param sampleModel the sample model of the image.
+     * @param noDataValue the no-data value.
+     * @param raster      the no-data raster.
+     *
+     * @return the no-data raster registered.
+     */
+    static NoDataRaster register(SampleModel sampleModel, double noDataValue, NoDataRaster raster) {
+        final Key key = new Key(sampleModel, noDataValue);
+        synchronized (Holder.RASTERS) {
+            final NoDataRaster registeredRaster = Holder.RASTERS.get(key);
+            if (registeredRaster != null) {
+                return registeredRaster;
+            }
+            Holder.RASTERS.put(key, raster);
+        }
+        return raster;
+    }
+
+    private static final class Key {
+
+        private final int dataType;
+        private final int width;
+        private final int height;
+        private final long noDataBits;
+
+        private Key(SampleModel sampleModel, double noDataValue) {
+            dataType = sampleModel.getDataType();
+            width = sampleModel.getWidth();
+            height = sampleModel.getHeight();
+            noDataBits = Double.doubleToLongBits(noDataValue);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return dataType == key.dataType && width == key.width && height == key.height &&
+                   noDataBits == key.noDataBits;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = dataType;
+            result = 31 * result + width;
+            result = 31 * result + height;
+            result = 31 * result + (int) (noDataBits ^ (noDataBits >>> 32));
+            return result;
+        }
+    }
+
+    // Initialization on demand holder idiom
+    private static class Holder {
+
+        private static final Map<Key, NoDataRaster> RASTERS = new HashMap<>();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import java.util.Arrays;
+
+/**
+ * Maps grid cells to the indexes of the observations located in these cells. The
+ * index is a compressed sparse row structure: the identifiers of all cells, which
+ * contain observations, are sorted in ascending order, and the observations of a
+ * cell are stored contiguously in a single array, in ascending order.
+ *
+ * @since SMOS-Box 3.0
+ */
+final class ObservationIndex {
+
+    private final int[] cellIds;
+    private final int[] offsets;
+    private final int[] observationIndexes;
+
+    private ObservationIndex(int[] cellIds, int[] offsets, int[] observationIndexes) {
+        this.cellIds = cellIds;
+        this.offsets = offsets;
+        this.observationIndexes = observationIndexes;
+    }
+
+    /**
+     * Creates a new observation index by means of a counting sort.
+     *
+     * @param observationCellIds the cell identifiers of all observations, negative for
+     *                           observations, which shall not be indexed.
+     *
+     * @return the observation index.
+     */
+    static ObservationIndex create(int[] observationCellIds) {
+        int maxCellId = -1;
+        for (final int cellId : observationCellIds) {
+            if (cellId > maxCellId) {
+                maxCellId = cellId;
+            }
+        }
+
+        // first pass: count the observations of each cell
+        final int[] counts = new int[maxCellId + 1];
+        int observationCount = 0;
+        for (final int cellId : observationCellIds) {
+            if (cellId >= 0) {
+                counts[cellId]++;
+                observationCount++;
+            }
+        }
+
+        int cellCount = 0;
+        for (final int count : counts) {
+            if (count != 0) {
+                cellCount++;
+            }
+        }
+        final int[] cellIds = new int[cellCount];
+        final int[] offsets = new int[cellCount + 1];
+        // the counts are replaced by the positions, where the next observation of a cell is stored
+        for (int cellId = 0, cell = 0, offset = 0; cellId < counts.length; cellId++) {
+            final int count = counts[cellId];
+            if (count != 0) {
+                cellIds[cell] = cellId;
+                offsets[cell] = offset;
+                counts[cellId] = offset;
+                offset += count;
+                cell++;
+            }
+        }
+        offsets[cellCount] = observationCount;
+
+        // second pass: store the observations of each cell
+        final int[] observationIndexes = new int[observationCount];
+        for (int i = 0; i < observationCellIds.length; i++) {
+            final int cellId = observationCellIds[i];
+            if (cellId >= 0) {
+                observationIndexes[counts[cellId]++] = i;
+            }
+        }
+
+        return new ObservationIndex(cellIds, offsets, observationIndexes);
+    }
+
+    int getCellCount() {
+        return cellIds.length;
+    }
+
+    /**
+     * Returns the position of a cell within this index.
+     *
+     * @param cellId the cell identifier.
+     *
+     * @return the position of the cell or {@code -1}, if the cell does not contain
+     *         any observations.
+     */
+    int getCell(long cellId) {
+        if (cellId < 0 || cellId > Integer.MAX_VALUE) {
+            return -1;
+        }
+        final int cell = Arrays.binarySearch(cellIds, (int) cellId);
+        if (cell < 0) {
+            return -1;
+        }
+        return cell;
+    }
+
+    int getCellId(int cell) {
+        return cellIds[cell];
+    }
+
+    /**
+     * Returns the position of the first observation of a cell.
+     *
+     * @param cell the position of the cell.
+     *
+     * @return the position of the first observation of the cell.
+     */
+    int getStart(int cell) {
+        return offsets[cell];
+    }
+
+    /**
+     * Returns the position following the last observation of a cell.
+     *
+     * @param cell the position of the cell.
+     *
+     * @return the position following the last observation of the cell.
+     */
+    int getEnd(int cell) {
+        return offsets[cell + 1];
+    }
+
+    int getObservationIndex(int i) {
+        return observationIndexes[i];
+    }
+}
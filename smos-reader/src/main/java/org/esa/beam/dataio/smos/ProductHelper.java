@@ -38,11 +38,8 @@ import org.esa.beam.framework.datamodel.VirtualBand;
 import org.esa.beam.framework.dataop.barithm.BandArithmetic;
 import org.esa.beam.smos.dgg.SmosDgg;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
-import org.jdom.Document;
 import org.jdom.Element;
-import org.jdom.JDOMException;
 import org.jdom.Namespace;
-import org.jdom.input.SAXBuilder;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.operation.TransformException;
 
@@ -51,7 +48,6 @@ import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.io.IOException;
-import java.text.MessageFormat;
 import java.util.Random;
 
 class ProductHelper {
@@ -163,22 +159,9 @@ class ProductHelper {
     }
 
     static void addMetadata(MetadataElement metadataElement, ExplorerFile explorerFile) throws IOException {
-        final Document document;
+        final EEHeader header = explorerFile.getHeader();
 
-        try {
-            document = new SAXBuilder().build(explorerFile.getHeaderFile());
-        } catch (JDOMException e) {
-            throw new IOException(MessageFormat.format(
-                    "File ''{0}'': Invalid document", explorerFile.getHeaderFile().getPath()), e);
-        }
-
-        final Namespace namespace = document.getRootElement().getNamespace();
-        if (namespace == null) {
-            throw new IOException(MessageFormat.format(
-                    "File ''{0}'': Missing namespace", explorerFile.getHeaderFile().getPath()));
-        }
-
-        addMetadata(metadataElement, document.getRootElement(), namespace);
+        addMetadata(metadataElement, header.getRootElement(), header.getNamespace());
     }
 
     static void addMetadata(MetadataElement metadataElement, Element xmlElement, Namespace namespace) {
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.Product;
+
+import java.awt.geom.Area;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The input stage of the bands rotated from the antenna to the surface frame. The
+ * rotation angles and the brightness temperatures (or radiometric accuracies) in
+ * the antenna frame are retrieved for all grid points of a tile at once, and the
+ * rotation coefficients are computed in a single loop.
+ * <p/>
+ * The inputs are shared by all rotated bands computed from the same brightness
+ * temperatures, i.e. the H, V and HV bands, so the inputs of a tile are retrieved
+ * only once for all of these bands.
+ *
+ * @since SMOS-Box 3.0
+ */
+final class Rotation {
+
+    private static final int CACHE_CAPACITY = 8;
+
+    private final AbstractValueProvider frxProvider;
+    private final AbstractValueProvider fryProvider;
+    private final AbstractValueProvider grxProvider;
+    private final AbstractValueProvider gryProvider;
+    private final AbstractValueProvider btxProvider;
+    private final AbstractValueProvider btyProvider;
+    private final AbstractValueProvider btxyProvider;
+
+    private final Map<Key, Inputs> cache;
+
+    /**
+     * Creates a new rotation stage.
+     *
+     * @param product          the product.
+     * @param valueProviderMap the value providers of the bands in the antenna frame.
+     * @param btxBandName      the name of the X band, may be {@code null}.
+     * @param btyBandName      the name of the Y band, may be {@code null}.
+     * @param btxyBandName     the name of the XY band, may be {@code null}.
+     */
+    Rotation(Product product, Map<String, AbstractValueProvider> valueProviderMap, String btxBandName,
+             String btyBandName, String btxyBandName) {
+        frxProvider = getValueProvider(product, "Faraday_Rotation_Angle_X", valueProviderMap);
+        fryProvider = getValueProvider(product, "Faraday_Rotation_Angle_Y", valueProviderMap);
+        grxProvider = getValueProvider(product, "Geometric_Rotation_Angle_X", valueProviderMap);
+        gryProvider = getValueProvider(product, "Geometric_Rotation_Angle_Y", valueProviderMap);
+        btxProvider = getValueProvider(product, btxBandName, valueProviderMap);
+        btyProvider = getValueProvider(product, btyBandName, valueProviderMap);
+        btxyProvider = getValueProvider(product, btxyBandName, valueProviderMap);
+
+        cache = new LinkedHashMap<Key, Inputs>(CACHE_CAPACITY, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Inputs> eldest) {
+                return size() > CACHE_CAPACITY;
+            }
+        };
+    }
+
+    private static AbstractValueProvider getValueProvider(Product product, String bandName,
+                                                          Map<String, AbstractValueProvider> map) {
+        if (bandName == null) {
+            return null;
+        }
+        final Band band = product.getBand(bandName);
+        if (band.isScalingApplied()) {
+            return new Scaler(map.get(band.getName()), band);
+        }
+        return map.get(band.getName());
+    }
+
+    Area getArea() {
+        return frxProvider.getArea();
+    }
+
+    int getGridPointIndex(int seqnum) {
+        return frxProvider.getGridPointIndex(seqnum);
+    }
+
+    /**
+     * Returns the distinct grid point indexes of a set of grid points, in the order
+     * of the grid point records in the product file.
+     *
+     * @param seqnums   the sequential numbers of the grid points.
+     * @param positions the positions of the grid points in the array returned, {@code -1}
+     *                  for grid points not included in the product.
+     *
+     * @return the distinct grid point indexes.
+     */
+    int[] getGridPointIndexes(int[] seqnums, int[] positions) {
+        final long[] keys = new long[seqnums.length];
+        for (int i = 0; i < seqnums.length; i++) {
+            keys[i] = ((long) getGridPointIndex(seqnums[i]) << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        final int[] gridPointIndexes = new int[keys.length];
+        int count = 0;
+        for (final long key : keys) {
+            final int gridPointIndex = (int) (key >> 32);
+            if (gridPointIndex == -1) {
+                positions[(int) key] = -1;
+            } else {
+                if (count == 0 || gridPointIndexes[count - 1] != gridPointIndex) {
+                    gridPointIndexes[count++] = gridPointIndex;
+                }
+                positions[(int) key] = count - 1;
+            }
+        }
+
+        return Arrays.copyOf(gridPointIndexes, count);
+    }
+
+    /**
+     * Returns the rotation angle of a single grid point.
+     *
+     * @param gridPointIndex the grid point index.
+     *
+     * @return the rotation angle (rad).
+     *
+     * @throws IOException if the angles could not be read.
+     */
+    double getAlpha(int gridPointIndex) throws IOException {
+        final double frx = frxProvider.getFloat(gridPointIndex);
+        final double fry = fryProvider.getFloat(gridPointIndex);
+        final double grx = grxProvider.getFloat(gridPointIndex);
+        final double gry = gryProvider.getFloat(gridPointIndex);
+
+        return computeAlpha(frx, fry, grx, gry);
+    }
+
+    float getBtx(int gridPointIndex) throws IOException {
+        return btxProvider.getFloat(gridPointIndex);
+    }
+
+    float getBty(int gridPointIndex) throws IOException {
+        return btyProvider.getFloat(gridPointIndex);
+    }
+
+    float getBtxy(int gridPointIndex) throws IOException {
+        return btxyProvider.getFloat(gridPointIndex);
+    }
+
+    /**
+     * Returns the inputs of a set of grid points. Inputs which cannot be read are
+     * {@code NaN}. Missing inputs are {@code null}.
+     *
+     * @param gridPointIndexes the grid point indexes, {@code -1} for grid points
+     *                         not included in the product.
+     *
+     * @return the inputs of the grid points.
+     */
+    Inputs getInputs(int[] gridPointIndexes) {
+        // the inputs depend on the snapshots selected for the bands in the antenna frame
+        final Key key = new Key(gridPointIndexes, getSnapshotIds());
+        synchronized (cache) {
+            final Inputs inputs = cache.get(key);
+            if (inputs != null) {
+                return inputs;
+            }
+        }
+        final Inputs inputs = createInputs(gridPointIndexes);
+        synchronized (cache) {
+            cache.put(key, inputs);
+        }
+        return inputs;
+    }
+
+    private Inputs createInputs(int[] gridPointIndexes) {
+        final int n = gridPointIndexes.length;
+        final float[] frx = getFloats(frxProvider, gridPointIndexes);
+        final float[] fry = getFloats(fryProvider, gridPointIndexes);
+        final float[] grx = getFloats(grxProvider, gridPointIndexes);
+        final float[] gry = getFloats(gryProvider, gridPointIndexes);
+
+        final double[] aa = new double[n];
+        final double[] ab = new double[n];
+        final double[] bb = new double[n];
+        for (int i = 0; i < n; i++) {
+            final double alpha = computeAlpha(frx[i], fry[i], grx[i], gry[i]);
+            final double a = Math.cos(alpha);
+            final double b = Math.sin(alpha);
+            aa[i] = a * a;
+            ab[i] = a * b;
+            bb[i] = b * b;
+        }
+
+        return new Inputs(aa, ab, bb, getFloats(btxProvider, gridPointIndexes),
+                          getFloats(btyProvider, gridPointIndexes), getFloats(btxyProvider, gridPointIndexes));
+    }
+
+    private static float[] getFloats(AbstractValueProvider provider, int[] gridPointIndexes) {
+        if (provider == null) {
+            return null;
+        }
+        final float[] values = new float[gridPointIndexes.length];
+        provider.getFloats(gridPointIndexes, values);
+        return values;
+    }
+
+    private static double computeAlpha(double frx, double fry, double grx, double gry) {
+        final double fr = -AbstractValueProvider.angularAverage(frx, fry);
+        final double gr = -AbstractValueProvider.angularAverage(grx, gry);
+
+        return Math.toRadians(fr + gr);
+    }
+
+    private long[] getSnapshotIds() {
+        final AbstractValueProvider[] providers = {
+                frxProvider, fryProvider, grxProvider, gryProvider, btxProvider, btyProvider, btxyProvider
+        };
+        final long[] snapshotIds = new long[providers.length];
+        for (int i = 0; i < providers.length; i++) {
+            AbstractValueProvider provider = providers[i];
+            if (provider instanceof Scaler) {
+                provider = ((Scaler) provider).getProvider();
+            }
+            if (provider instanceof L1cScienceValueProvider) {
+                snapshotIds[i] = ((L1cScienceValueProvider) provider).getSnapshotId();
+            } else {
+                snapshotIds[i] = -1;
+            }
+        }
+        return snapshotIds;
+    }
+
+    /**
+     * The rotation coefficients and the brightness temperatures (or radiometric
+     * accuracies) in the antenna frame of a set of grid points.
+     */
+    static final class Inputs {
+
+        final double[] aa;
+        final double[] ab;
+        final double[] bb;
+        final float[] btx;
+        final float[] bty;
+        final float[] btxy;
+
+        Inputs(double[] aa, double[] ab, double[] bb, float[] btx, float[] bty, float[] btxy) {
+            this.aa = aa;
+            this.ab = ab;
+            this.bb = bb;
+            this.btx = btx;
+            this.bty = bty;
+            this.btxy = btxy;
+        }
+    }
+
+    private static final class Key {
+
+        private final int[] gridPointIndexes;
+        private final long[] snapshotIds;
+        private final int hashCode;
+
+        private Key(int[] gridPointIndexes, long[] snapshotIds) {
+            this.gridPointIndexes = gridPointIndexes;
+            this.snapshotIds = snapshotIds;
+            hashCode = 31 * Arrays.hashCode(gridPointIndexes) + Arrays.hashCode(snapshotIds);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return hashCode == key.hashCode && Arrays.equals(snapshotIds, key.snapshotIds) &&
+                   Arrays.equals(gridPointIndexes, key.gridPointIndexes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
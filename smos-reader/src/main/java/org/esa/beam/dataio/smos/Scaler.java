@@ -31,6 +31,10 @@ class Scaler extends AbstractValueProvider {
         this.scaling = scaling;
     }
 
+    AbstractValueProvider getProvider() {
+        return provider;
+    }
+
     @Override
     public Area getArea() {
         return provider.getArea();
@@ -60,4 +64,12 @@ class Scaler extends AbstractValueProvider {
     protected final float getFloat(int gridPointIndex) throws IOException {
         return (float) scaling.scale(provider.getFloat(gridPointIndex));
     }
+
+    @Override
+    final void getFloats(int[] gridPointIndexes, float[] values) {
+        provider.getFloats(gridPointIndexes, values);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (float) scaling.scale(values[i]);
+        }
+    }
 }
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import org.esa.beam.smos.dgg.SmosDgg;
+
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.util.Arrays;
+
+/**
+ * An immutable run-length encoding of a rectangular region of the DGG seqnum image.
+ * Each line of the region is encoded as a sequence of spans, where all pixels of a
+ * span have the same seqnum.
+ * <p/>
+ * For each span, the index of the first span in the region with the same seqnum
+ * is recorded, so a value needs to be retrieved only once for each seqnum.
+ * <p/>
+ * Spans are compiled once for each level and region and are shared by all SMOS
+ * images. The spans are kept in the {@link SpanCache}.
+ *
+ * @since SMOS-Box 3.0
+ */
+final class SeqnumSpans {
+
+    private final Rectangle rectangle;
+    private final int[] lineOffsets;
+    private final int[] seqnums;
+    private final int[] starts;
+    private final int[] lengths;
+    private final int[] sources;
+
+    private SeqnumSpans(Rectangle rectangle, int[] lineOffsets, int[] seqnums, int[] starts, int[] lengths,
+                        int[] sources) {
+        this.rectangle = rectangle;
+        this.lineOffsets = lineOffsets;
+        this.seqnums = seqnums;
+        this.starts = starts;
+        this.lengths = lengths;
+        this.sources = sources;
+    }
+
+    /**
+     * Returns the spans of a region of the DGG seqnum image.
+     *
+     * @param level     the resolution level of the DGG seqnum image.
+     * @param rectangle the region.
+     *
+     * @return the spans of the region.
+     */
+    static SeqnumSpans getInstance(int level, Rectangle rectangle) {
+        final Key key = new Key(level, rectangle);
+        final SpanCache cache = SpanCache.getInstance();
+        final SeqnumSpans cachedSpans = (SeqnumSpans) cache.get(key);
+        if (cachedSpans != null) {
+            return cachedSpans;
+        }
+        final Raster seqnumRaster = SmosDgg.getInstance().getSeqnumTileCache().getData(level, rectangle);
+        final SeqnumSpans spans = create(seqnumRaster, rectangle);
+        cache.put(key, spans, spans.getMemorySize());
+        return spans;
+    }
+
+    static SeqnumSpans create(Raster seqnumRaster, Rectangle rectangle) {
+        final int w = rectangle.width;
+        final int h = rectangle.height;
+        final int[] line = new int[w];
+        final int[] lineOffsets = new int[h + 1];
+
+        int capacity = Math.max(16, 2 * h);
+        int[] seqnums = new int[capacity];
+        int[] starts = new int[capacity];
+        int[] lengths = new int[capacity];
+        int count = 0;
+
+        for (int y = 0; y < h; y++) {
+            lineOffsets[y] = count;
+            seqnumRaster.getSamples(rectangle.x, rectangle.y + y, w, 1, 0, line);
+            int x = 0;
+            while (x < w) {
+                final int seqnum = line[x];
+                final int start = x;
+                while (x < w && line[x] == seqnum) {
+                    x++;
+                }
+                if (count == capacity) {
+                    capacity *= 2;
+                    seqnums = Arrays.copyOf(seqnums, capacity);
+                    starts = Arrays.copyOf(starts, capacity);
+                    lengths = Arrays.copyOf(lengths, capacity);
+                }
+                seqnums[count] = seqnum;
+                starts[count] = start;
+                lengths[count] = x - start;
+                count++;
+            }
+        }
+        lineOffsets[h] = count;
+
+        // the distinct seqnums of the region, sorted
+        final int[] distinctSeqnums = Arrays.copyOf(seqnums, count);
+        Arrays.sort(distinctSeqnums);
+        int distinctCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinctCount == 0 || distinctSeqnums[i] != distinctSeqnums[distinctCount - 1]) {
+                distinctSeqnums[distinctCount++] = distinctSeqnums[i];
+            }
+        }
+        final int[] firstSpans = new int[distinctCount];
+        Arrays.fill(firstSpans, -1);
+        final int[] sources = new int[count];
+        for (int i = 0; i < count; i++) {
+            final int k = Arrays.binarySearch(distinctSeqnums, 0, distinctCount, seqnums[i]);
+            if (firstSpans[k] == -1) {
+                firstSpans[k] = i;
+            }
+            sources[i] = firstSpans[k];
+        }
+
+        return new SeqnumSpans(new Rectangle(rectangle), lineOffsets, Arrays.copyOf(seqnums, count),
+                               Arrays.copyOf(starts, count), Arrays.copyOf(lengths, count), sources);
+    }
+
+    Rectangle getRectangle() {
+        return new Rectangle(rectangle);
+    }
+
+    int getSpanCount() {
+        return seqnums.length;
+    }
+
+    /**
+     * Returns an estimate of the memory size of the spans.
+     *
+     * @return the memory size of the spans (bytes).
+     */
+    long getMemorySize() {
+        return 4L * (lineOffsets.length + 4L * seqnums.length);
+    }
+
+    /**
+     * Returns the index of the first span of a line.
+     *
+     * @param y the line, relative to the region.
+     *
+     * @return the index of the first span of the line.
+     */
+    int getFirstSpan(int y) {
+        return lineOffsets[y];
+    }
+
+    /**
+     * Returns the index following the last span of a line.
+     *
+     * @param y the line, relative to the region.
+     *
+     * @return the index following the last span of the line.
+     */
+    int getEndSpan(int y) {
+        return lineOffsets[y + 1];
+    }
+
+    int getSeqnum(int span) {
+        return seqnums[span];
+    }
+
+    /**
+     * Returns the first pixel of a span.
+     *
+     * @param span the span index.
+     *
+     * @return the first pixel of the span, relative to the region.
+     */
+    int getStart(int span) {
+        return starts[span];
+    }
+
+    int getLength(int span) {
+        return lengths[span];
+    }
+
+    /**
+     * Returns the index of the first span in the region, which has the same seqnum
+     * as a given span.
+     *
+     * @param span the span index.
+     *
+     * @return the index of the first span with the same seqnum.
+     */
+    int getSource(int span) {
+        return sources[span];
+    }
+
+    private static final class Key {
+
+        private final int level;
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+
+        private Key(int level, Rectangle rectangle) {
+            this.level = level;
+            x = rectangle.x;
+            y = rectangle.y;
+            width = rectangle.width;
+            height = rectangle.height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return level == key.level && x == key.x && y == key.y && width == key.width && height == key.height;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = level;
+            result = 31 * result + x;
+            result = 31 * result + y;
+            result = 31 * result + width;
+            result = 31 * result + height;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import ucar.ma2.Array;
+import ucar.ma2.StructureData;
+import ucar.ma2.StructureDataIterator;
+import ucar.nc2.Sequence;
+import ucar.nc2.Variable;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the member variables of the observation sequence of a BUFR file in chunks.
+ * <p/>
+ * The members of a sequence are scalar per observation, so neither the number of
+ * observations is known nor can a member be read in sections. The observations are
+ * therefore read through the structure iterator of the sequence. When a chunk is
+ * read, the chunks of all members accessed so far are read in the same pass and
+ * added to the {@link ChunkCache}. The iterators are kept open, so chunks requested
+ * in order of the observations are read in a single pass over the sequence.
+ * <p/>
+ * A structure iterator cannot be positioned, so several iterators are kept open at
+ * different positions. A chunk is read by the iterator closest to the chunk, which
+ * is not beyond the chunk. So a chunk evicted from the cache is read again without
+ * restarting the iteration, as long as there is an iterator positioned near it.
+ *
+ * @since SMOS-Box 3.0
+ */
+final class SequenceReader {
+
+    private static final int MAX_CURSOR_COUNT = 8;
+
+    private final Sequence sequence;
+    private final Object file;
+    private final ChunkCache chunkCache;
+    private final List<ChunkedVariable> variables;
+    // the cursor used most recently is last
+    private final List<Cursor> cursors;
+
+    private int observationCount;
+
+    /**
+     * Creates a new sequence reader.
+     *
+     * @param sequence   the observation sequence.
+     * @param file       the file the sequence is read from.
+     * @param chunkCache the chunk cache.
+     */
+    SequenceReader(Sequence sequence, Object file, ChunkCache chunkCache) {
+        this.sequence = sequence;
+        this.file = file;
+        this.chunkCache = chunkCache;
+        variables = new ArrayList<>();
+        cursors = new ArrayList<>(MAX_CURSOR_COUNT);
+        observationCount = -1;
+    }
+
+    Object getFile() {
+        return file;
+    }
+
+    /**
+     * Creates a chunked variable for a member of the sequence.
+     *
+     * @param member the member variable.
+     *
+     * @return the chunked variable.
+     */
+    synchronized ChunkedVariable createVariable(Variable member) {
+        final ChunkedVariable variable = new ChunkedVariable(member, this, chunkCache);
+        variables.add(variable);
+        return variable;
+    }
+
+    synchronized void removeVariable(ChunkedVariable variable) {
+        variables.remove(variable);
+    }
+
+    /**
+     * Returns the number of observations. When the number of observations is not known
+     * yet, all observations are read once.
+     *
+     * @return the number of observations.
+     *
+     * @throws IOException if an I/O error occurred.
+     */
+    synchronized int getObservationCount() throws IOException {
+        if (observationCount == -1) {
+            int position = 0;
+            for (final Cursor cursor : cursors) {
+                position = Math.max(position, cursor.position);
+            }
+            int chunkIndex = position / ChunkedVariable.CHUNK_SIZE;
+            while (observationCount == -1) {
+                readChunks(chunkIndex, null);
+                chunkIndex++;
+            }
+        }
+        return observationCount;
+    }
+
+    /**
+     * Reads a chunk of a variable. The chunks of all other variables at the same
+     * chunk index are read, too.
+     *
+     * @param variable   the variable.
+     * @param chunkIndex the chunk index.
+     *
+     * @return the chunk.
+     *
+     * @throws IOException if an I/O error occurred.
+     */
+    synchronized Array readChunk(ChunkedVariable variable, int chunkIndex) throws IOException {
+        // the chunk may have been read by another thread
+        final Array cachedChunk = chunkCache.get(variable, chunkIndex);
+        if (cachedChunk != null) {
+            return cachedChunk;
+        }
+        final Array chunk = readChunks(chunkIndex, variable);
+        if (chunk == null) {
+            throw new IOException(MessageFormat.format("Sequence ''{0}'': chunk {1} not found.",
+                                                       sequence.getFullName(), chunkIndex));
+        }
+        return chunk;
+    }
+
+    /**
+     * Finishes the iteration over the sequence.
+     */
+    synchronized void close() {
+        for (final Cursor cursor : cursors) {
+            cursor.iterator.finish();
+        }
+        cursors.clear();
+    }
+
+    // returns the chunk of the requested variable, or null if there are no observations at the chunk index
+    private Array readChunks(int chunkIndex, ChunkedVariable requestedVariable) throws IOException {
+        final int start = chunkIndex * ChunkedVariable.CHUNK_SIZE;
+        final Cursor cursor = getCursor(start);
+        final StructureDataIterator iterator = cursor.iterator;
+        while (cursor.position < start && iterator.hasNext()) {
+            iterator.next();
+            cursor.position++;
+        }
+
+        final List<ChunkedVariable> chunkVariables = new ArrayList<>(variables.size());
+        for (final ChunkedVariable variable : variables) {
+            if (variable != requestedVariable && chunkCache.get(variable, chunkIndex) == null) {
+                chunkVariables.add(variable);
+            }
+        }
+        // the requested chunk is added last, so it is not evicted by the other chunks
+        if (requestedVariable != null) {
+            chunkVariables.add(requestedVariable);
+        }
+
+        final int variableCount = chunkVariables.size();
+        final Array[] chunks = new Array[variableCount];
+        for (int k = 0; k < variableCount; k++) {
+            chunks[k] = Array.factory(chunkVariables.get(k).getDataType(), new int[]{ChunkedVariable.CHUNK_SIZE});
+        }
+        int length = 0;
+        while (length < ChunkedVariable.CHUNK_SIZE && iterator.hasNext()) {
+            final StructureData data = iterator.next();
+            for (int k = 0; k < variableCount; k++) {
+                chunks[k].setObject(length, data.getArray(chunkVariables.get(k).getShortName()).getObject(0));
+            }
+            length++;
+            cursor.position++;
+        }
+        if (length < ChunkedVariable.CHUNK_SIZE) {
+            observationCount = start + length;
+        }
+        if (length == 0) {
+            return null;
+        }
+
+        for (int k = 0; k < variableCount; k++) {
+            Array chunk = chunks[k];
+            if (length < ChunkedVariable.CHUNK_SIZE) {
+                final Array array = Array.factory(chunk.getElementType(), new int[]{length});
+                Array.arraycopy(chunk, 0, array, 0, length);
+                chunk = array;
+            }
+            final ChunkedVariable variable = chunkVariables.get(k);
+            chunkCache.put(variable, chunkIndex, chunk, chunk.getSize() * variable.getElementSize());
+            chunks[k] = chunk;
+        }
+        return requestedVariable != null ? chunks[variableCount - 1] : null;
+    }
+
+    // returns the cursor closest to a position, which is not beyond it, or a new cursor
+    private Cursor getCursor(int position) throws IOException {
+        Cursor closest = null;
+        for (final Cursor cursor : cursors) {
+            if (cursor.position <= position && (closest == null || cursor.position > closest.position)) {
+                closest = cursor;
+            }
+        }
+        if (closest != null) {
+            cursors.remove(closest);
+        } else {
+            if (cursors.size() == MAX_CURSOR_COUNT) {
+                cursors.remove(0).iterator.finish();
+            }
+            closest = new Cursor(sequence.getStructureIterator());
+        }
+        cursors.add(closest);
+        return closest;
+    }
+
+    private static final class Cursor {
+
+        private final StructureDataIterator iterator;
+        private int position;
+
+        private Cursor(StructureDataIterator iterator) {
+            this.iterator = iterator;
+        }
+    }
+}
@@ -5,9 +5,6 @@ import org.esa.beam.dataio.smos.dddb.BandDescriptor;
 import org.esa.beam.framework.datamodel.Band;
 import org.esa.beam.smos.EEFilePair;
 import org.esa.beam.util.StringUtils;
-import org.jdom.Document;
-import org.jdom.Element;
-import org.jdom.Namespace;
 
 import java.io.IOException;
 
@@ -21,11 +18,7 @@ class SmUserSmosFile extends SmosFile {
     SmUserSmosFile(EEFilePair eeFilePair, DataContext dataContext) throws IOException {
         super(eeFilePair, dataContext);
 
-        final Document document = getDocument();
-        final Namespace namespace = document.getRootElement().getNamespace();
-        final Element specificProductHeader = getElement(document.getRootElement(), TAG_SPECIFIC_PRODUCT_HEADER);
-
-        final String chi_2_scale = specificProductHeader.getChildText("Chi_2_Scale", namespace);
+        final String chi_2_scale = getHeader().getSpecificProductHeaderValue("Chi_2_Scale");
         if (StringUtils.isNotNullAndNotEmpty(chi_2_scale)) {
             chi2Scale = Double.valueOf(chi_2_scale);
         } else {
@@ -36,12 +36,21 @@ public class SmosMultiLevelSource extends AbstractMultiLevelSource {
 
     private final RasterDataNode rasterDataNode;
     private final ValueProvider valueProvider;
+    private final TileEngine tileEngine;
+    private final int tileEngineBand;
 
     public SmosMultiLevelSource(RasterDataNode rasterDataNode, ValueProvider valueProvider) {
+        this(rasterDataNode, valueProvider, null, -1);
+    }
+
+    SmosMultiLevelSource(RasterDataNode rasterDataNode, ValueProvider valueProvider, TileEngine tileEngine,
+                         int tileEngineBand) {
         super(SmosDgg.getInstance().getMultiLevelImage().getModel());
 
         this.valueProvider = valueProvider;
         this.rasterDataNode = rasterDataNode;
+        this.tileEngine = tileEngine;
+        this.tileEngineBand = tileEngineBand;
     }
 
     public ValueProvider getValueProvider() {
@@ -55,6 +64,11 @@ public class SmosMultiLevelSource extends AbstractMultiLevelSource {
 
     @Override
     protected RenderedImage createImage(int level) {
-        return new SmosOpImage(valueProvider, rasterDataNode, getModel(), ResolutionLevel.create(getModel(), level));
+        final SmosOpImage image = new SmosOpImage(valueProvider, rasterDataNode, getModel(),
+                                                  ResolutionLevel.create(getModel(), level));
+        if (tileEngine != null) {
+            image.setTileEngine(tileEngine, tileEngineBand);
+        }
+        return image;
     }
 }
@@ -17,33 +17,38 @@ package org.esa.beam.dataio.smos;
 
 import com.bc.ceres.glevel.MultiLevelModel;
 import com.bc.ceres.jai.NoDataRaster;
+import org.esa.beam.framework.datamodel.Product;
 import org.esa.beam.framework.datamodel.RasterDataNode;
 import org.esa.beam.jai.ImageManager;
 import org.esa.beam.jai.ResolutionLevel;
 import org.esa.beam.jai.SingleBandedOpImage;
-import org.esa.beam.smos.dgg.SmosDgg;
 
 import javax.media.jai.PixelAccessor;
 import javax.media.jai.PlanarImage;
 import javax.media.jai.UnpackedImageData;
+import java.awt.Point;
 import java.awt.Rectangle;
-import java.awt.geom.Area;
-import java.awt.image.ColorModel;
 import java.awt.image.DataBuffer;
 import java.awt.image.Raster;
-import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
 import java.util.Arrays;
 
 class SmosOpImage extends SingleBandedOpImage {
 
+    private static final int COARSE_BLOCK_SIZE = 8;
+
     private final ValueProvider valueProvider;
     private final MultiLevelModel model;
     private final double noDataValue;
 
-    private volatile Area area;
+    private final Product product;
+
+    private volatile TileCoverage tileCoverage;
     private volatile NoDataRaster noDataRaster;
 
+    private TileEngine tileEngine;
+    private int tileEngineBand;
+
     SmosOpImage(ValueProvider valueProvider, RasterDataNode rasterDataNode, MultiLevelModel model,
                 ResolutionLevel level) {
         super(ImageManager.getDataBufferType(rasterDataNode.getDataType()),
@@ -57,30 +62,82 @@ class SmosOpImage extends SingleBandedOpImage {
         this.valueProvider = valueProvider;
         this.model = model;
         this.noDataValue = rasterDataNode.getNoDataValue();
+        this.product = rasterDataNode.getProduct();
+
+        if (SmosTileCache.isEnabled()) {
+            setTileCache(SmosTileCache.getInstance());
+        }
+    }
+
+    Product getProduct() {
+        return product;
+    }
+
+    /**
+     * Sets the tile engine, which computes the grid point values of a tile for
+     * all bands of the product in a single pass.
+     *
+     * @param tileEngine     the tile engine.
+     * @param tileEngineBand the index of the band within the tile engine.
+     */
+    void setTileEngine(TileEngine tileEngine, int tileEngineBand) {
+        this.tileEngine = tileEngine;
+        this.tileEngineBand = tileEngineBand;
     }
 
-    private Area getArea() {
-        if (area == null) {
+    private TileCoverage getTileCoverage() {
+        if (tileCoverage == null) {
             synchronized (this) {
-                if (area == null) {
-                    final Area modelArea = valueProvider.getArea();
-                    area = modelArea.createTransformedArea(model.getModelToImageTransform(getLevel()));
+                if (tileCoverage == null) {
+                    // the tile coverage is shared by all images of the product covering the same area
+                    final int level = getLevel();
+                    tileCoverage = TileCoverage.getInstance(product, level, valueProvider.getArea(),
+                                                            model.getModelToImageTransform(level), getWidth(),
+                                                            getHeight(), getTileWidth(), getTileHeight());
                 }
             }
         }
-        return area;
+        return tileCoverage;
+    }
+
+    @Override
+    public Raster getTile(int tileX, int tileY) {
+        final TileRefiner tileRefiner = TileRefiner.getInstance();
+        if (tileRefiner.isApplicable() && isTileIndexValid(tileX, tileY) && getTileFromCache(tileX, tileY) == null &&
+            getTileCoverage().isTileCovered(tileX, tileY) && tileRefiner.isRefinable(this, tileX, tileY)) {
+            // a coarse tile is displayed at once and refined in the background, but it is never added to the
+            // tile cache, so any other consumer of this image gets the exact tile
+            tileRefiner.refine(this, tileX, tileY);
+            return computeCoarseTile(tileX, tileY);
+        }
+        return super.getTile(tileX, tileY);
     }
 
     @Override
     public Raster computeTile(int tileX, int tileY) {
-        if (getArea().intersects(getTileRect(tileX, tileY))) {
-            return super.computeTile(tileX, tileY);
+        if (getTileCoverage().isTileCovered(tileX, tileY)) {
+            final TileRefiner.RefinedTile refinedTile = TileRefiner.getInstance().takeRefinedTile(this, tileX, tileY);
+            if (refinedTile != null) {
+                recordComputationTime(tileX, tileY, refinedTile.getComputationTime());
+                return refinedTile.getRaster();
+            }
+            final long startTime = System.nanoTime();
+            final Raster tile = super.computeTile(tileX, tileY);
+            recordComputationTime(tileX, tileY, System.nanoTime() - startTime);
+            return tile;
         }
 
         if (noDataRaster == null) {
             synchronized (this) {
                 if (noDataRaster == null) {
-                    noDataRaster = createNoDataRaster(noDataValue);
+                    // no-data rasters are shared by all images with the same data type and tile size
+                    final NoDataRaster raster = NoDataRasters.get(getSampleModel(), noDataValue);
+                    if (raster != null) {
+                        noDataRaster = raster;
+                    } else {
+                        noDataRaster = NoDataRasters.register(getSampleModel(), noDataValue,
+                                                              createNoDataRaster(noDataValue));
+                    }
                 }
             }
         }
@@ -88,34 +145,162 @@ class SmosOpImage extends SingleBandedOpImage {
         return noDataRaster.createTranslatedChild(tileXToX(tileX), tileYToY(tileY));
     }
 
+    /**
+     * Computes a tile at full resolution. Called by the tile refiner.
+     *
+     * @param tileX the tile x index.
+     * @param tileY the tile y index.
+     *
+     * @return the tile.
+     */
+    Raster computeRefinedTile(int tileX, int tileY) {
+        return super.computeTile(tileX, tileY);
+    }
+
+    @Override
+    public void dispose() {
+        TileRefiner.getInstance().cancel(this);
+        super.dispose();
+    }
+
+    private boolean isTileIndexValid(int tileX, int tileY) {
+        return tileX >= getMinTileX() && tileX <= getMaxTileX() && tileY >= getMinTileY() && tileY <= getMaxTileY();
+    }
+
+    private void recordComputationTime(int tileX, int tileY, long computationTime) {
+        if (getTileCache() instanceof SmosTileCache) {
+            ((SmosTileCache) getTileCache()).recordComputationTime(this, tileX, tileY, computationTime);
+        }
+    }
+
+    // computes a tile from the grid points at the centres of square blocks of pixels
+    private Raster computeCoarseTile(int tileX, int tileY) {
+        final WritableRaster targetRaster = createWritableRaster(getSampleModel(),
+                                                                 new Point(tileXToX(tileX), tileYToY(tileY)));
+        final Rectangle rectangle = getTileRect(tileX, tileY);
+        final SeqnumSpans spans = SeqnumSpans.getInstance(getLevel(), rectangle);
+        final PixelCounter pixelCounter = new PixelCounter(rectangle, getTileCoverage());
+
+        final int w = rectangle.width;
+        final int h = rectangle.height;
+        final int blockCountX = (w + COARSE_BLOCK_SIZE - 1) / COARSE_BLOCK_SIZE;
+        final int blockCountY = (h + COARSE_BLOCK_SIZE - 1) / COARSE_BLOCK_SIZE;
+
+        final int[] blockSeqnums = new int[blockCountX * blockCountY];
+        final int[] blockIndexes = new int[blockCountX * blockCountY];
+        int count = 0;
+        for (int blockY = 0; blockY < blockCountY; blockY++) {
+            final int y = Math.min(blockY * COARSE_BLOCK_SIZE + COARSE_BLOCK_SIZE / 2, h - 1);
+            pixelCounter.countPixels(rectangle.y + y);
+            final int validStart = pixelCounter.leading;
+            final int validEnd = pixelCounter.leading + pixelCounter.valid;
+            final int endSpan = spans.getEndSpan(y);
+            for (int blockX = 0; blockX < blockCountX; blockX++) {
+                final int x = Math.min(blockX * COARSE_BLOCK_SIZE + COARSE_BLOCK_SIZE / 2, w - 1);
+                final int block = blockY * blockCountX + blockX;
+                blockIndexes[block] = -1;
+                if (x >= validStart && x < validEnd) {
+                    for (int span = spans.getFirstSpan(y); span < endSpan; ++span) {
+                        if (x >= spans.getStart(span) && x < spans.getStart(span) + spans.getLength(span)) {
+                            blockSeqnums[count] = spans.getSeqnum(span);
+                            blockIndexes[block] = count++;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+
+        final double[] blockValues = getValues(Arrays.copyOf(blockSeqnums, count),
+                                               targetRaster.getSampleModel().getDataType());
+        final double[] line = new double[w];
+        for (int y = 0; y < h; y++) {
+            pixelCounter.countPixels(rectangle.y + y);
+            final int validStart = pixelCounter.leading;
+            final int validEnd = pixelCounter.leading + pixelCounter.valid;
+            final int blockLineOffset = (y / COARSE_BLOCK_SIZE) * blockCountX;
+            for (int x = 0; x < w; x++) {
+                final int blockIndex = blockIndexes[blockLineOffset + x / COARSE_BLOCK_SIZE];
+                if (x >= validStart && x < validEnd && blockIndex != -1) {
+                    line[x] = blockValues[blockIndex];
+                } else {
+                    line[x] = noDataValue;
+                }
+            }
+            targetRaster.setPixels(rectangle.x, rectangle.y + y, w, 1, line);
+        }
+
+        return targetRaster;
+    }
+
+    private double[] getValues(int[] seqnums, int dataType) {
+        final double[] values = new double[seqnums.length];
+        switch (dataType) {
+        case DataBuffer.TYPE_BYTE:
+            final byte[] byteValues = new byte[seqnums.length];
+            valueProvider.getValues(seqnums, byteValues, (byte) noDataValue);
+            for (int i = 0; i < seqnums.length; i++) {
+                values[i] = byteValues[i];
+            }
+            break;
+        case DataBuffer.TYPE_SHORT:
+        case DataBuffer.TYPE_USHORT:
+            final short[] shortValues = new short[seqnums.length];
+            valueProvider.getValues(seqnums, shortValues, (short) noDataValue);
+            for (int i = 0; i < seqnums.length; i++) {
+                values[i] = shortValues[i];
+            }
+            break;
+        case DataBuffer.TYPE_INT:
+            final int[] intValues = new int[seqnums.length];
+            valueProvider.getValues(seqnums, intValues, (int) noDataValue);
+            for (int i = 0; i < seqnums.length; i++) {
+                values[i] = intValues[i];
+            }
+            break;
+        case DataBuffer.TYPE_FLOAT:
+            final float[] floatValues = new float[seqnums.length];
+            valueProvider.getValues(seqnums, floatValues, (float) noDataValue);
+            for (int i = 0; i < seqnums.length; i++) {
+                values[i] = floatValues[i];
+            }
+            break;
+        default:
+            Arrays.fill(values, noDataValue);
+            break;
+        }
+        return values;
+    }
+
     @Override
     protected final void computeRect(PlanarImage[] planarImages, WritableRaster targetRaster, Rectangle rectangle) {
-        final RenderedImage seqnumImage = SmosDgg.getInstance().getMultiLevelImage().getImage(getLevel());
-        final Raster seqnumRaster = seqnumImage.getData(rectangle);
-        final ColorModel cm = getColorModel();
+        final SeqnumSpans spans = SeqnumSpans.getInstance(getLevel(), rectangle);
 
-        final PixelAccessor seqnumAccessor = new PixelAccessor(seqnumRaster.getSampleModel(), cm);
         final PixelAccessor targetAccessor = new PixelAccessor(targetRaster.getSampleModel(), null);
-
-        final UnpackedImageData seqnumData = seqnumAccessor.getPixels(
-                seqnumRaster, rectangle, seqnumRaster.getSampleModel().getTransferType(), false);
         final UnpackedImageData targetData = targetAccessor.getPixels(
                 targetRaster, rectangle, targetRaster.getSampleModel().getTransferType(), true);
-        final PixelCounter pixelCounter = new PixelCounter(rectangle, getArea());
+        final PixelCounter pixelCounter = new PixelCounter(rectangle, getTileCoverage());
+
+        // the values of all grid points in the tile are retrieved in a single operation
+        final int[] sources = collectSources(spans, pixelCounter, rectangle);
+        final int[] seqnums = new int[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            seqnums[i] = spans.getSeqnum(sources[i]);
+        }
 
         switch (targetData.type) {
         case DataBuffer.TYPE_BYTE:
-            byteLoop(seqnumData, targetData, pixelCounter, (byte) noDataValue);
+            byteLoop(spans, sources, seqnums, targetData, pixelCounter, (byte) noDataValue);
             break;
         case DataBuffer.TYPE_SHORT:
         case DataBuffer.TYPE_USHORT:
-            shortLoop(seqnumData, targetData, pixelCounter, (short) noDataValue);
+            shortLoop(spans, sources, seqnums, targetData, pixelCounter, (short) noDataValue);
             break;
         case DataBuffer.TYPE_INT:
-            intLoop(seqnumData, targetData, pixelCounter, (int) noDataValue);
+            intLoop(spans, sources, seqnums, targetData, pixelCounter, (int) noDataValue);
             break;
         case DataBuffer.TYPE_FLOAT:
-            floatLoop(seqnumData, targetData, pixelCounter, (float) noDataValue);
+            floatLoop(spans, sources, seqnums, targetData, pixelCounter, (float) noDataValue);
             break;
         default:
             // do nothing
@@ -125,271 +310,251 @@ class SmosOpImage extends SingleBandedOpImage {
         targetAccessor.setPixels(targetData);
     }
 
-    private void byteLoop(UnpackedImageData seqnumData, UnpackedImageData targetData, PixelCounter pixelCounter,
-                          byte noDataValue) {
+    // returns the indexes of the first spans of all seqnums within the valid pixel range
+    private static int[] collectSources(SeqnumSpans spans, PixelCounter pixelCounter, Rectangle rectangle) {
+        final boolean[] collected = new boolean[spans.getSpanCount()];
+        final int[] sources = new int[spans.getSpanCount()];
+        int count = 0;
+
+        for (int y = 0; y < rectangle.height; ++y) {
+            pixelCounter.countPixels(rectangle.y + y);
+            if (pixelCounter.valid > 0) {
+                final int validStart = pixelCounter.leading;
+                final int validEnd = pixelCounter.leading + pixelCounter.valid;
+                final int endSpan = spans.getEndSpan(y);
+                for (int span = spans.getFirstSpan(y); span < endSpan; ++span) {
+                    final int start = Math.max(spans.getStart(span), validStart);
+                    final int end = Math.min(spans.getStart(span) + spans.getLength(span), validEnd);
+                    if (start < end) {
+                        final int source = spans.getSource(span);
+                        if (!collected[source]) {
+                            collected[source] = true;
+                            sources[count++] = source;
+                        }
+                    }
+                }
+            }
+        }
+
+        return Arrays.copyOf(sources, count);
+    }
+
+    private boolean getValuesFromTileEngine(Rectangle rectangle, int[] seqnums, Object values) {
+        return tileEngine != null && tileEngine.getValues(tileEngineBand, getLevel(), rectangle, seqnums, values);
+    }
+
+    private void byteLoop(SeqnumSpans spans, int[] sources, int[] seqnums, UnpackedImageData targetData,
+                          PixelCounter pixelCounter, byte noDataValue) {
         final int w = targetData.rect.width;
         final int h = targetData.rect.height;
 
-        final int seqnumPixelStride = seqnumData.pixelStride;
-        final int seqnumLineStride = seqnumData.lineStride;
-        final int[] seqnumDataArray = seqnumData.getIntData(0);
-
         final int targetPixelStride = targetData.pixelStride;
         final int targetLineStride = targetData.lineStride;
         final byte[] targetDataArray = targetData.getByteData(0);
 
-        final int[] seqnumCache = new int[w];
-        final byte[] valueCache = new byte[w];
+        final byte[] sourceValues = new byte[sources.length];
+        if (!getValuesFromTileEngine(targetData.rect, seqnums, sourceValues)) {
+            valueProvider.getValues(seqnums, sourceValues, noDataValue);
+        }
+        final byte[] values = new byte[spans.getSpanCount()];
+        for (int i = 0; i < sources.length; i++) {
+            values[sources[i]] = sourceValues[i];
+        }
 
-        int seqnumLineOffset = seqnumData.getOffset(0);
         int targetLineOffset = targetData.getOffset(0);
 
         for (int y = 0; y < h; ++y) {
-            int seqnumPixelOffset = seqnumLineOffset;
-            int targetPixelOffset = targetLineOffset;
-
             pixelCounter.countPixels(targetData.rect.y + y);
-            if (pixelCounter.leading > 0) {
-                Arrays.fill(targetDataArray, targetPixelOffset, targetPixelOffset + pixelCounter.leading, noDataValue);
-                targetPixelOffset += pixelCounter.leading * targetPixelStride;
-                seqnumPixelOffset += pixelCounter.leading * seqnumPixelStride;
+            final int validStart = pixelCounter.leading;
+            final int validEnd = pixelCounter.leading + pixelCounter.valid;
+            if (validStart > 0) {
+                Arrays.fill(targetDataArray, targetLineOffset, targetLineOffset + validStart * targetPixelStride,
+                            noDataValue);
             }
             if (pixelCounter.valid > 0) {
-                for (int x = pixelCounter.leading; x < pixelCounter.leading + pixelCounter.valid; ++x) {
-                    byte value;
-                    final int seqnum = seqnumDataArray[seqnumPixelOffset];
-                    if (x > 0 && seqnumCache[x - 1] == seqnum) {
-                        // pixel to the west
-                        value = valueCache[x - 1];
-                    } else if (y > 0 && seqnumCache[x] == seqnum) {
-                        // pixel to the north
-                        value = valueCache[x];
-                    } else if (x + 1 < w && y > 0 && seqnumCache[x + 1] == seqnum) {
-                        // pixel to the north-east
-                        value = valueCache[x + 1];
-                    } else {
-                        value = valueProvider.getValue(seqnum, noDataValue);
+                final int endSpan = spans.getEndSpan(y);
+                for (int span = spans.getFirstSpan(y); span < endSpan; ++span) {
+                    final int start = Math.max(spans.getStart(span), validStart);
+                    final int end = Math.min(spans.getStart(span) + spans.getLength(span), validEnd);
+                    if (start < end) {
+                        Arrays.fill(targetDataArray, targetLineOffset + start * targetPixelStride,
+                                    targetLineOffset + end * targetPixelStride, values[spans.getSource(span)]);
                     }
-                    seqnumCache[x] = seqnum;
-                    valueCache[x] = value;
-                    targetDataArray[targetPixelOffset] = value;
-                    seqnumPixelOffset += seqnumPixelStride;
-                    targetPixelOffset += targetPixelStride;
                 }
             }
-            if (pixelCounter.trailing > 0) {
-                Arrays.fill(targetDataArray, targetPixelOffset, targetPixelOffset + pixelCounter.trailing, noDataValue);
+            if (validEnd < w) {
+                Arrays.fill(targetDataArray, targetLineOffset + validEnd * targetPixelStride,
+                            targetLineOffset + w * targetPixelStride, noDataValue);
             }
-            seqnumLineOffset += seqnumLineStride;
             targetLineOffset += targetLineStride;
         }
     }
 
-    private void shortLoop(UnpackedImageData seqnumData, UnpackedImageData targetData, PixelCounter pixelCounter,
-                           short noDataValue) {
+    private void shortLoop(SeqnumSpans spans, int[] sources, int[] seqnums, UnpackedImageData targetData,
+                           PixelCounter pixelCounter, short noDataValue) {
         final int w = targetData.rect.width;
         final int h = targetData.rect.height;
 
-        final int seqnumPixelStride = seqnumData.pixelStride;
-        final int seqnumLineStride = seqnumData.lineStride;
-        final int[] seqnumDataArray = seqnumData.getIntData(0);
-
         final int targetPixelStride = targetData.pixelStride;
         final int targetLineStride = targetData.lineStride;
         final short[] targetDataArray = targetData.getShortData(0);
 
-        final int[] seqnumCache = new int[w];
-        final short[] valueCache = new short[w];
+        final short[] sourceValues = new short[sources.length];
+        if (!getValuesFromTileEngine(targetData.rect, seqnums, sourceValues)) {
+            valueProvider.getValues(seqnums, sourceValues, noDataValue);
+        }
+        final short[] values = new short[spans.getSpanCount()];
+        for (int i = 0; i < sources.length; i++) {
+            values[sources[i]] = sourceValues[i];
+        }
 
-        int seqnumLineOffset = seqnumData.getOffset(0);
         int targetLineOffset = targetData.getOffset(0);
 
         for (int y = 0; y < h; ++y) {
-            int seqnumPixelOffset = seqnumLineOffset;
-            int targetPixelOffset = targetLineOffset;
-
             pixelCounter.countPixels(targetData.rect.y + y);
-            if (pixelCounter.leading > 0) {
-                Arrays.fill(targetDataArray, targetPixelOffset, targetPixelOffset + pixelCounter.leading, noDataValue);
-                targetPixelOffset += pixelCounter.leading * targetPixelStride;
-                seqnumPixelOffset += pixelCounter.leading * seqnumPixelStride;
+            final int validStart = pixelCounter.leading;
+            final int validEnd = pixelCounter.leading + pixelCounter.valid;
+            if (validStart > 0) {
+                Arrays.fill(targetDataArray, targetLineOffset, targetLineOffset + validStart * targetPixelStride,
+                            noDataValue);
             }
             if (pixelCounter.valid > 0) {
-                for (int x = pixelCounter.leading; x < pixelCounter.leading + pixelCounter.valid; ++x) {
-                    short value;
-                    final int seqnum = seqnumDataArray[seqnumPixelOffset];
-                    if (x > 0 && seqnumCache[x - 1] == seqnum) {
-                        // pixel to the west
-                        value = valueCache[x - 1];
-                    } else if (y > 0 && seqnumCache[x] == seqnum) {
-                        // pixel to the north
-                        value = valueCache[x];
-                    } else if (x + 1 < w && y > 0 && seqnumCache[x + 1] == seqnum) {
-                        // pixel to the north-east
-                        value = valueCache[x + 1];
-                    } else {
-                        value = valueProvider.getValue(seqnum, noDataValue);
+                final int endSpan = spans.getEndSpan(y);
+                for (int span = spans.getFirstSpan(y); span < endSpan; ++span) {
+                    final int start = Math.max(spans.getStart(span), validStart);
+                    final int end = Math.min(spans.getStart(span) + spans.getLength(span), validEnd);
+                    if (start < end) {
+                        Arrays.fill(targetDataArray, targetLineOffset + start * targetPixelStride,
+                                    targetLineOffset + end * targetPixelStride, values[spans.getSource(span)]);
                     }
-                    seqnumCache[x] = seqnum;
-                    valueCache[x] = value;
-                    targetDataArray[targetPixelOffset] = value;
-                    seqnumPixelOffset += seqnumPixelStride;
-                    targetPixelOffset += targetPixelStride;
                 }
             }
-            if (pixelCounter.trailing > 0) {
-                Arrays.fill(targetDataArray, targetPixelOffset, targetPixelOffset + pixelCounter.trailing, noDataValue);
+            if (validEnd < w) {
+                Arrays.fill(targetDataArray, targetLineOffset + validEnd * targetPixelStride,
+                            targetLineOffset + w * targetPixelStride, noDataValue);
             }
-            seqnumLineOffset += seqnumLineStride;
             targetLineOffset += targetLineStride;
         }
     }
 
-    private void intLoop(UnpackedImageData seqnumData, UnpackedImageData targetData, PixelCounter pixelCounter,
-                         int noDataValue) {
+    private void intLoop(SeqnumSpans spans, int[] sources, int[] seqnums, UnpackedImageData targetData,
+                         PixelCounter pixelCounter, int noDataValue) {
         final int w = targetData.rect.width;
         final int h = targetData.rect.height;
 
-        final int seqnumPixelStride = seqnumData.pixelStride;
-        final int seqnumLineStride = seqnumData.lineStride;
-        final int[] seqnumDataArray = seqnumData.getIntData(0);
-
         final int targetPixelStride = targetData.pixelStride;
         final int targetLineStride = targetData.lineStride;
         final int[] targetDataArray = targetData.getIntData(0);
 
-        final int[] seqnumCache = new int[w];
-        final int[] valueCache = new int[w];
+        final int[] sourceValues = new int[sources.length];
+        if (!getValuesFromTileEngine(targetData.rect, seqnums, sourceValues)) {
+            valueProvider.getValues(seqnums, sourceValues, noDataValue);
+        }
+        final int[] values = new int[spans.getSpanCount()];
+        for (int i = 0; i < sources.length; i++) {
+            values[sources[i]] = sourceValues[i];
+        }
 
-        int seqnumLineOffset = seqnumData.getOffset(0);
         int targetLineOffset = targetData.getOffset(0);
 
         for (int y = 0; y < h; ++y) {
-            int seqnumPixelOffset = seqnumLineOffset;
-            int targetPixelOffset = targetLineOffset;
-
             pixelCounter.countPixels(targetData.rect.y + y);
-            if (pixelCounter.leading > 0) {
-                Arrays.fill(targetDataArray, targetPixelOffset, targetPixelOffset + pixelCounter.leading, noDataValue);
-                targetPixelOffset += pixelCounter.leading * targetPixelStride;
-                seqnumPixelOffset += pixelCounter.leading * seqnumPixelStride;
+            final int validStart = pixelCounter.leading;
+            final int validEnd = pixelCounter.leading + pixelCounter.valid;
+            if (validStart > 0) {
+                Arrays.fill(targetDataArray, targetLineOffset, targetLineOffset + validStart * targetPixelStride,
+                            noDataValue);
             }
             if (pixelCounter.valid > 0) {
-                for (int x = pixelCounter.leading; x < pixelCounter.leading + pixelCounter.valid; ++x) {
-                    int value;
-                    final int seqnum = seqnumDataArray[seqnumPixelOffset];
-                    if (x > 0 && seqnumCache[x - 1] == seqnum) {
-                        // pixel to the west
-                        value = valueCache[x - 1];
-                    } else if (y > 0 && seqnumCache[x] == seqnum) {
-                        // pixel to the north
-                        value = valueCache[x];
-                    } else if (x + 1 < w && y > 0 && seqnumCache[x + 1] == seqnum) {
-                        // pixel to the north-east
-                        value = valueCache[x + 1];
-                    } else {
-                        value = valueProvider.getValue(seqnum, noDataValue);
+                final int endSpan = spans.getEndSpan(y);
+                for (int span = spans.getFirstSpan(y); span < endSpan; ++span) {
+                    final int start = Math.max(spans.getStart(span), validStart);
+                    final int end = Math.min(spans.getStart(span) + spans.getLength(span), validEnd);
+                    if (start < end) {
+                        Arrays.fill(targetDataArray, targetLineOffset + start * targetPixelStride,
+                                    targetLineOffset + end * targetPixelStride, values[spans.getSource(span)]);
                     }
-                    seqnumCache[x] = seqnum;
-                    valueCache[x] = value;
-                    targetDataArray[targetPixelOffset] = value;
-                    seqnumPixelOffset += seqnumPixelStride;
-                    targetPixelOffset += targetPixelStride;
                 }
             }
-            if (pixelCounter.trailing > 0) {
-                Arrays.fill(targetDataArray, targetPixelOffset, targetPixelOffset + pixelCounter.trailing, noDataValue);
+            if (validEnd < w) {
+                Arrays.fill(targetDataArray, targetLineOffset + validEnd * targetPixelStride,
+                            targetLineOffset + w * targetPixelStride, noDataValue);
             }
-            seqnumLineOffset += seqnumLineStride;
             targetLineOffset += targetLineStride;
         }
     }
 
-    private void floatLoop(UnpackedImageData seqnumData, UnpackedImageData targetData, PixelCounter pixelCounter,
-                           float noDataValue) {
+    private void floatLoop(SeqnumSpans spans, int[] sources, int[] seqnums, UnpackedImageData targetData,
+                           PixelCounter pixelCounter, float noDataValue) {
         final int w = targetData.rect.width;
         final int h = targetData.rect.height;
 
-        final int seqnumPixelStride = seqnumData.pixelStride;
-        final int seqnumLineStride = seqnumData.lineStride;
-        final int[] seqnumDataArray = seqnumData.getIntData(0);
-
         final int targetPixelStride = targetData.pixelStride;
         final int targetLineStride = targetData.lineStride;
         final float[] targetDataArray = targetData.getFloatData(0);
 
-        final int[] seqnumCache = new int[w];
-        final float[] valueCache = new float[w];
+        final float[] sourceValues = new float[sources.length];
+        if (!getValuesFromTileEngine(targetData.rect, seqnums, sourceValues)) {
+            valueProvider.getValues(seqnums, sourceValues, noDataValue);
+        }
+        final float[] values = new float[spans.getSpanCount()];
+        for (int i = 0; i < sources.length; i++) {
+            values[sources[i]] = sourceValues[i];
+        }
 
-        int seqnumLineOffset = seqnumData.getOffset(0);
         int targetLineOffset = targetData.getOffset(0);
 
         for (int y = 0; y < h; ++y) {
-            int seqnumPixelOffset = seqnumLineOffset;
-            int targetPixelOffset = targetLineOffset;
-
             pixelCounter.countPixels(targetData.rect.y + y);
-            if (pixelCounter.leading > 0) {
-                Arrays.fill(targetDataArray, targetPixelOffset, targetPixelOffset + pixelCounter.leading, noDataValue);
-                targetPixelOffset += pixelCounter.leading * targetPixelStride;
-                seqnumPixelOffset += pixelCounter.leading * seqnumPixelStride;
+            final int validStart = pixelCounter.leading;
+            final int validEnd = pixelCounter.leading + pixelCounter.valid;
+            if (validStart > 0) {
+                Arrays.fill(targetDataArray, targetLineOffset, targetLineOffset + validStart * targetPixelStride,
+                            noDataValue);
             }
             if (pixelCounter.valid > 0) {
-                for (int x = pixelCounter.leading; x < pixelCounter.leading + pixelCounter.valid; ++x) {
-                    float value;
-                    final int seqnum = seqnumDataArray[seqnumPixelOffset];
-                    if (x > 0 && seqnumCache[x - 1] == seqnum) {
-                        // pixel to the west
-                        value = valueCache[x - 1];
-                    } else if (y > 0 && seqnumCache[x] == seqnum) {
-                        // pixel to the north
-                        value = valueCache[x];
-                    } else if (x + 1 < w && y > 0 && seqnumCache[x + 1] == seqnum) {
-                        // pixel to the north-east
-                        value = valueCache[x + 1];
-                    } else {
-                        value = valueProvider.getValue(seqnum, noDataValue);
+                final int endSpan = spans.getEndSpan(y);
+                for (int span = spans.getFirstSpan(y); span < endSpan; ++span) {
+                    final int start = Math.max(spans.getStart(span), validStart);
+                    final int end = Math.min(spans.getStart(span) + spans.getLength(span), validEnd);
+                    if (start < end) {
+                        Arrays.fill(targetDataArray, targetLineOffset + start * targetPixelStride,
+                                    targetLineOffset + end * targetPixelStride, values[spans.getSource(span)]);
                     }
-                    seqnumCache[x] = seqnum;
-                    valueCache[x] = value;
-                    targetDataArray[targetPixelOffset] = value;
-                    seqnumPixelOffset += seqnumPixelStride;
-                    targetPixelOffset += targetPixelStride;
                 }
             }
-            if (pixelCounter.trailing > 0) {
-                Arrays.fill(targetDataArray, targetPixelOffset, targetPixelOffset + pixelCounter.trailing, noDataValue);
+            if (validEnd < w) {
+                Arrays.fill(targetDataArray, targetLineOffset + validEnd * targetPixelStride,
+                            targetLineOffset + w * targetPixelStride, noDataValue);
             }
-            seqnumLineOffset += seqnumLineStride;
             targetLineOffset += targetLineStride;
         }
     }
 
     private static class PixelCounter {
 
-        private final Rectangle effectiveBounds;
+        private final TileCoverage coverage;
         private final Rectangle targetRectangle;
 
         private int leading;
         private int valid;
         private int trailing;
 
-        PixelCounter(Rectangle targetRectangle, Area envelope) {
-            final Area effectiveEnvelope = new Area(targetRectangle);
-            effectiveEnvelope.intersect(envelope);
-
-            this.effectiveBounds = effectiveEnvelope.getBounds();
+        PixelCounter(Rectangle targetRectangle, TileCoverage coverage) {
+            this.coverage = coverage;
             this.targetRectangle = targetRectangle;
         }
 
         void countPixels(int y) {
-            if (y < effectiveBounds.y || y > effectiveBounds.y + effectiveBounds.height) {
+            final int minX = Math.max(coverage.getMinX(y), targetRectangle.x);
+            final int maxX = Math.min(coverage.getMaxX(y), targetRectangle.x + targetRectangle.width);
+            if (minX >= maxX) {
                 leading = targetRectangle.width;
                 valid = 0;
                 trailing = 0;
             } else {
-                leading = effectiveBounds.x - targetRectangle.x;
-                valid = effectiveBounds.width;
+                leading = minX - targetRectangle.x;
+                valid = maxX - minX;
                 trailing = targetRectangle.width - leading - valid;
             }
         }
@@ -38,20 +38,47 @@ import java.awt.image.RenderedImage;
 import java.io.File;
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class SmosProductReader extends AbstractProductReader {
 
     private static final String LSMASK_SCHEMA_NAME = "DBL_SM_XXXX_AUX_LSMASK_0200";
+    private static final String PRECOMPUTE_BROWSE_VALUES_PROPERTY_NAME = "beam.smos.precomputeBrowseValues";
+    private static final String MEMORY_MAPPED_READ_PROPERTY_NAME = "beam.smos.memoryMappedRead";
 
-    private ProductFile productFile;
-    private VirtualDir virtualDir;
+    private static final Logger logger = Logger.getLogger(SmosProductReader.class.getName());
+
+    private volatile ProductFile productFile;
+    private volatile Product product;
+    private volatile VirtualDir virtualDir;
+    private boolean browseValuesPrecomputed = Boolean.getBoolean(PRECOMPUTE_BROWSE_VALUES_PROPERTY_NAME);
 
     public ProductFile getProductFile() {
         return productFile;
     }
 
+    public boolean isBrowseValuesPrecomputed() {
+        return browseValuesPrecomputed;
+    }
+
+    /**
+     * Sets whether the browse values of L1c Science and BUFR products are precomputed when
+     * the product is opened. The default is given by the system property
+     * {@code beam.smos.precomputeBrowseValues}.
+     *
+     * @param browseValuesPrecomputed {@code true} if browse values are precomputed.
+     */
+    public void setBrowseValuesPrecomputed(boolean browseValuesPrecomputed) {
+        this.browseValuesPrecomputed = browseValuesPrecomputed;
+    }
+
     public static ProductFile createProductFile(File file) throws IOException {
         if (file.isDirectory()) {
+            final File[] bufrFiles = listLightBufrFiles(file);
+            if (bufrFiles.length != 0) {
+                return new LightBufrFile(file, bufrFiles);
+            }
             final File[] files = file.listFiles(new ExplorerFilenameFilter());
             if (files != null && files.length == 2) {
                 file = files[0];
@@ -98,32 +125,41 @@ public class SmosProductReader extends AbstractProductReader {
 
     @Override
     protected final Product readProductNodesImpl() throws IOException {
-        synchronized (this) {
-            final File inputFile = getInputFile();
-            final String inputFileName = inputFile.getName();
-            if (SmosUtils.isDblFileName(
-                    inputFileName) || (SmosUtils.isLightBufrTypeSupported() && SmosUtils.isLightBufrType(
-                    inputFileName))) {
-                productFile = createProductFile(inputFile);
-            } else {
-                productFile = createProductFile(getInputVirtualDir());
-            }
-            if (productFile == null) {
-                throw new IOException(
-                        MessageFormat.format("File ''{0}'': unknown/unsupported SMOS data format.", inputFile));
-            }
-            final Product product = productFile.createProduct();
-            if (virtualDir != null && virtualDir.isCompressed()) {
-                final String path = virtualDir.getBasePath();
-                product.setFileLocation(new File(path));
-            } else {
-                product.setFileLocation(productFile.getDataFile());
-            }
-            if (productFile instanceof SmosFile) {
-                addLandSeaMask(product);
+        final File inputFile = getInputFile();
+        final String inputFileName = inputFile.getName();
+        // the directory is listed once, the BUFR files found are passed on
+        final File[] bufrFiles = listLightBufrFiles(inputFile);
+        if (bufrFiles.length != 0) {
+            productFile = new LightBufrFile(inputFile, bufrFiles);
+        } else if (SmosUtils.isDblFileName(
+                inputFileName) || (SmosUtils.isLightBufrTypeSupported() && SmosUtils.isLightBufrType(
+                inputFileName))) {
+            productFile = createProductFile(inputFile);
+        } else {
+            productFile = createProductFile(getInputVirtualDir());
+        }
+        if (productFile == null) {
+            throw new IOException(
+                    MessageFormat.format("File ''{0}'': unknown/unsupported SMOS data format.", inputFile));
+        }
+        if (browseValuesPrecomputed) {
+            if (productFile instanceof L1cScienceSmosFile) {
+                ((L1cScienceSmosFile) productFile).precomputeBrowseValues();
+            } else if (productFile instanceof LightBufrFile) {
+                ((LightBufrFile) productFile).precomputeBrowseValues();
             }
-            return product;
         }
+        product = productFile.createProduct();
+        if (virtualDir != null && virtualDir.isCompressed()) {
+            final String path = virtualDir.getBasePath();
+            product.setFileLocation(new File(path));
+        } else {
+            product.setFileLocation(productFile.getDataFile());
+        }
+        if (productFile instanceof SmosFile) {
+            addLandSeaMask(product);
+        }
+        return product;
     }
 
 
@@ -141,17 +177,20 @@ public class SmosProductReader extends AbstractProductReader {
                                                 int targetHeight,
                                                 ProductData targetBuffer,
                                                 ProgressMonitor pm) {
-        synchronized (this) {
-            final RenderedImage image = targetBand.getSourceImage();
-            final Raster data = image.getData(new Rectangle(targetOffsetX, targetOffsetY, targetWidth, targetHeight));
+        // no lock, the source images of the bands are safe for concurrent use
+        final RenderedImage image = targetBand.getSourceImage();
+        final Raster data = image.getData(new Rectangle(targetOffsetX, targetOffsetY, targetWidth, targetHeight));
 
-            data.getDataElements(targetOffsetX, targetOffsetY, targetWidth, targetHeight, targetBuffer.getElems());
-        }
+        data.getDataElements(targetOffsetX, targetOffsetY, targetWidth, targetHeight, targetBuffer.getElems());
     }
 
     @Override
     public void close() throws IOException {
         synchronized (this) {
+            if (product != null) {
+                // tiles are not evicted eagerly otherwise
+                SmosTileCache.getInstance().removeTiles(product);
+            }
             productFile.close();
             if (virtualDir != null) {
                 virtualDir.close();
@@ -173,6 +212,13 @@ public class SmosProductReader extends AbstractProductReader {
         throw new IllegalArgumentException(MessageFormat.format("Illegal input: {0}", input));
     }
 
+    private static File[] listLightBufrFiles(File file) {
+        if (SmosUtils.isLightBufrTypeSupported() && file.isDirectory()) {
+            return LightBufrFile.listFiles(file);
+        }
+        return new File[0];
+    }
+
     private VirtualDir getInputVirtualDir() {
         File inputFile = getInputFile();
 
@@ -218,6 +264,29 @@ public class SmosProductReader extends AbstractProductReader {
         band.setImageInfo(ProductHelper.createImageInfo(band, descriptor));
     }
 
+    /**
+     * Creates the data context of a DBL file. By default, the file is mapped into memory,
+     * which is set by the system property {@code beam.smos.memoryMappedRead}.
+     * <p/>
+     * Mapped memory is not released when the product is closed, but only when the mapped
+     * buffers are garbage collected. On Windows, a mapped file cannot be deleted or
+     * replaced until then, so memory mapped read is disabled by default on Windows.
+     */
+    private static DataContext createDataContext(DataFormat format, File dblFile) throws IOException {
+        final boolean windows = System.getProperty("os.name", "").startsWith("Windows");
+        if (Boolean.parseBoolean(System.getProperty(MEMORY_MAPPED_READ_PROPERTY_NAME, String.valueOf(!windows)))) {
+            try {
+                // reads from mapped memory are safe for concurrent use without locking
+                return format.createContext(new MappedFileIOHandler(dblFile));
+            } catch (IOException e) {
+                // mapping may fail when the address space is exhausted, fall back to random access
+                logger.log(Level.WARNING, MessageFormat.format(
+                        "Cannot map file ''{0}'' into memory, using random access instead.", dblFile), e);
+            }
+        }
+        return format.createContext(dblFile, "r");
+    }
+
     private static ProductFile createProductFileImplementation(File file) throws IOException {
         if (SmosUtils.isLightBufrTypeSupported() && SmosUtils.isLightBufrType(file.getName())) {
             return new LightBufrFile(file);
@@ -226,14 +295,15 @@ public class SmosProductReader extends AbstractProductReader {
         final File hdrFile = FileUtils.exchangeExtension(file, ".HDR");
         final File dblFile = FileUtils.exchangeExtension(file, ".DBL");
 
-        final DataFormat format = Dddb.getInstance().getDataFormat(hdrFile);
+        // the header is parsed once and shared with the product file created below
+        final DataFormat format = Dddb.getInstance().getDataFormat(EEHeader.getInstance(hdrFile).getSchemaName());
         if (format == null) {
             return null;
         }
 
         final EEFilePair eeFilePair = new EEFilePair(hdrFile, dblFile);
         final String formatName = format.getName();
-        final DataContext context = format.createContext(dblFile, "r");
+        final DataContext context = createDataContext(format, dblFile);
 
         if (SmosUtils.isBrowseFormat(formatName)) {
             return new L1cBrowseSmosFile(eeFilePair, context);
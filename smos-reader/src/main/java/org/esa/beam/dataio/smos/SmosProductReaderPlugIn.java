@@ -22,16 +22,24 @@ import org.esa.beam.smos.SmosUtils;
 import org.esa.beam.util.io.BeamFileFilter;
 import org.esa.beam.util.io.FileUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileFilter;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 /**
  * Plugin providing the SMOS product reader.
+ * <p/>
+ * Decode qualifications are memoized by file path, a memoized qualification is
+ * discarded when the file (or the header file of an EE file pair) has been modified.
  */
 public class SmosProductReaderPlugIn implements ProductReaderPlugIn {
 
@@ -41,6 +49,9 @@ public class SmosProductReaderPlugIn implements ProductReaderPlugIn {
     private static final String[] FORMAT_NAMES = new String[]{"SMOS-EEF"};
     private static final String DESCRIPTION = "SMOS Data Products";
 
+    private static final int HEADER_PREFIX_LENGTH = 65536;
+    private static final int CACHE_CAPACITY = 4096;
+
     @Override
     public SmosProductReader createReaderInstance() {
         return new SmosProductReader(this);
@@ -55,18 +66,86 @@ public class SmosProductReaderPlugIn implements ProductReaderPlugIn {
             return DecodeQualification.INTENDED;
         }
 
-        if (fileName.endsWith(".DBL") || fileName.endsWith(".HDR")) {
+        final File stampFile;
+        if (isEEFileName(fileName)) {
             final File hdrFile = FileUtils.exchangeExtension(file, ".HDR");
             final File dblFile = FileUtils.exchangeExtension(file, ".DBL");
+            if (!(hdrFile.exists() && dblFile.exists())) {
+                return DecodeQualification.UNABLE;
+            }
+            // the qualification of a complete EE file pair depends on the header file only
+            stampFile = hdrFile;
+        } else {
+            stampFile = file;
+        }
+        final String key = file.getAbsolutePath();
+        final long lastModified = stampFile.lastModified();
+        final long length = stampFile.length();
+        synchronized (Holder.CACHE) {
+            final Qualification qualification = Holder.CACHE.get(key);
+            if (qualification != null && qualification.isValid(lastModified, length)) {
+                return qualification.decodeQualification;
+            }
+        }
+        final DecodeQualification decodeQualification = qualify(file, fileName);
+        synchronized (Holder.CACHE) {
+            Holder.CACHE.put(key, new Qualification(lastModified, length, decodeQualification));
+        }
 
-            if (hdrFile.exists() && dblFile.exists()) {
-                try {
-                    if (Dddb.getInstance().getDataFormat(hdrFile) != null) {
-                        return DecodeQualification.INTENDED;
-                    }
-                } catch (Exception e) {
-                    // ignore
+        return decodeQualification;
+    }
+
+    /**
+     * Qualifies a directory, whose BUFR files are read as a single product. Only a
+     * directory holding nothing but BUFR files is intended to be read as a product.
+     * When there are other files, the directory is merely suitable, so any directory
+     * that happens to contain a BUFR file is not claimed by this reader.
+     *
+     * @param dir the directory.
+     *
+     * @return the qualification of the directory.
+     */
+    static DecodeQualification qualifyLightBufrDirectory(File dir) {
+        // the directory is listed once, the BUFR files are counted among all files
+        final File[] files = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && !file.isHidden();
+            }
+        });
+        if (files == null) {
+            return DecodeQualification.UNABLE;
+        }
+        int bufrFileCount = 0;
+        for (final File file : files) {
+            if (SmosUtils.isLightBufrType(file.getName())) {
+                bufrFileCount++;
+            }
+        }
+        if (bufrFileCount == 0) {
+            return DecodeQualification.UNABLE;
+        }
+        if (bufrFileCount == files.length) {
+            return DecodeQualification.INTENDED;
+        }
+        return DecodeQualification.SUITABLE;
+    }
+
+    private static DecodeQualification qualify(File file, String fileName) {
+        if (isEEFileName(fileName)) {
+            if (isUnsupportedType(fileName)) {
+                return DecodeQualification.UNABLE;
+            }
+            try {
+                if (Dddb.getInstance().hasDataFormat(readSchemaName(FileUtils.exchangeExtension(file, ".HDR")))) {
+                    return DecodeQualification.INTENDED;
                 }
+            } catch (Exception e) {
+                // ignore
+            }
+        } else if (file.isDirectory()) {
+            if (SmosUtils.isLightBufrTypeSupported()) {
+                return qualifyLightBufrDirectory(file);
             }
         } else if (SmosUtils.isCompressedFile(file)) {
             if (SmosUtils.isL1cType(fileName) ||
@@ -108,6 +187,29 @@ public class SmosProductReaderPlugIn implements ProductReaderPlugIn {
         return DecodeQualification.UNABLE;
     }
 
+    private static boolean isEEFileName(String fileName) {
+        return fileName.endsWith(".DBL") || fileName.endsWith(".HDR");
+    }
+
+    // SMOS product types, for which there is no datablock schema
+    private static boolean isUnsupportedType(String fileName) {
+        return SmosUtils.isL0Type(fileName) ||
+               SmosUtils.isL1aType(fileName) ||
+               SmosUtils.isL1bType(fileName) ||
+               SmosUtils.isMirasPlanType(fileName);
+    }
+
+    // only the head of the header file is read, the datablock schema is found near its beginning
+    static String readSchemaName(File hdrFile) throws IOException {
+        final byte[] bytes;
+        try (RandomAccessFile raf = new RandomAccessFile(hdrFile, "r")) {
+            bytes = new byte[(int) Math.min(HEADER_PREFIX_LENGTH, raf.length())];
+            raf.readFully(bytes);
+        }
+
+        return Dddb.extractFormatName(new ByteArrayInputStream(bytes));
+    }
+
     @Override
     public Class[] getInputTypes() {
         return new Class[]{File.class, String.class};
@@ -140,4 +242,32 @@ public class SmosProductReaderPlugIn implements ProductReaderPlugIn {
     public BeamFileFilter getProductFileFilter() {
         return new BeamFileFilter(getFormatNames()[0], getDefaultFileExtensions(), getDescription(null));
     }
+
+    private static final class Qualification {
+
+        private final long lastModified;
+        private final long length;
+        private final DecodeQualification decodeQualification;
+
+        private Qualification(long lastModified, long length, DecodeQualification decodeQualification) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.decodeQualification = decodeQualification;
+        }
+
+        private boolean isValid(long lastModified, long length) {
+            return this.lastModified == lastModified && this.length == length;
+        }
+    }
+
+    // Initialization on demand holder idiom
+    private static class Holder {
+
+        private static final Map<String, Qualification> CACHE = new LinkedHashMap<String, Qualification>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Qualification> eldest) {
+                return size() > CACHE_CAPACITY;
+            }
+        };
+    }
 }
@@ -0,0 +1,424 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import org.esa.beam.framework.datamodel.Product;
+
+import javax.media.jai.TileCache;
+import java.awt.Point;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * A tile cache for SMOS images, which is separated from the JAI tile cache used
+ * for all other images. The cache has a memory budget of its own, which is set by
+ * the system property {@code beam.smos.tileCacheSize} (in MB).
+ * <p/>
+ * Tiles are evicted by cost: a tile, which takes long to compute relative to its
+ * memory size, stays longer in the cache than a tile, which is cheap to compute.
+ * Tiles, which have not been used for a long time, are evicted eventually.
+ * <p/>
+ * Only tiles, whose computation time has been recorded, are cached. The tiles of
+ * a product are purged when the product is closed.
+ *
+ * @since SMOS-Box 3.0
+ */
+public final class SmosTileCache implements TileCache {
+
+    private static final String TILE_CACHE_SIZE_PROPERTY_NAME = "beam.smos.tileCacheSize";
+    private static final long DEFAULT_TILE_CACHE_SIZE = 128L;
+
+    private final Map<Key, Entry> entryMap;
+    private final TreeSet<Entry> entryQueue;
+    private final Map<Key, Long> computationTimes;
+
+    private long memoryCapacity;
+    private float memoryThreshold;
+    private long memoryUsage;
+    private double inflation;
+    private long serial;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    private Comparator tileComparator;
+
+    SmosTileCache(long memoryCapacity) {
+        this.memoryCapacity = memoryCapacity;
+        memoryThreshold = 1.0f;
+        entryMap = new HashMap<>();
+        entryQueue = new TreeSet<>(new Comparator<Entry>() {
+            @Override
+            public int compare(Entry e1, Entry e2) {
+                final int c = Double.compare(e1.priority, e2.priority);
+                if (c != 0) {
+                    return c;
+                }
+                return Long.compare(e1.serial, e2.serial);
+            }
+        });
+        computationTimes = new HashMap<>();
+    }
+
+    /**
+     * Returns the tile cache shared by all SMOS images.
+     *
+     * @return the tile cache.
+     */
+    public static SmosTileCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Tests if SMOS images shall use the SMOS tile cache. SMOS images use the JAI
+     * tile cache, when the system property {@code beam.smos.tileCacheSize} is zero.
+     *
+     * @return {@code true} if SMOS images shall use the SMOS tile cache.
+     */
+    static boolean isEnabled() {
+        return Holder.INSTANCE.getMemoryCapacity() > 0;
+    }
+
+    /**
+     * Records the time taken to compute a tile. The time is used as the cost of the
+     * tile, when the tile is added to the cache.
+     *
+     * @param owner           the image.
+     * @param tileX           the tile x index.
+     * @param tileY           the tile y index.
+     * @param computationTime the computation time (ns).
+     */
+    synchronized void recordComputationTime(RenderedImage owner, int tileX, int tileY, long computationTime) {
+        computationTimes.put(new Key(owner, tileX, tileY), computationTime);
+    }
+
+    @Override
+    public void add(RenderedImage owner, int tileX, int tileY, Raster data) {
+        add(owner, tileX, tileY, data, null);
+    }
+
+    @Override
+    public synchronized void add(RenderedImage owner, int tileX, int tileY, Raster data, Object tileCacheMetric) {
+        final Key key = new Key(owner, tileX, tileY);
+        final Long computationTime = computationTimes.remove(key);
+        if (computationTime == null) {
+            // tiles shared by several images, like no-data tiles, are cheap and not cached
+            return;
+        }
+        removeEntry(entryMap.get(key));
+
+        final Entry entry = new Entry(key, data, getProduct(owner), getMemorySize(data),
+                                      Math.max(1L, computationTime));
+        updatePriority(entry);
+        entryMap.put(key, entry);
+        entryQueue.add(entry);
+        memoryUsage += entry.memorySize;
+
+        evict(memoryCapacity);
+    }
+
+    @Override
+    public synchronized void remove(RenderedImage owner, int tileX, int tileY) {
+        removeEntry(entryMap.get(new Key(owner, tileX, tileY)));
+    }
+
+    @Override
+    public synchronized Raster getTile(RenderedImage owner, int tileX, int tileY) {
+        final Entry entry = entryMap.get(new Key(owner, tileX, tileY));
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        entryQueue.remove(entry);
+        updatePriority(entry);
+        entryQueue.add(entry);
+
+        return entry.data;
+    }
+
+    @Override
+    public synchronized Raster[] getTiles(RenderedImage owner) {
+        final List<Raster> tiles = new ArrayList<>();
+        for (final Entry entry : entryMap.values()) {
+            if (entry.key.owner == owner) {
+                tiles.add(entry.data);
+            }
+        }
+        if (tiles.isEmpty()) {
+            return null;
+        }
+        return tiles.toArray(new Raster[tiles.size()]);
+    }
+
+    @Override
+    public synchronized void removeTiles(RenderedImage owner) {
+        for (final Iterator<Entry> iterator = entryMap.values().iterator(); iterator.hasNext(); ) {
+            final Entry entry = iterator.next();
+            if (entry.key.owner == owner) {
+                iterator.remove();
+                entryQueue.remove(entry);
+                memoryUsage -= entry.memorySize;
+            }
+        }
+        for (final Iterator<Key> iterator = computationTimes.keySet().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().owner == owner) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes the tiles of all images of a product from the cache.
+     *
+     * @param product the product.
+     */
+    public synchronized void removeTiles(Product product) {
+        for (final Iterator<Entry> iterator = entryMap.values().iterator(); iterator.hasNext(); ) {
+            final Entry entry = iterator.next();
+            if (entry.product == product) {
+                iterator.remove();
+                entryQueue.remove(entry);
+                memoryUsage -= entry.memorySize;
+            }
+        }
+        for (final Iterator<Key> iterator = computationTimes.keySet().iterator(); iterator.hasNext(); ) {
+            if (getProduct(iterator.next().owner) == product) {
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public void addTiles(RenderedImage owner, Point[] tileIndices, Raster[] tiles, Object tileCacheMetric) {
+        for (int i = 0; i < tileIndices.length; i++) {
+            add(owner, tileIndices[i].x, tileIndices[i].y, tiles[i], tileCacheMetric);
+        }
+    }
+
+    @Override
+    public Raster[] getTiles(RenderedImage owner, Point[] tileIndices) {
+        final Raster[] tiles = new Raster[tileIndices.length];
+        for (int i = 0; i < tileIndices.length; i++) {
+            tiles[i] = getTile(owner, tileIndices[i].x, tileIndices[i].y);
+        }
+        return tiles;
+    }
+
+    @Override
+    public synchronized void flush() {
+        entryMap.clear();
+        entryQueue.clear();
+        computationTimes.clear();
+        memoryUsage = 0;
+        inflation = 0.0;
+    }
+
+    @Override
+    public synchronized void memoryControl() {
+        evict((long) (memoryThreshold * memoryCapacity));
+    }
+
+    /**
+     * @deprecated the capacity of this cache is limited by memory only.
+     */
+    @Override
+    @Deprecated
+    public void setTileCapacity(int tileCapacity) {
+    }
+
+    /**
+     * @deprecated the capacity of this cache is limited by memory only.
+     */
+    @Override
+    @Deprecated
+    public int getTileCapacity() {
+        return 0;
+    }
+
+    @Override
+    public synchronized void setMemoryCapacity(long memoryCapacity) {
+        if (memoryCapacity < 0) {
+            throw new IllegalArgumentException("memoryCapacity < 0");
+        }
+        this.memoryCapacity = memoryCapacity;
+        evict(memoryCapacity);
+    }
+
+    @Override
+    public synchronized long getMemoryCapacity() {
+        return memoryCapacity;
+    }
+
+    @Override
+    public synchronized void setMemoryThreshold(float memoryThreshold) {
+        if (memoryThreshold < 0.0f || memoryThreshold > 1.0f) {
+            throw new IllegalArgumentException("memoryThreshold not in [0, 1]");
+        }
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    @Override
+    public synchronized float getMemoryThreshold() {
+        return memoryThreshold;
+    }
+
+    /**
+     * Sets the tile comparator. The comparator is ignored, because tiles are evicted by cost.
+     *
+     * @param comparator the comparator.
+     */
+    @Override
+    public synchronized void setTileComparator(Comparator comparator) {
+        tileComparator = comparator;
+    }
+
+    @Override
+    public synchronized Comparator getTileComparator() {
+        return tileComparator;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    public synchronized int getTileCount() {
+        return entryMap.size();
+    }
+
+    // the priority of a tile is its cost per byte, inflated by the priority of the last tile evicted
+    private void updatePriority(Entry entry) {
+        entry.priority = inflation + (double) entry.computationTime / Math.max(1L, entry.memorySize);
+        entry.serial = serial++;
+    }
+
+    private void evict(long memoryLimit) {
+        while (memoryUsage > memoryLimit && !entryQueue.isEmpty()) {
+            final Entry entry = entryQueue.pollFirst();
+            entryMap.remove(entry.key);
+            memoryUsage -= entry.memorySize;
+            inflation = entry.priority;
+            evictionCount++;
+        }
+    }
+
+    private void removeEntry(Entry entry) {
+        if (entry != null) {
+            entryMap.remove(entry.key);
+            entryQueue.remove(entry);
+            memoryUsage -= entry.memorySize;
+        }
+    }
+
+    private static Product getProduct(RenderedImage image) {
+        if (image instanceof SmosOpImage) {
+            return ((SmosOpImage) image).getProduct();
+        }
+        if (image instanceof CellGridOpImage) {
+            return ((CellGridOpImage) image).getProduct();
+        }
+        return null;
+    }
+
+    private static long getMemorySize(Raster tile) {
+        final DataBuffer dataBuffer = tile.getDataBuffer();
+        final long elementSize = DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8;
+
+        return elementSize * dataBuffer.getSize() * dataBuffer.getNumBanks();
+    }
+
+    private static final class Entry {
+
+        private final Key key;
+        private final Raster data;
+        private final Product product;
+        private final long memorySize;
+        private final long computationTime;
+
+        private double priority;
+        private long serial;
+
+        private Entry(Key key, Raster data, Product product, long memorySize, long computationTime) {
+            this.key = key;
+            this.data = data;
+            this.product = product;
+            this.memorySize = memorySize;
+            this.computationTime = computationTime;
+        }
+    }
+
+    private static final class Key {
+
+        private final RenderedImage owner;
+        private final int tileX;
+        private final int tileY;
+
+        private Key(RenderedImage owner, int tileX, int tileY) {
+            this.owner = owner;
+            this.tileX = tileX;
+            this.tileY = tileY;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return owner == key.owner && tileX == key.tileX && tileY == key.tileY;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(owner);
+            result = 31 * result + tileX;
+            result = 31 * result + tileY;
+            return result;
+        }
+    }
+
+    // Initialization on demand holder idiom
+    private static class Holder {
+
+        private static final SmosTileCache INSTANCE = new SmosTileCache(
+                Long.getLong(TILE_CACHE_SIZE_PROPERTY_NAME, DEFAULT_TILE_CACHE_SIZE) * 1024L * 1024L);
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import java.util.Arrays;
+
+/**
+ * An immutable inverted index, which maps SMOS L1c Science snapshot IDs onto the
+ * grid points observed in a snapshot and the index of the first BT data record
+ * belonging to the snapshot in the BT data list of each grid point.
+ * <p/>
+ * The index is held in primitive arrays. For each snapshot, the grid point indexes
+ * are stored in ascending order.
+ *
+ * @since SMOS-Box 3.0
+ */
+final class SnapshotIndex {
+
+    private final long[] snapshotIds;
+    private final int[] offsets;
+    private final int[] gridPointIndexes;
+    private final int[] btRecordIndexes;
+
+    private SnapshotIndex(long[] snapshotIds, int[] offsets, int[] gridPointIndexes, int[] btRecordIndexes) {
+        this.snapshotIds = snapshotIds;
+        this.offsets = offsets;
+        this.gridPointIndexes = gridPointIndexes;
+        this.btRecordIndexes = btRecordIndexes;
+    }
+
+    int getSnapshotCount() {
+        return snapshotIds.length;
+    }
+
+    /**
+     * Returns the number of grid points observed in a snapshot.
+     *
+     * @param snapshotId the snapshot ID.
+     *
+     * @return the number of grid points, or {@code 0} if the snapshot is unknown.
+     */
+    int getGridPointCount(long snapshotId) {
+        final int i = Arrays.binarySearch(snapshotIds, snapshotId);
+        if (i < 0) {
+            return 0;
+        }
+        return offsets[i + 1] - offsets[i];
+    }
+
+    /**
+     * Returns the index of the first BT data record of a grid point belonging to a snapshot.
+     *
+     * @param snapshotId     the snapshot ID.
+     * @param gridPointIndex the grid point index.
+     *
+     * @return the BT data record index, or {@code -1} if the grid point is not observed in the snapshot.
+     */
+    int getBtRecordIndex(long snapshotId, int gridPointIndex) {
+        final int i = Arrays.binarySearch(snapshotIds, snapshotId);
+        if (i < 0) {
+            return -1;
+        }
+        final int k = Arrays.binarySearch(gridPointIndexes, offsets[i], offsets[i + 1], gridPointIndex);
+        if (k < 0) {
+            return -1;
+        }
+        return btRecordIndexes[k];
+    }
+
+    /**
+     * Builds a snapshot index. Entries must be added in ascending order of grid point index.
+     * Each distinct snapshot ID added to a builder is assigned an ordinal number, in order
+     * of appearance.
+     */
+    static final class Builder {
+
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private int entryCount;
+        private int[] entryOrdinals = new int[INITIAL_CAPACITY];
+        private int[] entryGridPointIndexes = new int[INITIAL_CAPACITY];
+        private int[] entryBtRecordIndexes = new int[INITIAL_CAPACITY];
+
+        private int snapshotCount;
+        private long[] ordinalSnapshotIds = new long[INITIAL_CAPACITY];
+        private long[] hashKeys = new long[INITIAL_CAPACITY * 2];
+        private int[] hashValues = new int[INITIAL_CAPACITY * 2];
+
+        Builder() {
+            Arrays.fill(hashValues, -1);
+        }
+
+        /**
+         * Adds an entry to the index.
+         *
+         * @param gridPointIndex the grid point index.
+         * @param snapshotId     the snapshot ID.
+         * @param btRecordIndex  the index of the first BT data record of the grid point belonging to the snapshot.
+         *
+         * @return the ordinal number of the snapshot ID.
+         */
+        int add(int gridPointIndex, long snapshotId, int btRecordIndex) {
+            ensureEntryCapacity(entryCount + 1);
+            final int ordinal = getOrdinal(snapshotId);
+            entryOrdinals[entryCount] = ordinal;
+            entryGridPointIndexes[entryCount] = gridPointIndex;
+            entryBtRecordIndexes[entryCount] = btRecordIndex;
+            entryCount++;
+
+            return ordinal;
+        }
+
+        /**
+         * Adds all entries of another builder to this builder. The grid point indexes of
+         * the entries added must not be less than those of the entries already present.
+         *
+         * @param other the other builder.
+         *
+         * @return the mapping of the ordinal numbers of the other builder onto the ordinal
+         *         numbers of this builder.
+         */
+        int[] addAll(Builder other) {
+            final int[] ordinals = new int[other.snapshotCount];
+            for (int ordinal = 0; ordinal < other.snapshotCount; ordinal++) {
+                ordinals[ordinal] = getOrdinal(other.ordinalSnapshotIds[ordinal]);
+            }
+            ensureEntryCapacity(entryCount + other.entryCount);
+            for (int i = 0; i < other.entryCount; i++) {
+                entryOrdinals[entryCount + i] = ordinals[other.entryOrdinals[i]];
+            }
+            System.arraycopy(other.entryGridPointIndexes, 0, entryGridPointIndexes, entryCount, other.entryCount);
+            System.arraycopy(other.entryBtRecordIndexes, 0, entryBtRecordIndexes, entryCount, other.entryCount);
+            entryCount += other.entryCount;
+
+            return ordinals;
+        }
+
+        int getSnapshotCount() {
+            return snapshotCount;
+        }
+
+        long getSnapshotId(int ordinal) {
+            return ordinalSnapshotIds[ordinal];
+        }
+
+        SnapshotIndex build() {
+            final long[] snapshotIds = Arrays.copyOf(ordinalSnapshotIds, snapshotCount);
+            Arrays.sort(snapshotIds);
+
+            final int[] positions = new int[snapshotCount];
+            for (int ordinal = 0; ordinal < snapshotCount; ordinal++) {
+                positions[ordinal] = Arrays.binarySearch(snapshotIds, ordinalSnapshotIds[ordinal]);
+            }
+
+            final int[] offsets = new int[snapshotCount + 1];
+            for (int i = 0; i < entryCount; i++) {
+                offsets[positions[entryOrdinals[i]] + 1]++;
+            }
+            for (int i = 0; i < snapshotCount; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+
+            final int[] gridPointIndexes = new int[entryCount];
+            final int[] btRecordIndexes = new int[entryCount];
+            final int[] next = Arrays.copyOf(offsets, snapshotCount);
+            for (int i = 0; i < entryCount; i++) {
+                final int k = next[positions[entryOrdinals[i]]]++;
+                gridPointIndexes[k] = entryGridPointIndexes[i];
+                btRecordIndexes[k] = entryBtRecordIndexes[i];
+            }
+
+            return new SnapshotIndex(snapshotIds, offsets, gridPointIndexes, btRecordIndexes);
+        }
+
+        private void ensureEntryCapacity(int minCapacity) {
+            if (minCapacity > entryOrdinals.length) {
+                final int capacity = Math.max(minCapacity, entryOrdinals.length * 2);
+                entryOrdinals = Arrays.copyOf(entryOrdinals, capacity);
+                entryGridPointIndexes = Arrays.copyOf(entryGridPointIndexes, capacity);
+                entryBtRecordIndexes = Arrays.copyOf(entryBtRecordIndexes, capacity);
+            }
+        }
+
+        private int getOrdinal(long snapshotId) {
+            int slot = hash(snapshotId, hashKeys.length);
+            while (hashValues[slot] != -1) {
+                if (hashKeys[slot] == snapshotId) {
+                    return hashValues[slot];
+                }
+                slot = (slot + 1) & (hashKeys.length - 1);
+            }
+            final int ordinal = snapshotCount++;
+            if (ordinal == ordinalSnapshotIds.length) {
+                ordinalSnapshotIds = Arrays.copyOf(ordinalSnapshotIds, ordinal * 2);
+            }
+            ordinalSnapshotIds[ordinal] = snapshotId;
+            hashKeys[slot] = snapshotId;
+            hashValues[slot] = ordinal;
+            if (snapshotCount * 2 > hashKeys.length) {
+                rehash();
+            }
+            return ordinal;
+        }
+
+        private void rehash() {
+            final int capacity = hashKeys.length * 2;
+            hashKeys = new long[capacity];
+            hashValues = new int[capacity];
+            Arrays.fill(hashValues, -1);
+            for (int ordinal = 0; ordinal < snapshotCount; ordinal++) {
+                int slot = hash(ordinalSnapshotIds[ordinal], capacity);
+                while (hashValues[slot] != -1) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                hashKeys[slot] = ordinalSnapshotIds[ordinal];
+                hashValues[slot] = ordinal;
+            }
+        }
+
+        private static int hash(long key, int capacity) {
+            final long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & (capacity - 1);
+        }
+    }
+}
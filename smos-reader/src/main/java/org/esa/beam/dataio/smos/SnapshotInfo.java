@@ -40,6 +40,7 @@ public class SnapshotInfo {
     private final List<Long> snapshotIdsY;
     private final List<Long> snapshotIdsXY;
     private final Map<Long, Area> snapshotAreaMap;
+    private final SnapshotIndex snapshotIndex;
 
     public SnapshotInfo(Map<Long, Integer> snapshotIndexMap,
                         Collection<Long> snapshotIds,
@@ -47,6 +48,16 @@ public class SnapshotInfo {
                         Collection<Long> snapshotIdsY,
                         Collection<Long> snapshotIdsXY,
                         Map<Long, Rectangle2D> snapshotAreaMap) {
+        this(snapshotIndexMap, snapshotIds, snapshotIdsX, snapshotIdsY, snapshotIdsXY, snapshotAreaMap, null);
+    }
+
+    SnapshotInfo(Map<Long, Integer> snapshotIndexMap,
+                 Collection<Long> snapshotIds,
+                 Collection<Long> snapshotIdsX,
+                 Collection<Long> snapshotIdsY,
+                 Collection<Long> snapshotIdsXY,
+                 Map<Long, Rectangle2D> snapshotAreaMap,
+                 SnapshotIndex snapshotIndex) {
         this.snapshotIndexMap = Collections.unmodifiableMap(snapshotIndexMap);
         this.snapshotIds = Collections.unmodifiableList(new ArrayList<>(snapshotIds));
         this.snapshotIdsX = Collections.unmodifiableList(new ArrayList<>(snapshotIdsX));
@@ -58,6 +69,7 @@ public class SnapshotInfo {
             map.put(entry.getKey(), new Area(entry.getValue()));
         }
         this.snapshotAreaMap = Collections.unmodifiableMap(map);
+        this.snapshotIndex = snapshotIndex;
     }
 
     public int getSnapshotIndex(long snapshotId) {
@@ -86,4 +98,8 @@ public class SnapshotInfo {
     public Area getArea(long snapshotId) {
         return snapshotAreaMap.get(snapshotId);
     }
+
+    SnapshotIndex getSnapshotIndex() {
+        return snapshotIndex;
+    }
 }
@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import com.bc.ceres.binio.CompoundData;
+
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Builds the {@link SnapshotInfo} of a SMOS L1c Science product file.
+ * <p/>
+ * The grid points are partitioned into ranges, which are processed in parallel by a
+ * worker pool shared by all product files. Snapshot IDs are collected into primitive
+ * arrays and the results of all partitions are merged, when all partitions are done.
+ * <p/>
+ * The reading of the product file is confined to a few package-private methods, which
+ * are overridden for testing.
+ *
+ * @since SMOS-Box 3.0
+ */
+class SnapshotInfoBuilder {
+
+    static final int PARTITION_SIZE = 4096;
+
+    private static final int POL_MODE_X = 1;
+    private static final int POL_MODE_Y = 2;
+    private static final int POL_MODE_XY = 4;
+
+    private final L1cScienceSmosFile smosFile;
+    private final int flagsIndex;
+    private final int snapshotIdOfPixelIndex;
+
+    private volatile boolean cancelled;
+
+    SnapshotInfoBuilder(L1cScienceSmosFile smosFile, int flagsIndex, int snapshotIdOfPixelIndex) {
+        this.smosFile = smosFile;
+        this.flagsIndex = flagsIndex;
+        this.snapshotIdOfPixelIndex = snapshotIdOfPixelIndex;
+    }
+
+    /**
+     * Submits the creation of the snapshot info of a SMOS L1c Science product file to the
+     * shared worker pool. Cancelling the future returned stops all partitions of the work.
+     *
+     * @param smosFile               the SMOS L1c Science product file.
+     * @param flagsIndex             the index of the BT data flags member.
+     * @param snapshotIdOfPixelIndex the index of the BT data snapshot ID member.
+     *
+     * @return the future snapshot info.
+     */
+    static Future<SnapshotInfo> submit(L1cScienceSmosFile smosFile, int flagsIndex, int snapshotIdOfPixelIndex) {
+        return new SnapshotInfoBuilder(smosFile, flagsIndex, snapshotIdOfPixelIndex).submit();
+    }
+
+    /**
+     * Returns the fork-join pool used for building snapshot infos.
+     *
+     * @return the fork-join pool.
+     */
+    static ForkJoinPool getPool() {
+        return Holder.POOL;
+    }
+
+    final Future<SnapshotInfo> submit() {
+        return getPool().submit(new RootTask());
+    }
+
+    final boolean isCancelled() {
+        return cancelled;
+    }
+
+    int getGridPointCount() {
+        return smosFile.getGridPointCount();
+    }
+
+    /**
+     * Returns the IDs of the snapshots in the snapshot list of the product file, in the
+     * order of the snapshot list.
+     *
+     * @return the snapshot IDs.
+     *
+     * @throws IOException if an I/O error occurred.
+     */
+    long[] readSnapshotListIds() throws IOException {
+        final int snapshotIdIndex = smosFile.getSnapshotType().getMemberIndex(SmosConstants.SNAPSHOT_ID_NAME);
+        final long[] ids = new long[smosFile.getSnapshotCount()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = smosFile.getSnapshotData(i).getLong(snapshotIdIndex);
+        }
+        return ids;
+    }
+
+    /**
+     * Merges the partial results of all partitions into the snapshot info. The partitions
+     * must be given in the order of the grid points they contain.
+     *
+     * @param partitions      the partitions.
+     * @param snapshotListIds the IDs of the snapshots in the snapshot list of the product file.
+     *
+     * @return the snapshot info.
+     */
+    static SnapshotInfo merge(List<Partition> partitions, long[] snapshotListIds) {
+        final SnapshotIndex.Builder indexBuilder = new SnapshotIndex.Builder();
+        final int[][] ordinals = new int[partitions.size()][];
+        for (int i = 0; i < ordinals.length; i++) {
+            ordinals[i] = indexBuilder.addAll(partitions.get(i).indexBuilder);
+        }
+
+        final int snapshotCount = indexBuilder.getSnapshotCount();
+        final int[] polModes = new int[snapshotCount];
+        final Rectangle2D[] areas = new Rectangle2D[snapshotCount];
+        for (int i = 0; i < ordinals.length; i++) {
+            final Partition partition = partitions.get(i);
+            for (int k = 0; k < ordinals[i].length; k++) {
+                final int ordinal = ordinals[i][k];
+                polModes[ordinal] |= partition.polModes[k];
+                // todo: rq/rq - snapshots on the anti-meridian, use area instead of rectangle (2009-10-22)
+                if (areas[ordinal] == null) {
+                    areas[ordinal] = partition.createRectangle(k);
+                } else {
+                    areas[ordinal].add(partition.createRectangle(k));
+                }
+            }
+        }
+
+        final long[] all = new long[snapshotCount];
+        final long[] x = new long[snapshotCount];
+        final long[] y = new long[snapshotCount];
+        final long[] xy = new long[snapshotCount];
+        int xCount = 0;
+        int yCount = 0;
+        int xyCount = 0;
+        final Map<Long, Rectangle2D> snapshotAreaMap = new HashMap<>(snapshotCount * 2);
+        for (int ordinal = 0; ordinal < snapshotCount; ordinal++) {
+            final long id = indexBuilder.getSnapshotId(ordinal);
+            all[ordinal] = id;
+            if ((polModes[ordinal] & POL_MODE_X) != 0) {
+                x[xCount++] = id;
+            }
+            if ((polModes[ordinal] & POL_MODE_Y) != 0) {
+                y[yCount++] = id;
+            }
+            if ((polModes[ordinal] & POL_MODE_XY) != 0) {
+                xy[xyCount++] = id;
+            }
+            snapshotAreaMap.put(id, areas[ordinal]);
+        }
+        Arrays.sort(all);
+
+        final Map<Long, Integer> snapshotIndexMap = new TreeMap<>();
+        for (int i = 0; i < snapshotListIds.length; i++) {
+            final long id = snapshotListIds[i];
+            if (Arrays.binarySearch(all, id) >= 0) {
+                snapshotIndexMap.put(id, i);
+            }
+        }
+
+        return new SnapshotInfo(snapshotIndexMap, toSortedList(all, snapshotCount), toSortedList(x, xCount),
+                                toSortedList(y, yCount), toSortedList(xy, xyCount), snapshotAreaMap,
+                                indexBuilder.build());
+    }
+
+    /**
+     * Creates the partition of a range of grid points. The grid points are not read
+     * anymore, when the builder has been cancelled.
+     *
+     * @param start the index of the first grid point (inclusive).
+     * @param end   the index of the last grid point (exclusive).
+     *
+     * @return the partition.
+     *
+     * @throws IOException if an I/O error occurred.
+     */
+    Partition createPartition(int start, int end) throws IOException {
+        final Partition partition = new Partition();
+        final GridPointList gridPointList = smosFile.getGridPointList();
+        final int latIndex = smosFile.getGridPointType().getMemberIndex("Latitude");
+        final int lonIndex = smosFile.getGridPointType().getMemberIndex("Longitude");
+        final int[] memberIndexes = {snapshotIdOfPixelIndex, flagsIndex};
+        long[][] btData = new long[2][0];
+
+        for (int i = start; i < end && !cancelled; i++) {
+            final int btCount = smosFile.getBtRecordCount(i);
+
+            if (btCount > 0) {
+                if (btCount > btData[0].length) {
+                    btData = new long[2][btCount];
+                }
+                smosFile.readBtData(i, memberIndexes, btData);
+                final CompoundData gridData = gridPointList.getCompound(i);
+                double lon = gridData.getDouble(lonIndex);
+                double lat = gridData.getDouble(latIndex);
+                // normalisation to [-180, 180] necessary for some L1c test products
+                if (lon > 180.0) {
+                    lon -= 360.0;
+                }
+                final Rectangle2D rectangle = DggUtils.createGridPointRectangle(lon, lat);
+
+                long lastId = -1;
+                int ordinal = -1;
+                for (int j = 0; j < btCount; j++) {
+                    final long id = btData[0][j];
+
+                    if (lastId != id) { // snapshots are ordered
+                        ordinal = partition.add(i, id, j, rectangle);
+                        lastId = id;
+                    }
+                    partition.addFlags(ordinal, (int) btData[1][j]);
+                }
+            }
+        }
+
+        return partition;
+    }
+
+    private static List<Long> toSortedList(long[] ids, int count) {
+        Arrays.sort(ids, 0, count);
+        final List<Long> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(ids[i]);
+        }
+        return list;
+    }
+
+    /**
+     * The partial result of a range of grid points.
+     */
+    static final class Partition {
+
+        private static final int INITIAL_CAPACITY = 256;
+
+        private final SnapshotIndex.Builder indexBuilder = new SnapshotIndex.Builder();
+        private int[] polModes = new int[INITIAL_CAPACITY];
+        private double[] bounds = new double[INITIAL_CAPACITY * 4];
+
+        int add(int gridPointIndex, long snapshotId, int btRecordIndex, Rectangle2D rectangle) {
+            final int snapshotCount = indexBuilder.getSnapshotCount();
+            final int ordinal = indexBuilder.add(gridPointIndex, snapshotId, btRecordIndex);
+            if (ordinal == snapshotCount) {
+                if (ordinal == polModes.length) {
+                    polModes = Arrays.copyOf(polModes, ordinal * 2);
+                    bounds = Arrays.copyOf(bounds, ordinal * 8);
+                }
+                bounds[ordinal * 4] = rectangle.getMinX();
+                bounds[ordinal * 4 + 1] = rectangle.getMinY();
+                bounds[ordinal * 4 + 2] = rectangle.getMaxX();
+                bounds[ordinal * 4 + 3] = rectangle.getMaxY();
+            } else {
+                bounds[ordinal * 4] = Math.min(bounds[ordinal * 4], rectangle.getMinX());
+                bounds[ordinal * 4 + 1] = Math.min(bounds[ordinal * 4 + 1], rectangle.getMinY());
+                bounds[ordinal * 4 + 2] = Math.max(bounds[ordinal * 4 + 2], rectangle.getMaxX());
+                bounds[ordinal * 4 + 3] = Math.max(bounds[ordinal * 4 + 3], rectangle.getMaxY());
+            }
+            return ordinal;
+        }
+
+        void addFlags(int ordinal, int flags) {
+            switch (flags & SmosConstants.L1C_POL_MODE_FLAGS_MASK) {
+                case SmosConstants.L1C_POL_MODE_X:
+                    polModes[ordinal] |= POL_MODE_X;
+                    break;
+                case SmosConstants.L1C_POL_MODE_Y:
+                    polModes[ordinal] |= POL_MODE_Y;
+                    break;
+                case SmosConstants.L1C_POL_MODE_XY1:
+                case SmosConstants.L1C_POL_MODE_XY2:
+                    polModes[ordinal] |= POL_MODE_XY;
+                    break;
+            }
+        }
+
+        Rectangle2D createRectangle(int ordinal) {
+            final double minX = bounds[ordinal * 4];
+            final double minY = bounds[ordinal * 4 + 1];
+            return new Rectangle2D.Double(minX, minY, bounds[ordinal * 4 + 2] - minX, bounds[ordinal * 4 + 3] - minY);
+        }
+    }
+
+    private final class RootTask extends RecursiveTask<SnapshotInfo> {
+
+        @Override
+        protected SnapshotInfo compute() {
+            final List<Partition> partitions = new PartitionTask(0, getGridPointCount()).invoke();
+            if (cancelled) {
+                return null;
+            }
+            try {
+                return merge(partitions, readSnapshotListIds());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            cancelled = true;
+            return super.cancel(mayInterruptIfRunning);
+        }
+    }
+
+    private final class PartitionTask extends RecursiveTask<List<Partition>> {
+
+        private final int start;
+        private final int end;
+
+        PartitionTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected List<Partition> compute() {
+            if (end - start > PARTITION_SIZE && !cancelled) {
+                final int mid = (start + end) >>> 1;
+                final PartitionTask lower = new PartitionTask(start, mid);
+                lower.fork();
+                final List<Partition> upperPartitions = new PartitionTask(mid, end).compute();
+                final List<Partition> partitions = lower.join();
+                partitions.addAll(upperPartitions);
+                return partitions;
+            }
+            final List<Partition> partitions = new ArrayList<>();
+            try {
+                partitions.add(createPartition(start, end));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return partitions;
+        }
+    }
+
+    // Initialization on demand holder idiom
+    private static class Holder {
+
+        private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+}
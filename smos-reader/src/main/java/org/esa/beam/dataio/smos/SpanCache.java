@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache for the spans of image regions, which is shared by
+ * all kinds of spans. The cache has a memory capacity, which is set by the system
+ * property {@code beam.smos.spanCacheSize} (in MB).
+ *
+ * @since SMOS-Box 3.0
+ */
+final class SpanCache {
+
+    private static final String CACHE_SIZE_PROPERTY_NAME = "beam.smos.spanCacheSize";
+    private static final long DEFAULT_CACHE_SIZE = 32L;
+
+    private final long memoryCapacity;
+    private final Map<Object, Entry> entryMap;
+
+    private long memoryUsage;
+
+    SpanCache(long memoryCapacity) {
+        this.memoryCapacity = memoryCapacity;
+        entryMap = new LinkedHashMap<>(64, 0.75f, true);
+    }
+
+    static SpanCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    synchronized Object get(Object key) {
+        final Entry entry = entryMap.get(key);
+        if (entry == null) {
+            return null;
+        }
+        return entry.spans;
+    }
+
+    /**
+     * Adds spans to the cache. The least recently used spans are evicted, when the
+     * memory capacity of the cache is exceeded. The spans added are never evicted by
+     * this method.
+     *
+     * @param key        the key.
+     * @param spans      the spans.
+     * @param memorySize the memory size of the spans (bytes).
+     */
+    synchronized void put(Object key, Object spans, long memorySize) {
+        final Entry oldEntry = entryMap.put(key, new Entry(spans, memorySize));
+        if (oldEntry != null) {
+            memoryUsage -= oldEntry.memorySize;
+        }
+        memoryUsage += memorySize;
+
+        final Iterator<Map.Entry<Object, Entry>> iterator = entryMap.entrySet().iterator();
+        while (memoryUsage > memoryCapacity && iterator.hasNext()) {
+            final Map.Entry<Object, Entry> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                break;
+            }
+            memoryUsage -= eldest.getValue().memorySize;
+            iterator.remove();
+        }
+    }
+
+    synchronized int getEntryCount() {
+        return entryMap.size();
+    }
+
+    synchronized long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    private static final class Entry {
+
+        private final Object spans;
+        private final long memorySize;
+
+        private Entry(Object spans, long memorySize) {
+            this.spans = spans;
+            this.memorySize = memorySize;
+        }
+    }
+
+    // Initialization on demand holder idiom
+    private static class Holder {
+
+        private static final SpanCache INSTANCE = new SpanCache(
+                Long.getLong(CACHE_SIZE_PROPERTY_NAME, DEFAULT_CACHE_SIZE) * 1024L * 1024L);
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import org.esa.beam.framework.datamodel.Product;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.PathIterator;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * An immutable representation of the area covered by a product in an image of a
+ * certain resolution level. For each image row, the range of pixels covered is
+ * recorded. For each tile, it is recorded whether the tile is covered at all.
+ * <p/>
+ * The coverage is conservative, i.e. a pixel or tile considered as covered may
+ * actually be not covered, but never vice versa.
+ * <p/>
+ * Tile coverages are shared by all images of a product covering the same area.
+ *
+ * @since SMOS-Box 3.0
+ */
+final class TileCoverage {
+
+    // the maximum number of tile coverages kept for a product, e.g. for several snapshots and levels
+    private static final int CAPACITY = 64;
+
+    private final int width;
+    private final int height;
+    private final int tileHeight;
+    private final int[] minX;
+    private final int[] maxX;
+    private final int numXTiles;
+    private final BitSet coveredTiles;
+
+    private TileCoverage(int width, int height, int tileWidth, int tileHeight, int[] minX, int[] maxX) {
+        this.width = width;
+        this.height = height;
+        this.tileHeight = tileHeight;
+        this.minX = minX;
+        this.maxX = maxX;
+
+        numXTiles = (width + tileWidth - 1) / tileWidth;
+        coveredTiles = new BitSet();
+        for (int y = 0; y < height; y++) {
+            if (minX[y] < maxX[y]) {
+                final int tileY = y / tileHeight;
+                for (int tileX = minX[y] / tileWidth; tileX <= (maxX[y] - 1) / tileWidth; tileX++) {
+                    coveredTiles.set(tileY * numXTiles + tileX);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the tile coverage of an area covered by a product in an image of a certain
+     * resolution level. The tile coverage is created, if it has not been created yet.
+     * Tile coverages are shared by all images of a product covering the same area, e.g.
+     * the area covered by the whole product or by a certain snapshot.
+     *
+     * @param product      the product.
+     * @param level        the resolution level.
+     * @param modelArea    the area covered, in model coordinates.
+     * @param modelToImage the transform from model to image coordinates.
+     * @param width        the image width.
+     * @param height       the image height.
+     * @param tileWidth    the tile width.
+     * @param tileHeight   the tile height.
+     *
+     * @return the tile coverage.
+     */
+    static TileCoverage getInstance(Product product, int level, Area modelArea, AffineTransform modelToImage,
+                                    int width, int height, int tileWidth, int tileHeight) {
+        final Key key = new Key(level, getOutline(modelArea), width, height, tileWidth, tileHeight);
+        synchronized (Holder.CACHE) {
+            final Map<Key, TileCoverage> coverageMap = Holder.CACHE.get(product);
+            if (coverageMap != null) {
+                final TileCoverage coverage = coverageMap.get(key);
+                if (coverage != null) {
+                    return coverage;
+                }
+            }
+        }
+        final TileCoverage coverage = create(modelArea.createTransformedArea(modelToImage), width, height,
+                                             tileWidth, tileHeight);
+        synchronized (Holder.CACHE) {
+            Map<Key, TileCoverage> coverageMap = Holder.CACHE.get(product);
+            if (coverageMap == null) {
+                coverageMap = new LinkedHashMap<Key, TileCoverage>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Key, TileCoverage> eldest) {
+                        return size() > CAPACITY;
+                    }
+                };
+                Holder.CACHE.put(product, coverageMap);
+            }
+            coverageMap.put(key, coverage);
+        }
+        return coverage;
+    }
+
+    /**
+     * Creates a tile coverage by scanning the outline of the covered area.
+     *
+     * @param shape      the area covered, in image coordinates.
+     * @param width      the image width.
+     * @param height     the image height.
+     * @param tileWidth  the tile width.
+     * @param tileHeight the tile height.
+     *
+     * @return the tile coverage.
+     */
+    static TileCoverage create(Shape shape, int width, int height, int tileWidth, int tileHeight) {
+        final int[] minX = new int[height];
+        final int[] maxX = new int[height];
+        for (int y = 0; y < height; y++) {
+            minX[y] = Integer.MAX_VALUE;
+            maxX[y] = Integer.MIN_VALUE;
+        }
+
+        final double[] coords = new double[6];
+        double startX = 0.0;
+        double startY = 0.0;
+        double lastX = 0.0;
+        double lastY = 0.0;
+        for (final PathIterator it = shape.getPathIterator(null, 0.25); !it.isDone(); it.next()) {
+            switch (it.currentSegment(coords)) {
+                case PathIterator.SEG_MOVETO:
+                    startX = lastX = coords[0];
+                    startY = lastY = coords[1];
+                    break;
+                case PathIterator.SEG_LINETO:
+                    scanSegment(lastX, lastY, coords[0], coords[1], minX, maxX);
+                    lastX = coords[0];
+                    lastY = coords[1];
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    scanSegment(lastX, lastY, startX, startY, minX, maxX);
+                    lastX = startX;
+                    lastY = startY;
+                    break;
+                default:
+                    // cannot happen for a flattening path iterator
+                    break;
+            }
+        }
+
+        for (int y = 0; y < height; y++) {
+            minX[y] = Math.max(0, minX[y]);
+            maxX[y] = Math.min(width, maxX[y]);
+            if (minX[y] >= maxX[y]) {
+                minX[y] = width;
+                maxX[y] = width;
+            }
+        }
+
+        return new TileCoverage(width, height, tileWidth, tileHeight, minX, maxX);
+    }
+
+    boolean isTileCovered(int tileX, int tileY) {
+        if (tileX < 0 || tileY < 0 || tileX >= numXTiles || tileY * tileHeight >= height) {
+            return false;
+        }
+        return coveredTiles.get(tileY * numXTiles + tileX);
+    }
+
+    /**
+     * Returns the first pixel covered in an image row.
+     *
+     * @param y the image row.
+     *
+     * @return the first pixel covered, or the image width if no pixel is covered.
+     */
+    int getMinX(int y) {
+        return minX[y];
+    }
+
+    /**
+     * Returns the pixel following the last pixel covered in an image row.
+     *
+     * @param y the image row.
+     *
+     * @return the pixel following the last pixel covered, or the image width if no pixel is covered.
+     */
+    int getMaxX(int y) {
+        return maxX[y];
+    }
+
+    // returns the segment types and coordinates of the outline of a shape
+    private static double[] getOutline(Shape shape) {
+        final double[] coords = new double[6];
+        double[] outline = new double[64];
+        int length = 0;
+        for (final PathIterator it = shape.getPathIterator(null); !it.isDone(); it.next()) {
+            final int type = it.currentSegment(coords);
+            if (length + 7 > outline.length) {
+                outline = Arrays.copyOf(outline, 2 * outline.length);
+            }
+            outline[length++] = type;
+            for (int i = 0; i < getCoordinateCount(type); i++) {
+                outline[length++] = coords[i];
+            }
+        }
+        return Arrays.copyOf(outline, length);
+    }
+
+    private static int getCoordinateCount(int segmentType) {
+        switch (segmentType) {
+            case PathIterator.SEG_MOVETO:
+            case PathIterator.SEG_LINETO:
+                return 2;
+            case PathIterator.SEG_QUADTO:
+                return 4;
+            case PathIterator.SEG_CUBICTO:
+                return 6;
+            default:
+                return 0;
+        }
+    }
+
+    // extends the pixel ranges of all image rows touched by a line segment
+    private static void scanSegment(double x0, double y0, double x1, double y1, int[] minX, int[] maxX) {
+        if (y0 == y1) {
+            // the end points of a horizontal segment are the end points of adjacent segments, too
+            return;
+        }
+        final double minY = Math.min(y0, y1);
+        final double maxY = Math.max(y0, y1);
+        final int firstRow = Math.max(0, (int) Math.floor(minY));
+        final int lastRow = Math.min(minX.length - 1, (int) Math.ceil(maxY) - 1);
+
+        for (int y = firstRow; y <= lastRow; y++) {
+            // the segment is clipped to the row
+            final double xa = x0 + (x1 - x0) * (Math.max(y, minY) - y0) / (y1 - y0);
+            final double xb = x0 + (x1 - x0) * (Math.min(y + 1, maxY) - y0) / (y1 - y0);
+            final int lo = (int) Math.floor(Math.min(xa, xb));
+            final int hi = (int) Math.ceil(Math.max(xa, xb));
+            if (lo < minX[y]) {
+                minX[y] = lo;
+            }
+            if (hi > maxX[y]) {
+                maxX[y] = hi;
+            }
+        }
+    }
+
+    private static final class Key {
+
+        private final int level;
+        private final double[] outline;
+        private final int width;
+        private final int height;
+        private final int tileWidth;
+        private final int tileHeight;
+        private final int hashCode;
+
+        private Key(int level, double[] outline, int width, int height, int tileWidth, int tileHeight) {
+            this.level = level;
+            this.outline = outline;
+            this.width = width;
+            this.height = height;
+            this.tileWidth = tileWidth;
+            this.tileHeight = tileHeight;
+
+            int result = level;
+            result = 31 * result + Arrays.hashCode(outline);
+            result = 31 * result + width;
+            result = 31 * result + height;
+            result = 31 * result + tileWidth;
+            result = 31 * result + tileHeight;
+            hashCode = result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return hashCode == key.hashCode && level == key.level && width == key.width && height == key.height &&
+                   tileWidth == key.tileWidth && tileHeight == key.tileHeight && Arrays.equals(outline, key.outline);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    // Initialization on demand holder idiom
+    private static class Holder {
+
+        private static final Map<Product, Map<Key, TileCoverage>> CACHE = new WeakHashMap<>();
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import com.bc.ceres.binio.CompoundData;
+
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the grid point values of a tile for all active bands of a product in a
+ * single pass. Each grid point record is read once only, and its members are
+ * distributed to the bands. A band is active, when it has requested the values of
+ * a tile recently, e.g. while the band is exported or processed together with other
+ * bands. So a band displayed alone does not cause the members of all other bands
+ * to be decoded. The values computed are kept until they have been retrieved by all
+ * bands they have been computed for, or until they are evicted from the engine.
+ * <p/>
+ * A band, which was not active when the values of a tile have been computed, or
+ * which requests the values of a different set of grid points, does not receive
+ * any values and must retrieve its values by itself.
+ *
+ * @since SMOS-Box 3.0
+ */
+final class TileEngine {
+
+    private static final int CAPACITY = 16;
+
+    private final DggFile dggFile;
+    private final List<BandInfo> bandInfos;
+    private final Map<Key, Batch> batches;
+
+    private long requestCount;
+
+    TileEngine(DggFile dggFile) {
+        this.dggFile = dggFile;
+        bandInfos = new ArrayList<>();
+        batches = new LinkedHashMap<Key, Batch>(CAPACITY, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Batch> eldest) {
+                return size() > CAPACITY;
+            }
+        };
+    }
+
+    /**
+     * Registers a band with the engine.
+     *
+     * @param memberIndex    the index of the grid point record member of the band.
+     * @param dataBufferType the data buffer type of the band images.
+     * @param noDataValue    the no-data value of the band.
+     *
+     * @return the index of the band within the engine.
+     */
+    int addBand(int memberIndex, int dataBufferType, double noDataValue) {
+        synchronized (bandInfos) {
+            bandInfos.add(new BandInfo(memberIndex, dataBufferType, noDataValue));
+            return bandInfos.size() - 1;
+        }
+    }
+
+    /**
+     * Retrieves the values of a band for the grid points of a tile. When the values
+     * of the tile are not available, they are computed for all bands registered.
+     *
+     * @param band      the index of the band within the engine.
+     * @param level     the resolution level of the tile.
+     * @param rectangle the tile rectangle.
+     * @param seqnums   the seqnums of the grid points.
+     * @param values    the values retrieved, an array of the primitive type matching
+     *                  the data buffer type of the band.
+     *
+     * @return {@code true} if the values have been retrieved, {@code false} otherwise.
+     */
+    boolean getValues(int band, int level, Rectangle rectangle, int[] seqnums, Object values) {
+        final Key key = new Key(level, rectangle);
+        Batch batch;
+        synchronized (batches) {
+            final BandInfo[] bandInfos = getBandInfos();
+            final long request = ++requestCount;
+            bandInfos[band].lastRequest = request;
+            batch = batches.get(key);
+            if (batch == null) {
+                batch = new Batch(seqnums, bandInfos, getActiveBands(bandInfos, request));
+                batches.put(key, batch);
+            }
+        }
+        if (!batch.accepts(band, seqnums)) {
+            return false;
+        }
+        batch.compute(dggFile);
+        System.arraycopy(batch.values[band], 0, values, 0, seqnums.length);
+        if (batch.retrieved(band)) {
+            synchronized (batches) {
+                if (batches.get(key) == batch) {
+                    batches.remove(key);
+                }
+            }
+        }
+        return true;
+    }
+
+    int getBatchCount() {
+        synchronized (batches) {
+            return batches.size();
+        }
+    }
+
+    // returns the bands, which have requested a tile within the last requests of all bands
+    private static BitSet getActiveBands(BandInfo[] bandInfos, long request) {
+        final long window = 2L * bandInfos.length;
+        final BitSet activeBands = new BitSet(bandInfos.length);
+        for (int b = 0; b < bandInfos.length; b++) {
+            final long lastRequest = bandInfos[b].lastRequest;
+            if (lastRequest > 0 && request - lastRequest < window) {
+                activeBands.set(b);
+            }
+        }
+        return activeBands;
+    }
+
+    private BandInfo[] getBandInfos() {
+        synchronized (bandInfos) {
+            return bandInfos.toArray(new BandInfo[bandInfos.size()]);
+        }
+    }
+
+    private static final class BandInfo {
+
+        private final int memberIndex;
+        private final int dataBufferType;
+        private final double noDataValue;
+
+        // the number of the last request of the band, guarded by the batches of the engine
+        private long lastRequest;
+
+        private BandInfo(int memberIndex, int dataBufferType, double noDataValue) {
+            this.memberIndex = memberIndex;
+            this.dataBufferType = dataBufferType;
+            this.noDataValue = noDataValue;
+        }
+    }
+
+    private static final class Batch {
+
+        private final int[] seqnums;
+        private final BandInfo[] bandInfos;
+        private final BitSet bands;
+        private final Object[] values;
+        private final BitSet retrievedBands;
+
+        private boolean computed;
+
+        private Batch(int[] seqnums, BandInfo[] bandInfos, BitSet bands) {
+            this.seqnums = seqnums.clone();
+            this.bandInfos = bandInfos;
+            this.bands = bands;
+            values = new Object[bandInfos.length];
+            retrievedBands = new BitSet(bandInfos.length);
+        }
+
+        private boolean accepts(int band, int[] seqnums) {
+            return bands.get(band) && Arrays.equals(this.seqnums, seqnums);
+        }
+
+        private synchronized void compute(DggFile dggFile) {
+            if (computed) {
+                return;
+            }
+            for (int b = bands.nextSetBit(0); b >= 0; b = bands.nextSetBit(b + 1)) {
+                values[b] = createValues(bandInfos[b], seqnums.length);
+            }
+
+            // the grid point records are read in the order of the product file
+            final long[] keys = new long[seqnums.length];
+            for (int i = 0; i < seqnums.length; i++) {
+                keys[i] = ((long) dggFile.getGridPointIndex(seqnums[i]) << 32) | i;
+            }
+            Arrays.sort(keys);
+
+            int k = 0;
+            while (k < keys.length) {
+                final int gridPointIndex = (int) (keys[k] >> 32);
+                int end = k + 1;
+                while (end < keys.length && (int) (keys[end] >> 32) == gridPointIndex) {
+                    end++;
+                }
+                CompoundData data = null;
+                if (gridPointIndex != -1) {
+                    try {
+                        data = dggFile.getGridPointData(gridPointIndex);
+                    } catch (IOException e) {
+                        // all values are no-data
+                    }
+                }
+                for (int b = bands.nextSetBit(0); b >= 0; b = bands.nextSetBit(b + 1)) {
+                    setValues(bandInfos[b], values[b], data, keys, k, end);
+                }
+                k = end;
+            }
+            computed = true;
+        }
+
+        private synchronized boolean retrieved(int band) {
+            retrievedBands.set(band);
+            return retrievedBands.cardinality() == bands.cardinality();
+        }
+
+        private static Object createValues(BandInfo bandInfo, int length) {
+            switch (bandInfo.dataBufferType) {
+            case DataBuffer.TYPE_BYTE:
+                return new byte[length];
+            case DataBuffer.TYPE_SHORT:
+            case DataBuffer.TYPE_USHORT:
+                return new short[length];
+            case DataBuffer.TYPE_INT:
+                return new int[length];
+            default:
+                return new float[length];
+            }
+        }
+
+        // sets the value of a band for all requests of the same grid point
+        private static void setValues(BandInfo bandInfo, Object values, CompoundData data, long[] keys, int start,
+                                      int end) {
+            final int memberIndex = bandInfo.memberIndex;
+            switch (bandInfo.dataBufferType) {
+            case DataBuffer.TYPE_BYTE: {
+                byte value = (byte) bandInfo.noDataValue;
+                if (data != null) {
+                    try {
+                        value = data.getByte(memberIndex);
+                    } catch (IOException e) {
+                        // no-data
+                    }
+                }
+                for (int k = start; k < end; k++) {
+                    ((byte[]) values)[(int) keys[k]] = value;
+                }
+                break;
+            }
+            case DataBuffer.TYPE_SHORT:
+            case DataBuffer.TYPE_USHORT: {
+                short value = (short) bandInfo.noDataValue;
+                if (data != null) {
+                    try {
+                        value = data.getShort(memberIndex);
+                    } catch (IOException e) {
+                        // no-data
+                    }
+                }
+                for (int k = start; k < end; k++) {
+                    ((short[]) values)[(int) keys[k]] = value;
+                }
+                break;
+            }
+            case DataBuffer.TYPE_INT: {
+                int value = (int) bandInfo.noDataValue;
+                if (data != null) {
+                    try {
+                        value = data.getInt(memberIndex);
+                    } catch (IOException e) {
+                        // no-data
+                    }
+                }
+                for (int k = start; k < end; k++) {
+                    ((int[]) values)[(int) keys[k]] = value;
+                }
+                break;
+            }
+            default: {
+                float value = (float) bandInfo.noDataValue;
+                if (data != null) {
+                    try {
+                        value = data.getFloat(memberIndex);
+                    } catch (IOException e) {
+                        // no-data
+                    }
+                }
+                for (int k = start; k < end; k++) {
+                    ((float[]) values)[(int) keys[k]] = value;
+                }
+                break;
+            }
+            }
+        }
+    }
+
+    private static final class Key {
+
+        private final int level;
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+
+        private Key(int level, Rectangle rectangle) {
+            this.level = level;
+            x = rectangle.x;
+            y = rectangle.y;
+            width = rectangle.width;
+            height = rectangle.height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return level == key.level && x == key.x && y == key.y && width == key.width && height == key.height;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = level;
+            result = 31 * result + x;
+            result = 31 * result + y;
+            result = 31 * result + width;
+            result = 31 * result + height;
+            return result;
+        }
+    }
+}
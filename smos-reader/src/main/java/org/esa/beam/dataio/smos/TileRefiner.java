@@ -0,0 +1,468 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import org.esa.beam.framework.datamodel.Product;
+
+import javax.media.jai.OpImage;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.TileCache;
+import javax.swing.SwingUtilities;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Supports the progressive rendering of SMOS images. When a tile of a SMOS image is
+ * requested for painting, a coarse version of the tile is returned at once, and the
+ * tile is refined on a bounded pool of worker threads. Listeners are notified when a
+ * tile has been refined, so that the views displaying the tile can be repainted.
+ * <p/>
+ * Progressive rendering applies only to tiles requested by a thread, which has been
+ * marked as painting by the renderer of a view (see {@link #setPainting(boolean)}),
+ * and only while there are listeners. Tiles requested by any other code, e.g. for
+ * reading pixel values, are always computed at full resolution. Coarse tiles are
+ * never added to a tile cache, and the tiles of images derived from a coarse tile
+ * are removed from the tile caches when the tile has been refined.
+ * <p/>
+ * Progressive rendering is disabled by default. It is enabled, when the system
+ * property {@code beam.smos.progressiveRendering} is {@code true}.
+ *
+ * @since SMOS-Box 3.0
+ */
+public final class TileRefiner {
+
+    private static final String PROGRESSIVE_RENDERING_PROPERTY_NAME = "beam.smos.progressiveRendering";
+    private static final String WORKER_COUNT_PROPERTY_NAME = "beam.smos.progressiveRendering.workerCount";
+    private static final String REFINED_TILE_CAPACITY_PROPERTY_NAME =
+            "beam.smos.progressiveRendering.refinedTileCapacity";
+
+    private static final int QUEUE_CAPACITY = 64;
+    // refined tiles are kept until they are requested by the repaint of a view, so this capacity
+    // must exceed the number of tiles displayed by all views at once
+    private static final int DEFAULT_REFINED_TILE_CAPACITY = 512;
+
+    private static final ThreadLocal<Boolean> PAINTING = new ThreadLocal<>();
+
+    private final boolean enabled;
+    private final int refinedTileCapacity;
+    private final ThreadPoolExecutor executor;
+    private final List<Listener> listeners;
+
+    private final Set<Key> pendingKeys;
+    private final Map<Key, RefinedTile> refinedTiles;
+    private final Set<Key> failedKeys;
+
+    /**
+     * The listener interface for receiving notifications about refined tiles.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the event dispatch thread when a coarse tile of a SMOS image has been
+         * refined, or when the refinement of a tile has been cancelled. In both cases the
+         * coarse tile has been discarded, and the views displaying the tile have to be
+         * repainted.
+         *
+         * @param product   the product.
+         * @param level     the resolution level of the image.
+         * @param rectangle the tile rectangle.
+         */
+        void tileChanged(Product product, int level, Rectangle rectangle);
+    }
+
+    TileRefiner(boolean enabled, int workerCount) {
+        this(enabled, workerCount, DEFAULT_REFINED_TILE_CAPACITY);
+    }
+
+    TileRefiner(boolean enabled, int workerCount, int refinedTileCapacity) {
+        this.enabled = enabled;
+        this.refinedTileCapacity = refinedTileCapacity;
+        executor = new ThreadPoolExecutor(workerCount, workerCount, 10L, TimeUnit.SECONDS,
+                                          new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY),
+                                          new DaemonThreadFactory(), new DiscardOldestPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        listeners = new CopyOnWriteArrayList<>();
+        pendingKeys = new HashSet<>();
+        failedKeys = new HashSet<>();
+        refinedTiles = new LinkedHashMap<Key, RefinedTile>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, RefinedTile> eldest) {
+                return size() > refinedTileCapacity;
+            }
+        };
+    }
+
+    static TileRefiner getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Tests if progressive rendering is enabled.
+     *
+     * @return {@code true} if progressive rendering is enabled.
+     */
+    public static boolean isEnabled() {
+        return Holder.INSTANCE.enabled;
+    }
+
+    /**
+     * Marks the current thread as painting a view, or clears the mark. Only the tiles
+     * requested by a thread while it is marked are rendered progressively. A renderer
+     * sets the mark before it paints the image layers of a view, and clears it when it
+     * has finished painting.
+     *
+     * @param painting {@code true} if the current thread is painting a view.
+     */
+    public static void setPainting(boolean painting) {
+        if (painting) {
+            PAINTING.set(Boolean.TRUE);
+        } else {
+            PAINTING.remove();
+        }
+    }
+
+    /**
+     * Adds a listener, which is notified when a tile has been refined.
+     *
+     * @param listener the listener.
+     */
+    public static void addListener(Listener listener) {
+        Holder.INSTANCE.listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener the listener.
+     */
+    public static void removeListener(Listener listener) {
+        Holder.INSTANCE.listeners.remove(listener);
+    }
+
+    /**
+     * Cancels the refinement of all tiles, which are not being refined yet. This method
+     * shall be called when a view has been moved, because the tiles requested before
+     * may not be visible anymore. Tiles, which are still visible, will be requested and
+     * refined again.
+     */
+    public static void cancelPendingTiles() {
+        final TileRefiner refiner = Holder.INSTANCE;
+        final List<Runnable> tasks = new ArrayList<>();
+        refiner.executor.getQueue().drainTo(tasks);
+        for (final Runnable task : tasks) {
+            refiner.discard((Task) task);
+        }
+    }
+
+    /**
+     * Tests if a tile requested by the current thread shall be rendered progressively. This
+     * is the case when the current thread is painting a view only.
+     *
+     * @return {@code true} if a tile shall be rendered progressively.
+     */
+    boolean isApplicable() {
+        return enabled && !listeners.isEmpty() && PAINTING.get() != null;
+    }
+
+    /**
+     * Schedules the refinement of a coarse tile. Does nothing, if the refinement of
+     * the tile is pending already.
+     *
+     * @param image the image.
+     * @param tileX the tile x index.
+     * @param tileY the tile y index.
+     */
+    void refine(SmosOpImage image, int tileX, int tileY) {
+        final Key key = new Key(image, tileX, tileY);
+        synchronized (this) {
+            if (!pendingKeys.add(key)) {
+                return;
+            }
+        }
+        executor.execute(new Task(key));
+    }
+
+    /**
+     * Tests if a coarse tile may be displayed for a tile requested. This is not the case
+     * when the tile has been refined already, or when the refinement of the tile has
+     * failed. In the latter case, the tile is computed at full resolution by the caller.
+     *
+     * @param image the image.
+     * @param tileX the tile x index.
+     * @param tileY the tile y index.
+     *
+     * @return {@code true} if a coarse tile may be displayed.
+     */
+    synchronized boolean isRefinable(SmosOpImage image, int tileX, int tileY) {
+        if (refinedTiles.isEmpty() && failedKeys.isEmpty()) {
+            return true;
+        }
+        final Key key = new Key(image, tileX, tileY);
+        return !refinedTiles.containsKey(key) && !failedKeys.remove(key);
+    }
+
+    /**
+     * Returns a refined tile, if the tile has been refined. The refined tile is
+     * returned once only.
+     *
+     * @param image the image.
+     * @param tileX the tile x index.
+     * @param tileY the tile y index.
+     *
+     * @return the refined tile or {@code null}.
+     */
+    synchronized RefinedTile takeRefinedTile(SmosOpImage image, int tileX, int tileY) {
+        if (refinedTiles.isEmpty()) {
+            return null;
+        }
+        return refinedTiles.remove(new Key(image, tileX, tileY));
+    }
+
+    /**
+     * Cancels the refinement of all tiles of an image and discards its refined tiles.
+     * This method is called when the image is disposed.
+     *
+     * @param image the image.
+     */
+    void cancel(SmosOpImage image) {
+        final Iterator<Runnable> iterator = executor.getQueue().iterator();
+        while (iterator.hasNext()) {
+            if (((Task) iterator.next()).key.image == image) {
+                iterator.remove();
+            }
+        }
+        synchronized (this) {
+            removeKeys(pendingKeys.iterator(), image);
+            removeKeys(refinedTiles.keySet().iterator(), image);
+            removeKeys(failedKeys.iterator(), image);
+        }
+    }
+
+    synchronized int getPendingTileCount() {
+        return pendingKeys.size();
+    }
+
+    private static void removeKeys(Iterator<Key> iterator, SmosOpImage image) {
+        while (iterator.hasNext()) {
+            if (iterator.next().image == image) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void discard(Task task) {
+        synchronized (this) {
+            if (!pendingKeys.remove(task.key)) {
+                // the image has been disposed
+                return;
+            }
+        }
+        // the coarse tile is discarded, because it is not refined anymore
+        fireTileChanged(task.key);
+    }
+
+    private void fireTileChanged(final Key key) {
+        // the listeners are notified on the event dispatch thread, where the tiles are displayed
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                final Product product = key.image.getProduct();
+                final int level = key.image.getLevel();
+                final Rectangle rectangle = key.image.getTileRect(key.tileX, key.tileY);
+                // the coarse tile is never cached, but it may have been used to compute the tiles of
+                // derived images, e.g. the geophysical or valid mask images of the band
+                removeDerivedTiles(key.image, rectangle);
+                for (final Listener listener : listeners) {
+                    listener.tileChanged(product, level, rectangle);
+                }
+            }
+        });
+    }
+
+    private static void removeDerivedTiles(PlanarImage image, Rectangle rectangle) {
+        final Vector sinks = image.getSinks();
+        if (sinks == null) {
+            return;
+        }
+        for (final Object sink : sinks) {
+            if (sink instanceof OpImage) {
+                final OpImage opImage = (OpImage) sink;
+                final TileCache tileCache = opImage.getTileCache();
+                final Point[] tileIndices = opImage.getTileIndices(rectangle);
+                if (tileCache != null && tileIndices != null) {
+                    for (final Point tileIndex : tileIndices) {
+                        tileCache.remove(opImage, tileIndex.x, tileIndex.y);
+                    }
+                }
+                removeDerivedTiles(opImage, rectangle);
+            }
+        }
+    }
+
+    /**
+     * A refined tile and the time taken to compute it.
+     */
+    static final class RefinedTile {
+
+        private final Raster raster;
+        private final long computationTime;
+
+        private RefinedTile(Raster raster, long computationTime) {
+            this.raster = raster;
+            this.computationTime = computationTime;
+        }
+
+        Raster getRaster() {
+            return raster;
+        }
+
+        long getComputationTime() {
+            return computationTime;
+        }
+    }
+
+    private final class Task implements Runnable {
+
+        private final Key key;
+
+        private Task(Key key) {
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            synchronized (TileRefiner.this) {
+                if (!pendingKeys.contains(key)) {
+                    // the image has been disposed
+                    return;
+                }
+            }
+            final long startTime = System.nanoTime();
+            final Raster raster;
+            try {
+                raster = key.image.computeRefinedTile(key.tileX, key.tileY);
+            } catch (RuntimeException e) {
+                synchronized (TileRefiner.this) {
+                    if (!pendingKeys.remove(key)) {
+                        // the image has been disposed
+                        return;
+                    }
+                    // the tile is computed at full resolution when it is requested again
+                    failedKeys.add(key);
+                }
+                fireTileChanged(key);
+                return;
+            }
+            final long computationTime = System.nanoTime() - startTime;
+            synchronized (TileRefiner.this) {
+                if (!pendingKeys.remove(key)) {
+                    // the image has been disposed
+                    return;
+                }
+                refinedTiles.put(key, new RefinedTile(raster, computationTime));
+            }
+            fireTileChanged(key);
+        }
+    }
+
+    private final class DiscardOldestPolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            if (!executor.isShutdown()) {
+                // the oldest tile requested is least likely to be still visible
+                final Runnable oldestTask = executor.getQueue().poll();
+                if (oldestTask != null) {
+                    discard((Task) oldestTask);
+                }
+                executor.execute(task);
+            }
+        }
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "SMOS-Box tile refiner " + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    }
+
+    private static final class Key {
+
+        private final SmosOpImage image;
+        private final int tileX;
+        private final int tileY;
+
+        private Key(SmosOpImage image, int tileX, int tileY) {
+            this.image = image;
+            this.tileX = tileX;
+            this.tileY = tileY;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return image == key.image && tileX == key.tileX && tileY == key.tileY;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(image);
+            result = 31 * result + tileX;
+            result = 31 * result + tileY;
+            return result;
+        }
+    }
+
+    // Initialization on demand holder idiom
+    private static class Holder {
+
+        private static final TileRefiner INSTANCE = new TileRefiner(
+                Boolean.getBoolean(PROGRESSIVE_RENDERING_PROPERTY_NAME),
+                Integer.getInteger(WORKER_COUNT_PROPERTY_NAME,
+                                   Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+                Integer.getInteger(REFINED_TILE_CAPACITY_PROPERTY_NAME, DEFAULT_REFINED_TILE_CAPACITY));
+    }
+}
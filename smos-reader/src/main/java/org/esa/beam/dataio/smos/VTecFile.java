@@ -24,9 +24,6 @@ import org.esa.beam.framework.datamodel.TiePointGrid;
 import org.esa.beam.smos.DateTimeUtils;
 import org.esa.beam.smos.EEFilePair;
 import org.esa.beam.util.io.FileUtils;
-import org.jdom.Document;
-import org.jdom.Element;
-import org.jdom.Namespace;
 
 import java.awt.*;
 import java.awt.geom.Area;
@@ -74,21 +71,23 @@ class VTecFile extends ExplorerFile {
     VTecFile(EEFilePair eeFilePair, DataContext dataContext) throws IOException {
         super(eeFilePair, dataContext);
 
-        final Document document = getDocument();
-        final Namespace namespace = document.getRootElement().getNamespace();
-        final Element ionexDescriptor = getElement(document.getRootElement(), TAG_IONEX_DESCRIPTOR);
-        final Element latitudeVector = getElement(ionexDescriptor, TAG_LATITUDE_VECTOR);
-        lat1 = Double.valueOf(latitudeVector.getChildText(TAG_LATITUDE_VECTOR_1ST, namespace));
-        lat2 = Double.valueOf(latitudeVector.getChildText(TAG_LATITUDE_VECTOR_2ND, namespace));
-        latDelta = Double.valueOf(latitudeVector.getChildText(TAG_LATITUDE_VECTOR_INCREMENT, namespace));
-
-        final Element longitudeVector = getElement(ionexDescriptor, TAG_LONGITUDE_VECTOR);
-        lon1 = Double.valueOf(longitudeVector.getChildText(TAG_LONGITUDE_VECTOR_1ST, namespace));
-        lon2 = Double.valueOf(longitudeVector.getChildText(TAG_LONGITUDE_VECTOR_2ND, namespace));
-        lonDelta = Double.valueOf(longitudeVector.getChildText(TAG_LONGITUDE_VECTOR_INCREMENT, namespace));
-
-        final int scalingFactorExponent = Integer.valueOf(ionexDescriptor.getChildText(TAG_SCALING_FACTOR_EXPONENT,
-                namespace));
+        final EEHeader header = getHeader();
+        lat1 = Double.valueOf(header.getValue(TAG_IONEX_DESCRIPTOR, TAG_LATITUDE_VECTOR,
+                                              TAG_LATITUDE_VECTOR_1ST));
+        lat2 = Double.valueOf(header.getValue(TAG_IONEX_DESCRIPTOR, TAG_LATITUDE_VECTOR,
+                                              TAG_LATITUDE_VECTOR_2ND));
+        latDelta = Double.valueOf(header.getValue(TAG_IONEX_DESCRIPTOR, TAG_LATITUDE_VECTOR,
+                                                  TAG_LATITUDE_VECTOR_INCREMENT));
+
+        lon1 = Double.valueOf(header.getValue(TAG_IONEX_DESCRIPTOR, TAG_LONGITUDE_VECTOR,
+                                              TAG_LONGITUDE_VECTOR_1ST));
+        lon2 = Double.valueOf(header.getValue(TAG_IONEX_DESCRIPTOR, TAG_LONGITUDE_VECTOR,
+                                              TAG_LONGITUDE_VECTOR_2ND));
+        lonDelta = Double.valueOf(header.getValue(TAG_IONEX_DESCRIPTOR, TAG_LONGITUDE_VECTOR,
+                                                  TAG_LONGITUDE_VECTOR_INCREMENT));
+
+        final int scalingFactorExponent = Integer.valueOf(
+                header.getValue(TAG_IONEX_DESCRIPTOR, TAG_SCALING_FACTOR_EXPONENT));
         scalingFactor = Math.pow(10.0, scalingFactorExponent);
 
         mapData = getDataBlock().getSequence(VTEC_INFO_NAME);
@@ -35,4 +35,35 @@ public interface ValueProvider {
     int getValue(int seqnum, int noDataValue);
 
     float getValue(int seqnum, float noDataValue);
+
+    /**
+     * Retrieves the values of several grid points in a single operation. Implementations
+     * may retrieve the values in any order, e.g. in the order of the grid point records
+     * in the product file.
+     *
+     * @param seqnums     the seqnums of the grid points.
+     * @param values      the values retrieved, in the order of the seqnums.
+     * @param noDataValue the no-data value.
+     *
+     * @since SMOS-Box 3.0
+     */
+    void getValues(int[] seqnums, byte[] values, byte noDataValue);
+
+    /**
+     * @see #getValues(int[], byte[], byte)
+     * @since SMOS-Box 3.0
+     */
+    void getValues(int[] seqnums, short[] values, short noDataValue);
+
+    /**
+     * @see #getValues(int[], byte[], byte)
+     * @since SMOS-Box 3.0
+     */
+    void getValues(int[] seqnums, int[] values, int noDataValue);
+
+    /**
+     * @see #getValues(int[], byte[], byte)
+     * @since SMOS-Box 3.0
+     */
+    void getValues(int[] seqnums, float[] values, float noDataValue);
 }
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.dataio.smos;
+
+import java.awt.geom.Area;
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * A value provider, which retrieves the values of all grid points of a product
+ * from another value provider once, and stores them in an array indexed by grid
+ * point. Thereafter, values are looked up in the array, so images of all
+ * resolution levels are computed without any further reading of the product file.
+ * <p/>
+ * The values are retrieved when a value of a certain data type is requested for
+ * the first time. The grid points, whose value cannot be retrieved, are marked as
+ * missing, so the no-data value of each request is returned for them.
+ *
+ * @since SMOS-Box 3.0
+ */
+final class ValueStore implements ValueProvider {
+
+    private final AbstractValueProvider valueProvider;
+    private final int[] gridPointSeqnums;
+
+    // the missing grid points of a data type are assigned before the values are published
+    private volatile BitSet byteMissing;
+    private volatile BitSet shortMissing;
+    private volatile BitSet intMissing;
+    private volatile BitSet floatMissing;
+
+    private volatile byte[] byteValues;
+    private volatile short[] shortValues;
+    private volatile int[] intValues;
+    private volatile float[] floatValues;
+
+    /**
+     * Creates a new value store.
+     *
+     * @param valueProvider    the value provider.
+     * @param gridPointSeqnums the seqnums of all grid points of the product, indexed by grid point.
+     */
+    ValueStore(AbstractValueProvider valueProvider, int[] gridPointSeqnums) {
+        this.valueProvider = valueProvider;
+        this.gridPointSeqnums = gridPointSeqnums;
+    }
+
+    @Override
+    public Area getArea() {
+        return valueProvider.getArea();
+    }
+
+    @Override
+    public byte getValue(int seqnum, byte noDataValue) {
+        final int gridPointIndex = valueProvider.getGridPointIndex(seqnum);
+        if (gridPointIndex == -1) {
+            return noDataValue;
+        }
+        final byte[] values = getByteValues();
+        if (byteMissing.get(gridPointIndex)) {
+            return noDataValue;
+        }
+        return values[gridPointIndex];
+    }
+
+    @Override
+    public short getValue(int seqnum, short noDataValue) {
+        final int gridPointIndex = valueProvider.getGridPointIndex(seqnum);
+        if (gridPointIndex == -1) {
+            return noDataValue;
+        }
+        final short[] values = getShortValues();
+        if (shortMissing.get(gridPointIndex)) {
+            return noDataValue;
+        }
+        return values[gridPointIndex];
+    }
+
+    @Override
+    public int getValue(int seqnum, int noDataValue) {
+        final int gridPointIndex = valueProvider.getGridPointIndex(seqnum);
+        if (gridPointIndex == -1) {
+            return noDataValue;
+        }
+        final int[] values = getIntValues();
+        if (intMissing.get(gridPointIndex)) {
+            return noDataValue;
+        }
+        return values[gridPointIndex];
+    }
+
+    @Override
+    public float getValue(int seqnum, float noDataValue) {
+        final int gridPointIndex = valueProvider.getGridPointIndex(seqnum);
+        if (gridPointIndex == -1) {
+            return noDataValue;
+        }
+        final float[] values = getFloatValues();
+        if (floatMissing.get(gridPointIndex)) {
+            return noDataValue;
+        }
+        return values[gridPointIndex];
+    }
+
+    @Override
+    public void getValues(int[] seqnums, byte[] values, byte noDataValue) {
+        for (int i = 0; i < seqnums.length; i++) {
+            values[i] = getValue(seqnums[i], noDataValue);
+        }
+    }
+
+    @Override
+    public void getValues(int[] seqnums, short[] values, short noDataValue) {
+        for (int i = 0; i < seqnums.length; i++) {
+            values[i] = getValue(seqnums[i], noDataValue);
+        }
+    }
+
+    @Override
+    public void getValues(int[] seqnums, int[] values, int noDataValue) {
+        for (int i = 0; i < seqnums.length; i++) {
+            values[i] = getValue(seqnums[i], noDataValue);
+        }
+    }
+
+    @Override
+    public void getValues(int[] seqnums, float[] values, float noDataValue) {
+        for (int i = 0; i < seqnums.length; i++) {
+            values[i] = getValue(seqnums[i], noDataValue);
+        }
+    }
+
+    private byte[] getByteValues() {
+        byte[] values = byteValues;
+        if (values == null) {
+            synchronized (this) {
+                values = byteValues;
+                if (values == null) {
+                    values = new byte[gridPointSeqnums.length];
+                    final BitSet missing = new BitSet(values.length);
+                    for (int i = 0; i < values.length; i++) {
+                        try {
+                            values[i] = valueProvider.getByte(i);
+                        } catch (IOException e) {
+                            missing.set(i);
+                        }
+                    }
+                    byteMissing = missing;
+                    byteValues = values;
+                }
+            }
+        }
+        return values;
+    }
+
+    private short[] getShortValues() {
+        short[] values = shortValues;
+        if (values == null) {
+            synchronized (this) {
+                values = shortValues;
+                if (values == null) {
+                    values = new short[gridPointSeqnums.length];
+                    final BitSet missing = new BitSet(values.length);
+                    for (int i = 0; i < values.length; i++) {
+                        try {
+                            values[i] = valueProvider.getShort(i);
+                        } catch (IOException e) {
+                            missing.set(i);
+                        }
+                    }
+                    shortMissing = missing;
+                    shortValues = values;
+                }
+            }
+        }
+        return values;
+    }
+
+    private int[] getIntValues() {
+        int[] values = intValues;
+        if (values == null) {
+            synchronized (this) {
+                values = intValues;
+                if (values == null) {
+                    values = new int[gridPointSeqnums.length];
+                    final BitSet missing = new BitSet(values.length);
+                    for (int i = 0; i < values.length; i++) {
+                        try {
+                            values[i] = valueProvider.getInt(i);
+                        } catch (IOException e) {
+                            missing.set(i);
+                        }
+                    }
+                    intMissing = missing;
+                    intValues = values;
+                }
+            }
+        }
+        return values;
+    }
+
+    private float[] getFloatValues() {
+        float[] values = floatValues;
+        if (values == null) {
+            synchronized (this) {
+                values = floatValues;
+                if (values == null) {
+                    values = new float[gridPointSeqnums.length];
+                    final BitSet missing = new BitSet(values.length);
+                    for (int i = 0; i < values.length; i++) {
+                        try {
+                            values[i] = valueProvider.getFloat(i);
+                        } catch (IOException e) {
+                            missing.set(i);
+                        }
+                    }
+                    floatMissing = missing;
+                    floatValues = values;
+                }
+            }
+        }
+        return values;
+    }
+}
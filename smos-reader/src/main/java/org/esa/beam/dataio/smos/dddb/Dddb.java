@@ -20,13 +20,11 @@ import com.bc.ceres.binio.*;
 import com.bc.ceres.binio.binx.BinX;
 import org.esa.beam.util.StringUtils;
 import org.esa.beam.util.io.CsvReader;
-import org.jdom.Document;
-import org.jdom.Element;
-import org.jdom.JDOMException;
-import org.jdom.Namespace;
-import org.jdom.filter.Filter;
-import org.jdom.input.SAXBuilder;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -49,6 +47,7 @@ public class Dddb {
     private static final String TAG_DATABLOCK_SCHEMA = "Datablock_Schema";
     // Reference: SO-MA-IDR-GS-0004, SMOS DPGS, XML Schema Guidelines
     private static final String SCHEMA_NAMING_CONVENTION = "DBL_\\w{2}_\\w{4}_\\w{10}_\\d{4}";
+    private static final int SCHEMA_NAME_LENGTH = 27;
 
     private final Charset charset = Charset.forName("UTF-8");
     private final char[] separators = new char[]{'|'};
@@ -70,7 +69,7 @@ public class Dddb {
         return Holder.INSTANCE;
     }
 
-    DataFormat getDataFormat(String formatName) {
+    public DataFormat getDataFormat(String formatName) {
         if (!dataFormatMap.containsKey(formatName)) {
             try {
                 final URL url = getSchemaResource(formatName);
@@ -88,6 +87,28 @@ public class Dddb {
         return dataFormatMap.get(formatName);
     }
 
+    /**
+     * Tests if a data format is known. Unlike {@link #getDataFormat(String)}, this method
+     * does not read the schema of the data format.
+     *
+     * @param formatName the name of the data format, e.g. {@code DBL_SM_XXXX_MIR_SCLF1C_0200}.
+     *
+     * @return {@code true} if the data format is known, {@code false} otherwise.
+     */
+    public boolean hasDataFormat(String formatName) {
+        if (formatName == null) {
+            return false;
+        }
+        if (dataFormatMap.containsKey(formatName)) {
+            return true;
+        }
+        try {
+            return getSchemaResource(formatName) != null;
+        } catch (MalformedURLException e) {
+            return false;
+        }
+    }
+
     public DataFormat getDataFormat(File hdrFile) throws IOException {
         final String formatName = extractFormatName(hdrFile);
 
@@ -95,41 +116,53 @@ public class Dddb {
     }
 
     private String extractFormatName(File hdrFile) throws IOException {
-        final Document document;
-
-        try {
-            document = new SAXBuilder().build(hdrFile);
-        } catch (JDOMException e) {
+        final String formatName;
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(hdrFile))) {
+            formatName = extractFormatName(inputStream);
+        } catch (IOException e) {
             throw new IOException(MessageFormat.format(
                     "File ''{0}'': Invalid document", hdrFile.getPath()), e);
         }
-        final Namespace namespace = document.getRootElement().getNamespace();
-        if (namespace == null) {
+        if (formatName == null) {
             throw new IOException(MessageFormat.format(
-                    "File ''{0}'': Missing namespace", hdrFile.getPath()));
+                    "File ''{0}'': Missing datablock schema.", hdrFile.getPath()));
         }
-        final Iterator descendants = document.getDescendants(new Filter() {
-            @Override
-            public boolean matches(Object o) {
-                if (o instanceof Element) {
-                    final Element e = (Element) o;
-                    if (e.getChildText(TAG_DATABLOCK_SCHEMA, namespace) != null) {
-                        return true;
+        return formatName;
+    }
+
+    /**
+     * Extracts the name of the datablock schema from a SMOS header document. The
+     * document is streamed until the datablock schema is found, i.e. no document
+     * tree is built.
+     *
+     * @param inputStream the input stream of the header document.
+     *
+     * @return the name of the datablock schema, or {@code null} if the document
+     *         does not include a datablock schema.
+     *
+     * @throws IOException if the document is not well-formed before the datablock schema.
+     */
+    public static String extractFormatName(InputStream inputStream) throws IOException {
+        try {
+            final XMLStreamReader reader = Holder.XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT &&
+                        TAG_DATABLOCK_SCHEMA.equals(reader.getLocalName())) {
+                        final String text = reader.getElementText();
+                        if (text.length() < SCHEMA_NAME_LENGTH) {
+                            return null;
+                        }
+                        return text.substring(0, SCHEMA_NAME_LENGTH);
                     }
                 }
-
-                return false;
+                return null;
+            } finally {
+                reader.close();
             }
-        });
-        final String formatName;
-        if (descendants.hasNext()) {
-            final Element e = (Element) descendants.next();
-            formatName = e.getChildText(TAG_DATABLOCK_SCHEMA, namespace).substring(0, 27);
-        } else {
-            throw new IOException(MessageFormat.format(
-                    "File ''{0}'': Missing datablock schema.", hdrFile.getPath()));
+        } catch (XMLStreamException e) {
+            throw new IOException(e.getMessage(), e);
         }
-        return formatName;
     }
 
     public BandDescriptor findBandDescriptorForMember(String formatName, String memberName) {
@@ -419,5 +452,13 @@ public class Dddb {
     // Initialization on demand holder idiom
     private static class Holder {
         private static final Dddb INSTANCE = new Dddb();
+        private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
+        private static XMLInputFactory createXmlInputFactory() {
+            final XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            return factory;
+        }
     }
 }
@@ -2,6 +2,13 @@ package org.esa.beam.dataio.smos;
 
 import org.junit.Test;
 
+import java.awt.geom.Area;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -27,4 +34,52 @@ public class AbstractValueProviderTest {
         assertEquals(0.0, AbstractValueProvider.angularAverage(1.0, 359.0), 0.0);
         assertEquals(0.0, AbstractValueProvider.angularAverage(359.0, 1.0), 0.0);
     }
+
+    @Test
+    public void testGetValues() {
+        final List<Integer> accessedIndexes = new ArrayList<>();
+        final AbstractValueProvider provider = new AbstractValueProvider() {
+            @Override
+            public Area getArea() {
+                return new Area();
+            }
+
+            @Override
+            protected int getGridPointIndex(int seqnum) {
+                // seqnum 13 is not included
+                return seqnum == 13 ? -1 : 100 - seqnum;
+            }
+
+            @Override
+            protected byte getByte(int gridPointIndex) {
+                return 0;
+            }
+
+            @Override
+            protected short getShort(int gridPointIndex) {
+                return 0;
+            }
+
+            @Override
+            protected int getInt(int gridPointIndex) throws IOException {
+                accessedIndexes.add(gridPointIndex);
+                if (gridPointIndex == 50) {
+                    throw new IOException();
+                }
+                return 2 * gridPointIndex;
+            }
+
+            @Override
+            protected float getFloat(int gridPointIndex) {
+                return 0.0f;
+            }
+        };
+
+        final int[] values = new int[6];
+        provider.getValues(new int[]{10, 20, 13, 10, 50, 30}, values, -1);
+
+        assertArrayEquals(new int[]{180, 160, -1, 180, -1, 140}, values);
+        // grid points are accessed once, in the order of grid point indexes
+        assertEquals(Arrays.asList(50, 70, 80, 90), accessedIndexes);
+    }
 }
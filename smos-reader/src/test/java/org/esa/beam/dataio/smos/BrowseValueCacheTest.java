@@ -0,0 +1,171 @@
+package org.esa.beam.dataio.smos;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class BrowseValueCacheTest {
+
+    private static final int FLAGS_INDEX = 0;
+    private static final int INCIDENCE_ANGLE_INDEX = 1;
+    private static final int BT_VALUE_INDEX = 2;
+
+    // flags, incidence angle, BT value
+    private static final double[][] BT_RECORDS = {
+            {0, 40, 100.0},
+            {1, 40, 200.0},
+            {0, 45, 110.0},
+            {1, 45, 210.0}
+    };
+
+    private double[][] btRecords;
+    private int btRecordCount;
+    private int unreadableGridPointIndex;
+    private BrowseValueCache cache;
+    private int btDataListRequestCount;
+
+    @Before
+    public void setUp() throws IOException {
+        btRecords = BT_RECORDS;
+        btRecordCount = BT_RECORDS.length;
+        unreadableGridPointIndex = -1;
+
+        final int[] memberIndexes = {BT_VALUE_INDEX, BT_VALUE_INDEX, FLAGS_INDEX};
+        final int[] polarizations = {0, 1, 4};
+        cache = new BrowseValueCache(memberIndexes, polarizations, FLAGS_INDEX, INCIDENCE_ANGLE_INDEX, 1.0, 16) {
+            @Override
+            protected double[][] readBtData(int gridPointIndex, int[] memberIndexes) throws IOException {
+                btDataListRequestCount++;
+                if (gridPointIndex == unreadableGridPointIndex) {
+                    throw new IOException();
+                }
+                final double[][] btData = new double[memberIndexes.length][btRecordCount];
+                for (int m = 0; m < memberIndexes.length; m++) {
+                    for (int i = 0; i < btRecordCount; i++) {
+                        btData[m][i] = btRecords[i][memberIndexes[m]];
+                    }
+                }
+                return btData;
+            }
+        };
+    }
+
+    @Test
+    public void testGetChannel() {
+        assertEquals(0, cache.getChannel(BT_VALUE_INDEX, 0));
+        assertEquals(1, cache.getChannel(BT_VALUE_INDEX, 1));
+        assertEquals(2, cache.getChannel(FLAGS_INDEX, 4));
+
+        assertEquals(-1, cache.getChannel(BT_VALUE_INDEX, 2));
+        assertEquals(-1, cache.getChannel(INCIDENCE_ANGLE_INDEX, 0));
+        assertEquals(-1, cache.getChannel(17, 0));
+    }
+
+    @Test
+    public void testGetInterpolatedValue() throws IOException {
+        assertEquals(105.0, cache.getInterpolatedValue(3, cache.getChannel(BT_VALUE_INDEX, 0)), 1.0e-6);
+        assertEquals(205.0, cache.getInterpolatedValue(3, cache.getChannel(BT_VALUE_INDEX, 1)), 1.0e-6);
+    }
+
+    @Test
+    public void testGetCombinedFlags() throws IOException {
+        assertEquals(0, cache.getCombinedFlags(3, 0));
+        assertEquals(1, cache.getCombinedFlags(3, 1));
+        assertEquals(1, cache.getCombinedFlags(3, 4));
+    }
+
+    @Test
+    public void testBtDataListIsReadOncePerGridPoint() throws IOException {
+        cache.getInterpolatedValue(3, 0);
+        cache.getInterpolatedValue(3, 1);
+        cache.getCombinedFlags(3, 4);
+        assertEquals(1, btDataListRequestCount);
+
+        // grid point 19 is mapped onto the same cache slot as grid point 3
+        cache.getInterpolatedValue(19, 0);
+        cache.getInterpolatedValue(3, 0);
+        assertEquals(3, btDataListRequestCount);
+    }
+
+    @Test(expected = IOException.class)
+    public void testGetInterpolatedValue_noData() throws IOException {
+        btRecordCount = 2;
+
+        cache.getInterpolatedValue(5, 0);
+    }
+
+    @Test
+    public void testPrecompute() throws IOException {
+        assertFalse(cache.isPrecomputed());
+        cache.precompute(40);
+        assertTrue(cache.isPrecomputed());
+        assertEquals(40, btDataListRequestCount);
+
+        assertEquals(105.0, cache.getInterpolatedValue(3, 0), 1.0e-4);
+        assertEquals(205.0, cache.getInterpolatedValue(39, 1), 1.0e-4);
+        assertEquals(1, cache.getCombinedFlags(19, 4));
+        assertEquals(40, btDataListRequestCount);
+
+        cache.dispose();
+        assertFalse(cache.isPrecomputed());
+    }
+
+    @Test
+    public void testPrecompute_integerValuesMatchUncachedComputation() throws IOException {
+        // integral values beyond 2^24, which cannot be held by a float
+        final double[] incidenceAngles = {40, 45, 41, 44};
+        final double[] values = {16777218, 16777220, 16777219, 16777222};
+        btRecords = new double[][]{
+                {0, incidenceAngles[0], values[0]},
+                {0, incidenceAngles[1], values[1]},
+                {0, incidenceAngles[2], values[2]},
+                {0, incidenceAngles[3], values[3]}
+        };
+        btRecordCount = btRecords.length;
+        final double expected = CellBrowseValueCacheTest.interpolate(incidenceAngles, values);
+
+        final int channel = cache.getChannel(BT_VALUE_INDEX, 0);
+        assertEquals(expected, cache.getInterpolatedValue(3, channel), 0.0);
+
+        cache.precompute(8);
+        final double precomputed = cache.getInterpolatedValue(5, channel);
+        assertEquals(expected, precomputed, 0.0);
+        // browse values of integer bands are converted like this
+        assertEquals((int) expected, (int) precomputed);
+        assertEquals((short) expected, (short) precomputed);
+    }
+
+    @Test(expected = IOException.class)
+    public void testPrecompute_noData() throws IOException {
+        btRecordCount = 2;
+        cache.precompute(8);
+
+        cache.getCombinedFlags(5, 0);
+    }
+
+    @Test
+    public void testPrecompute_unreadableGridPointIsReadAgainWhenRequested() throws IOException {
+        unreadableGridPointIndex = 5;
+        cache.precompute(8);
+        assertEquals(8, btDataListRequestCount);
+
+        unreadableGridPointIndex = -1;
+        assertEquals(105.0, cache.getInterpolatedValue(5, 0), 1.0e-6);
+        assertEquals(9, btDataListRequestCount);
+        assertEquals(105.0, cache.getInterpolatedValue(4, 0), 1.0e-4);
+        assertEquals(9, btDataListRequestCount);
+    }
+
+    @Test
+    public void testIsPolarizationMatching() {
+        assertTrue(BrowseValueCache.isPolarizationMatching(0, 0));
+        assertFalse(BrowseValueCache.isPolarizationMatching(0, 1));
+        assertTrue(BrowseValueCache.isPolarizationMatching(1, 1));
+        assertTrue(BrowseValueCache.isPolarizationMatching(2, 2));
+        assertTrue(BrowseValueCache.isPolarizationMatching(2, 3));
+        assertTrue(BrowseValueCache.isPolarizationMatching(4, 1));
+    }
+}
@@ -0,0 +1,130 @@
+package org.esa.beam.dataio.smos;
+
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.DataFormat;
+import com.bc.ceres.binio.SimpleType;
+import com.bc.ceres.binio.util.ByteArrayIOHandler;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static com.bc.ceres.binio.TypeBuilder.COMPOUND;
+import static com.bc.ceres.binio.TypeBuilder.MEMBER;
+import static org.junit.Assert.*;
+
+public class BtDataListIndexTest {
+
+    private static final int FLAGS_INDEX = 0;
+    private static final int INCIDENCE_ANGLE_INDEX = 1;
+    private static final int BT_VALUE_INDEX = 2;
+    private static final int SNAPSHOT_ID_INDEX = 3;
+
+    private BtDataListIndex index;
+    private DataContext context;
+
+    @Before
+    public void setUp() throws IOException {
+        final CompoundType btDataType = COMPOUND("BT_Data",
+                                                 MEMBER("Flags", SimpleType.USHORT),
+                                                 MEMBER("Incidence_Angle", SimpleType.USHORT),
+                                                 MEMBER("BT_Value", SimpleType.FLOAT),
+                                                 MEMBER("Snapshot_ID_of_Pixel", SimpleType.UINT));
+
+        // a header of 3 bytes, a list of 2 records, a gap of 5 bytes and a list of 1 record
+        final ByteBuffer buffer = ByteBuffer.allocate(3 + 2 * 12 + 5 + 12).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(3);
+        putBtData(buffer, 1, 40000, 100.5f, 4000000000L);
+        putBtData(buffer, 2, 41000, 200.5f, 4000000001L);
+        buffer.position(buffer.position() + 5);
+        putBtData(buffer, 65535, 42000, 300.5f, 17);
+
+        index = new BtDataListIndex(new long[]{3, 0, 32}, new int[]{2, 0, 1}, btDataType, ByteOrder.LITTLE_ENDIAN);
+        context = new DataFormat(btDataType, ByteOrder.LITTLE_ENDIAN).createContext(
+                new ByteArrayIOHandler(buffer.array()));
+    }
+
+    @Test
+    public void testRecordLayout() {
+        assertEquals(12, index.getRecordSize());
+        assertEquals(0, index.getMemberOffset(FLAGS_INDEX));
+        assertEquals(2, index.getMemberOffset(INCIDENCE_ANGLE_INDEX));
+        assertEquals(4, index.getMemberOffset(BT_VALUE_INDEX));
+        assertEquals(8, index.getMemberOffset(SNAPSHOT_ID_INDEX));
+
+        assertEquals(2, index.getBtRecordCount(0));
+        assertEquals(0, index.getBtRecordCount(1));
+        assertEquals(1, index.getBtRecordCount(2));
+        assertEquals(32, index.getPosition(2));
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        final int[] memberIndexes = {SNAPSHOT_ID_INDEX, INCIDENCE_ANGLE_INDEX, BT_VALUE_INDEX};
+        final double[][] targets = new double[3][2];
+
+        assertEquals(2, index.read(context, 0, memberIndexes, targets));
+        assertEquals(4000000000.0, targets[0][0], 0.0);
+        assertEquals(4000000001.0, targets[0][1], 0.0);
+        assertEquals(40000.0, targets[1][0], 0.0);
+        assertEquals(41000.0, targets[1][1], 0.0);
+        assertEquals(100.5, targets[2][0], 0.0);
+        assertEquals(200.5, targets[2][1], 0.0);
+
+        assertEquals(1, index.read(context, 2, new int[]{FLAGS_INDEX}, targets));
+        assertEquals(65535.0, targets[0][0], 0.0);
+    }
+
+    @Test
+    public void testRead_long() throws IOException {
+        final int[] memberIndexes = {SNAPSHOT_ID_INDEX, FLAGS_INDEX, BT_VALUE_INDEX};
+        final long[][] targets = new long[3][2];
+
+        assertEquals(2, index.read(context, 0, memberIndexes, targets));
+        assertEquals(4000000000L, targets[0][0]);
+        assertEquals(4000000001L, targets[0][1]);
+        assertEquals(1, targets[1][0]);
+        assertEquals(2, targets[1][1]);
+        assertEquals(100, targets[2][0]);
+        assertEquals(200, targets[2][1]);
+    }
+
+    @Test
+    public void testDecode_longMemberKeepsPrecision() throws IOException {
+        final CompoundType btDataType = COMPOUND("BT_Data",
+                                                 MEMBER("Flags", SimpleType.USHORT),
+                                                 MEMBER("ID", SimpleType.LONG));
+        final BtDataListIndex longIndex = new BtDataListIndex(new long[]{0}, new int[]{1}, btDataType,
+                                                              ByteOrder.LITTLE_ENDIAN);
+        final long id = (1L << 53) + 1;
+        final byte[] bytes = ByteBuffer.allocate(10).order(ByteOrder.LITTLE_ENDIAN).putShort((short) 7).putLong(
+                id).array();
+        final long[][] targets = new long[1][1];
+
+        longIndex.decode(bytes, 1, new int[]{1}, targets);
+        assertEquals(id, targets[0][0]);
+    }
+
+    @Test
+    public void testRead_emptyList() throws IOException {
+        assertEquals(0, index.read(context, 1, new int[]{FLAGS_INDEX}, new double[1][0]));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCreate_nonSimpleMember() throws IOException {
+        final CompoundType btDataType = COMPOUND("BT_Data",
+                                                 MEMBER("Flags", SimpleType.USHORT),
+                                                 MEMBER("Nested", COMPOUND("Nested", MEMBER("Value", SimpleType.INT))));
+        new BtDataListIndex(new long[0], new int[0], btDataType, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void putBtData(ByteBuffer buffer, int flags, int incidenceAngle, float value, long snapshotId) {
+        buffer.putShort((short) flags);
+        buffer.putShort((short) incidenceAngle);
+        buffer.putFloat(value);
+        buffer.putInt((int) snapshotId);
+    }
+}
@@ -0,0 +1,91 @@
+package org.esa.beam.dataio.smos;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.geom.Rectangle2D;
+
+import static org.junit.Assert.*;
+
+public class BufrSnapshotIndexTest {
+
+    private BufrSnapshotIndex index;
+
+    @Before
+    public void setUp() {
+        final int[] observationCellIds = {20, 10, 20, 10, 30, -1, 10};
+        final ObservationIndex observationIndex = ObservationIndex.create(observationCellIds);
+
+        final BufrSnapshotIndex.Builder builder = new BufrSnapshotIndex.Builder(observationCellIds.length);
+        builder.add(0, 7L, 0, 10.0, 50.0, 100.5);
+        builder.add(1, 7L, 0, 12.0, 51.0, 100.5);
+        builder.add(2, 3L, 1, 10.0, 50.0, 100.4);
+        builder.add(3, 3L, 1, 12.0, 51.0, Double.NaN);
+        builder.add(4, 7L, 2, 14.0, 49.0, Double.NaN);
+        builder.add(6, 3L, 3, 12.0, 51.0, Double.NaN);
+        index = builder.build(observationIndex);
+    }
+
+    @Test
+    public void testSnapshotIds() {
+        assertEquals(2, index.getSnapshotCount());
+        assertEquals(3L, index.getSnapshotId(0));
+        assertEquals(7L, index.getSnapshotId(1));
+
+        assertEquals(0, index.getSnapshotIndex(3L));
+        assertEquals(1, index.getSnapshotIndex(7L));
+        assertEquals(-1, index.getSnapshotIndex(5L));
+    }
+
+    @Test
+    public void testObservations() {
+        // cells are numbered by ascending cell ID, i.e. 10 -> 0, 20 -> 1, 30 -> 2
+        final int snapshot = index.getSnapshotIndex(3L);
+        assertEquals(2, index.getEnd(snapshot, 0) - index.getStart(snapshot, 0));
+        assertEquals(3, index.getObservationIndex(index.getStart(snapshot, 0)));
+        assertEquals(6, index.getObservationIndex(index.getStart(snapshot, 0) + 1));
+        assertEquals(1, index.getEnd(snapshot, 1) - index.getStart(snapshot, 1));
+        assertEquals(2, index.getObservationIndex(index.getStart(snapshot, 1)));
+        assertEquals(0, index.getEnd(snapshot, 2) - index.getStart(snapshot, 2));
+
+        final int other = index.getSnapshotIndex(7L);
+        assertEquals(1, index.getEnd(other, 0) - index.getStart(other, 0));
+        assertEquals(1, index.getObservationIndex(index.getStart(other, 0)));
+        assertEquals(4, index.getObservationIndex(index.getStart(other, 2)));
+    }
+
+    @Test
+    public void testTimes() {
+        assertEquals(100.4, index.getTime(0), 0.0);
+        assertEquals(100.5, index.getTime(1), 0.0);
+        assertEquals(100.4, index.getStartTime(), 0.0);
+        assertEquals(100.5, index.getEndTime(), 0.0);
+    }
+
+    @Test
+    public void testPolModes() {
+        assertEquals(BufrSnapshotIndex.POL_MODE_Y | BufrSnapshotIndex.POL_MODE_XY, index.getPolModes(0));
+        assertEquals(BufrSnapshotIndex.POL_MODE_X | BufrSnapshotIndex.POL_MODE_XY, index.getPolModes(1));
+    }
+
+    @Test
+    public void testBounds() {
+        final Rectangle2D bounds = index.getBounds(1);
+        assertTrue(bounds.contains(10.0, 49.0));
+        assertTrue(bounds.contains(14.0, 51.0));
+        assertFalse(bounds.contains(15.0, 51.0));
+    }
+
+    @Test
+    public void testCreateSnapshotInfo() {
+        final SnapshotInfo snapshotInfo = index.createSnapshotInfo();
+        assertEquals(2, snapshotInfo.getSnapshotIds().size());
+        assertEquals(1, snapshotInfo.getSnapshotIdsX().size());
+        assertEquals(7L, snapshotInfo.getSnapshotIdsX().get(0).longValue());
+        assertEquals(1, snapshotInfo.getSnapshotIdsY().size());
+        assertEquals(3L, snapshotInfo.getSnapshotIdsY().get(0).longValue());
+        assertEquals(2, snapshotInfo.getSnapshotIdsXY().size());
+        assertEquals(1, snapshotInfo.getSnapshotIndex(7L));
+        assertTrue(snapshotInfo.getArea(3L).contains(12.0, 51.0));
+    }
+}
@@ -130,9 +130,11 @@ public class BufrTest {
         final Array array = listVariable.read();
         assertNotNull(array);
 
+        int recordCount = 0;
         while (structureIterator.hasNext()) {
             final StructureData structureData = structureIterator.next();
             assertNotNull(structureData);
+            recordCount++;
 
             final List<StructureMembers.Member> members = structureData.getMembers();
             assertEquals(33, members.size());
@@ -152,5 +154,13 @@ public class BufrTest {
             assertNotNull(brightnessTemperatureRealPartData);
             assertEquals(1, brightnessTemperatureRealPartData.getSize());
         }
+
+        // the members of the sequence are scalar, so the observations are counted by the sequence reader
+        final Variable snapshotIdentifierMember = sequence.findVariable("Snapshot_identifier");
+        assertEquals(1, snapshotIdentifierMember.getSize());
+        final SequenceReader sequenceReader = new SequenceReader(sequence, dataset, new ChunkCache(1L << 28));
+        final ChunkedVariable snapshotIdentifier = sequenceReader.createVariable(snapshotIdentifierMember);
+        assertEquals(recordCount, snapshotIdentifier.getElementCount());
+        sequenceReader.close();
     }
 }
@@ -0,0 +1,188 @@
+package org.esa.beam.dataio.smos;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class CellBrowseValueCacheTest {
+
+    private static final int CELL_COUNT = 200;
+
+    // polarisation flags, incidence angle, BT value, information flags
+    private static final double[][] OBSERVATIONS = {
+            {0, 40, 100.0, 1},
+            {1, 40, 200.0, 2},
+            {0, 45, 110.0, 4},
+            {1, 45, 210.0, 8},
+            {0, 60, 500.0, 16}
+    };
+
+    private double[][] observationTable;
+    private int observationCount;
+    private int invalidCell;
+    private CellBrowseValueCache cache;
+    private int observationRequestCount;
+
+    @Before
+    public void setUp() {
+        observationTable = OBSERVATIONS;
+        observationCount = OBSERVATIONS.length;
+        invalidCell = -1;
+
+        final int[] variables = {0, 0, 1};
+        final int[] polarizations = {0, 1, 4};
+        final boolean[] combined = {false, false, true};
+        cache = new CellBrowseValueCache(variables, polarizations, combined, CELL_COUNT) {
+            @Override
+            protected synchronized double[][] readObservations(int cell) throws IOException {
+                observationRequestCount++;
+                if (cell == invalidCell) {
+                    throw new IOException();
+                }
+                final double[][] observations = new double[4][observationCount];
+                for (int q = 0; q < 4; q++) {
+                    for (int i = 0; i < observationCount; i++) {
+                        observations[q][i] = observationTable[i][q];
+                    }
+                }
+                return observations;
+            }
+        };
+    }
+
+    @Test
+    public void testIsCombined() {
+        assertFalse(cache.isCombined(0));
+        assertFalse(cache.isCombined(1));
+        assertTrue(cache.isCombined(2));
+    }
+
+    @Test
+    public void testGetInterpolatedValue() throws IOException {
+        assertEquals(105.0, cache.getInterpolatedValue(3, 0), 1.0e-4);
+        assertEquals(205.0, cache.getInterpolatedValue(3, 1), 1.0e-4);
+    }
+
+    @Test
+    public void testGetCombinedFlags() throws IOException {
+        // the observation at an incidence angle of 60 degree is not used
+        assertEquals(15, cache.getCombinedFlags(3, 2));
+    }
+
+    @Test
+    public void testObservationsAreReadOncePerCell() throws IOException {
+        cache.getInterpolatedValue(3, 0);
+        cache.getInterpolatedValue(3, 1);
+        cache.getCombinedFlags(3, 2);
+        assertEquals(CellBrowseValueCache.BLOCK_SIZE, observationRequestCount);
+
+        cache.getInterpolatedValue(CellBrowseValueCache.BLOCK_SIZE - 1, 0);
+        assertEquals(CellBrowseValueCache.BLOCK_SIZE, observationRequestCount);
+
+        // the last block is not complete
+        cache.getInterpolatedValue(CELL_COUNT - 1, 0);
+        assertEquals(CellBrowseValueCache.BLOCK_SIZE + CELL_COUNT % CellBrowseValueCache.BLOCK_SIZE,
+                     observationRequestCount);
+    }
+
+    @Test
+    public void testGetInterpolatedValue_integerValuesMatchUncachedComputation() throws IOException {
+        // integral values beyond 2^24, which cannot be held by a float
+        final double[] incidenceAngles = {40, 45, 41, 44};
+        final double[] values = {16777218, 16777220, 16777219, 16777222};
+        observationTable = new double[][]{
+                {0, incidenceAngles[0], values[0], 1},
+                {0, incidenceAngles[1], values[1], 2},
+                {0, incidenceAngles[2], values[2], 4},
+                {0, incidenceAngles[3], values[3], 8}
+        };
+        observationCount = observationTable.length;
+        final Number expected = interpolate(incidenceAngles, values);
+
+        // browse values of integer bands are converted like this
+        final Number actual = cache.getInterpolatedValue(3, 0);
+        assertEquals(expected.doubleValue(), actual.doubleValue(), 0.0);
+        assertEquals(expected.intValue(), actual.intValue());
+        assertEquals(expected.shortValue(), actual.shortValue());
+
+        cache.precompute();
+        final Number precomputed = cache.getInterpolatedValue(CELL_COUNT - 1, 0);
+        assertEquals(expected.intValue(), precomputed.intValue());
+        assertEquals(expected.shortValue(), precomputed.shortValue());
+    }
+
+    @Test(expected = IOException.class)
+    public void testGetInterpolatedValue_noData() throws IOException {
+        observationCount = 2;
+
+        cache.getInterpolatedValue(5, 0);
+    }
+
+    @Test
+    public void testGetInterpolatedValue_unreadableCell() throws IOException {
+        invalidCell = 5;
+
+        try {
+            cache.getInterpolatedValue(5, 0);
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(CellBrowseValueCache.BLOCK_SIZE, observationRequestCount);
+
+        // the observations of the unreadable cell are read again, but those of the other cells are not
+        assertEquals(105.0, cache.getInterpolatedValue(6, 0), 1.0e-4);
+        assertEquals(CellBrowseValueCache.BLOCK_SIZE + 1, observationRequestCount);
+
+        invalidCell = -1;
+        assertEquals(105.0, cache.getInterpolatedValue(5, 0), 1.0e-4);
+        assertEquals(CellBrowseValueCache.BLOCK_SIZE + 2, observationRequestCount);
+        cache.getInterpolatedValue(5, 0);
+        assertEquals(CellBrowseValueCache.BLOCK_SIZE + 2, observationRequestCount);
+    }
+
+    @Test
+    public void testPrecompute_unreadableCellIsReadAgainWhenRequested() throws IOException {
+        invalidCell = 100;
+        cache.precompute();
+        assertEquals(CELL_COUNT, observationRequestCount);
+
+        invalidCell = -1;
+        assertEquals(205.0, cache.getInterpolatedValue(100, 1), 1.0e-4);
+        assertEquals(CELL_COUNT + 1, observationRequestCount);
+    }
+
+    @Test
+    public void testPrecompute() throws IOException {
+        assertFalse(cache.isPrecomputed());
+        cache.getInterpolatedValue(3, 0);
+        cache.precompute();
+        assertTrue(cache.isPrecomputed());
+        assertEquals(CELL_COUNT, observationRequestCount);
+
+        assertEquals(105.0, cache.getInterpolatedValue(CELL_COUNT - 1, 0), 1.0e-4);
+        assertEquals(205.0, cache.getInterpolatedValue(100, 1), 1.0e-4);
+        assertEquals(15, cache.getCombinedFlags(150, 2));
+        assertEquals(CELL_COUNT, observationRequestCount);
+    }
+
+    // interpolates the values to the center browse incidence angle without any cache
+    static double interpolate(double[] incidenceAngles, double[] values) {
+        double sx = 0;
+        double sy = 0;
+        double sxx = 0;
+        double sxy = 0;
+        for (int i = 0; i < values.length; i++) {
+            sx += incidenceAngles[i];
+            sy += values[i];
+            sxx += incidenceAngles[i] * incidenceAngles[i];
+            sxy += incidenceAngles[i] * values[i];
+        }
+        final int count = values.length;
+        final double a = (count * sxy - sx * sy) / (count * sxx - sx * sx);
+        final double b = (sy - a * sx) / count;
+        return a * BrowseValueCache.CENTER_BROWSE_INCIDENCE_ANGLE + b;
+    }
+}
@@ -0,0 +1,105 @@
+package org.esa.beam.dataio.smos;
+
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class CellIndexSpansTest {
+
+    @Test
+    public void testCreate() {
+        // one pixel per degree, the cells are 10 x 10 degrees, cells west of 20 degrees do not exist
+        final AffineTransform i2m = new AffineTransform(1.0, 0.0, 0.0, -1.0, 0.0, 90.0);
+        final CellIndexSpans spans = CellIndexSpans.create(new GridCellValueProvider("test"), i2m,
+                                                           new Rectangle(15, 5, 20, 2));
+
+        assertEquals(6, spans.getSpanCount());
+        assertEquals(0, spans.getFirstSpan(0));
+        assertEquals(3, spans.getEndSpan(0));
+        assertEquals(3, spans.getFirstSpan(1));
+        assertEquals(6, spans.getEndSpan(1));
+
+        assertEquals(-1, spans.getCellIndex(0));
+        assertEquals(0, spans.getStart(0));
+        assertEquals(5, spans.getLength(0));
+        assertEquals(802, spans.getCellIndex(1));
+        assertEquals(5, spans.getStart(1));
+        assertEquals(10, spans.getLength(1));
+        assertEquals(803, spans.getCellIndex(2));
+        assertEquals(15, spans.getStart(2));
+        assertEquals(5, spans.getLength(2));
+
+        // the spans of the second line refer to the spans of the first line
+        assertEquals(0, spans.getSource(3));
+        assertEquals(1, spans.getSource(4));
+        assertEquals(2, spans.getSource(5));
+        assertEquals(0, spans.getSource(0));
+    }
+
+    @Test
+    public void testGetInstance() {
+        final AffineTransform i2m = new AffineTransform(1.0, 0.0, 0.0, -1.0, 0.0, 90.0);
+        final Rectangle rectangle = new Rectangle(0, 0, 40, 40);
+
+        final CellIndexSpans spans = CellIndexSpans.getInstance(new GridCellValueProvider("a"), i2m, 0, rectangle);
+
+        // the spans are shared by all providers of the same grid
+        assertSame(spans, CellIndexSpans.getInstance(new GridCellValueProvider("a"), i2m, 0, rectangle));
+        assertSame(spans, CellIndexSpans.getInstance(new GridCellValueProvider("a"), i2m, 0, new Rectangle(rectangle)));
+        assertNotSame(spans, CellIndexSpans.getInstance(new GridCellValueProvider("b"), i2m, 0, rectangle));
+        assertNotSame(spans, CellIndexSpans.getInstance(new GridCellValueProvider("a"), i2m, 1, rectangle));
+    }
+
+    private static class GridCellValueProvider implements CellValueProvider {
+
+        private final String gridName;
+
+        private GridCellValueProvider(String gridName) {
+            this.gridName = gridName;
+        }
+
+        @Override
+        public Area getArea() {
+            return new Area();
+        }
+
+        @Override
+        public String getGridName() {
+            return gridName;
+        }
+
+        @Override
+        public long getCellIndex(double lon, double lat) {
+            if (lon < 20.0) {
+                return -1;
+            }
+            return (long) Math.floor(lon / 10.0) + 100 * (long) Math.floor(lat / 10.0);
+        }
+
+        @Override
+        public byte getValue(long cellIndex, byte noDataValue) {
+            return noDataValue;
+        }
+
+        @Override
+        public short getValue(long cellIndex, short noDataValue) {
+            return noDataValue;
+        }
+
+        @Override
+        public int getValue(long cellIndex, int noDataValue) {
+            return noDataValue;
+        }
+
+        @Override
+        public float getValue(long cellIndex, float noDataValue) {
+            return noDataValue;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.esa.beam.dataio.smos;
+
+import org.junit.Before;
+import org.junit.Test;
+import ucar.ma2.Array;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ChunkCacheTest {
+
+    private static final long CHUNK_SIZE = 400L;
+
+    private ChunkCache chunkCache;
+    private Object file;
+    private SequenceReader reader;
+    private ChunkedVariable variable;
+
+    @Before
+    public void setUp() {
+        chunkCache = new ChunkCache(3 * CHUNK_SIZE);
+        file = new Object();
+        reader = new SequenceReader(null, file, chunkCache);
+        variable = new ChunkedVariable(null, reader, chunkCache);
+    }
+
+    @Test
+    public void testPutAndGet() {
+        final Array chunk = createChunk();
+        chunkCache.put(variable, 0, chunk, CHUNK_SIZE);
+
+        assertSame(chunk, chunkCache.get(variable, 0));
+        assertNull(chunkCache.get(variable, 1));
+        assertEquals(CHUNK_SIZE, chunkCache.getMemoryUsage());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedChunksAreEvicted() {
+        for (int i = 0; i < 3; i++) {
+            chunkCache.put(variable, i, createChunk(), CHUNK_SIZE);
+        }
+        chunkCache.get(variable, 0);
+        chunkCache.put(variable, 3, createChunk(), CHUNK_SIZE);
+
+        assertNotNull(chunkCache.get(variable, 0));
+        assertNull(chunkCache.get(variable, 1));
+        assertNotNull(chunkCache.get(variable, 2));
+        assertNotNull(chunkCache.get(variable, 3));
+        assertEquals(3 * CHUNK_SIZE, chunkCache.getMemoryUsage());
+    }
+
+    @Test
+    public void testChunkAddedIsNotEvicted() {
+        chunkCache.put(variable, 0, createChunk(), 4 * CHUNK_SIZE);
+
+        assertNotNull(chunkCache.get(variable, 0));
+        assertEquals(1, chunkCache.getChunkCount());
+    }
+
+    @Test
+    public void testRemoveChunks() {
+        final SequenceReader otherFileReader = new SequenceReader(null, new Object(), chunkCache);
+        final ChunkedVariable otherVariable = new ChunkedVariable(null, reader, chunkCache);
+        final ChunkedVariable otherFileVariable = new ChunkedVariable(null, otherFileReader, chunkCache);
+        chunkCache.put(variable, 0, createChunk(), CHUNK_SIZE);
+        chunkCache.put(otherVariable, 0, createChunk(), CHUNK_SIZE);
+        chunkCache.put(otherFileVariable, 0, createChunk(), CHUNK_SIZE);
+
+        variable.dispose();
+        assertNull(chunkCache.get(variable, 0));
+        assertEquals(2, chunkCache.getChunkCount());
+
+        chunkCache.removeChunks(file);
+        assertEquals(1, chunkCache.getChunkCount());
+        assertEquals(CHUNK_SIZE, chunkCache.getMemoryUsage());
+    }
+
+    private static Array createChunk() {
+        return Array.factory(int.class, new int[]{100});
+    }
+}
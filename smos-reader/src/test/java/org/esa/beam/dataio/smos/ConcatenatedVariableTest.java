@@ -0,0 +1,82 @@
+package org.esa.beam.dataio.smos;
+
+import org.junit.Before;
+import org.junit.Test;
+import ucar.nc2.Sequence;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConcatenatedVariableTest {
+
+    private ChunkCache chunkCache;
+    private Object file;
+
+    @Before
+    public void setUp() {
+        chunkCache = new ChunkCache(1L << 20);
+        file = new Object();
+    }
+
+    @Test
+    public void testSinglePart() throws Exception {
+        final ConcatenatedVariable variable = new ConcatenatedVariable(new ChunkedVariable[]{
+                createPart(new int[]{3, 4, 5})
+        });
+
+        assertEquals(3, variable.getElementCount());
+        assertEquals(0, variable.getPart(0));
+        assertEquals(0, variable.getPart(2));
+        assertEquals(3, variable.getInt(0));
+        assertEquals(5.0, variable.getDouble(2), 0.0);
+    }
+
+    @Test
+    public void testObservationsAreConcatenatedInTheOrderOfTheParts() throws Exception {
+        final ConcatenatedVariable variable = new ConcatenatedVariable(new ChunkedVariable[]{
+                createPart(new int[]{10, 11}),
+                createPart(new int[]{20, 21, 22}),
+                createPart(new int[]{30})
+        });
+
+        assertEquals(6, variable.getElementCount());
+        final int[] expectedParts = {0, 0, 1, 1, 1, 2};
+        final int[] expectedValues = {10, 11, 20, 21, 22, 30};
+        for (int i = 0; i < 6; i++) {
+            assertEquals(expectedParts[i], variable.getPart(i));
+            assertEquals(expectedValues[i], variable.getInt(i));
+            assertEquals(expectedValues[i], ((Number) variable.getObject(i)).intValue());
+        }
+    }
+
+    @Test
+    public void testEmptyPartsAreSkipped() throws Exception {
+        final ConcatenatedVariable variable = new ConcatenatedVariable(new ChunkedVariable[]{
+                createPart(new int[0]),
+                createPart(new int[]{10, 11}),
+                createPart(new int[0]),
+                createPart(new int[]{30})
+        });
+
+        assertEquals(3, variable.getElementCount());
+        assertEquals(1, variable.getPart(0));
+        assertEquals(1, variable.getPart(1));
+        assertEquals(3, variable.getPart(2));
+        assertEquals(10, variable.getInt(0));
+        assertEquals(11, variable.getInt(1));
+        assertEquals(30, variable.getInt(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoParts() {
+        new ConcatenatedVariable(new ChunkedVariable[0]);
+    }
+
+    private ChunkedVariable createPart(int[] values) throws IOException {
+        final Sequence sequence = SequenceReaderTest.createSequence(new String[]{"a"}, new int[][]{values});
+        final SequenceReader reader = new SequenceReader(sequence, file, chunkCache);
+
+        return reader.createVariable(SequenceReaderTest.createMember("a"));
+    }
+}
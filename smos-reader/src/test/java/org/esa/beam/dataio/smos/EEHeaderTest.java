@@ -0,0 +1,95 @@
+package org.esa.beam.dataio.smos;
+
+import org.esa.beam.dataio.smos.dddb.Dddb;
+import org.esa.beam.dataio.smos.dddb.TestHelper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EEHeaderTest {
+
+    private File hdrFile;
+
+    @Before
+    public void setUp() {
+        hdrFile = TestHelper.getResourceFile("SM_OPER_MIR_BWLF1C_20111026T143206_20111026T152520_503_001_1.HDR");
+    }
+
+    @Test
+    public void testGetInstance() throws IOException {
+        final EEHeader header = EEHeader.getInstance(hdrFile);
+
+        assertEquals("DBL_SM_XXXX_MIR_BWLF1C_0300", header.getSchemaName());
+        assertEquals("UTC=2011-10-26T14:32:06", header.getValidityStart());
+        assertEquals("UTC=2011-10-26T15:25:20", header.getValidityStop());
+        assertEquals("050", header.getSpecificProductHeaderValue("Radiometric_Accuracy_Scale"));
+        assertEquals("100", header.getSpecificProductHeaderValue("Pixel_Footprint_Scale"));
+        assertNull(header.getSpecificProductHeaderValue("Chi_2_Scale"));
+        assertEquals("+005.426034", header.getValue("Product_Location", "Mid_Lat"));
+        assertNull(header.getValue("Product_Location", "Mid_Height"));
+    }
+
+    @Test
+    public void testGetInstance_isCached() throws IOException {
+        assertSame(EEHeader.getInstance(hdrFile), EEHeader.getInstance(hdrFile));
+    }
+
+    @Test
+    public void testGetDataSets() throws IOException {
+        final List<EEHeader.DataSet> dataSets = EEHeader.getInstance(hdrFile).getDataSets();
+        assertEquals(17, dataSets.size());
+
+        final EEHeader.DataSet dataSet = dataSets.get(0);
+        assertEquals("Temp_Browse", dataSet.getName());
+        assertEquals("M", dataSet.getType());
+        assertEquals(6219334, dataSet.getSize());
+        assertEquals(0, dataSet.getOffset());
+        assertEquals("", dataSet.getRefFilename());
+        assertEquals(84045, dataSet.getRecordCount());
+        assertEquals(74, dataSet.getRecordSize());
+
+        assertEquals("DGG_FILE", dataSets.get(16).getName());
+    }
+
+    @Test(expected = IOException.class)
+    public void testGetValue_missingElement() throws IOException {
+        EEHeader.getInstance(hdrFile).getValue("Ionex_Descriptor", "Scaling_Factor_Exponent");
+    }
+
+    @Test
+    public void testGetValue_withinAncestor() throws IOException {
+        final EEHeader header = EEHeader.getInstance(hdrFile);
+
+        assertEquals("+005.426034", header.getValue("Specific_Product_Header", "Product_Location", "Mid_Lat"));
+        try {
+            header.getValue("Main_Product_Header", "Product_Location", "Mid_Lat");
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testGetRootElement_returnsCopy() throws IOException {
+        final EEHeader header = EEHeader.getInstance(hdrFile);
+
+        header.getRootElement().removeContent();
+        assertEquals("+005.426034", header.getValue("Product_Location", "Mid_Lat"));
+        assertFalse(header.getRootElement().getChildren().isEmpty());
+    }
+
+    @Test
+    public void testExtractFormatName() throws IOException {
+        try (InputStream inputStream = new FileInputStream(hdrFile)) {
+            assertEquals("DBL_SM_XXXX_MIR_BWLF1C_0300", Dddb.extractFormatName(inputStream));
+        }
+        assertNull(Dddb.extractFormatName(new ByteArrayInputStream("<Header><File_Name/></Header>".getBytes())));
+    }
+}
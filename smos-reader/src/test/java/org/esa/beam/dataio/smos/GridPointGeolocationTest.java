@@ -0,0 +1,85 @@
+package org.esa.beam.dataio.smos;
+
+import com.bc.ceres.binio.CompoundData;
+import com.bc.ceres.binio.CompoundType;
+import org.esa.beam.smos.dgg.SmosDgg;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class GridPointGeolocationTest {
+
+    private static final int ID_INDEX = 0;
+    private static final int LAT_INDEX = 1;
+    private static final int LON_INDEX = 2;
+
+    private GridPointList gridPointList;
+
+    @Before
+    public void setUp() {
+        final CompoundType compoundType = mock(CompoundType.class);
+        when(compoundType.getMemberIndex(SmosConstants.GRID_POINT_ID_NAME)).thenReturn(ID_INDEX);
+        when(compoundType.getMemberIndex(SmosConstants.GRID_POINT_LAT_NAME)).thenReturn(LAT_INDEX);
+        when(compoundType.getMemberIndex(SmosConstants.GRID_POINT_LON_NAME)).thenReturn(LON_INDEX);
+
+        gridPointList = mock(GridPointList.class);
+        when(gridPointList.getCompoundType()).thenReturn(compoundType);
+    }
+
+    @Test
+    public void testCreate() throws IOException {
+        when(gridPointList.getElementCount()).thenReturn(2);
+        stubGridPoint(0, 17, 45.5f, 10.25f);
+        stubGridPoint(1, 4000000, -12.0f, 190.5f);
+
+        final GridPointGeolocation geolocation = GridPointGeolocation.create(gridPointList);
+
+        assertEquals(2, geolocation.getElementCount());
+        assertEquals(10.25, geolocation.getLon(0), 0.0);
+        assertEquals(45.5, geolocation.getLat(0), 0.0);
+        assertEquals(190.5, geolocation.getLon(1), 0.0);
+        assertEquals(-12.0, geolocation.getLat(1), 0.0);
+        assertEquals(17, geolocation.getGridPointId(0));
+        assertEquals(4000000, geolocation.getGridPointId(1));
+        assertEquals(SmosDgg.gridPointIdToSeqnum(17), geolocation.getSeqnum(0));
+        assertEquals(SmosDgg.gridPointIdToSeqnum(4000000), geolocation.getSeqnum(1));
+
+        assertArrayEquals(new float[]{10.25f, 190.5f}, geolocation.getLons(), 0.0f);
+        assertArrayEquals(new float[]{45.5f, -12.0f}, geolocation.getLats(), 0.0f);
+        assertArrayEquals(new int[]{17, 4000000}, geolocation.getGridPointIds());
+        assertEquals(SmosDgg.gridPointIdToSeqnum(4000000), geolocation.getSeqnums()[1]);
+    }
+
+    @Test
+    public void testBulkAccessorsReturnCopies() throws IOException {
+        when(gridPointList.getElementCount()).thenReturn(1);
+        stubGridPoint(0, 17, 45.5f, 10.25f);
+
+        final GridPointGeolocation geolocation = GridPointGeolocation.create(gridPointList);
+        geolocation.getLons()[0] = 0.0f;
+        geolocation.getGridPointIds()[0] = 0;
+
+        assertEquals(10.25, geolocation.getLon(0), 0.0);
+        assertEquals(17, geolocation.getGridPointId(0));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCreate_invalidGridPointId() throws IOException {
+        when(gridPointList.getElementCount()).thenReturn(1);
+        stubGridPoint(0, SmosDgg.MAX_GRID_POINT_ID + 1, 0.0f, 0.0f);
+
+        GridPointGeolocation.create(gridPointList);
+    }
+
+    private void stubGridPoint(int i, int id, float lat, float lon) throws IOException {
+        final CompoundData gridPointData = mock(CompoundData.class);
+        when(gridPointData.getInt(ID_INDEX)).thenReturn(id);
+        when(gridPointData.getFloat(LAT_INDEX)).thenReturn(lat);
+        when(gridPointData.getFloat(LON_INDEX)).thenReturn(lon);
+        when(gridPointList.getCompound(i)).thenReturn(gridPointData);
+    }
+}
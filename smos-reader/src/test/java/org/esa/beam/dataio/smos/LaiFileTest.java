@@ -30,8 +30,11 @@ import org.junit.Test;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class LaiFileTest {
@@ -97,6 +100,17 @@ public class LaiFileTest {
         }
     }
 
+    @Test
+    public void testCreateGridName() {
+        final List<Dffg> gridList = Arrays.asList(new Dffg(-90.0, 90.0, -180.0, 180.0, 45.0, null));
+
+        final String gridName = LaiFile.createGridName(gridList, 10000000L);
+        assertTrue(gridName.startsWith("DFFG-"));
+        assertEquals(gridName, LaiFile.createGridName(gridList, 10000000L));
+        // the cell indexes differ, when the digits to shift differ
+        assertFalse(gridName.equals(LaiFile.createGridName(gridList, 100000000L)));
+    }
+
     // for dumping the contents of a LAI file
     public static void main(String[] args) throws IOException {
         final DataFormat dataFormat = Dddb.getInstance().getDataFormat(HDR_FILE);
@@ -0,0 +1,23 @@
+package org.esa.beam.dataio.smos;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LightBufrFileTest {
+
+    @Test
+    public void testToMjd2000() {
+        assertEquals(0.0, LightBufrFile.toMjd2000(2000, 1, 1, 0, 0, 0.0), 0.0);
+        assertEquals(0.5, LightBufrFile.toMjd2000(2000, 1, 1, 12, 0, 0.0), 0.0);
+        assertEquals(-1.0, LightBufrFile.toMjd2000(1999, 12, 31, 0, 0, 0.0), 0.0);
+        // 2000 is a leap year
+        assertEquals(59.0, LightBufrFile.toMjd2000(2000, 2, 29, 0, 0, 0.0), 0.0);
+        assertEquals(60.0, LightBufrFile.toMjd2000(2000, 3, 1, 0, 0, 0.0), 0.0);
+        // 2100 is not a leap year
+        assertEquals(36583.0, LightBufrFile.toMjd2000(2100, 2, 28, 0, 0, 0.0), 0.0);
+        assertEquals(36584.0, LightBufrFile.toMjd2000(2100, 3, 1, 0, 0, 0.0), 0.0);
+        assertEquals(5317.0 + (14 * 3600 + 37 * 60 + 12.5) / 86400.0,
+                     LightBufrFile.toMjd2000(2014, 7, 23, 14, 37, 12.5), 1.0e-10);
+    }
+}
@@ -0,0 +1,78 @@
+package org.esa.beam.dataio.smos;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.*;
+
+public class MappedFileIOHandlerTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("MappedFileIOHandlerTest", ".DBL");
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            for (int i = 0; i < 100; i++) {
+                outputStream.write(i);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (file != null) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        final MappedFileIOHandler handler = new MappedFileIOHandler(file);
+        assertEquals(100, handler.getMaxPosition());
+
+        final byte[] data = new byte[10];
+        handler.read(null, data, 42);
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(42 + i, data[i]);
+        }
+    }
+
+    @Test
+    public void testRead_acrossWindows() throws IOException {
+        final MappedFileIOHandler handler = new MappedFileIOHandler(file, 16);
+        assertEquals(100, handler.getMaxPosition());
+
+        final byte[] data = new byte[40];
+        handler.read(null, data, 10);
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(10 + i, data[i]);
+        }
+    }
+
+    @Test
+    public void testRead_beyondEndOfFile() throws IOException {
+        final MappedFileIOHandler handler = new MappedFileIOHandler(file, 16);
+
+        final byte[] data = new byte[10];
+        handler.read(null, data, 95);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(95 + i, data[i]);
+        }
+        for (int i = 5; i < data.length; i++) {
+            assertEquals(0, data[i]);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testWrite() throws IOException {
+        new MappedFileIOHandler(file).write(null, new byte[1], 0);
+    }
+}
@@ -0,0 +1,56 @@
+package org.esa.beam.dataio.smos;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ObservationIndexTest {
+
+    @Test
+    public void testCreate() {
+        final ObservationIndex index = ObservationIndex.create(new int[]{7, 3, -1, 7, 12, 3, 7});
+
+        assertEquals(3, index.getCellCount());
+        assertEquals(3, index.getCellId(0));
+        assertEquals(7, index.getCellId(1));
+        assertEquals(12, index.getCellId(2));
+
+        assertEquals(0, index.getStart(0));
+        assertEquals(2, index.getEnd(0));
+        assertEquals(1, index.getObservationIndex(0));
+        assertEquals(5, index.getObservationIndex(1));
+
+        // the observations of a cell are stored in ascending order
+        assertEquals(2, index.getStart(1));
+        assertEquals(5, index.getEnd(1));
+        assertEquals(0, index.getObservationIndex(2));
+        assertEquals(3, index.getObservationIndex(3));
+        assertEquals(6, index.getObservationIndex(4));
+
+        assertEquals(5, index.getStart(2));
+        assertEquals(6, index.getEnd(2));
+        assertEquals(4, index.getObservationIndex(5));
+    }
+
+    @Test
+    public void testGetCell() {
+        final ObservationIndex index = ObservationIndex.create(new int[]{7, 3, -1, 7, 12, 3, 7});
+
+        assertEquals(0, index.getCell(3));
+        assertEquals(1, index.getCell(7));
+        assertEquals(2, index.getCell(12));
+        assertEquals(-1, index.getCell(0));
+        assertEquals(-1, index.getCell(8));
+        assertEquals(-1, index.getCell(13));
+        assertEquals(-1, index.getCell(-1));
+        assertEquals(-1, index.getCell(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testCreate_NoObservations() {
+        final ObservationIndex index = ObservationIndex.create(new int[]{-1, -1});
+
+        assertEquals(0, index.getCellCount());
+        assertEquals(-1, index.getCell(0));
+    }
+}
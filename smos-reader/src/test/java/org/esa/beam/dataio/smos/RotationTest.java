@@ -0,0 +1,125 @@
+package org.esa.beam.dataio.smos;
+
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.Product;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.geom.Area;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RotationTest {
+
+    private Rotation rotation;
+
+    @Before
+    public void setUp() {
+        final Product product = mock(Product.class);
+        when(product.getBand(anyString())).thenReturn(mock(Band.class));
+
+        final Map<String, AbstractValueProvider> valueProviderMap = new HashMap<String, AbstractValueProvider>();
+        valueProviderMap.put("Faraday_Rotation_Angle_X", new TestValueProvider(10.0f));
+        valueProviderMap.put("Faraday_Rotation_Angle_Y", new TestValueProvider(12.0f));
+        valueProviderMap.put("Geometric_Rotation_Angle_X", new TestValueProvider(355.0f));
+        valueProviderMap.put("Geometric_Rotation_Angle_Y", new TestValueProvider(15.0f));
+        valueProviderMap.put("BT_Value_X", new TestValueProvider(200.0f));
+        valueProviderMap.put("BT_Value_Y", new TestValueProvider(180.0f));
+
+        rotation = new Rotation(product, valueProviderMap, "BT_Value_X", "BT_Value_Y", null);
+    }
+
+    @Test
+    public void testGetGridPointIndexes() {
+        final int[] positions = new int[5];
+        final int[] gridPointIndexes = rotation.getGridPointIndexes(new int[]{7, 3, 100, 7, 5}, positions);
+
+        assertArrayEquals(new int[]{3, 5, 7}, gridPointIndexes);
+        assertArrayEquals(new int[]{2, 0, -1, 2, 1}, positions);
+    }
+
+    @Test
+    public void testGetInputs() throws IOException {
+        final int[] gridPointIndexes = {3, 5, 7};
+        final Rotation.Inputs inputs = rotation.getInputs(gridPointIndexes);
+
+        for (int i = 0; i < gridPointIndexes.length; i++) {
+            final double alpha = rotation.getAlpha(gridPointIndexes[i]);
+            assertEquals(Math.cos(alpha) * Math.cos(alpha), inputs.aa[i], 1.0e-12);
+            assertEquals(Math.cos(alpha) * Math.sin(alpha), inputs.ab[i], 1.0e-12);
+            assertEquals(Math.sin(alpha) * Math.sin(alpha), inputs.bb[i], 1.0e-12);
+            assertEquals(rotation.getBtx(gridPointIndexes[i]), inputs.btx[i], 0.0f);
+            assertEquals(rotation.getBty(gridPointIndexes[i]), inputs.bty[i], 0.0f);
+        }
+        assertNull(inputs.btxy);
+
+        // the inputs are shared by all bands computed for the same grid points
+        assertSame(inputs, rotation.getInputs(new int[]{3, 5, 7}));
+    }
+
+    @Test
+    public void testGetValues() {
+        final DP h = new DPH(rotation, false);
+        final DP v = new DPV(rotation, false);
+        final int[] seqnums = {7, 3, 100, 7, 5};
+
+        final float[] hValues = new float[seqnums.length];
+        final float[] vValues = new float[seqnums.length];
+        h.getValues(seqnums, hValues, -999.0f);
+        v.getValues(seqnums, vValues, -999.0f);
+
+        for (int i = 0; i < seqnums.length; i++) {
+            assertEquals(h.getValue(seqnums[i], -999.0f), hValues[i], 0.0f);
+            assertEquals(v.getValue(seqnums[i], -999.0f), vValues[i], 0.0f);
+        }
+        assertEquals(-999.0f, hValues[2], 0.0f);
+    }
+
+    private static class TestValueProvider extends AbstractValueProvider {
+
+        private final float offset;
+
+        private TestValueProvider(float offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public Area getArea() {
+            return new Area();
+        }
+
+        @Override
+        protected int getGridPointIndex(int seqnum) {
+            return seqnum < 100 ? seqnum : -1;
+        }
+
+        @Override
+        protected byte getByte(int gridPointIndex) {
+            return 0;
+        }
+
+        @Override
+        protected short getShort(int gridPointIndex) {
+            return 0;
+        }
+
+        @Override
+        protected int getInt(int gridPointIndex) {
+            return 0;
+        }
+
+        @Override
+        protected float getFloat(int gridPointIndex) {
+            return offset + 0.5f * gridPointIndex;
+        }
+    }
+}
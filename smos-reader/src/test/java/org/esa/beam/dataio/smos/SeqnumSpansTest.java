@@ -0,0 +1,86 @@
+package org.esa.beam.dataio.smos;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+import static org.junit.Assert.assertEquals;
+
+public class SeqnumSpansTest {
+
+    private static final int[][] SEQNUMS = {
+            {7, 7, 7, 8, 8},
+            {7, 7, 8, 8, 9},
+            {9, 9, 9, 9, 9}
+    };
+
+    private SeqnumSpans spans;
+
+    @Before
+    public void setUp() {
+        final WritableRaster raster = Raster.createBandedRaster(DataBuffer.TYPE_INT, 5, 3, 1, new Point(10, 20));
+        for (int y = 0; y < SEQNUMS.length; y++) {
+            raster.setPixels(10, 20 + y, 5, 1, SEQNUMS[y]);
+        }
+        spans = SeqnumSpans.create(raster, new Rectangle(10, 20, 5, 3));
+    }
+
+    @Test
+    public void testSpans() {
+        assertEquals(6, spans.getSpanCount());
+        assertEquals(new Rectangle(10, 20, 5, 3), spans.getRectangle());
+
+        assertEquals(0, spans.getFirstSpan(0));
+        assertEquals(2, spans.getEndSpan(0));
+        assertEquals(2, spans.getFirstSpan(1));
+        assertEquals(5, spans.getEndSpan(1));
+        assertEquals(5, spans.getFirstSpan(2));
+        assertEquals(6, spans.getEndSpan(2));
+
+        assertSpan(0, 7, 0, 3);
+        assertSpan(1, 8, 3, 2);
+        assertSpan(2, 7, 0, 2);
+        assertSpan(3, 8, 2, 2);
+        assertSpan(4, 9, 4, 1);
+        assertSpan(5, 9, 0, 5);
+    }
+
+    @Test
+    public void testSources() {
+        assertEquals(0, spans.getSource(0));
+        assertEquals(1, spans.getSource(1));
+        assertEquals(0, spans.getSource(2));
+        assertEquals(1, spans.getSource(3));
+        assertEquals(4, spans.getSource(4));
+        assertEquals(4, spans.getSource(5));
+    }
+
+    @Test
+    public void testSubRegion() {
+        final WritableRaster raster = Raster.createBandedRaster(DataBuffer.TYPE_INT, 5, 3, 1, new Point(10, 20));
+        for (int y = 0; y < SEQNUMS.length; y++) {
+            raster.setPixels(10, 20 + y, 5, 1, SEQNUMS[y]);
+        }
+        final SeqnumSpans subSpans = SeqnumSpans.create(raster, new Rectangle(12, 21, 3, 2));
+
+        assertEquals(3, subSpans.getSpanCount());
+        assertEquals(2, subSpans.getEndSpan(0));
+        assertEquals(8, subSpans.getSeqnum(0));
+        assertEquals(2, subSpans.getLength(0));
+        assertEquals(9, subSpans.getSeqnum(2));
+        assertEquals(0, subSpans.getStart(2));
+        assertEquals(3, subSpans.getLength(2));
+        assertEquals(1, subSpans.getSource(2));
+    }
+
+    private void assertSpan(int span, int seqnum, int start, int length) {
+        assertEquals(seqnum, spans.getSeqnum(span));
+        assertEquals(start, spans.getStart(span));
+        assertEquals(length, spans.getLength(span));
+    }
+}
@@ -0,0 +1,190 @@
+package org.esa.beam.dataio.smos;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.StructureData;
+import ucar.ma2.StructureDataIterator;
+import ucar.nc2.Sequence;
+import ucar.nc2.Variable;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SequenceReaderTest {
+
+    private static final int OBSERVATION_COUNT = ChunkedVariable.CHUNK_SIZE + 100;
+
+    private ChunkCache chunkCache;
+    private Sequence sequence;
+    private SequenceReader reader;
+    private ChunkedVariable a;
+    private ChunkedVariable b;
+
+    @Before
+    public void setUp() throws Exception {
+        final int[] aValues = new int[OBSERVATION_COUNT];
+        final int[] bValues = new int[OBSERVATION_COUNT];
+        for (int i = 0; i < OBSERVATION_COUNT; i++) {
+            aValues[i] = i;
+            bValues[i] = -i;
+        }
+        chunkCache = new ChunkCache(1L << 24);
+        sequence = createSequence(new String[]{"a", "b"}, new int[][]{aValues, bValues});
+        reader = new SequenceReader(sequence, new Object(), chunkCache);
+        a = reader.createVariable(createMember("a"));
+        b = reader.createVariable(createMember("b"));
+    }
+
+    @Test
+    public void testObservationsAreCountedInASinglePass() throws Exception {
+        assertEquals(OBSERVATION_COUNT, a.getElementCount());
+        assertEquals(OBSERVATION_COUNT, b.getElementCount());
+
+        verify(sequence, times(1)).getStructureIterator();
+        // the chunks of all variables are read while counting
+        assertEquals(4, chunkCache.getChunkCount());
+    }
+
+    @Test
+    public void testGetValues() throws Exception {
+        assertEquals(0, a.getInt(0));
+        assertEquals(OBSERVATION_COUNT - 1, a.getInt(OBSERVATION_COUNT - 1));
+        assertEquals(-70.0, b.getDouble(70), 0.0);
+        assertEquals(-(OBSERVATION_COUNT - 1), ((Number) b.getObject(OBSERVATION_COUNT - 1)).intValue());
+    }
+
+    @Test
+    public void testChunksOfAllVariablesAreReadInTheSamePass() throws Exception {
+        a.getInt(0);
+
+        assertNotNull(chunkCache.get(a, 0));
+        assertNotNull(chunkCache.get(b, 0));
+        assertNull(chunkCache.get(a, 1));
+    }
+
+    @Test
+    public void testChunksAreReadInOrderWithoutRestartingTheIteration() throws Exception {
+        a.getInt(0);
+        a.getInt(ChunkedVariable.CHUNK_SIZE);
+
+        verify(sequence, times(1)).getStructureIterator();
+        assertEquals(100, chunkCache.get(a, 1).getSize());
+    }
+
+    @Test
+    public void testIterationIsRestartedForAPrecedingChunk() throws Exception {
+        a.getInt(ChunkedVariable.CHUNK_SIZE);
+        a.getInt(0);
+
+        verify(sequence, times(2)).getStructureIterator();
+        // the chunks of b have been read in the same passes
+        assertEquals(-ChunkedVariable.CHUNK_SIZE, b.getInt(ChunkedVariable.CHUNK_SIZE));
+        assertEquals(0, b.getInt(0));
+        verify(sequence, times(2)).getStructureIterator();
+    }
+
+    @Test
+    public void testEvictedChunksAreReadAgainWithoutRestartingTheIteration() throws Exception {
+        final int[] values = new int[3 * ChunkedVariable.CHUNK_SIZE];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+        final Sequence sequence = createSequence(new String[]{"a"}, new int[][]{values});
+        // the cache holds the chunk added last only
+        final ChunkCache chunkCache = new ChunkCache(1L);
+        final ChunkedVariable variable = new SequenceReader(sequence, new Object(), chunkCache).createVariable(
+                createMember("a"));
+
+        assertEquals(2 * ChunkedVariable.CHUNK_SIZE, variable.getInt(2 * ChunkedVariable.CHUNK_SIZE));
+        assertEquals(ChunkedVariable.CHUNK_SIZE, variable.getInt(ChunkedVariable.CHUNK_SIZE));
+        verify(sequence, times(2)).getStructureIterator();
+        assertEquals(1, chunkCache.getChunkCount());
+
+        // the evicted chunk is read by the iteration positioned just before it
+        assertEquals(2 * ChunkedVariable.CHUNK_SIZE + 1, variable.getInt(2 * ChunkedVariable.CHUNK_SIZE + 1));
+        verify(sequence, times(2)).getStructureIterator();
+        assertEquals(ChunkedVariable.CHUNK_SIZE + 1, variable.getInt(ChunkedVariable.CHUNK_SIZE + 1));
+        verify(sequence, times(3)).getStructureIterator();
+    }
+
+    @Test
+    public void testDisposedVariablesAreNotRead() throws Exception {
+        b.dispose();
+        a.getInt(0);
+
+        assertNotNull(chunkCache.get(a, 0));
+        assertNull(chunkCache.get(b, 0));
+    }
+
+    @Test(expected = IOException.class)
+    public void testChunkBeyondTheLastObservation() throws Exception {
+        a.getInt(2 * ChunkedVariable.CHUNK_SIZE);
+    }
+
+    static Variable createMember(String name) {
+        final Variable member = mock(Variable.class);
+        when(member.getShortName()).thenReturn(name);
+        when(member.getDataType()).thenReturn(DataType.INT);
+        when(member.getElementSize()).thenReturn(4);
+        return member;
+    }
+
+    static Sequence createSequence(final String[] memberNames, final int[][] memberValues) throws IOException {
+        final Sequence sequence = mock(Sequence.class);
+        when(sequence.getStructureIterator()).thenAnswer(new Answer<StructureDataIterator>() {
+            @Override
+            public StructureDataIterator answer(InvocationOnMock invocation) {
+                return createIterator(memberNames, memberValues);
+            }
+        });
+        return sequence;
+    }
+
+    private static StructureDataIterator createIterator(final String[] memberNames, final int[][] memberValues) {
+        final int[] recno = {-1};
+        final StructureData data = mock(StructureData.class);
+        when(data.getArray(anyString())).thenAnswer(new Answer<Array>() {
+            @Override
+            public Array answer(InvocationOnMock invocation) {
+                final String memberName = (String) invocation.getArguments()[0];
+                for (int k = 0; k < memberNames.length; k++) {
+                    if (memberNames[k].equals(memberName)) {
+                        return Array.factory(int.class, new int[0], new int[]{memberValues[k][recno[0]]});
+                    }
+                }
+                return null;
+            }
+        });
+        final StructureDataIterator iterator = mock(StructureDataIterator.class);
+        try {
+            when(iterator.hasNext()).thenAnswer(new Answer<Boolean>() {
+                @Override
+                public Boolean answer(InvocationOnMock invocation) {
+                    return recno[0] + 1 < memberValues[0].length;
+                }
+            });
+            when(iterator.next()).thenAnswer(new Answer<StructureData>() {
+                @Override
+                public StructureData answer(InvocationOnMock invocation) {
+                    recno[0]++;
+                    return data;
+                }
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return iterator;
+    }
+}
@@ -1,24 +1,51 @@
 package org.esa.beam.dataio.smos;
 
+import org.esa.beam.dataio.smos.dddb.TestHelper;
+import org.esa.beam.framework.dataio.DecodeQualification;
 import org.esa.beam.smos.SmosUtils;
 import org.esa.beam.util.io.BeamFileFilter;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 public class SmosProductReaderPluginTest {
 
+    private static final String HDR_FILE_NAME = "SM_OPER_MIR_BWLF1C_20111026T143206_20111026T152520_503_001_1.HDR";
+    private static final String BUFR_FILE_NAME =
+            "W_ES-ESA-ESAC,SMOS,N256_C_LEMM_20131028030552_20131028003256_20131028020943_bufr_v505.bin";
+
     private SmosProductReaderPlugIn plugIn;
+    private File tempDir;
 
     @Before
     public void setUp() {
         plugIn = new SmosProductReaderPlugIn();
     }
 
+    @After
+    public void tearDown() {
+        if (tempDir != null) {
+            final File[] files = tempDir.listFiles();
+            if (files != null) {
+                for (final File file : files) {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+            }
+            //noinspection ResultOfMethodCallIgnored
+            tempDir.delete();
+        }
+    }
+
     @Test
     public void testGetInputTypes() {
         final Class[] inputTypes = plugIn.getInputTypes();
@@ -81,4 +108,58 @@ public class SmosProductReaderPluginTest {
             assertEquals("SMOS Data Products (*.HDR,*.DBL,*.zip,*.ZIP)", productFileFilter.getDescription());
         }
     }
+
+    @Test
+    public void testReadSchemaName() throws IOException {
+        final File hdrFile = TestHelper.getResourceFile(HDR_FILE_NAME);
+        assertEquals("DBL_SM_XXXX_MIR_BWLF1C_0300", SmosProductReaderPlugIn.readSchemaName(hdrFile));
+    }
+
+    @Test
+    public void testGetDecodeQualification_eeFilePair() throws IOException {
+        tempDir = Files.createTempDirectory("SmosProductReaderPluginTest").toFile();
+        final File hdrFile = new File(tempDir, HDR_FILE_NAME);
+        final File dblFile = new File(tempDir, HDR_FILE_NAME.replace(".HDR", ".DBL"));
+        Files.copy(TestHelper.getResourceFile(HDR_FILE_NAME).toPath(), hdrFile.toPath());
+
+        assertEquals(DecodeQualification.UNABLE, plugIn.getDecodeQualification(hdrFile));
+
+        write(dblFile, new byte[0]);
+        assertEquals(DecodeQualification.INTENDED, plugIn.getDecodeQualification(hdrFile));
+        assertEquals(DecodeQualification.INTENDED, plugIn.getDecodeQualification(dblFile.getPath()));
+
+        // the header is modified, the memoized qualification is discarded
+        write(hdrFile, "<Earth_Explorer_Header><Datablock_Schema>DBL_SM_XXXX_MIR_XXXX1C_9999</Datablock_Schema>"
+                       .getBytes("US-ASCII"));
+        assertEquals(DecodeQualification.UNABLE, plugIn.getDecodeQualification(hdrFile));
+    }
+
+    @Test
+    public void testGetDecodeQualification_unsupportedType() throws IOException {
+        tempDir = Files.createTempDirectory("SmosProductReaderPluginTest").toFile();
+        final String baseName = "SM_OPER_MIR_SC_F1B_20111026T143206_20111026T152520_503_001_1";
+        Files.copy(TestHelper.getResourceFile(HDR_FILE_NAME).toPath(), new File(tempDir, baseName + ".HDR").toPath());
+        write(new File(tempDir, baseName + ".DBL"), new byte[0]);
+
+        assertEquals(DecodeQualification.UNABLE, plugIn.getDecodeQualification(new File(tempDir, baseName + ".HDR")));
+    }
+
+    @Test
+    public void testQualifyLightBufrDirectory() throws IOException {
+        tempDir = Files.createTempDirectory("SmosProductReaderPluginTest").toFile();
+        assertEquals(DecodeQualification.UNABLE, SmosProductReaderPlugIn.qualifyLightBufrDirectory(tempDir));
+
+        write(new File(tempDir, BUFR_FILE_NAME), new byte[0]);
+        assertEquals(DecodeQualification.INTENDED, SmosProductReaderPlugIn.qualifyLightBufrDirectory(tempDir));
+
+        // a directory which holds other files besides BUFR files is not claimed
+        write(new File(tempDir, "readme.txt"), new byte[0]);
+        assertEquals(DecodeQualification.SUITABLE, SmosProductReaderPlugIn.qualifyLightBufrDirectory(tempDir));
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(bytes);
+        }
+    }
 }
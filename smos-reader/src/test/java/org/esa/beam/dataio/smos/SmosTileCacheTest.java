@@ -0,0 +1,110 @@
+package org.esa.beam.dataio.smos;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class SmosTileCacheTest {
+
+    // the memory size of a tile is 100 x 100 x 4 bytes
+    private static final long TILE_SIZE = 40000L;
+
+    private SmosTileCache tileCache;
+    private RenderedImage image;
+
+    @Before
+    public void setUp() {
+        tileCache = new SmosTileCache(3 * TILE_SIZE);
+        image = new BufferedImage(400, 400, BufferedImage.TYPE_BYTE_GRAY);
+    }
+
+    @Test
+    public void testAddAndGetTile() {
+        final Raster tile = createTile();
+        tileCache.recordComputationTime(image, 0, 0, 1000L);
+        tileCache.add(image, 0, 0, tile);
+
+        assertSame(tile, tileCache.getTile(image, 0, 0));
+        assertNull(tileCache.getTile(image, 1, 0));
+        assertEquals(1, tileCache.getHitCount());
+        assertEquals(1, tileCache.getMissCount());
+        assertEquals(1, tileCache.getTileCount());
+        assertEquals(TILE_SIZE, tileCache.getMemoryUsage());
+    }
+
+    @Test
+    public void testTilesWithoutComputationTimeAreNotCached() {
+        tileCache.add(image, 0, 0, createTile());
+
+        assertNull(tileCache.getTile(image, 0, 0));
+        assertEquals(0, tileCache.getTileCount());
+    }
+
+    @Test
+    public void testCheapTilesAreEvictedFirst() {
+        addTile(0, 1000000L);
+        addTile(1, 1000L);
+        addTile(2, 1000000L);
+        addTile(3, 1000000L);
+
+        assertNotNull(tileCache.getTile(image, 0, 0));
+        assertNull(tileCache.getTile(image, 1, 0));
+        assertNotNull(tileCache.getTile(image, 2, 0));
+        assertNotNull(tileCache.getTile(image, 3, 0));
+        assertEquals(1, tileCache.getEvictionCount());
+        assertEquals(3 * TILE_SIZE, tileCache.getMemoryUsage());
+    }
+
+    @Test
+    public void testUnusedTilesAreEvictedEventually() {
+        addTile(0, 10000L);
+        // the priority of newer tiles is inflated by the priority of the tiles evicted
+        for (int i = 1; i < 40; i++) {
+            addTile(i, 1000L);
+        }
+
+        assertNull(tileCache.getTile(image, 0, 0));
+    }
+
+    @Test
+    public void testRemoveTiles() {
+        final RenderedImage otherImage = new BufferedImage(400, 400, BufferedImage.TYPE_BYTE_GRAY);
+        addTile(0, 1000L);
+        addTile(1, 1000L);
+        tileCache.recordComputationTime(otherImage, 0, 0, 1000L);
+        tileCache.add(otherImage, 0, 0, createTile());
+
+        tileCache.removeTiles(image);
+
+        assertEquals(1, tileCache.getTileCount());
+        assertEquals(TILE_SIZE, tileCache.getMemoryUsage());
+        assertNotNull(tileCache.getTile(otherImage, 0, 0));
+    }
+
+    @Test
+    public void testFlush() {
+        addTile(0, 1000L);
+        tileCache.flush();
+
+        assertEquals(0, tileCache.getTileCount());
+        assertEquals(0, tileCache.getMemoryUsage());
+    }
+
+    private void addTile(int tileX, long computationTime) {
+        tileCache.recordComputationTime(image, tileX, 0, computationTime);
+        tileCache.add(image, tileX, 0, createTile());
+    }
+
+    private static Raster createTile() {
+        return Raster.createBandedRaster(DataBuffer.TYPE_INT, 100, 100, 1, null);
+    }
+}
@@ -0,0 +1,77 @@
+package org.esa.beam.dataio.smos;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SnapshotIndexTest {
+
+    @Test
+    public void testGetBtRecordIndex() {
+        final SnapshotIndex.Builder builder = new SnapshotIndex.Builder();
+        builder.add(0, 17L, 0);
+        builder.add(0, 18L, 2);
+        builder.add(3, 16L, 0);
+        builder.add(3, 18L, 1);
+        builder.add(5, 18L, 4);
+        final SnapshotIndex index = builder.build();
+
+        assertEquals(3, index.getSnapshotCount());
+        assertEquals(1, index.getGridPointCount(16L));
+        assertEquals(1, index.getGridPointCount(17L));
+        assertEquals(3, index.getGridPointCount(18L));
+        assertEquals(0, index.getGridPointCount(19L));
+
+        assertEquals(0, index.getBtRecordIndex(17L, 0));
+        assertEquals(2, index.getBtRecordIndex(18L, 0));
+        assertEquals(1, index.getBtRecordIndex(18L, 3));
+        assertEquals(4, index.getBtRecordIndex(18L, 5));
+        assertEquals(0, index.getBtRecordIndex(16L, 3));
+
+        assertEquals(-1, index.getBtRecordIndex(17L, 3));
+        assertEquals(-1, index.getBtRecordIndex(18L, 4));
+        assertEquals(-1, index.getBtRecordIndex(19L, 0));
+    }
+
+    @Test
+    public void testAddAll() {
+        final SnapshotIndex.Builder lower = new SnapshotIndex.Builder();
+        assertEquals(0, lower.add(0, 17L, 0));
+        assertEquals(1, lower.add(0, 18L, 2));
+        assertEquals(0, lower.add(1, 17L, 1));
+
+        final SnapshotIndex.Builder upper = new SnapshotIndex.Builder();
+        assertEquals(0, upper.add(4, 19L, 0));
+        assertEquals(1, upper.add(4, 18L, 3));
+
+        final SnapshotIndex.Builder builder = new SnapshotIndex.Builder();
+        assertArrayEquals(new int[]{0, 1}, builder.addAll(lower));
+        assertArrayEquals(new int[]{2, 1}, builder.addAll(upper));
+        assertEquals(3, builder.getSnapshotCount());
+        assertEquals(19L, builder.getSnapshotId(2));
+
+        final SnapshotIndex index = builder.build();
+        assertEquals(2, index.getGridPointCount(17L));
+        assertEquals(2, index.getGridPointCount(18L));
+        assertEquals(1, index.getBtRecordIndex(17L, 1));
+        assertEquals(3, index.getBtRecordIndex(18L, 4));
+        assertEquals(0, index.getBtRecordIndex(19L, 4));
+    }
+
+    @Test
+    public void testManySnapshots() {
+        final SnapshotIndex.Builder builder = new SnapshotIndex.Builder();
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < 50; j++) {
+                builder.add(i, 1000L * (i + j), j);
+            }
+        }
+        final SnapshotIndex index = builder.build();
+
+        assertEquals(149, index.getSnapshotCount());
+        assertEquals(1, index.getGridPointCount(0L));
+        assertEquals(50, index.getGridPointCount(99000L));
+        assertEquals(17, index.getBtRecordIndex(60000L, 43));
+        assertEquals(-1, index.getBtRecordIndex(60000L, 0));
+    }
+}
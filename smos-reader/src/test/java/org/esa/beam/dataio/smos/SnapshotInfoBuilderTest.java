@@ -0,0 +1,154 @@
+package org.esa.beam.dataio.smos;
+
+import org.junit.Test;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SnapshotInfoBuilderTest {
+
+    @Test
+    public void testMerge() {
+        final SnapshotInfoBuilder.Partition lower = new SnapshotInfoBuilder.Partition();
+        lower.addFlags(lower.add(0, 17L, 0, createRectangle(0, 0)), SmosConstants.L1C_POL_MODE_X);
+        lower.addFlags(lower.add(0, 18L, 2, createRectangle(0, 0)), SmosConstants.L1C_POL_MODE_XY1);
+        lower.addFlags(lower.add(1, 17L, 1, createRectangle(1, 0)), SmosConstants.L1C_POL_MODE_Y);
+
+        final SnapshotInfoBuilder.Partition upper = new SnapshotInfoBuilder.Partition();
+        upper.addFlags(upper.add(4, 19L, 0, createRectangle(4, 4)), SmosConstants.L1C_POL_MODE_X);
+        upper.addFlags(upper.add(4, 18L, 3, createRectangle(4, 4)), SmosConstants.L1C_POL_MODE_XY2);
+
+        final SnapshotInfo info = SnapshotInfoBuilder.merge(Arrays.asList(lower, upper),
+                                                            new long[]{16L, 17L, 18L, 19L});
+
+        assertEquals(Arrays.asList(17L, 18L, 19L), info.getSnapshotIds());
+        assertEquals(Arrays.asList(17L, 19L), info.getSnapshotIdsX());
+        assertEquals(Arrays.asList(17L), info.getSnapshotIdsY());
+        assertEquals(Arrays.asList(18L), info.getSnapshotIdsXY());
+
+        assertEquals(-1, info.getSnapshotIndex(16L));
+        assertEquals(1, info.getSnapshotIndex(17L));
+        assertEquals(2, info.getSnapshotIndex(18L));
+        assertEquals(3, info.getSnapshotIndex(19L));
+
+        // the areas of a snapshot observed in both partitions are united
+        assertEquals(new Rectangle2D.Double(0.0, 0.0, 2.0, 1.0), info.getArea(17L).getBounds2D());
+        assertEquals(new Rectangle2D.Double(0.0, 0.0, 5.0, 5.0), info.getArea(18L).getBounds2D());
+        assertEquals(new Rectangle2D.Double(4.0, 4.0, 1.0, 1.0), info.getArea(19L).getBounds2D());
+
+        final SnapshotIndex index = info.getSnapshotIndex();
+        assertEquals(2, index.getGridPointCount(17L));
+        assertEquals(2, index.getGridPointCount(18L));
+        assertEquals(1, index.getBtRecordIndex(17L, 1));
+        assertEquals(3, index.getBtRecordIndex(18L, 4));
+        assertEquals(0, index.getBtRecordIndex(19L, 4));
+    }
+
+    @Test
+    public void testSubmit_partialResultsAreMerged() throws Exception {
+        final AtomicInteger partitionCount = new AtomicInteger();
+        final SnapshotInfoBuilder builder = new TestBuilder(3 * SnapshotInfoBuilder.PARTITION_SIZE) {
+            @Override
+            SnapshotInfoBuilder.Partition createPartition(int start, int end) {
+                partitionCount.incrementAndGet();
+                // all partitions observe snapshot 1, the first grid point of a partition also observes
+                // a snapshot of its own
+                final SnapshotInfoBuilder.Partition partition = new SnapshotInfoBuilder.Partition();
+                partition.addFlags(partition.add(start, 1L, 0, createRectangle(start, 0)),
+                                   SmosConstants.L1C_POL_MODE_X);
+                partition.addFlags(partition.add(start, start + 2L, 1, createRectangle(start, 0)),
+                                   SmosConstants.L1C_POL_MODE_Y);
+                partition.addFlags(partition.add(end - 1, 1L, 0, createRectangle(end - 1, 0)),
+                                   SmosConstants.L1C_POL_MODE_X);
+                return partition;
+            }
+        };
+
+        final SnapshotInfo info = builder.submit().get(10, TimeUnit.SECONDS);
+
+        final int n = partitionCount.get();
+        assertTrue(n > 1);
+        assertEquals(n + 1, info.getSnapshotIds().size());
+        assertEquals(Arrays.asList(1L), info.getSnapshotIdsX());
+        assertEquals(n, info.getSnapshotIdsY().size());
+        assertEquals(0, info.getSnapshotIndex(1L));
+        assertEquals(new Rectangle2D.Double(0.0, 0.0, 3 * SnapshotInfoBuilder.PARTITION_SIZE, 1.0),
+                     info.getArea(1L).getBounds2D());
+
+        final SnapshotIndex index = info.getSnapshotIndex();
+        assertEquals(2 * n, index.getGridPointCount(1L));
+        assertEquals(0, index.getBtRecordIndex(1L, 0));
+        assertEquals(1, index.getBtRecordIndex(2L, 0));
+        assertEquals(0, index.getBtRecordIndex(1L, 3 * SnapshotInfoBuilder.PARTITION_SIZE - 1));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(1);
+        final AtomicBoolean merged = new AtomicBoolean();
+        final SnapshotInfoBuilder builder = new TestBuilder(4 * SnapshotInfoBuilder.PARTITION_SIZE) {
+            @Override
+            SnapshotInfoBuilder.Partition createPartition(int start, int end) {
+                started.countDown();
+                try {
+                    released.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new SnapshotInfoBuilder.Partition();
+            }
+
+            @Override
+            long[] readSnapshotListIds() {
+                merged.set(true);
+                return super.readSnapshotListIds();
+            }
+        };
+
+        final Future<SnapshotInfo> future = builder.submit();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertFalse(builder.isCancelled());
+
+        assertTrue(future.cancel(true));
+        assertTrue(future.isCancelled());
+        // the partitions still running are told to stop reading grid points
+        assertTrue(builder.isCancelled());
+
+        released.countDown();
+        assertTrue(SnapshotInfoBuilder.getPool().awaitQuiescence(10, TimeUnit.SECONDS));
+        // the partial results are not merged
+        assertFalse(merged.get());
+    }
+
+    private static Rectangle2D createRectangle(double x, double y) {
+        return new Rectangle2D.Double(x, y, 1.0, 1.0);
+    }
+
+    private static class TestBuilder extends SnapshotInfoBuilder {
+
+        private final int gridPointCount;
+
+        TestBuilder(int gridPointCount) {
+            super(null, 0, 1);
+            this.gridPointCount = gridPointCount;
+        }
+
+        @Override
+        int getGridPointCount() {
+            return gridPointCount;
+        }
+
+        @Override
+        long[] readSnapshotListIds() {
+            return new long[]{1L};
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.esa.beam.dataio.smos;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class SpanCacheTest {
+
+    private SpanCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new SpanCache(100L);
+    }
+
+    @Test
+    public void testPutAndGet() {
+        final Object spans = new Object();
+        cache.put("a", spans, 40L);
+
+        assertSame(spans, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(40L, cache.getMemoryUsage());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedSpansAreEvictedWhenMemoryCapacityIsExceeded() {
+        final Object a = new Object();
+        final Object b = new Object();
+        final Object c = new Object();
+        cache.put("a", a, 40L);
+        cache.put("b", b, 40L);
+        cache.get("a");
+        cache.put("c", c, 40L);
+
+        assertSame(a, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertSame(c, cache.get("c"));
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(80L, cache.getMemoryUsage());
+    }
+
+    @Test
+    public void testSpansAddedAreNeverEvicted() {
+        final Object spans = new Object();
+        cache.put("a", new Object(), 40L);
+        cache.put("b", spans, 200L);
+
+        assertSame(spans, cache.get("b"));
+        assertNull(cache.get("a"));
+        assertEquals(200L, cache.getMemoryUsage());
+    }
+
+    @Test
+    public void testReplacedSpansAreNotCountedTwice() {
+        cache.put("a", new Object(), 40L);
+        cache.put("a", new Object(), 30L);
+
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(30L, cache.getMemoryUsage());
+    }
+}
@@ -0,0 +1,96 @@
+package org.esa.beam.dataio.smos;
+
+import org.esa.beam.framework.datamodel.Product;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Rectangle2D;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TileCoverageTest {
+
+    private TileCoverage coverage;
+
+    @Before
+    public void setUp() {
+        // an image of 40 x 30 pixels and 10 x 10 pixel tiles, the area consists of two rectangles
+        final Area area = new Area(new Rectangle(2, 3, 10, 5));
+        area.add(new Area(new Rectangle2D.Double(25.5, 12.0, 5.0, 6.5)));
+        coverage = TileCoverage.create(area, 40, 30, 10, 10);
+    }
+
+    @Test
+    public void testRowRanges() {
+        assertRange(0, 40, 40);
+        assertRange(2, 40, 40);
+        assertRange(3, 2, 12);
+        assertRange(7, 2, 12);
+        assertRange(8, 40, 40);
+        assertRange(12, 25, 31);
+        assertRange(18, 25, 31);
+        assertRange(19, 40, 40);
+        assertRange(29, 40, 40);
+    }
+
+    @Test
+    public void testTileCoverage() {
+        assertTrue(coverage.isTileCovered(0, 0));
+        assertTrue(coverage.isTileCovered(1, 0));
+        assertFalse(coverage.isTileCovered(2, 0));
+        assertFalse(coverage.isTileCovered(0, 1));
+        assertTrue(coverage.isTileCovered(2, 1));
+        assertTrue(coverage.isTileCovered(3, 1));
+        assertFalse(coverage.isTileCovered(3, 2));
+
+        // tiles outside of the image
+        assertFalse(coverage.isTileCovered(4, 0));
+        assertFalse(coverage.isTileCovered(0, 3));
+        assertFalse(coverage.isTileCovered(-1, 0));
+    }
+
+    @Test
+    public void testCoverageIsClippedToImage() {
+        final TileCoverage clippedCoverage = TileCoverage.create(new Rectangle(-5, -5, 100, 10), 40, 30, 10, 10);
+
+        assertRange(clippedCoverage, 0, 0, 40);
+        assertRange(clippedCoverage, 4, 0, 40);
+        assertRange(clippedCoverage, 5, 40, 40);
+    }
+
+    private void assertRange(int y, int minX, int maxX) {
+        assertRange(coverage, y, minX, maxX);
+    }
+
+    @Test
+    public void testCoveragesAreSharedForTheSameAreaOnly() {
+        final Product product = new Product("name", "type", 40, 30);
+        final AffineTransform identity = new AffineTransform();
+        final TileCoverage coverage1 = TileCoverage.getInstance(product, 0, new Area(new Rectangle(2, 3, 10, 5)),
+                                                                identity, 40, 30, 10, 10);
+        final TileCoverage coverage2 = TileCoverage.getInstance(product, 0, new Area(new Rectangle(2, 3, 10, 5)),
+                                                                identity, 40, 30, 10, 10);
+        // e.g. the area of another snapshot
+        final TileCoverage coverage3 = TileCoverage.getInstance(product, 0, new Area(new Rectangle(22, 3, 10, 5)),
+                                                                identity, 40, 30, 10, 10);
+
+        assertSame(coverage1, coverage2);
+        assertNotSame(coverage1, coverage3);
+        assertTrue(coverage1.isTileCovered(0, 0));
+        assertFalse(coverage1.isTileCovered(3, 0));
+        assertFalse(coverage3.isTileCovered(0, 0));
+        assertTrue(coverage3.isTileCovered(3, 0));
+    }
+
+    private static void assertRange(TileCoverage coverage, int y, int minX, int maxX) {
+        assertEquals(minX, coverage.getMinX(y));
+        assertEquals(maxX, coverage.getMaxX(y));
+    }
+}
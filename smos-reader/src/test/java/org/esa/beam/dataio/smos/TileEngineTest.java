@@ -0,0 +1,107 @@
+package org.esa.beam.dataio.smos;
+
+import com.bc.ceres.binio.CompoundData;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TileEngineTest {
+
+    private static final Rectangle RECTANGLE = new Rectangle(0, 0, 512, 512);
+    private static final Rectangle OTHER_RECTANGLE = new Rectangle(512, 0, 512, 512);
+
+    private DggFile dggFile;
+    private CompoundData[] records;
+    private TileEngine tileEngine;
+    private int floatBand;
+    private int intBand;
+
+    @Before
+    public void setUp() throws IOException {
+        dggFile = mock(DggFile.class);
+        when(dggFile.getGridPointIndex(anyInt())).thenReturn(-1);
+        when(dggFile.getGridPointIndex(11)).thenReturn(1);
+        when(dggFile.getGridPointIndex(12)).thenReturn(2);
+        records = new CompoundData[2];
+        for (int i = 1; i <= 2; i++) {
+            final CompoundData data = mock(CompoundData.class);
+            when(data.getFloat(0)).thenReturn(i + 0.5f);
+            when(data.getInt(3)).thenReturn(10 * i);
+            when(dggFile.getGridPointData(i)).thenReturn(data);
+            records[i - 1] = data;
+        }
+
+        tileEngine = new TileEngine(dggFile);
+        floatBand = tileEngine.addBand(0, DataBuffer.TYPE_FLOAT, -999.0);
+        intBand = tileEngine.addBand(3, DataBuffer.TYPE_INT, -1.0);
+    }
+
+    @Test
+    public void testGetValues() throws IOException {
+        final int[] seqnums = {12, 17, 11, 12};
+        // both bands become active, the records of this tile are read twice
+        assertTrue(tileEngine.getValues(floatBand, 0, OTHER_RECTANGLE, seqnums, new float[seqnums.length]));
+        assertTrue(tileEngine.getValues(intBand, 0, OTHER_RECTANGLE, seqnums, new int[seqnums.length]));
+        final int batchCount = tileEngine.getBatchCount();
+
+        final float[] floatValues = new float[seqnums.length];
+        assertTrue(tileEngine.getValues(floatBand, 0, RECTANGLE, seqnums, floatValues));
+        assertArrayEquals(new float[]{2.5f, -999.0f, 1.5f, 2.5f}, floatValues, 0.0f);
+        assertEquals(batchCount + 1, tileEngine.getBatchCount());
+
+        final int[] intValues = new int[seqnums.length];
+        assertTrue(tileEngine.getValues(intBand, 0, RECTANGLE, seqnums, intValues));
+        assertArrayEquals(new int[]{20, -1, 10, 20}, intValues);
+
+        // each grid point record of the tile is read once only
+        verify(dggFile, times(3)).getGridPointData(1);
+        verify(dggFile, times(3)).getGridPointData(2);
+
+        // the values are discarded after all bands have retrieved them
+        assertEquals(batchCount, tileEngine.getBatchCount());
+    }
+
+    @Test
+    public void testGetValues_InactiveBandIsNotComputed() throws IOException {
+        final int[] seqnums = {11, 12};
+        final float[] floatValues = new float[seqnums.length];
+        assertTrue(tileEngine.getValues(floatBand, 0, RECTANGLE, seqnums, floatValues));
+        assertArrayEquals(new float[]{1.5f, 2.5f}, floatValues, 0.0f);
+        // the values of the int band have not been computed, so the values are discarded
+        assertEquals(0, tileEngine.getBatchCount());
+        verify(records[0], never()).getInt(3);
+        verify(records[1], never()).getInt(3);
+
+        final int[] intValues = new int[seqnums.length];
+        assertTrue(tileEngine.getValues(intBand, 0, RECTANGLE, seqnums, intValues));
+        assertArrayEquals(new int[]{10, 20}, intValues);
+    }
+
+    @Test
+    public void testGetValues_DifferentGridPoints() {
+        assertTrue(tileEngine.getValues(floatBand, 0, RECTANGLE, new int[]{11, 12}, new float[2]));
+        assertFalse(tileEngine.getValues(intBand, 0, RECTANGLE, new int[]{11}, new int[1]));
+    }
+
+    @Test
+    public void testGetValues_BandAddedLater() {
+        assertTrue(tileEngine.getValues(floatBand, 0, RECTANGLE, new int[]{11, 12}, new float[2]));
+
+        final int laterBand = tileEngine.addBand(1, DataBuffer.TYPE_FLOAT, 0.0);
+        assertFalse(tileEngine.getValues(laterBand, 0, RECTANGLE, new int[]{11, 12}, new float[2]));
+    }
+}
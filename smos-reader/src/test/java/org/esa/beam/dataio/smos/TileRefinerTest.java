@@ -0,0 +1,117 @@
+package org.esa.beam.dataio.smos;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TileRefinerTest {
+
+    private TileRefiner tileRefiner;
+    private SmosOpImage image;
+    private Raster raster;
+
+    @Before
+    public void setUp() {
+        tileRefiner = new TileRefiner(true, 1);
+        image = mock(SmosOpImage.class);
+        raster = Raster.createBandedRaster(DataBuffer.TYPE_INT, 16, 16, 1, null);
+        when(image.computeRefinedTile(0, 0)).thenReturn(raster);
+    }
+
+    @Test
+    public void testRefine() throws InterruptedException {
+        tileRefiner.refine(image, 0, 0);
+        waitForPendingTiles();
+
+        final TileRefiner.RefinedTile refinedTile = tileRefiner.takeRefinedTile(image, 0, 0);
+        assertNotNull(refinedTile);
+        assertSame(raster, refinedTile.getRaster());
+
+        // a refined tile is returned once only
+        assertNull(tileRefiner.takeRefinedTile(image, 0, 0));
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        tileRefiner.refine(image, 0, 0);
+        waitForPendingTiles();
+
+        tileRefiner.cancel(image);
+        assertNull(tileRefiner.takeRefinedTile(image, 0, 0));
+    }
+
+    @Test
+    public void testRefinedTileIsNotRefinable() throws InterruptedException {
+        assertTrue(tileRefiner.isRefinable(image, 0, 0));
+        tileRefiner.refine(image, 0, 0);
+        waitForPendingTiles();
+
+        assertFalse(tileRefiner.isRefinable(image, 0, 0));
+        assertNotNull(tileRefiner.takeRefinedTile(image, 0, 0));
+        assertTrue(tileRefiner.isRefinable(image, 0, 0));
+    }
+
+    @Test
+    public void testFailedTileIsComputedAtFullResolution() throws InterruptedException {
+        when(image.computeRefinedTile(1, 0)).thenThrow(new IllegalStateException());
+        tileRefiner.refine(image, 1, 0);
+        waitForPendingTiles();
+
+        assertNull(tileRefiner.takeRefinedTile(image, 1, 0));
+        // the failure is reported once only
+        assertFalse(tileRefiner.isRefinable(image, 1, 0));
+        assertTrue(tileRefiner.isRefinable(image, 1, 0));
+    }
+
+    @Test
+    public void testRefinedTilesAreKeptUpToCapacity() throws InterruptedException {
+        tileRefiner = new TileRefiner(true, 1, 2);
+        when(image.computeRefinedTile(1, 0)).thenReturn(raster);
+        when(image.computeRefinedTile(2, 0)).thenReturn(raster);
+        tileRefiner.refine(image, 0, 0);
+        waitForPendingTiles();
+        tileRefiner.refine(image, 1, 0);
+        waitForPendingTiles();
+        tileRefiner.refine(image, 2, 0);
+        waitForPendingTiles();
+
+        // the eldest refined tile is discarded
+        assertNull(tileRefiner.takeRefinedTile(image, 0, 0));
+        assertNotNull(tileRefiner.takeRefinedTile(image, 1, 0));
+        assertNotNull(tileRefiner.takeRefinedTile(image, 2, 0));
+    }
+
+    @Test
+    public void testIsNotApplicableWithoutListeners() {
+        assertFalse(tileRefiner.isApplicable());
+    }
+
+    @Test
+    public void testIsDisabledByDefault() {
+        assertFalse(TileRefiner.isEnabled());
+        TileRefiner.setPainting(true);
+        try {
+            assertFalse(TileRefiner.getInstance().isApplicable());
+        } finally {
+            TileRefiner.setPainting(false);
+        }
+    }
+
+    private void waitForPendingTiles() throws InterruptedException {
+        for (int i = 0; i < 100 && tileRefiner.getPendingTileCount() > 0; i++) {
+            Thread.sleep(10L);
+        }
+        assertEquals(0, tileRefiner.getPendingTileCount());
+    }
+}
@@ -0,0 +1,111 @@
+package org.esa.beam.dataio.smos;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.geom.Area;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class ValueStoreTest {
+
+    // the seqnums of all grid points, indexed by grid point
+    private static final int[] SEQNUMS = {17, 11, 13, 19};
+
+    private CountingValueProvider valueProvider;
+    private ValueStore valueStore;
+
+    @Before
+    public void setUp() {
+        valueProvider = new CountingValueProvider();
+        valueStore = new ValueStore(valueProvider, SEQNUMS);
+    }
+
+    @Test
+    public void testGetValue() {
+        assertEquals(110, valueStore.getValue(11, -1));
+        assertEquals(4, valueProvider.count);
+
+        // all values are read once only
+        assertEquals(170, valueStore.getValue(17, -1));
+        assertEquals(190, valueStore.getValue(19, -1));
+        assertEquals(4, valueProvider.count);
+
+        // grid points, which are not included in the product
+        assertEquals(-1, valueStore.getValue(23, -1));
+
+        // grid points, whose value cannot be read
+        assertEquals(-1, valueStore.getValue(13, -1));
+    }
+
+    @Test
+    public void testGetValue_noDataValueOfEachRequest() {
+        assertEquals(-1, valueStore.getValue(13, -1));
+        assertEquals(4, valueProvider.count);
+
+        // the no-data value of the first request is not stored
+        assertEquals(-2, valueStore.getValue(13, -2));
+        assertEquals(0, valueStore.getValue(13, 0));
+        assertEquals(110, valueStore.getValue(11, -2));
+        assertEquals(4, valueProvider.count);
+    }
+
+    @Test
+    public void testGetValues() {
+        final float[] values = new float[3];
+        valueStore.getValues(new int[]{19, 23, 17}, values, Float.NaN);
+
+        assertEquals(19.5f, values[0], 0.0f);
+        assertEquals(Float.NaN, values[1], 0.0f);
+        assertEquals(17.5f, values[2], 0.0f);
+        assertEquals(4, valueProvider.count);
+    }
+
+    private static class CountingValueProvider extends AbstractValueProvider {
+
+        private int count;
+
+        @Override
+        public Area getArea() {
+            return new Area();
+        }
+
+        @Override
+        protected int getGridPointIndex(int seqnum) {
+            for (int i = 0; i < SEQNUMS.length; i++) {
+                if (SEQNUMS[i] == seqnum) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        protected byte getByte(int gridPointIndex) {
+            count++;
+            return (byte) SEQNUMS[gridPointIndex];
+        }
+
+        @Override
+        protected short getShort(int gridPointIndex) {
+            count++;
+            return (short) SEQNUMS[gridPointIndex];
+        }
+
+        @Override
+        protected int getInt(int gridPointIndex) throws IOException {
+            count++;
+            if (SEQNUMS[gridPointIndex] == 13) {
+                throw new IOException();
+            }
+            return 10 * SEQNUMS[gridPointIndex];
+        }
+
+        @Override
+        protected float getFloat(int gridPointIndex) {
+            count++;
+            return SEQNUMS[gridPointIndex] + 0.5f;
+        }
+    }
+}
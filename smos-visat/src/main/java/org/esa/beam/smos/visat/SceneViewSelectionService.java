@@ -18,7 +18,6 @@ package org.esa.beam.smos.visat;
 
 import com.bc.ceres.core.Assert;
 import com.bc.ceres.glayer.support.ImageLayer;
-import com.bc.ceres.glevel.MultiLevelImage;
 import org.esa.beam.dataio.smos.ProductFile;
 import org.esa.beam.dataio.smos.SmosFile;
 import org.esa.beam.dataio.smos.SmosProductReader;
@@ -32,10 +31,7 @@ import org.esa.beam.smos.dgg.SmosDgg;
 import javax.swing.event.InternalFrameAdapter;
 import javax.swing.event.InternalFrameEvent;
 import java.awt.Container;
-import java.awt.Rectangle;
 import java.awt.event.MouseEvent;
-import java.awt.image.Raster;
-import java.awt.image.RenderedImage;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -106,10 +102,7 @@ public class SceneViewSelectionService {
     }
 
     public int getGridPointId(int pixelX, int pixelY, int currentLevel) {
-        final MultiLevelImage levelImage = SmosDgg.getInstance().getMultiLevelImage();
-        RenderedImage image = levelImage.getImage(currentLevel);
-        Raster data = image.getData(new Rectangle(pixelX, pixelY, 1, 1));
-        return data.getSample(pixelX, pixelY, 0);
+        return SmosDgg.getInstance().getSeqnumTileCache().getSeqnum(currentLevel, pixelX, pixelY);
     }
 
     public synchronized void addSceneViewSelectionListener(SelectionListener selectionListener) {
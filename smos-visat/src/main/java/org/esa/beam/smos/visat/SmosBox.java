@@ -24,8 +24,10 @@ import com.bc.ceres.glayer.LayerTypeRegistry;
 import com.bc.ceres.glayer.support.ImageLayer;
 import com.bc.ceres.glayer.support.LayerUtils;
 import org.esa.beam.dataio.smos.L1cScienceSmosFile;
+import org.esa.beam.dataio.smos.LightBufrFile;
 import org.esa.beam.dataio.smos.ProductFile;
 import org.esa.beam.dataio.smos.SmosProductReader;
+import org.esa.beam.dataio.smos.TileRefiner;
 import org.esa.beam.framework.dataio.ProductReader;
 import org.esa.beam.framework.datamodel.RasterDataNode;
 import org.esa.beam.framework.ui.product.ProductSceneView;
@@ -43,6 +45,7 @@ public class SmosBox implements VisatPlugIn {
     private volatile SnapshotSelectionService snapshotSelectionService;
     private volatile GridPointSelectionService gridPointSelectionService;
     private volatile SceneViewSelectionService sceneViewSelectionService;
+    private volatile TileRefinementSupport tileRefinementSupport;
 
     public static SmosBox getInstance() {
         return instance;
@@ -82,12 +85,20 @@ public class SmosBox implements VisatPlugIn {
                     }
                 }
             });
+            if (TileRefiner.isEnabled()) {
+                tileRefinementSupport = new TileRefinementSupport(visatApp);
+                tileRefinementSupport.start(sceneViewSelectionService);
+            }
         }
     }
 
     @Override
     public final void stop(VisatApp visatApp) {
         synchronized (this) {
+            if (tileRefinementSupport != null) {
+                tileRefinementSupport.stop(sceneViewSelectionService);
+                tileRefinementSupport = null;
+            }
             sceneViewSelectionService.stop();
             sceneViewSelectionService = null;
             snapshotSelectionService.stop();
@@ -134,6 +145,30 @@ public class SmosBox implements VisatPlugIn {
         return null;
     }
 
+    static LightBufrFile getLightBufrFile(RasterDataNode raster) {
+        if (raster != null) {
+            final ProductReader productReader = raster.getProductReader();
+            if (productReader instanceof SmosProductReader) {
+                final ProductFile productFile = ((SmosProductReader) productReader).getProductFile();
+                if (productFile instanceof LightBufrFile) {
+                    return (LightBufrFile) productFile;
+                }
+            }
+        }
+        return null;
+    }
+
+    static LightBufrFile getLightBufrFile(ProductSceneView smosView) {
+        if (smosView != null) {
+            try {
+                return getLightBufrFile(smosView.getRaster()); // can produce NullPointerException
+            } catch (NullPointerException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
     private LayerType getWorldMapLayerType() {
         final VisatApp visatApp = VisatApp.getApp();
         String layerTypeClassName = visatApp.getPreferences().getPropertyString(WORLDMAP_TYPE_PROPERTY_NAME,
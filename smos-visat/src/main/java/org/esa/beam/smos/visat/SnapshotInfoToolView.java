@@ -32,12 +32,15 @@ import com.bc.ceres.grender.Rendering;
 import com.bc.ceres.grender.Viewport;
 import org.esa.beam.dataio.smos.L1cScienceSmosFile;
 import org.esa.beam.dataio.smos.L1cScienceValueProvider;
+import org.esa.beam.dataio.smos.LightBufrFile;
 import org.esa.beam.dataio.smos.SmosConstants;
 import org.esa.beam.dataio.smos.SmosFile;
 import org.esa.beam.dataio.smos.SmosMultiLevelSource;
+import org.esa.beam.dataio.smos.SnapshotInfo;
 import org.esa.beam.dataio.smos.ValueProvider;
 import org.esa.beam.framework.datamodel.Band;
 import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.ProductData;
 import org.esa.beam.framework.datamodel.RasterDataNode;
 import org.esa.beam.framework.datamodel.VirtualBand;
 import org.esa.beam.framework.help.HelpSys;
@@ -167,11 +170,28 @@ public class SnapshotInfoToolView extends SmosToolView {
             }
             final long snapshotId = getSelectedSnapshotId(smosView.getRaster());
             updateUI(smosView, snapshotId, true);
+        } else if (SmosBox.getLightBufrFile(smosView) != null) {
+            // the snapshots of BUFR products are indexed while the product is opened
+            final long snapshotId = getSelectedSnapshotId(smosView.getRaster());
+            updateUI(smosView, snapshotId, true);
         } else {
             super.realizeSmosView(null);
         }
     }
 
+    // returns the snapshot information of the product displayed by a view, or null
+    private static SnapshotInfo getSnapshotInfo(ProductSceneView smosView) {
+        final L1cScienceSmosFile l1cScienceSmosFile = SmosBox.getL1cScienceSmosFile(smosView);
+        if (l1cScienceSmosFile != null) {
+            return l1cScienceSmosFile.getSnapshotInfo();
+        }
+        final LightBufrFile lightBufrFile = SmosBox.getLightBufrFile(smosView);
+        if (lightBufrFile != null) {
+            return lightBufrFile.getSnapshotInfo();
+        }
+        return null;
+    }
+
     private void updateTable(long snapshotId) {
         final SmosFile selectedSmosFile = getSelectedSmosFile();
         if (selectedSmosFile != null && selectedSmosFile instanceof L1cScienceSmosFile) {
@@ -199,9 +219,27 @@ public class SnapshotInfoToolView extends SmosToolView {
                 return;
             }
         }
+        final LightBufrFile lightBufrFile = SmosBox.getLightBufrFile(getSelectedSmosView());
+        if (lightBufrFile != null && lightBufrFile.getSnapshotInfo().getSnapshotIndex(snapshotId) != -1) {
+            snapshotTable.setModel(createSnapshotTableModel(snapshotId, lightBufrFile.getSnapshotTime(snapshotId)));
+            return;
+        }
         snapshotTable.setModel(NULL_MODEL);
     }
 
+    // BUFR products have no snapshot data records, so only the ID and the time of a snapshot are shown
+    private TableModel createSnapshotTableModel(long snapshotId, ProductData.UTC snapshotTime) {
+        final ArrayList<Object[]> list = new ArrayList<>(2);
+        list.add(new Object[]{"Snapshot_ID", snapshotId});
+        if (snapshotTime != null) {
+            final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSz", Locale.ENGLISH);
+            dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+            list.add(new Object[]{"Snapshot_Time", dateFormat.format(snapshotTime.getAsDate())});
+        }
+
+        return new SnapshotTableModel(list.toArray(new Object[2][list.size()]));
+    }
+
     private TableModel createSnapshotTableModel(CompoundData data) {
         final CompoundType compoundType = data.getType();
         final int memberCount = data.getMemberCount();
@@ -254,12 +292,16 @@ public class SnapshotInfoToolView extends SmosToolView {
                 }
             }
         }
+        final LightBufrFile lightBufrFile = SmosBox.getLightBufrFile(raster);
+        if (lightBufrFile != null && lightBufrFile.setSnapshotId(raster.getName(), snapshotId)) {
+            resetRasterImages(raster);
+        }
     }
 
     private void locateSnapshotId(final ProductSceneView smosView, final long id) {
-        final L1cScienceSmosFile smosFile = SmosBox.getL1cScienceSmosFile(smosView);
-        if (smosFile != null) {
-            final Rectangle2D snapshotRegion = smosFile.getSnapshotInfo().getArea(id).getBounds2D();
+        final SnapshotInfo snapshotInfo = getSnapshotInfo(smosView);
+        if (snapshotInfo != null) {
+            final Rectangle2D snapshotRegion = snapshotInfo.getArea(id).getBounds2D();
             if (snapshotRegion != null) {
                 final Viewport vp = smosView.getLayerCanvas().getViewport();
                 final AffineTransform m2v = vp.getModelToViewTransform();
@@ -335,9 +377,9 @@ public class SnapshotInfoToolView extends SmosToolView {
         public void paintOverlay(LayerCanvas canvas, Rendering rendering) {
             ProductSceneView view = getSelectedSmosView();
             Graphics2D graphics = rendering.getGraphics();
-            L1cScienceSmosFile scienceSmosFile = SmosBox.getL1cScienceSmosFile(view);
-            if (scienceSmosFile != null) {
-                final Rectangle2D snapshotRegion = scienceSmosFile.getSnapshotInfo().getArea(snapshotId).getBounds2D();
+            SnapshotInfo snapshotInfo = getSnapshotInfo(view);
+            if (snapshotInfo != null) {
+                final Rectangle2D snapshotRegion = snapshotInfo.getArea(snapshotId).getBounds2D();
                 if (snapshotRegion != null) {
                     final Viewport vp = view.getLayerCanvas().getViewport();
                     final AffineTransform m2v = vp.getModelToViewTransform();
@@ -381,15 +423,17 @@ public class SnapshotInfoToolView extends SmosToolView {
         final long crossPolId;
 
         if (snapshotId != -1) {
-            final L1cScienceSmosFile smosFile = (L1cScienceSmosFile) getSelectedSmosFile();
-            xPolId = findSnapshotId(smosFile.getSnapshotInfo().getSnapshotIdsX(), snapshotId);
-            yPolId = findSnapshotId(smosFile.getSnapshotInfo().getSnapshotIdsY(), snapshotId);
-            crossPolId = findSnapshotId(smosFile.getSnapshotInfo().getSnapshotIdsXY(), snapshotId);
+            final SnapshotInfo snapshotInfo = getSnapshotInfo(getSelectedSmosView());
+            xPolId = findSnapshotId(snapshotInfo.getSnapshotIdsX(), snapshotId);
+            yPolId = findSnapshotId(snapshotInfo.getSnapshotIdsY(), snapshotId);
+            crossPolId = findSnapshotId(snapshotInfo.getSnapshotIdsXY(), snapshotId);
         } else {
             xPolId = -1;
             yPolId = -1;
             crossPolId = -1;
         }
+        // all bands of BUFR products display the observations of the selected snapshot
+        final boolean bufrProduct = SmosBox.getLightBufrFile(getSelectedSmosView()) != null;
 
         for (final Band band : smosProduct.getBands()) {
             if (band.getName().equals(SmosConstants.LAND_SEA_MASK_NAME)) {
@@ -403,7 +447,7 @@ public class SnapshotInfoToolView extends SmosToolView {
                 updateSnapshotImage(band, yPolId);
             } else if (isXYPolarized(band)) {
                 updateSnapshotImage(band, crossPolId);
-            } else if (band.isFlagBand()) {
+            } else if (band.isFlagBand() || bufrProduct) {
                 updateSnapshotImage(band, snapshotId);
             } else {
                 resetRasterImages(band);
@@ -512,8 +556,7 @@ public class SnapshotInfoToolView extends SmosToolView {
 
     private void updateUI(ProductSceneView smosView, long snapshotId, boolean resetSelectorComboModel) {
         if (resetSelectorComboModel) {
-            final L1cScienceSmosFile smosFile = SmosBox.getL1cScienceSmosFile(smosView);
-            snapshotSelectorCombo.setModel(new SnapshotSelectorComboModel(smosFile.getSnapshotInfo()));
+            snapshotSelectorCombo.setModel(new SnapshotSelectorComboModel(getSnapshotInfo(smosView)));
         }
         final boolean sync = synchronizeButtonModel.isSelected();
         if (sync) {
@@ -689,7 +732,7 @@ public class SnapshotInfoToolView extends SmosToolView {
         return foundId;
     }
 
-    private static void regenerateImageLayers(Layer layer) {
+    static void regenerateImageLayers(Layer layer) {
         final List<Layer> children = layer.getChildren();
         for (int i = children.size(); i-- > 0; ) {
             final Layer child = children.get(i);
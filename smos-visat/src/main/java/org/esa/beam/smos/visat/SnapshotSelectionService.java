@@ -38,7 +38,7 @@ public class SnapshotSelectionService {
         this.smosViewSelectionListener = new SceneViewSelectionService.SelectionListener() {
             @Override
             public void handleSceneViewSelectionChanged(ProductSceneView oldView, ProductSceneView newView) {
-                if (SmosBox.isL1cScienceSmosView(newView)) {
+                if (SmosBox.isL1cScienceSmosView(newView) || SmosBox.getLightBufrFile(newView) != null) {
                     synchronized (snapshotIdMap) {
                         final Long newId = snapshotIdMap.get(newView.getRaster());
                         if (newId != null) {
@@ -71,7 +71,7 @@ public class SnapshotSelectionService {
     }
 
     public void setSelectedSnapshotId(RasterDataNode raster, long id) {
-        if (SmosBox.isL1cScienceSmosRaster(raster)) {
+        if (SmosBox.isL1cScienceSmosRaster(raster) || SmosBox.getLightBufrFile(raster) != null) {
             if (id >= 0) {
                 synchronized (snapshotIdMap) {
                     snapshotIdMap.put(raster, id);
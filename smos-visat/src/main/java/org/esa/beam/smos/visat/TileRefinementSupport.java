@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.smos.visat;
+
+import com.bc.ceres.glayer.CollectionLayer;
+import com.bc.ceres.glayer.swing.LayerCanvas;
+import com.bc.ceres.grender.Rendering;
+import com.bc.ceres.grender.Viewport;
+import com.bc.ceres.grender.ViewportListener;
+import org.esa.beam.dataio.smos.TileRefiner;
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.ui.product.ProductSceneView;
+import org.esa.beam.visat.VisatApp;
+
+import javax.swing.JInternalFrame;
+import javax.swing.Timer;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.geom.AffineTransform;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Marks the event dispatch thread as painting while the layers of a SMOS view are
+ * rendered, repaints the tiles of the views of SMOS products when coarse tiles have
+ * been refined, and cancels the refinement of tiles when the selected view is moved.
+ *
+ * @since SMOS-Box 3.0
+ */
+class TileRefinementSupport implements TileRefiner.Listener, SceneViewSelectionService.SelectionListener {
+
+    // the views are repainted once for all tiles refined within this delay (ms)
+    private static final int REPAINT_DELAY = 250;
+
+    private final VisatApp visatApp;
+    private final Map<Product, List<ChangedTile>> changedTiles;
+    private final Timer repaintTimer;
+    private final ViewportListener viewportListener;
+    private final Map<ProductSceneView, PaintingLayer> paintingLayers;
+    private final PaintingOverlay paintingOverlay;
+
+    TileRefinementSupport(VisatApp visatApp) {
+        this.visatApp = visatApp;
+        changedTiles = new HashMap<>();
+        repaintTimer = new Timer(REPAINT_DELAY, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                repaintViews();
+            }
+        });
+        repaintTimer.setRepeats(false);
+        viewportListener = new ViewportListener() {
+            @Override
+            public void handleViewportChanged(Viewport vp, boolean orientationChanged) {
+                // the tiles requested before may not be visible anymore
+                TileRefiner.cancelPendingTiles();
+            }
+        };
+        paintingLayers = new WeakHashMap<>();
+        paintingOverlay = new PaintingOverlay();
+    }
+
+    void start(SceneViewSelectionService sceneViewSelectionService) {
+        sceneViewSelectionService.addSceneViewSelectionListener(this);
+        handleSceneViewSelectionChanged(null, sceneViewSelectionService.getSelectedSceneView());
+        TileRefiner.addListener(this);
+    }
+
+    void stop(SceneViewSelectionService sceneViewSelectionService) {
+        TileRefiner.removeListener(this);
+        handleSceneViewSelectionChanged(sceneViewSelectionService.getSelectedSceneView(), null);
+        sceneViewSelectionService.removeSceneViewSelectionListener(this);
+        repaintTimer.stop();
+        changedTiles.clear();
+        for (final Map.Entry<ProductSceneView, PaintingLayer> entry : paintingLayers.entrySet()) {
+            entry.getKey().getRootLayer().getChildren().remove(entry.getValue());
+            entry.getKey().getLayerCanvas().removeOverlay(paintingOverlay);
+        }
+        paintingLayers.clear();
+        TileRefiner.setPainting(false);
+    }
+
+    @Override
+    public void tileChanged(Product product, int level, Rectangle rectangle) {
+        List<ChangedTile> tiles = changedTiles.get(product);
+        if (tiles == null) {
+            tiles = new ArrayList<>();
+            changedTiles.put(product, tiles);
+        }
+        tiles.add(new ChangedTile(level, rectangle));
+        repaintTimer.restart();
+    }
+
+    @Override
+    public void handleSceneViewSelectionChanged(ProductSceneView oldView, ProductSceneView newView) {
+        if (oldView != null) {
+            oldView.getLayerCanvas().getViewport().removeListener(viewportListener);
+        }
+        if (newView != null) {
+            newView.getLayerCanvas().getViewport().addListener(viewportListener);
+            if (!paintingLayers.containsKey(newView)) {
+                final PaintingLayer paintingLayer = new PaintingLayer();
+                // the bottom layer is rendered first and the overlays are painted last
+                newView.getRootLayer().getChildren().add(paintingLayer);
+                newView.getLayerCanvas().addOverlay(paintingOverlay);
+                paintingLayers.put(newView, paintingLayer);
+            }
+        }
+    }
+
+    private void repaintViews() {
+        for (final Map.Entry<Product, List<ChangedTile>> entry : changedTiles.entrySet()) {
+            for (final Band band : entry.getKey().getBands()) {
+                for (final JInternalFrame internalFrame : visatApp.findInternalFrames(band)) {
+                    if (internalFrame != null && internalFrame.getContentPane() instanceof ProductSceneView) {
+                        repaintTiles((ProductSceneView) internalFrame.getContentPane(), entry.getValue());
+                    }
+                }
+            }
+        }
+        changedTiles.clear();
+    }
+
+    private static void repaintTiles(ProductSceneView view, List<ChangedTile> tiles) {
+        final LayerCanvas layerCanvas = view.getLayerCanvas();
+        final AffineTransform m2v = layerCanvas.getViewport().getModelToViewTransform();
+        for (final ChangedTile tile : tiles) {
+            final AffineTransform i2v = new AffineTransform(m2v);
+            i2v.concatenate(view.getRaster().getSourceImage().getModel().getImageToModelTransform(tile.level));
+            final Rectangle bounds = i2v.createTransformedShape(tile.rectangle).getBounds();
+            // the rectangle is enlarged by one pixel to cover the tile borders, which are antialiased
+            bounds.grow(1, 1);
+            layerCanvas.repaint(bounds);
+        }
+    }
+
+    private static final class ChangedTile {
+
+        private final int level;
+        private final Rectangle rectangle;
+
+        private ChangedTile(int level, Rectangle rectangle) {
+            this.level = level;
+            this.rectangle = rectangle;
+        }
+    }
+
+    // marks the current thread as painting when the layers of a view are rendered
+    private static final class PaintingLayer extends CollectionLayer {
+
+        private PaintingLayer() {
+            setName("Progressive Rendering");
+        }
+
+        @Override
+        protected void renderLayer(Rendering rendering) {
+            TileRefiner.setPainting(true);
+        }
+    }
+
+    // clears the mark when all layers of a view have been rendered
+    private static final class PaintingOverlay implements LayerCanvas.Overlay {
+
+        @Override
+        public void paintOverlay(LayerCanvas canvas, Rendering rendering) {
+            TileRefiner.setPainting(false);
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package org.esa.beam.smos.visat.export;
 
 import com.bc.ceres.binio.*;
+import org.esa.beam.dataio.smos.GridPointGeolocation;
 import org.esa.beam.dataio.smos.SmosConstants;
 import org.esa.beam.smos.DateTimeUtils;
 import org.esa.beam.smos.SmosUtils;
@@ -31,6 +32,7 @@ class EEExportGridPointHandler implements GridPointHandler {
 
     private final DataContext targetContext;
     private final GridPointFilter targetFilter;
+    private final GridPointGeolocation sourceGeolocation;
     private final HashMap<Long, Date> snapshotIdTimeMap;
     private final TimeTracker timeTracker;
     private final GeometryTracker geometryTracker;
@@ -43,17 +45,36 @@ class EEExportGridPointHandler implements GridPointHandler {
     private static final int SEGMENT_SIZE = 16384;
 
     EEExportGridPointHandler(DataContext targetContext) {
+        this(targetContext, (GridPointGeolocation) null);
+    }
+
+    EEExportGridPointHandler(DataContext targetContext, GridPointGeolocation sourceGeolocation) {
         this(targetContext, new GridPointFilter() {
             @Override
             public boolean accept(int id, CompoundData gridPointData) throws IOException {
                 return true;
             }
-        });
+        }, sourceGeolocation);
     }
 
     EEExportGridPointHandler(DataContext targetContext, GridPointFilter targetFilter) {
+        this(targetContext, targetFilter, null);
+    }
+
+    /**
+     * Creates a new handler.
+     *
+     * @param targetContext     the target data context.
+     * @param targetFilter      the grid point filter.
+     * @param sourceGeolocation the geolocation of the source grid points, which are identified
+     *                          by their index. If {@code null}, the geolocation is read from the
+     *                          grid point data.
+     */
+    EEExportGridPointHandler(DataContext targetContext, GridPointFilter targetFilter,
+                             GridPointGeolocation sourceGeolocation) {
         this.targetContext = targetContext;
         this.targetFilter = targetFilter;
+        this.sourceGeolocation = sourceGeolocation;
         snapshotIdTimeMap = new HashMap<>();
         timeTracker = new TimeTracker();
         geometryTracker = new GeometryTracker();
@@ -69,7 +90,7 @@ class EEExportGridPointHandler implements GridPointHandler {
         }
         if (targetFilter.accept(id, gridPointData)) {
             trackSensingTime(gridPointData);
-            trackGeometry(gridPointData);
+            trackGeometry(id, gridPointData);
 
             targetContext.getData().setLong(SmosConstants.GRID_POINT_COUNTER_NAME, ++gridPointCount);
             // ATTENTION: flush must occur <em>before</em> grid point data is written (rq-20091008)
@@ -175,9 +196,16 @@ class EEExportGridPointHandler implements GridPointHandler {
         }
     }
 
-    private void trackGeometry(CompoundData gridPointData) throws IOException {
-        double lat = gridPointData.getDouble(latIndex);
-        double lon = gridPointData.getDouble(lonIndex);
+    private void trackGeometry(int id, CompoundData gridPointData) throws IOException {
+        double lat;
+        double lon;
+        if (sourceGeolocation != null) {
+            lat = sourceGeolocation.getLat(id);
+            lon = sourceGeolocation.getLon(id);
+        } else {
+            lat = gridPointData.getDouble(latIndex);
+            lon = gridPointData.getDouble(lonIndex);
+        }
         // normalisation to [-180, 180] necessary for some L1c test products
         if (lon > 180.0) {
             lon = lon - 360.0;
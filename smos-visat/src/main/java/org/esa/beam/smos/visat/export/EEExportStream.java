@@ -55,7 +55,7 @@ public class EEExportStream implements GridPointFilterStream {
         //noinspection ResultOfMethodCallIgnored
         targetDblFile.getParentFile().mkdirs();
         targetContext = targetFormat.createContext(targetDblFile, "rw");
-        targetGridPointHandler = new EEExportGridPointHandler(targetContext);
+        targetGridPointHandler = new EEExportGridPointHandler(targetContext, sourceFile.getGridPointGeolocation());
     }
 
     @Override
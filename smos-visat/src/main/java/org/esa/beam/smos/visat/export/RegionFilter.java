@@ -17,7 +17,6 @@
 package org.esa.beam.smos.visat.export;
 
 import com.bc.ceres.binio.CompoundData;
-import com.bc.ceres.glevel.MultiLevelImage;
 import org.esa.beam.dataio.smos.SmosConstants;
 import org.esa.beam.smos.dgg.SmosDgg;
 
@@ -57,8 +56,7 @@ public class RegionFilter implements GridPointFilter {
         }
         final int x = (int) point.getX();
         final int y = (int) point.getY();
-        final MultiLevelImage mli = SmosDgg.getInstance().getMultiLevelImage();
-        final int seqnum = mli.getData(new Rectangle(x, y, 1, 1)).getSample(x, y, 0);
+        final int seqnum = SmosDgg.getInstance().getSeqnumTileCache().getSeqnum(0, x, y);
 
         return new GridPointFilter() {
             @Override
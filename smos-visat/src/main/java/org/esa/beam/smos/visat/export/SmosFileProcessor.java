@@ -17,9 +17,8 @@
 package org.esa.beam.smos.visat.export;
 
 import com.bc.ceres.binio.CompoundData;
-import com.bc.ceres.binio.CompoundType;
 import com.bc.ceres.core.ProgressMonitor;
-import org.esa.beam.dataio.smos.SmosConstants;
+import org.esa.beam.dataio.smos.GridPointGeolocation;
 import org.esa.beam.dataio.smos.SmosFile;
 
 import java.io.IOException;
@@ -36,8 +35,7 @@ public class SmosFileProcessor {
     }
 
     public void process(SmosFile smosFile, ProgressMonitor pm) throws IOException {
-        final CompoundType gridPointType = smosFile.getGridPointType();
-        final int idIndex = gridPointType.getMemberIndex(SmosConstants.GRID_POINT_ID_NAME);
+        final GridPointGeolocation geolocation = smosFile.getGridPointGeolocation();
 
         filterStream.startFile(smosFile);
         final int gridPointCount = smosFile.getGridPointCount();
@@ -46,8 +44,8 @@ public class SmosFileProcessor {
                 "Processing file ''{0}''...", smosFile.getDataFile().getName()), gridPointCount);
         try {
             for (int i = 0; i < gridPointCount; i++) {
+                final int id = geolocation.getGridPointId(i);
                 final CompoundData gridPointData = smosFile.getGridPointData(i);
-                final int id = gridPointData.getInt(idIndex);
                 if (gridPointFilter.accept(id, gridPointData)) {
                     filterStream.handleGridPoint(i, gridPointData);
                 }